@@ -2,6 +2,7 @@ package com.eazybytes.client;
 
 import com.eazybytes.config.FeignClientConfig;
 import com.eazybytes.dto.InventoryDto;
+import com.eazybytes.service.CartItemIdentifier;
 
 import jakarta.validation.Valid;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -17,6 +18,10 @@ public interface InventoryClient {
     @GetMapping("/api/inventory/product")
     ResponseEntity<InventoryDto> getProductInventory(@RequestParam String productId, @RequestParam(required = false) String color);
 
+    // Kết quả cùng thứ tự với items; phần tử null = không có tồn kho cho cặp đó
+    @PostMapping("/api/inventory/products/lookup")
+    ResponseEntity<List<InventoryDto>> getProductInventories(@RequestBody List<CartItemIdentifier> items);
+
     @GetMapping("/api/inventory/productColorVariants/{productId}")
     ResponseEntity<List<InventoryDto>> getProductColorVariants(@PathVariable String productId);
 
@@ -1,6 +1,7 @@
 package com.eazybytes.client;
 
 import com.eazybytes.dto.InventoryDto;
+import com.eazybytes.service.CartItemIdentifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
@@ -14,6 +15,11 @@ public class InventoryClientFallback implements InventoryClient {
         return ResponseEntity.status(503).body(new InventoryDto());
     }
 
+    @Override
+    public ResponseEntity<List<InventoryDto>> getProductInventories(List<CartItemIdentifier> items) {
+        return ResponseEntity.status(503).body(List.of());
+    }
+
     @Override
     public ResponseEntity<List<InventoryDto>> getProductColorVariants(String productId) {
         return ResponseEntity.status(503).body(List.of());
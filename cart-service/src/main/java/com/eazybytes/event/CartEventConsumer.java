@@ -4,12 +4,17 @@ package com.eazybytes.event;
 import com.eazybytes.event.model.CartClearFailedEvent;
 import com.eazybytes.event.model.CartClearedEvent;
 import com.eazybytes.event.model.CheckoutFailedEvent;
+import com.eazybytes.event.model.InventoryChangedEvent;
 import com.eazybytes.event.model.OrderCompletedEvent;
 import com.eazybytes.service.CartService;
+import com.eazybytes.service.InventoryNearCache;
+import com.eazybytes.idempotency.MessageIdempotencyService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -19,13 +24,20 @@ public class CartEventConsumer {
 
     private final CartService cartService;
     private final CartEventProducer cartEventProducer; 
+    private final MessageIdempotencyService idempotencyService;
+    private final InventoryNearCache inventoryNearCache;
 
     @KafkaListener(topics = "${kafka.topics.order.completed}", groupId = "${spring.kafka.consumer.group-id}")
-    public void handleOrderCompleted(OrderCompletedEvent event, Acknowledgment ack) {
+    public void handleOrderCompleted(OrderCompletedEvent event,
+                                     @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                                     @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+                                     Acknowledgment ack) {
         log.info("Received OrderCompletedEvent: {}", event);
         try {
-            cartService.finalizeSuccessfulCheckout(event);
-            cartEventProducer.sendCartClearedEvent(new CartClearedEvent(event.getTransactionId(), event.getUserId()));
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> {
+                cartService.finalizeSuccessfulCheckout(event);
+                cartEventProducer.sendCartClearedEvent(new CartClearedEvent(event.getTransactionId(), event.getUserId()));
+            });
             ack.acknowledge(); // Xác nhận khi thành công
             log.info("Successfully processed OrderCompletedEvent for transactionId: {}", event.getTransactionId());
         } catch (Exception e) {
@@ -36,10 +48,13 @@ public class CartEventConsumer {
     }
 
     @KafkaListener(topics = "${kafka.topics.checkout.failed}", groupId = "${spring.kafka.consumer.group-id}")
-    public void handleCheckoutFailed(CheckoutFailedEvent event, Acknowledgment ack) {
+    public void handleCheckoutFailed(CheckoutFailedEvent event,
+                                     @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                                     @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+                                     Acknowledgment ack) {
         log.warn("Received CheckoutFailedEvent: {}", event);
         try {
-            cartService.compensateFailedCheckout(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> cartService.compensateFailedCheckout(event));
             ack.acknowledge(); // Xác nhận khi bù trừ thành công
             log.info("Successfully processed CheckoutFailedEvent for transactionId: {}", event.getTransactionId());
         } catch (Exception e) {
@@ -47,4 +62,14 @@ public class CartEventConsumer {
             ack.acknowledge(); // Giữ như bạn để tránh lặp vô hạn
         }
     }
+
+    // Mỗi instance một group riêng để instance nào cũng nhận được; chỉ cần các thay đổi từ lúc khởi động
+    @KafkaListener(topics = "${kafka.topics.inventory.changed}",
+            groupId = "${spring.kafka.consumer.group-id}-inventory-cache-#{T(java.util.UUID).randomUUID().toString()}",
+            properties = "auto.offset.reset=latest")
+    public void handleInventoryChanged(InventoryChangedEvent event, Acknowledgment ack) {
+        log.debug("Received InventoryChangedEvent: {}", event);
+        inventoryNearCache.invalidateProduct(event.getProductId());
+        ack.acknowledge();
+    }
 }
\ No newline at end of file
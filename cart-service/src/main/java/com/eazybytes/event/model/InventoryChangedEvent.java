@@ -0,0 +1,19 @@
+package com.eazybytes.event.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Published by inventory-service after any change to a product's stock or price.
+ * Used here to evict {@link com.eazybytes.service.InventoryNearCache} entries.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryChangedEvent {
+    private String productId;
+    private String color;
+}
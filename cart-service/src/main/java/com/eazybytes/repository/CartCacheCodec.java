@@ -0,0 +1,171 @@
+package com.eazybytes.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary form of the cart header and line detail values stored in the cart hashes.
+ *
+ * Layout: one format version byte, one byte of presence flags for the nullable fields, then the
+ * present fields in declaration order. Integers are zigzag varints, strings a varint byte length
+ * followed by UTF-8. A decoder reads every version up to {@link #VERSION}; a new field goes at the
+ * end under a new version so older values stay readable.
+ *
+ * Values written before this codec are JSON and start with '{', which is never a valid version
+ * byte; {@link #isBinary} tells them apart.
+ */
+public final class CartCacheCodec {
+
+    static final byte VERSION = 1;
+
+    /** Cart-level values of the {@code #cart} field. */
+    public record Header(Integer id, Long version, String transactionId) {
+    }
+
+    /** Per-line values of the {@code #{productId}:{color}} field; quantity is kept in its own field. */
+    public record Line(Long id, String productName, Integer price) {
+    }
+
+    private CartCacheCodec() {
+    }
+
+    public static boolean isBinary(byte[] value) {
+        return value.length > 0 && value[0] > 0 && value[0] <= VERSION;
+    }
+
+    public static byte[] encodeHeader(Header header) {
+        Writer writer = new Writer(16 + utf8Length(header.transactionId()));
+        writer.flags(header.id(), header.version(), header.transactionId());
+        writer.varint(header.id());
+        writer.varint(header.version());
+        writer.string(header.transactionId());
+        return writer.toByteArray();
+    }
+
+    public static Header decodeHeader(byte[] value) {
+        Reader reader = new Reader(value);
+        int flags = reader.flags();
+        return new Header(
+                (flags & 1) != 0 ? (int) reader.varint() : null,
+                (flags & 2) != 0 ? reader.varint() : null,
+                (flags & 4) != 0 ? reader.string() : null);
+    }
+
+    public static byte[] encodeLine(Line line) {
+        Writer writer = new Writer(16 + utf8Length(line.productName()));
+        writer.flags(line.id(), line.productName(), line.price());
+        writer.varint(line.id());
+        writer.string(line.productName());
+        writer.varint(line.price());
+        return writer.toByteArray();
+    }
+
+    public static Line decodeLine(byte[] value) {
+        Reader reader = new Reader(value);
+        int flags = reader.flags();
+        return new Line(
+                (flags & 1) != 0 ? reader.varint() : null,
+                (flags & 2) != 0 ? reader.string() : null,
+                (flags & 4) != 0 ? (int) reader.varint() : null);
+    }
+
+    // Ước lượng dung lượng buffer; tên tiếng Việt có dấu mất 2-3 byte mỗi ký tự
+    private static int utf8Length(String value) {
+        return value != null ? value.length() * 3 : 0;
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+            buffer[position++] = VERSION;
+        }
+
+        void flags(Object... fields) {
+            int flags = 0;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] != null) {
+                    flags |= 1 << i;
+                }
+            }
+            buffer[position++] = (byte) flags;
+        }
+
+        void varint(Number value) {
+            if (value == null) {
+                return;
+            }
+            long v = value.longValue();
+            long zigzag = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        void string(String value) {
+            if (value == null) {
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            if (!isBinary(buffer)) {
+                throw new IllegalArgumentException("Unsupported cart cache format version: "
+                        + (buffer.length > 0 ? buffer[0] : "empty"));
+            }
+            this.buffer = buffer;
+            this.position = 1;
+        }
+
+        int flags() {
+            return buffer[position++] & 0xFF;
+        }
+
+        long varint() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 63) {
+                    throw new IllegalArgumentException("Malformed varint in cart cache value");
+                }
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        String string() {
+            int length = (int) varint();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
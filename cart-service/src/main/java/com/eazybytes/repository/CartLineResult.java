@@ -0,0 +1,20 @@
+package com.eazybytes.repository;
+
+import java.util.List;
+
+/**
+ * Outcome of an atomic cart line script.
+ *
+ * @param cartExists false if the cart was not in Redis and nothing was written
+ * @param applied    whether the change was written
+ * @param quantity   line quantity after the call; the unchanged quantity when not applied
+ */
+public record CartLineResult(boolean cartExists, boolean applied, int quantity) {
+
+    static CartLineResult fromReply(List<?> reply) {
+        return new CartLineResult(
+                ((Number) reply.get(0)).intValue() == 1,
+                ((Number) reply.get(1)).intValue() == 1,
+                ((Number) reply.get(2)).intValue());
+    }
+}
@@ -0,0 +1,20 @@
+package com.eazybytes.repository;
+
+import java.util.List;
+
+/**
+ * Outcome of merging lines into a user cart with one script call.
+ *
+ * @param cartExists false if the user cart was not in Redis and nothing was written
+ * @param merged     lines added or increased
+ * @param skipped    lines left out because the total would exceed their maximum quantity
+ */
+public record CartMergeResult(boolean cartExists, int merged, int skipped) {
+
+    static CartMergeResult fromReply(List<?> reply) {
+        return new CartMergeResult(
+                ((Number) reply.get(0)).intValue() == 1,
+                ((Number) reply.get(1)).intValue(),
+                ((Number) reply.get(2)).intValue());
+    }
+}
@@ -1,6 +1,10 @@
 package com.eazybytes.repository;
 
 import com.eazybytes.model.Cart;
+import com.eazybytes.model.CartItems;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface CartRedisRepository {
     // Phương thức cho người dùng đã đăng nhập
@@ -8,10 +12,35 @@ public interface CartRedisRepository {
     void save(String userId, Cart cart);
     void delete(String userId);
     
-    // Phương thức cho khách vãng lai
+    // Phương thức cho khách vãng lai. Đọc cũng gia hạn TTL; giỏ không còn dòng nào thì không được lưu
     Cart findByGuestId(String guestId);
     void saveGuestCart(String guestId, Cart cart);
     void deleteGuestCart(String guestId);
+    void deleteGuestCarts(Collection<String> guestIds);
+
+    // Index guestId -> lần truy cập cuối, cho việc dọn giỏ bỏ quên và đo đếm
+    List<String> findGuestIdsIdleSince(long lastAccessBeforeMillis, int limit);
+    List<String> findLeastRecentGuestIds(int limit);
+    long countGuestCarts();
+    // Dung lượng trung bình (byte) của một giỏ khách, ước lượng trên tối đa samples giỏ ngẫu nhiên
+    long sampleGuestCartBytes(int samples);
+
+    // Ghi từng dòng của giỏ (một field trong hash) thay vì ghi lại cả giỏ.
+    // Các thao tác dưới đây không tạo giỏ: giỏ chưa có trong cache thì không ghi gì, lần đọc sau nạp lại từ DB.
+    void saveItem(String userId, Cart cart, CartItems item);
+    void removeItem(String userId, Cart cart, String productId, String color);
+
+    // Lua script: đọc, kiểm tra giới hạn và ghi trong một lệnh Redis, nên các request đồng thời
+    // trên cùng một giỏ không cần khóa lạc quan hay retry. Color truyền vào đã được chuẩn hóa.
+    CartLineResult addItemAtomically(String userId, CartItems item, int delta, int maxQuantity);
+    CartLineResult setItemQuantityAtomically(String userId, String productId, String color, int quantity, int maxQuantity);
+    int removeItemAtomically(String userId, String productId, String color);
+    CartMergeResult mergeIntoUserCart(String userId, List<CartItems> lines, List<Integer> maxQuantities, String guestIdToDelete);
+
+    // Giỏ khách: thêm dòng sẽ tạo giỏ nếu chưa có; mọi thao tác đều gia hạn TTL
+    CartLineResult addGuestItemAtomically(String guestId, CartItems item, int delta, int maxQuantity);
+    CartLineResult setGuestItemQuantityAtomically(String guestId, String productId, String color, int quantity, int maxQuantity);
+    int removeGuestItemAtomically(String guestId, String productId, String color);
     
     // Kiểm tra sự tồn tại của giỏ hàng
     boolean existsByGuestId(String guestId);
@@ -1,16 +1,57 @@
 package com.eazybytes.repository;
 
 import com.eazybytes.model.Cart;
+import com.eazybytes.model.CartItems;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Carts are Redis hashes, one field per line, so a line change is a single HSET/HDEL.
+ *
+ * Fields of {@code cart:h:{userId}} / {@code guest-cart:h:{guestId}}:
+ * <ul>
+ *   <li>{@code #cart} - cart id, version and transactionId; a hash without it is not a cart</li>
+ *   <li>{@code {productId}:{color}} - quantity, as a plain decimal integer; the Lua scripts read it
+ *   with tonumber and HSET the new total</li>
+ *   <li>{@code #{productId}:{color}} - line id, product name and price</li>
+ * </ul>
+ * The {@code #} values are encoded with {@link CartCacheCodec}, so the hash is read and written as
+ * raw bytes. Values written as JSON by earlier versions are still read, through the ObjectMapper.
+ * Multi-field writes and the guest TTL go out as one pipelined MULTI/EXEC. Changes that depend on
+ * the current quantity (add up to a maximum, set, merge) run as Lua scripts under scripts/cart, so
+ * concurrent requests on one cart are serialized by Redis instead of retried. totalPrice is not
+ * stored; it is recomputed from the lines on read.
+ *
+ * Guest carts expire after cart.guest.ttl without access; reads and writes both extend it. They
+ * exist in Redis only from the first line on and are deleted when the last line goes. The
+ * sorted set {@code guest-cart:index} (guestId, last access in ms) lets {@code GuestCartJanitor}
+ * find idle carts without SCAN; it is maintained best-effort and pruned by the janitor.
+ *
+ * With cart.write-behind enabled, user cart line writes also append the userId to the dirty-cart
+ * stream in the same transaction, for {@code CartWriteBehindService} to flush to MySQL.
+ */
 @Repository
 public class CartRedisRepositoryImpl implements CartRedisRepository {
 
@@ -19,9 +60,41 @@ public class CartRedisRepositoryImpl implements CartRedisRepository {
     private final RedisTemplate<String, String> redisTemplate;
     private final ObjectMapper objectMapper;
 
-    private static final String CART_KEY_PREFIX = "cart:";
-    private static final String GUEST_CART_KEY_PREFIX = "guest-cart:";
-    private static final long GUEST_CART_TTL = 7 * 24 * 60 * 60; // 7 days (in seconds)
+    // Tiền tố mới: khóa JSON cũ "cart:{userId}" là kiểu string, HSET lên đó sẽ lỗi WRONGTYPE
+    private static final String CART_KEY_PREFIX = "cart:h:";
+    private static final String GUEST_CART_KEY_PREFIX = "guest-cart:h:";
+    private static final String GUEST_INDEX_KEY = "guest-cart:index";
+
+    private static final String HEADER_FIELD = "#cart";
+    private static final String DETAIL_PREFIX = "#";
+    private static final byte[] RAW_HEADER_FIELD = raw(HEADER_FIELD);
+    private static final byte[] RAW_GUEST_INDEX_KEY = raw(GUEST_INDEX_KEY);
+
+    @Value("${cart.write-behind.enabled:false}")
+    private boolean writeBehind;
+
+    @Value("${cart.write-behind.stream-key:cart:dirty}")
+    private String dirtyStreamKey;
+
+    @Value("${cart.guest.ttl:7d}")
+    private Duration guestCartTtl = Duration.ofDays(7);
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ADD_ITEM_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart/add-item.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SET_QUANTITY_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart/set-quantity.lua"), List.class);
+    private static final RedisScript<Long> REMOVE_ITEM_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart/remove-item.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MERGE_LINES_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart/merge-lines.lua"), List.class);
+    private static final RedisScript<Long> WRITE_LINE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart/write-line.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> READ_GUEST_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart/read-guest.lua"), List.class);
 
     @Autowired
     public CartRedisRepositoryImpl(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
@@ -32,11 +105,9 @@ public class CartRedisRepositoryImpl implements CartRedisRepository {
     @Override
     public Cart findByUserId(String userId) {
         try {
-            String json = redisTemplate.opsForValue().get(CART_KEY_PREFIX + userId);
-            if (json != null) {
-                return objectMapper.readValue(json, Cart.class);
-            }
-            return null;
+            byte[] key = raw(CART_KEY_PREFIX + userId);
+            return toCart(redisTemplate.execute(
+                    (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(key)), userId);
         } catch (Exception e) {
             log.warn("Failed to deserialize cart from Redis for user: {}", userId, e);
             return null;
@@ -46,8 +117,12 @@ public class CartRedisRepositoryImpl implements CartRedisRepository {
     @Override
     public void save(String userId, Cart cart) {
         try {
-            String json = objectMapper.writeValueAsString(cart);
-            redisTemplate.opsForValue().set(CART_KEY_PREFIX + userId, json);
+            Map<byte[], byte[]> fields = toFields(cart);
+            byte[] key = raw(CART_KEY_PREFIX + userId);
+            writeAtomically(key, null, connection -> {
+                connection.keyCommands().del(key);
+                connection.hashCommands().hMSet(key, fields);
+            });
             log.debug("Saved cart to Redis for user: {}", userId);
         } catch (Exception e) {
             log.error("Failed to serialize cart to Redis for user: {}", userId, e);
@@ -63,91 +138,369 @@ public class CartRedisRepositoryImpl implements CartRedisRepository {
     @Override
     public Cart findByGuestId(String guestId) {
         try {
-            String redisKey = GUEST_CART_KEY_PREFIX + guestId;
-            String json = redisTemplate.opsForValue().get(redisKey);
+            Cart cart = toCart(readAndTouchGuestCart(guestId), guestId);
+            if (cart == null) {
+                log.debug("No guest cart in Redis for guest: {}", guestId);
+            }
+            return cart;
+        } catch (Exception e) {
+            log.error("Failed to deserialize cart from Redis for guest: {}", guestId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void saveGuestCart(String guestId, Cart cart) {
+        if (cart.getItems() == null || cart.getItems().isEmpty()) {
+            // Không lưu giỏ khách rỗng
+            deleteGuestCart(guestId);
+            return;
+        }
+        try {
+            Map<byte[], byte[]> fields = toFields(cart);
+            byte[] key = raw(GUEST_CART_KEY_PREFIX + guestId);
+            writeAtomically(key, guestCartTtl, connection -> {
+                connection.keyCommands().del(key);
+                connection.hashCommands().hMSet(key, fields);
+                connection.zSetCommands().zAdd(RAW_GUEST_INDEX_KEY, System.currentTimeMillis(), raw(guestId));
+            });
+            log.debug("Saved guest cart to Redis with {} items for guest: {}", cart.getItems() != null ? cart.getItems().size() : 0, guestId);
+        } catch (Exception e) {
+            log.error("Failed to serialize cart to Redis for guest: {}", guestId, e);
+        }
+    }
 
-            log.info("Retrieving guest cart from Redis with key: {}", redisKey);
+    @Override
+    public void deleteGuestCart(String guestId) {
+        deleteGuestCarts(List.of(guestId));
+        log.debug("Deleted cart from Redis for guest: {}", guestId);
+    }
 
-            if (json != null) {
-                log.info("Found JSON in Redis for guest cart: {}, length: {}", guestId, json.length());
+    @Override
+    public void deleteGuestCarts(Collection<String> guestIds) {
+        if (guestIds.isEmpty()) {
+            return;
+        }
+        byte[][] keys = guestIds.stream().map(guestId -> raw(GUEST_CART_KEY_PREFIX + guestId)).toArray(byte[][]::new);
+        byte[][] members = guestIds.stream().map(CartRedisRepositoryImpl::raw).toArray(byte[][]::new);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().del(keys);
+            connection.zSetCommands().zRem(RAW_GUEST_INDEX_KEY, members);
+            return null;
+        });
+    }
 
-                // Debug JSON structure
-                if (log.isDebugEnabled()) {
-                    log.debug("JSON from Redis: {}", json);
-                }
+    @Override
+    public List<String> findGuestIdsIdleSince(long lastAccessBeforeMillis, int limit) {
+        Set<String> guestIds = redisTemplate.opsForZSet().rangeByScore(GUEST_INDEX_KEY, 0, lastAccessBeforeMillis, 0, limit);
+        return guestIds != null ? new ArrayList<>(guestIds) : List.of();
+    }
 
-                Cart cart = objectMapper.readValue(json, Cart.class);
+    @Override
+    public List<String> findLeastRecentGuestIds(int limit) {
+        Set<String> guestIds = redisTemplate.opsForZSet().range(GUEST_INDEX_KEY, 0, limit - 1L);
+        return guestIds != null ? new ArrayList<>(guestIds) : List.of();
+    }
 
-                if (cart != null && cart.getItems() != null) {
-                    log.info("Deserialized cart for guest {}: contains {} items", guestId, cart.getItems().size());
-                } else {
-                    log.warn("Deserialized cart for guest {} but items list is null or cart is null", guestId);
-                }
+    @Override
+    public long countGuestCarts() {
+        Long count = redisTemplate.opsForZSet().zCard(GUEST_INDEX_KEY);
+        return count != null ? count : 0;
+    }
 
-                return cart;
-            } else {
-                log.warn("No JSON found in Redis for guest cart: {}", guestId);
+    @Override
+    public long sampleGuestCartBytes(int samples) {
+        List<String> guestIds = redisTemplate.opsForZSet().randomMembers(GUEST_INDEX_KEY, samples);
+        if (guestIds == null || guestIds.isEmpty()) {
+            return 0;
+        }
+        List<Object> usages = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String guestId : guestIds) {
+                connection.execute("MEMORY", raw("USAGE"), raw(GUEST_CART_KEY_PREFIX + guestId));
             }
             return null;
+        });
+        long total = 0;
+        int counted = 0;
+        for (Object usage : usages) {
+            // Khóa đã hết hạn trả về null
+            if (usage instanceof Number bytes) {
+                total += bytes.longValue();
+                counted++;
+            }
+        }
+        return counted > 0 ? total / counted : 0;
+    }
+
+    @Override
+    public void saveItem(String userId, Cart cart, CartItems item) {
+        try {
+            writeLine(userId, cart, lineField(item.getProductId(), item.getColor()),
+                    raw(String.valueOf(item.getQuantity())), CartCacheCodec.encodeLine(detailOf(item)));
         } catch (Exception e) {
-            log.error("Failed to deserialize cart from Redis for guest: {}", guestId, e);
-            return null;
+            handleLineWriteFailure(userId, e);
         }
     }
 
     @Override
-    public void saveGuestCart(String guestId, Cart cart) {
+    public void removeItem(String userId, Cart cart, String productId, String color) {
         try {
-            String redisKey = GUEST_CART_KEY_PREFIX + guestId;
-
-            // Debug cart contents
-            if (cart.getItems() != null) {
-                log.info("Saving cart with {} items for guest: {}", cart.getItems().size(), guestId);
-                if (log.isDebugEnabled()) {
-                    cart.getItems().forEach(item -> log.debug("Item: productId={}, color={}, quantity={}",
-                            item.getProductId(), item.getColor(), item.getQuantity()));
-                }
-            } else {
-                log.warn("Saving cart with null items list for guest: {}", guestId);
-            }
+            writeLine(userId, cart, lineField(productId, color), new byte[0], new byte[0]);
+        } catch (Exception e) {
+            handleLineWriteFailure(userId, e);
+        }
+    }
 
-            String json = objectMapper.writeValueAsString(cart);
-            log.info("Serialized JSON length: {}", json.length());
+    // quantity rỗng = xóa dòng; giỏ chưa có trong cache thì script không ghi gì
+    private void writeLine(String userId, Cart cart, String field, byte[] quantity, byte[] detail) {
+        List<byte[]> args = List.of(CartCacheCodec.encodeHeader(headerOf(cart)), raw(journalOwner(userId)), raw(field), quantity, detail);
+        Long written = runScript(WRITE_LINE_SCRIPT, List.of(CART_KEY_PREFIX + userId, dirtyStreamKey), args);
+        if (written == null || written == 0) {
+            log.debug("Cart of user {} is not cached, line {} left for the next read to load from DB", userId, field);
+        }
+    }
 
-            // Debug JSON structure
-            if (log.isDebugEnabled()) {
-                log.debug("Serialized JSON: {}", json);
-            }
+    private void handleLineWriteFailure(String userId, Exception e) {
+        if (writeBehind) {
+            // Redis là bản chính của giỏ: không được nuốt lỗi, cũng không được xóa giỏ
+            throw new IllegalStateException("Failed to write cart line to Redis for user: " + userId, e);
+        }
+        // Cache lệch với DB thì bỏ hẳn, lần đọc sau nạp lại từ DB
+        log.error("Failed to write cart line to Redis for user: {}", userId, e);
+        delete(userId);
+    }
 
-            redisTemplate.opsForValue().set(redisKey, json);
-            // Set TTL for guest cart
-            redisTemplate.expire(redisKey, GUEST_CART_TTL, TimeUnit.SECONDS);
+    @Override
+    public CartLineResult addItemAtomically(String userId, CartItems item, int delta, int maxQuantity) {
+        return addLine(CART_KEY_PREFIX + userId, item, delta, maxQuantity, 0, journalOwner(userId), "");
+    }
 
-            log.info("Saved cart to Redis for guest: {} with TTL {} days", guestId, GUEST_CART_TTL / (24 * 60 * 60));
+    @Override
+    public CartLineResult setItemQuantityAtomically(String userId, String productId, String color, int quantity, int maxQuantity) {
+        return setLineQuantity(CART_KEY_PREFIX + userId, productId, color, quantity, maxQuantity, 0, journalOwner(userId));
+    }
 
-            // Verify saved data
-            String savedJson = redisTemplate.opsForValue().get(redisKey);
-            if (savedJson != null) {
-                log.info("Verified guest cart saved successfully: JSON length {} bytes", savedJson.length());
-            } else {
-                log.warn("Failed to verify guest cart: JSON not found after saving");
-            }
-        } catch (Exception e) {
-            log.error("Failed to serialize cart to Redis for guest: {}", guestId, e);
+    @Override
+    public int removeItemAtomically(String userId, String productId, String color) {
+        return removeLine(CART_KEY_PREFIX + userId, productId, color, 0, journalOwner(userId));
+    }
+
+    @Override
+    public CartMergeResult mergeIntoUserCart(String userId, List<CartItems> lines, List<Integer> maxQuantities, String guestIdToDelete) {
+        String key = CART_KEY_PREFIX + userId;
+        List<byte[]> args = new ArrayList<>(2 + lines.size() * 6);
+        args.add(raw(journalOwner(userId)));
+        args.add(raw(guestIdToDelete != null ? "1" : "0"));
+        for (int i = 0; i < lines.size(); i++) {
+            CartItems line = lines.get(i);
+            List<String> fields = lineFields(line.getProductId(), line.getColor());
+            args.add(raw(String.valueOf(fields.size())));
+            fields.forEach(field -> args.add(raw(field)));
+            args.add(raw(String.valueOf(line.getQuantity())));
+            args.add(raw(String.valueOf(maxQuantities.get(i))));
+            args.add(CartCacheCodec.encodeLine(detailOf(line)));
+        }
+        String guestKey = guestIdToDelete != null ? GUEST_CART_KEY_PREFIX + guestIdToDelete : key;
+        List<?> reply = runScript(MERGE_LINES_SCRIPT, List.of(key, dirtyStreamKey, guestKey), args);
+        CartMergeResult result = CartMergeResult.fromReply(reply);
+        if (guestIdToDelete != null && result.cartExists()) {
+            redisTemplate.opsForZSet().remove(GUEST_INDEX_KEY, guestIdToDelete);
         }
+        return result;
     }
 
     @Override
-    public void deleteGuestCart(String guestId) {
-        String redisKey = GUEST_CART_KEY_PREFIX + guestId;
-        redisTemplate.delete(redisKey);
-        log.debug("Deleted cart from Redis for guest: {}", guestId);
+    public CartLineResult addGuestItemAtomically(String guestId, CartItems item, int delta, int maxQuantity) {
+        CartLineResult result = addLine(GUEST_CART_KEY_PREFIX + guestId, item, delta, maxQuantity, guestCartTtl.toSeconds(), "",
+                CartCacheCodec.encodeHeader(headerOf(new Cart())));
+        if (result.applied()) {
+            touchGuestIndex(guestId);
+        }
+        return result;
+    }
+
+    @Override
+    public CartLineResult setGuestItemQuantityAtomically(String guestId, String productId, String color, int quantity, int maxQuantity) {
+        CartLineResult result = setLineQuantity(GUEST_CART_KEY_PREFIX + guestId, productId, color, quantity, maxQuantity, guestCartTtl.toSeconds(), "");
+        if (result.applied()) {
+            touchGuestIndex(guestId);
+        }
+        return result;
+    }
+
+    @Override
+    public int removeGuestItemAtomically(String guestId, String productId, String color) {
+        int removed = removeLine(GUEST_CART_KEY_PREFIX + guestId, productId, color, guestCartTtl.toSeconds(), "");
+        if (removed > 0) {
+            touchGuestIndex(guestId);
+        }
+        return removed;
+    }
+
+    private CartLineResult addLine(String key, CartItems item, int delta, int maxQuantity, long ttlSeconds, String journalOwner, byte[] createHeader) {
+        List<byte[]> args = new ArrayList<>(List.of(raw(String.valueOf(delta)), raw(String.valueOf(maxQuantity)),
+                CartCacheCodec.encodeLine(detailOf(item)), raw(String.valueOf(ttlSeconds)), raw(journalOwner), createHeader));
+        lineFields(item.getProductId(), item.getColor()).forEach(field -> args.add(raw(field)));
+        List<?> reply = runScript(ADD_ITEM_SCRIPT, List.of(key, dirtyStreamKey), args);
+        return CartLineResult.fromReply(reply);
+    }
+
+    private CartLineResult setLineQuantity(String key, String productId, String color, int quantity, int maxQuantity, long ttlSeconds, String journalOwner) {
+        List<byte[]> args = new ArrayList<>(List.of(raw(String.valueOf(quantity)), raw(String.valueOf(maxQuantity)),
+                raw(String.valueOf(ttlSeconds)), raw(journalOwner)));
+        lineFields(productId, color).forEach(field -> args.add(raw(field)));
+        List<?> reply = runScript(SET_QUANTITY_SCRIPT, List.of(key, dirtyStreamKey), args);
+        return CartLineResult.fromReply(reply);
+    }
+
+    private int removeLine(String key, String productId, String color, long ttlSeconds, String journalOwner) {
+        List<byte[]> args = new ArrayList<>(List.of(raw(String.valueOf(ttlSeconds)), raw(journalOwner)));
+        lineFields(productId, color).forEach(field -> args.add(raw(field)));
+        Long removed = runScript(REMOVE_ITEM_SCRIPT, List.of(key, dirtyStreamKey), args);
+        return removed != null ? removed.intValue() : -1;
+    }
+
+    // Tham số là byte thô vì chi tiết dòng là nhị phân; kết quả của script chỉ gồm số nguyên
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> T runScript(RedisScript<T> script, List<String> keys, List<byte[]> args) {
+        return redisTemplate.execute(script, RedisSerializer.byteArray(),
+                (RedisSerializer<T>) (RedisSerializer) redisTemplate.getValueSerializer(), keys, args.toArray());
+    }
+
+    // Ngoài script: index chỉ dùng để dọn giỏ, giỏ đã bị xóa mà còn trong index thì janitor bỏ đi
+    private void touchGuestIndex(String guestId) {
+        redisTemplate.opsForZSet().add(GUEST_INDEX_KEY, guestId, System.currentTimeMillis());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<byte[], byte[]> readAndTouchGuestCart(String guestId) {
+        List<byte[]> args = List.of(raw(String.valueOf(guestCartTtl.toSeconds())),
+                raw(String.valueOf(System.currentTimeMillis())), raw(guestId));
+        List<byte[]> flat = redisTemplate.execute(READ_GUEST_SCRIPT, RedisSerializer.byteArray(), (RedisSerializer<List>) null,
+                List.of(GUEST_CART_KEY_PREFIX + guestId, GUEST_INDEX_KEY), args.toArray());
+        Map<byte[], byte[]> fields = new HashMap<>();
+        if (flat != null) {
+            for (int i = 0; i + 1 < flat.size(); i += 2) {
+                fields.put(flat.get(i), flat.get(i + 1));
+            }
+        }
+        return fields;
+    }
+
+    // Giỏ người dùng chỉ ghi vào stream khi bật write-behind
+    private String journalOwner(String userId) {
+        return writeBehind ? userId : "";
     }
 
     @Override
     public boolean existsByGuestId(String guestId) {
         String redisKey = GUEST_CART_KEY_PREFIX + guestId;
-        Boolean exists = redisTemplate.hasKey(redisKey);
-        return Boolean.TRUE.equals(exists);
+        return redisTemplate.opsForHash().hasKey(redisKey, HEADER_FIELD);
+    }
+
+    /**
+     * Queues {@code commands} (plus EXPIRE when {@code ttl} is set) in one MULTI/EXEC, sent as a
+     * single pipelined round trip.
+     */
+    private void writeAtomically(byte[] key, Duration ttl, Consumer<RedisConnection> commands) {
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.multi();
+            commands.accept(connection);
+            if (ttl != null) {
+                connection.keyCommands().expire(key, ttl.toSeconds());
+            }
+            connection.exec();
+            return null;
+        });
+    }
+
+    private Cart toCart(Map<byte[], byte[]> rawFields, String ownerId) throws IOException {
+        if (rawFields == null || rawFields.isEmpty()) {
+            return null;
+        }
+        // byte[] không dùng được làm key của HashMap
+        Map<String, byte[]> fields = new HashMap<>(rawFields.size() * 2);
+        rawFields.forEach((field, value) -> fields.put(new String(field, StandardCharsets.UTF_8), value));
+
+        byte[] header = fields.get(HEADER_FIELD);
+        if (header == null) {
+            // Không có header: khóa không tồn tại, hoặc chỉ là dòng ghi lên giỏ đã hết hạn/bị xóa
+            return null;
+        }
+        CartCacheCodec.Header cartHeader = CartCacheCodec.isBinary(header)
+                ? CartCacheCodec.decodeHeader(header)
+                : objectMapper.readValue(header, CartCacheCodec.Header.class);
+        Cart cart = new Cart();
+        if (cartHeader.id() != null) {
+            cart.setId(cartHeader.id());
+        }
+        cart.setVersion(cartHeader.version());
+        cart.setTransactionId(cartHeader.transactionId());
+        cart.setUserId(ownerId);
+
+        int totalPrice = 0;
+        for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+            String field = entry.getKey();
+            if (field.startsWith(DETAIL_PREFIX)) {
+                continue;
+            }
+            int separator = field.indexOf(':');
+            CartItems item = new CartItems();
+            item.setProductId(field.substring(0, separator));
+            item.setColor(field.substring(separator + 1));
+            item.setQuantity(Integer.parseInt(new String(entry.getValue(), StandardCharsets.US_ASCII)));
+            byte[] detail = fields.get(DETAIL_PREFIX + field);
+            if (detail != null) {
+                CartCacheCodec.Line lineDetail = CartCacheCodec.isBinary(detail)
+                        ? CartCacheCodec.decodeLine(detail)
+                        : objectMapper.readValue(detail, CartCacheCodec.Line.class);
+                item.setId(lineDetail.id());
+                item.setProductName(lineDetail.productName());
+                item.setPrice(lineDetail.price());
+            }
+            item.setCart(cart);
+            cart.getItems().add(item);
+            totalPrice += (item.getPrice() != null ? item.getPrice() : 0) * item.getQuantity();
+        }
+        cart.setTotalPrice(totalPrice);
+        return cart;
+    }
+
+    private Map<byte[], byte[]> toFields(Cart cart) {
+        Map<byte[], byte[]> fields = new HashMap<>();
+        fields.put(RAW_HEADER_FIELD, CartCacheCodec.encodeHeader(headerOf(cart)));
+        if (cart.getItems() != null) {
+            for (CartItems item : cart.getItems()) {
+                String field = lineField(item.getProductId(), item.getColor());
+                fields.put(raw(field), raw(String.valueOf(item.getQuantity())));
+                fields.put(raw(DETAIL_PREFIX + field), CartCacheCodec.encodeLine(detailOf(item)));
+            }
+        }
+        return fields;
+    }
+
+    static CartCacheCodec.Header headerOf(Cart cart) {
+        return new CartCacheCodec.Header(cart.getId(), cart.getVersion(), cart.getTransactionId());
+    }
+
+    static CartCacheCodec.Line detailOf(CartItems item) {
+        return new CartCacheCodec.Line(item.getId(), item.getProductName(), item.getPrice());
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // productId không chứa ':'; color có thể chứa nên chỉ tách ở dấu ':' đầu tiên khi đọc
+    private static String lineField(String productId, String color) {
+        return productId + ":" + (color != null ? color : "");
+    }
+
+    // Color đã chuẩn hóa "default" còn khớp dòng cũ lưu color null/rỗng
+    private static List<String> lineFields(String productId, String normalizedColor) {
+        if (normalizedColor == null || normalizedColor.isEmpty() || "default".equals(normalizedColor)) {
+            return List.of(lineField(productId, "default"), lineField(productId, ""));
+        }
+        return List.of(lineField(productId, normalizedColor));
     }
 }
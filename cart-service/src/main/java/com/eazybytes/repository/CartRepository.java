@@ -1,6 +1,8 @@
 package com.eazybytes.repository;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
@@ -15,5 +17,10 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
 
     @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.items WHERE c.userId = :userId")
     Optional<Cart> findByUserId(@Param("userId") String userId);
+
+    // SELECT ... FOR UPDATE trên dòng giỏ, giữ đến hết transaction hiện tại
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Cart c WHERE c.userId = :userId")
+    Optional<Cart> lockByUserId(@Param("userId") String userId);
 }
 
@@ -10,6 +10,8 @@ import com.eazybytes.exception.CartNotFoundException;
 import com.eazybytes.exception.InvalidItemException;
 import com.eazybytes.model.Cart;
 import com.eazybytes.model.CartItems;
+import com.eazybytes.repository.CartLineResult;
+import com.eazybytes.repository.CartMergeResult;
 import com.eazybytes.repository.CartRedisRepository;
 import com.eazybytes.repository.CartRepository;
 import org.hibernate.Hibernate;
@@ -21,7 +23,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -40,6 +45,15 @@ public class CartServiceImpl implements CartService {
     @Autowired
     private CartRedisRepository cartRedisRepository;
 
+    @Autowired
+    private InventoryNearCache inventoryNearCache;
+
+    @Autowired
+    private InventoryFanOut inventoryFanOut;
+
+    @Autowired
+    private CartWriteBehindService cartWriteBehind;
+
     private final CartEventProducer cartEventProducer;
     private final InventoryClient inventoryClient;
     private final CircuitBreakerFactory<?, ?> cbFactory;
@@ -64,7 +78,8 @@ public class CartServiceImpl implements CartService {
             try {
                 Hibernate.initialize(cart.getItems());
                 log.debug("Cached cart for user {} has {} items", userId, cart.getItems().size());
-                if (cart.getItems() == null || cart.getItems().isEmpty()) {
+                // Ở chế độ write-behind giỏ rỗng trong Redis là hợp lệ: MySQL có thể chưa kịp ghi việc xóa dòng
+                if ((cart.getItems() == null || cart.getItems().isEmpty()) && !cartWriteBehind.isEnabled()) {
                     log.warn("Cached cart for user {} has empty or uninitialized items. Invalidating cache and fetching from DB.", userId);
                     cartRedisRepository.delete(userId);
                 } else {
@@ -113,6 +128,9 @@ public class CartServiceImpl implements CartService {
     @Override
     @Transactional
     public CartResponse addItemToCart(String userId, CartItemRequest cartItemRequest) throws CartNotFoundException, InvalidItemException {
+        if (cartWriteBehind.isEnabled()) {
+            return addItemToLiveCart(userId, cartItemRequest);
+        }
         int attempt = 0;
         while (true) {
             try {
@@ -155,7 +173,11 @@ public class CartServiceImpl implements CartService {
 
                 Cart savedCart = cartRepository.save(cart);
                 Hibernate.initialize(savedCart.getItems());
-                cartRedisRepository.save(userId, savedCart);
+                savedCart.getItems().stream()
+                        .filter(item -> item.getProductId().equals(cartItemToAdd.getProductId()) &&
+                                normalizeColor(item.getColor()).equals(normalizedColor))
+                        .findFirst()
+                        .ifPresent(item -> cartRedisRepository.saveItem(userId, savedCart, item));
                 log.info("Item added/updated in DB and Redis for user: {} on attempt {}", userId, attempt + 1);
                 return toCartResponse(savedCart);
 
@@ -178,6 +200,9 @@ public class CartServiceImpl implements CartService {
     @Override
     @Transactional
     public CartResponse updateCartItem(String userId, String productId, Integer quantity, String color) throws CartNotFoundException, InvalidItemException {
+        if (cartWriteBehind.isEnabled()) {
+            return updateLiveCartItem(userId, productId, quantity, color);
+        }
         int attempt = 0;
         while (true) {
             try {
@@ -213,7 +238,14 @@ public class CartServiceImpl implements CartService {
 
                 Cart savedCart = cartRepository.save(cart);
                 Hibernate.initialize(savedCart.getItems());
-                cartRedisRepository.save(userId, savedCart);
+                if (itemOpt.isPresent()) {
+                    CartItems item = itemOpt.get();
+                    if (quantity <= 0) {
+                        cartRedisRepository.removeItem(userId, savedCart, item.getProductId(), item.getColor());
+                    } else {
+                        cartRedisRepository.saveItem(userId, savedCart, item);
+                    }
+                }
                 log.info("Cart item updated in DB and Redis for user: {} on attempt {}", userId, attempt + 1);
                 return toCartResponse(savedCart);
 
@@ -236,6 +268,9 @@ public class CartServiceImpl implements CartService {
     @Override
     @Transactional
     public CartResponse removeItemFromCart(String userId, String productId, String color) throws CartNotFoundException {
+        if (cartWriteBehind.isEnabled()) {
+            return removeItemFromLiveCart(userId, productId, color);
+        }
         int attempt = 0;
         while (true) {
             try {
@@ -246,11 +281,13 @@ public class CartServiceImpl implements CartService {
                 Cart cart = getCartForUpdate(userId);
                 Hibernate.initialize(cart.getItems());
 
-                boolean removed = cart.getItems().removeIf(item ->
-                        item.getProductId().equals(productId) &&
-                        normalizeColor(item.getColor()).equals(normalizedColor));
+                List<CartItems> removedItems = cart.getItems().stream()
+                        .filter(item -> item.getProductId().equals(productId) &&
+                                normalizeColor(item.getColor()).equals(normalizedColor))
+                        .collect(Collectors.toList());
+                cart.getItems().removeAll(removedItems);
 
-                if (!removed) {
+                if (removedItems.isEmpty()) {
                     log.warn("Attempted to remove item {} (color: {}) not found in cart for user {}", productId, normalizedColor, userId);
                     cartRedisRepository.save(userId, cart);
                     return toCartResponse(cart);
@@ -259,7 +296,8 @@ public class CartServiceImpl implements CartService {
 
                 Cart savedCart = cartRepository.save(cart);
                 Hibernate.initialize(savedCart.getItems());
-                cartRedisRepository.save(userId, savedCart);
+                // Xóa theo color đã lưu của dòng, có thể là null/rỗng ở dữ liệu cũ
+                removedItems.forEach(item -> cartRedisRepository.removeItem(userId, savedCart, item.getProductId(), item.getColor()));
                 log.info("Item removed from DB and Redis for user: {} on attempt {}", userId, attempt + 1);
                 return toCartResponse(savedCart);
 
@@ -288,11 +326,25 @@ public class CartServiceImpl implements CartService {
         }
 
         log.info("Merging {} guest cart items for user: {}", guestCartItems.size(), userId);
+        if (cartWriteBehind.isEnabled()) {
+            return mergeIntoLiveCart(userId, guestCartItems, null);
+        }
         CartResponse result = null;
 
         // Get current user cart
         CartResponse currentCart = getCartByUserId(userId);
 
+        // Tra tồn kho cho cả giỏ khách trong một lần gọi; lỗi thì mọi dòng bị bỏ qua như khi từng lần gọi lỗi
+        Map<String, InventoryDto> inventories;
+        try {
+            inventories = checkInventoriesWithCircuitBreaker(guestCartItems.stream()
+                    .map(item -> new CartItemIdentifier(item.getProductId(), item.getColor()))
+                    .collect(Collectors.toList()));
+        } catch (InvalidItemException e) {
+            log.warn("Unable to verify inventory for guest cart items of user {}: {}", userId, e.getMessage());
+            inventories = Map.of();
+        }
+
         // Process each item in the guest cart
         for (CartItemRequest item : guestCartItems) {
             try {
@@ -302,7 +354,7 @@ public class CartServiceImpl implements CartService {
                 log.debug("Processing guest cart item: {} ({}) x{}", item.getProductId(), normalizedColor, item.getQuantity());
 
                 // Validate item inventory before adding
-                InventoryDto inventory = checkInventoryWithCircuitBreaker(item.getProductId(), normalizedColor);
+                InventoryDto inventory = inventories.get(inventoryKey(item.getProductId(), normalizedColor));
                 if (inventory == null || inventory.getQuantity() <= 0) {
                     log.warn("Skipping item due to no inventory: {} ({})", item.getProductId(), normalizedColor);
                     continue;
@@ -362,8 +414,11 @@ public class CartServiceImpl implements CartService {
         }
 
         // Invalidate Redis cache to ensure next fetch gets fresh data
-        cartRedisRepository.delete(userId);
-        log.info("Invalidated Redis cache for user: {} after cart merge to ensure data consistency", userId);
+        // (ở chế độ write-behind Redis là bản chính nên không được xóa)
+        if (!cartWriteBehind.isEnabled()) {
+            cartRedisRepository.delete(userId);
+            log.info("Invalidated Redis cache for user: {} after cart merge to ensure data consistency", userId);
+        }
 
         // Return final cart state from database
         return getCartByUserId(userId);
@@ -439,7 +494,7 @@ public class CartServiceImpl implements CartService {
             log.info("Checking out all items for user: {}", userId);
         }
 
-        validateAllItemInventories(itemsToCheckout);
+        Map<String, InventoryDto> inventories = validateAllItemInventories(itemsToCheckout);
 
         String transactionId = UUID.randomUUID().toString();
         cart.setTransactionId(transactionId);
@@ -451,7 +506,7 @@ public class CartServiceImpl implements CartService {
                 .map(item -> {
                     // Normalize color
                     String normalizedColor = normalizeColor(item.getColor());
-                    InventoryDto inventory = checkInventoryWithCircuitBreaker(item.getProductId(), normalizedColor);
+                    InventoryDto inventory = inventories.get(inventoryKey(item.getProductId(), normalizedColor));
                     boolean isAvailable = inventory != null && item.getQuantity() <= inventory.getQuantity();
                     return new CartItemResponse(
                             item.getProductId(),
@@ -528,6 +583,8 @@ public class CartServiceImpl implements CartService {
     @Transactional
     public void compensateFailedCheckout(CheckoutFailedEvent event) {
         log.info("Compensating failed checkout for user: {} with transactionId: {}", event.getUserId(), event.getTransactionId());
+        // Giỏ trong Redis có thể đã đổi sau khi checkout bắt đầu; ghi xuống trước khi ghi đè cache từ DB
+        cartWriteBehind.flushUser(event.getUserId());
         Cart cart = cartRepository.findByUserId(event.getUserId())
                 .orElse(null);
 
@@ -593,47 +650,16 @@ public class CartServiceImpl implements CartService {
     public CartResponse createGuestCart(String guestId) {
         log.info("Creating new guest cart with ID: {}", guestId);
 
-        Cart cart = new Cart();
-        cart.setUserId(guestId);
-        cart.setItems(new ArrayList<>());
-        cart.setTotalPrice(0);
-
-        // Save to Redis only, not database
-        cartRedisRepository.saveGuestCart(guestId, cart);
-
-        return toCartResponse(cart);
+        // Chưa ghi vào Redis: giỏ khách chỉ được tạo khi thêm sản phẩm đầu tiên
+        return toCartResponse(emptyGuestCart(guestId));
     }
 
     @Override
     public CartResponse getGuestCartById(String guestId) throws CartNotFoundException {
-        log.info("Fetching guest cart with ID: {}", guestId);
+        log.debug("Fetching guest cart with ID: {}", guestId);
 
-        Cart cart = cartRedisRepository.findByGuestId(guestId);
-        if (cart == null) {
-            log.error("Guest cart not found in Redis with ID: {}", guestId);
-            throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
-        }
-
-        // Log for debugging
-        if (cart.getItems() != null) {
-            log.info("Retrieved guest cart from Redis with {} items for guest: {}", cart.getItems().size(), guestId);
-
-            // Log item details for debugging
-            for (CartItems item : cart.getItems()) {
-                log.info("Item in cart: productId={}, productName={}, color={}, quantity={}",
-                        item.getProductId(), item.getProductName(), item.getColor(), item.getQuantity());
-            }
-        } else {
-            log.warn("Items collection is null in guest cart from Redis for guest: {}", guestId);
-            // Initialize empty list if items is null
-            cart.setItems(new ArrayList<>());
-        }
-
-        CartResponse response = toCartResponse(cart);
-        log.info("Returning CartResponse with {} items for guest: {}",
-                response.getItems() != null ? response.getItems().size() : 0, guestId);
-
-        return response;
+        // Không có trong Redis: chưa thêm sản phẩm nào, đã hết hạn hoặc đã bị dọn; với khách đều là giỏ rỗng
+        return toCartResponse(readGuestCart(guestId));
     }
 
     @Override
@@ -641,106 +667,32 @@ public class CartServiceImpl implements CartService {
         log.info("Adding item to guest cart: {}, product: {}, color: '{}'",
                 guestId, cartItemRequest.getProductId(), cartItemRequest.getColor());
 
-        Cart cart = cartRedisRepository.findByGuestId(guestId);
-        if (cart == null) {
-            // Create new cart if it doesn't exist
-            log.info("Guest cart not found, creating new one for guest: {}", guestId);
-            cart = new Cart();
-            cart.setUserId(guestId);
-            cart.setItems(new ArrayList<>());
-            cart.setTotalPrice(0);
-        } else {
-            log.info("Found existing guest cart for guest: {} with {} items",
-                    guestId, cart.getItems() != null ? cart.getItems().size() : 0);
-
-            // Ensure items is not null
-            if (cart.getItems() == null) {
-                log.warn("Items collection is null in existing cart, initializing empty list");
-                cart.setItems(new ArrayList<>());
-            }
-        }
-
         // Normalize color
         String normalizedColor = normalizeColor(cartItemRequest.getColor());
-        log.info("Normalized color from '{}' to '{}'", cartItemRequest.getColor(), normalizedColor);
 
         try {
             // Check inventory
             InventoryDto inventory = checkInventoryWithCircuitBreaker(cartItemRequest.getProductId(), normalizedColor);
-            log.info("Inventory check passed for product: {}, color: {}, available: {}",
-                    cartItemRequest.getProductId(), normalizedColor, inventory.getQuantity());
 
             CartItems cartItemToAdd = new CartItems();
             cartItemToAdd.setProductId(cartItemRequest.getProductId());
             cartItemToAdd.setQuantity(cartItemRequest.getQuantity());
-            cartItemToAdd.setColor(cartItemRequest.getColor());
+            cartItemToAdd.setColor(normalizedColor);
             cartItemToAdd.setProductName(inventory.getProductName());
             cartItemToAdd.setPrice(inventory.getCurrentPrice());
-            cartItemToAdd.setCart(cart);
 
-            // Check inventory quantity
-            if (cartItemRequest.getQuantity() > inventory.getQuantity()) {
+            // Cộng dồn và kiểm tra tồn kho trong cùng một script; giỏ chưa có thì script tạo
+            CartLineResult result = cartRedisRepository.addGuestItemAtomically(
+                    guestId, cartItemToAdd, cartItemRequest.getQuantity(), inventory.getQuantity());
+            if (!result.applied()) {
                 throw new InvalidItemException("Insufficient inventory for " + cartItemToAdd.getProductId() +
                     ", color: " + normalizedColor + ". Available: " + inventory.getQuantity() +
-                    ", requested: " + cartItemRequest.getQuantity());
-            }
-
-            // Check if product already exists in cart
-            Optional<CartItems> existingItemOpt = cart.getItems().stream()
-                    .filter(item -> item.getProductId().equals(cartItemToAdd.getProductId()) &&
-                            normalizeColor(item.getColor()).equals(normalizedColor))
-                    .findFirst();
-
-            if (existingItemOpt.isPresent()) {
-                // Update quantity if product exists
-                CartItems existingItem = existingItemOpt.get();
-                int newQuantity = existingItem.getQuantity() + cartItemRequest.getQuantity();
-
-                // Check inventory again
-                if (newQuantity > inventory.getQuantity()) {
-                    throw new InvalidItemException("Insufficient inventory for " + cartItemToAdd.getProductId() +
-                        ", color: " + normalizedColor + ". Available: " + inventory.getQuantity() +
-                        ", requested total: " + newQuantity);
-                }
-
-                existingItem.setQuantity(newQuantity);
-                log.info("Updated existing item quantity to {} for product: {}, color: {}",
-                        newQuantity, existingItem.getProductId(), existingItem.getColor());
-            } else {
-                // Add new product to cart
-                cart.getItems().add(cartItemToAdd);
-                log.info("Added new item to cart: product: {}, color: {}, quantity: {}",
-                        cartItemToAdd.getProductId(), cartItemToAdd.getColor(), cartItemToAdd.getQuantity());
+                    ", requested total: " + (result.quantity() + cartItemRequest.getQuantity()));
             }
+            log.info("Guest cart {} now has {} x {} (color: {})", guestId, result.quantity(), cartItemToAdd.getProductId(), normalizedColor);
 
-            // Update total price
-            cart.setTotalPrice(calculateTotalPrice(cart));
-
-            // Save to Redis
-            cartRedisRepository.saveGuestCart(guestId, cart);
-            log.info("Saved guest cart to Redis with {} items", cart.getItems().size());
-
-            // Verify saved cart
-            Cart savedCart = cartRedisRepository.findByGuestId(guestId);
-            if (savedCart != null && savedCart.getItems() != null) {
-                log.info("Verified guest cart in Redis: contains {} items", savedCart.getItems().size());
-
-                // Log details if debug enabled
-                if (log.isDebugEnabled()) {
-                    savedCart.getItems().forEach(item -> {
-                        log.debug("Verified item: productId={}, color={}, quantity={}",
-                                item.getProductId(), item.getColor(), item.getQuantity());
-                    });
-                }
-            } else {
-                log.warn("Failed to verify guest cart in Redis: {}",
-                        savedCart == null ? "cart is null" : "items collection is null");
-            }
-
-            CartResponse response = toCartResponse(cart);
-            log.info("Returning CartResponse with {} items", response.getItems().size());
-            return response;
-        } catch (InvalidItemException e) {
+            return toCartResponse(readGuestCart(guestId));
+        } catch (InvalidItemException | CartNotFoundException e) {
             throw e;
         } catch (Exception e) {
             log.error("Error adding item to guest cart: {}", guestId, e);
@@ -752,25 +704,8 @@ public class CartServiceImpl implements CartService {
     public CartResponse updateGuestCartItem(String guestId, String productId, Integer quantity, String color) throws CartNotFoundException, InvalidItemException {
         log.info("Updating item in guest cart: {}, product: {}, color: {}, quantity: {}", guestId, productId, color, quantity);
 
-        Cart cart = cartRedisRepository.findByGuestId(guestId);
-        if (cart == null) {
-            throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
-        }
-
         // Normalize color
         String normalizedColor = normalizeColor(color);
-        log.info("Normalized color for update: '{}' to '{}'", color, normalizedColor);
-
-        // Log cart items for debugging
-        if (cart.getItems() != null && !cart.getItems().isEmpty()) {
-            log.info("Guest cart {} contains {} items", guestId, cart.getItems().size());
-            for (CartItems item : cart.getItems()) {
-                log.info("Cart item: productId={}, color='{}', normalizedColor='{}'",
-                       item.getProductId(), item.getColor(), normalizeColor(item.getColor()));
-            }
-        } else {
-            log.warn("Guest cart {} is empty or has null items", guestId);
-        }
 
         try {
             // Check inventory
@@ -782,42 +717,20 @@ public class CartServiceImpl implements CartService {
                     ", requested: " + quantity);
             }
 
-            // Find product in cart - use case-insensitive matching for color
-            Optional<CartItems> itemOpt = cart.getItems().stream()
-                    .filter(item -> item.getProductId().equals(productId) &&
-                            (item.getColor().equalsIgnoreCase(color) ||
-                             normalizeColor(item.getColor()).equalsIgnoreCase(normalizedColor)))
-                    .findFirst();
-
-            if (itemOpt.isPresent()) {
-                CartItems item = itemOpt.get();
-                log.info("Found matching item: productId={}, color='{}', quantity={}",
-                        item.getProductId(), item.getColor(), item.getQuantity());
-
-                if (quantity <= 0) {
-                    // Remove product if quantity <= 0
-                    cart.getItems().remove(item);
-                    log.info("Removed item from cart due to quantity <= 0");
-                } else {
-                    // Update quantity
-                    item.setQuantity(quantity);
-                    log.info("Updated item quantity to {}", quantity);
-                }
-
-                // Update total price
-                cart.setTotalPrice(calculateTotalPrice(cart));
-
-                // Save to Redis
-                cartRedisRepository.saveGuestCart(guestId, cart);
-                log.info("Saved updated cart to Redis");
-
-                return toCartResponse(cart);
-            } else {
+            CartLineResult result = cartRedisRepository.setGuestItemQuantityAtomically(
+                    guestId, productId, normalizedColor, quantity, inventory.getQuantity());
+            if (!result.cartExists()) {
+                throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
+            }
+            if (!result.applied()) {
                 log.warn("Item not found in cart: productId={}, color={}, normalizedColor={}",
                         productId, color, normalizedColor);
                 throw new InvalidItemException("Item not found in cart: " + productId + ", color: " + normalizedColor);
             }
-        } catch (InvalidItemException e) {
+            log.info("Guest cart {} item {} (color: {}) set to quantity {}", guestId, productId, normalizedColor, result.quantity());
+
+            return toCartResponse(readGuestCart(guestId));
+        } catch (InvalidItemException | CartNotFoundException e) {
             throw e;
         } catch (Exception e) {
             log.error("Error updating item in guest cart: {}", guestId, e);
@@ -829,45 +742,36 @@ public class CartServiceImpl implements CartService {
     public CartResponse removeItemFromGuestCart(String guestId, String productId, String color) throws CartNotFoundException {
         log.info("Removing item from guest cart: {}, product: {}, color: {}", guestId, productId, color);
 
-        Cart cart = cartRedisRepository.findByGuestId(guestId);
-        if (cart == null) {
-            throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
-        }
-
         // Normalize color
         String normalizedColor = normalizeColor(color);
 
-        // Remove product from cart
-        boolean removed = cart.getItems().removeIf(item ->
-                item.getProductId().equals(productId) &&
-                normalizeColor(item.getColor()).equals(normalizedColor));
+        int removed = cartRedisRepository.removeGuestItemAtomically(guestId, productId, normalizedColor);
+        if (removed < 0) {
+            throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
+        }
 
-        if (removed) {
-            // Update total price
-            cart.setTotalPrice(calculateTotalPrice(cart));
+        return toCartResponse(readGuestCart(guestId));
+    }
 
-            // Save to Redis
-            cartRedisRepository.saveGuestCart(guestId, cart);
-        }
+    private Cart readGuestCart(String guestId) {
+        Cart cart = cartRedisRepository.findByGuestId(guestId);
+        return cart != null ? cart : emptyGuestCart(guestId);
+    }
 
-        return toCartResponse(cart);
+    private static Cart emptyGuestCart(String guestId) {
+        Cart cart = new Cart();
+        cart.setUserId(guestId);
+        cart.setItems(new ArrayList<>());
+        cart.setTotalPrice(0);
+        return cart;
     }
 
     @Override
     public void clearGuestCart(String guestId) throws CartNotFoundException {
         log.info("Clearing guest cart: {}", guestId);
 
-        Cart cart = cartRedisRepository.findByGuestId(guestId);
-        if (cart == null) {
-            throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
-        }
-
-        // Clear all products
-        cart.getItems().clear();
-        cart.setTotalPrice(0);
-
-        // Save to Redis
-        cartRedisRepository.saveGuestCart(guestId, cart);
+        // Giỏ rỗng không được giữ trong Redis
+        cartRedisRepository.deleteGuestCart(guestId);
     }
 
     @Override
@@ -878,7 +782,9 @@ public class CartServiceImpl implements CartService {
         // Get guest cart
         Cart guestCart = cartRedisRepository.findByGuestId(guestId);
         if (guestCart == null) {
-            throw new CartNotFoundException("Guest cart not found with ID: " + guestId);
+            // Khách chưa thêm sản phẩm nào (hoặc giỏ đã hết hạn): không có gì để gộp
+            log.info("Guest cart {} is empty or expired, nothing to merge for user: {}", guestId, userId);
+            return getCartByUserId(userId);
         }
 
         // Convert guest cart items to CartItemRequest
@@ -890,6 +796,11 @@ public class CartServiceImpl implements CartService {
                 ))
                 .collect(Collectors.toList());
 
+        if (cartWriteBehind.isEnabled()) {
+            // Gộp và xóa giỏ khách trong cùng một script
+            return mergeIntoLiveCart(userId, guestCartItems, guestId);
+        }
+
         // Merge into user cart
         CartResponse mergedCart = mergeListItemToCart(userId, guestCartItems);
 
@@ -902,10 +813,135 @@ public class CartServiceImpl implements CartService {
     // --- Helper Methods ---
 
     private Cart getCartForUpdate(String userId) throws CartNotFoundException {
+        // Write-behind: MySQL phải có các thay đổi còn nằm trong Redis trước khi sửa giỏ từ DB
+        cartWriteBehind.flushUser(userId);
         return cartRepository.findByUserId(userId)
                 .orElseGet(() -> createNewCart(userId));
     }
 
+    // --- Write-behind: giỏ trong Redis là bản chính, CartWriteBehindService ghi xuống MySQL sau ---
+
+    private CartResponse addItemToLiveCart(String userId, CartItemRequest cartItemRequest) throws CartNotFoundException, InvalidItemException {
+        String normalizedColor = normalizeColor(cartItemRequest.getColor());
+        InventoryDto inventory = checkInventoryWithCircuitBreaker(cartItemRequest.getProductId(), normalizedColor);
+
+        CartItems item = new CartItems();
+        item.setProductId(cartItemRequest.getProductId());
+        item.setColor(normalizedColor);
+        item.setQuantity(cartItemRequest.getQuantity());
+        item.setProductName(inventory.getProductName());
+        item.setPrice(inventory.getCurrentPrice());
+
+        CartLineResult result = cartRedisRepository.addItemAtomically(userId, item, cartItemRequest.getQuantity(), inventory.getQuantity());
+        if (!result.cartExists()) {
+            getLiveCart(userId);
+            result = cartRedisRepository.addItemAtomically(userId, item, cartItemRequest.getQuantity(), inventory.getQuantity());
+        }
+        if (!result.applied()) {
+            throw new InvalidItemException("Insufficient inventory for " + cartItemRequest.getProductId() + ", color: " + normalizedColor +
+                    ". Available: " + inventory.getQuantity() + ", requested total: " + (result.quantity() + cartItemRequest.getQuantity()));
+        }
+        log.info("Item {} (color: {}) now x{} in live cart of user {}", item.getProductId(), normalizedColor, result.quantity(), userId);
+        return toCartResponse(getLiveCart(userId));
+    }
+
+    private CartResponse updateLiveCartItem(String userId, String productId, Integer quantity, String color) throws CartNotFoundException, InvalidItemException {
+        String normalizedColor = normalizeColor(color);
+
+        InventoryDto inventory = checkInventoryWithCircuitBreaker(productId, normalizedColor);
+        if (quantity > inventory.getQuantity()) {
+            throw new InvalidItemException("Insufficient inventory for " + productId + ", color: " + normalizedColor +
+                    ". Available: " + inventory.getQuantity() + ", requested: " + quantity);
+        }
+
+        CartLineResult result = cartRedisRepository.setItemQuantityAtomically(userId, productId, normalizedColor, quantity, inventory.getQuantity());
+        if (!result.cartExists()) {
+            getLiveCart(userId);
+            result = cartRedisRepository.setItemQuantityAtomically(userId, productId, normalizedColor, quantity, inventory.getQuantity());
+        }
+        if (result.applied()) {
+            log.info("Item {} (color: {}) set to quantity {} in live cart of user {}", productId, normalizedColor, result.quantity(), userId);
+        }
+        return toCartResponse(getLiveCart(userId));
+    }
+
+    private CartResponse removeItemFromLiveCart(String userId, String productId, String color) throws CartNotFoundException {
+        String normalizedColor = normalizeColor(color);
+
+        int removed = cartRedisRepository.removeItemAtomically(userId, productId, normalizedColor);
+        if (removed < 0) {
+            getLiveCart(userId);
+            removed = cartRedisRepository.removeItemAtomically(userId, productId, normalizedColor);
+        }
+        if (removed <= 0) {
+            log.warn("Attempted to remove item {} (color: {}) not found in cart for user {}", productId, normalizedColor, userId);
+        } else {
+            log.info("Item {} (color: {}) removed from live cart of user {}", productId, normalizedColor, userId);
+        }
+        return toCartResponse(getLiveCart(userId));
+    }
+
+    /**
+     * Merges lines into the live cart with one script call; a line is skipped (not capped) when the
+     * total would exceed inventory, like the per-item loop of {@link #mergeListItemToCart}.
+     */
+    private CartResponse mergeIntoLiveCart(String userId, List<CartItemRequest> items, String guestIdToDelete) throws CartNotFoundException {
+        getLiveCart(userId);
+
+        Map<String, InventoryDto> inventories;
+        try {
+            inventories = checkInventoriesWithCircuitBreaker(items.stream()
+                    .map(item -> new CartItemIdentifier(item.getProductId(), item.getColor()))
+                    .collect(Collectors.toList()));
+        } catch (InvalidItemException e) {
+            log.warn("Unable to verify inventory for guest cart items of user {}: {}", userId, e.getMessage());
+            inventories = Map.of();
+        }
+
+        List<CartItems> lines = new ArrayList<>();
+        List<Integer> maxQuantities = new ArrayList<>();
+        for (CartItemRequest item : items) {
+            String normalizedColor = normalizeColor(item.getColor());
+            InventoryDto inventory = inventories.get(inventoryKey(item.getProductId(), normalizedColor));
+            if (inventory == null || inventory.getQuantity() <= 0) {
+                log.warn("Skipping item due to no inventory: {} ({})", item.getProductId(), normalizedColor);
+                continue;
+            }
+            CartItems line = new CartItems();
+            line.setProductId(item.getProductId());
+            line.setColor(normalizedColor);
+            line.setQuantity(item.getQuantity());
+            line.setProductName(inventory.getProductName());
+            line.setPrice(inventory.getCurrentPrice());
+            lines.add(line);
+            maxQuantities.add(inventory.getQuantity());
+        }
+
+        CartMergeResult result = cartRedisRepository.mergeIntoUserCart(userId, lines, maxQuantities, guestIdToDelete);
+        if (!result.cartExists()) {
+            getLiveCart(userId);
+            result = cartRedisRepository.mergeIntoUserCart(userId, lines, maxQuantities, guestIdToDelete);
+        }
+        log.info("Merged {} lines into cart of user {}, skipped {} over inventory", result.merged(), userId, result.skipped());
+        return toCartResponse(getLiveCart(userId));
+    }
+
+    private Cart getLiveCart(String userId) throws CartNotFoundException {
+        Cart cart = cartRedisRepository.findByUserId(userId);
+        if (cart != null) {
+            return cart;
+        }
+        // Chưa có trong Redis: nạp từ MySQL một lần, sau đó chỉ làm việc trên bản trong Redis
+        Cart stored = getCartForUpdate(userId);
+        Hibernate.initialize(stored.getItems());
+        cartRedisRepository.save(userId, stored);
+        cart = cartRedisRepository.findByUserId(userId);
+        if (cart == null) {
+            throw new IllegalStateException("Failed to load cart of user " + userId + " into Redis");
+        }
+        return cart;
+    }
+
     private Cart createNewCart(String userId) {
         try {
             log.info("Creating new cart for user: {}", userId);
@@ -946,15 +982,96 @@ public class CartServiceImpl implements CartService {
         return inventory;
     }
 
-    private void validateAllItemInventories(List<CartItems> items) throws InvalidItemException {
+    /**
+     * Looks up inventory for all lines with one call to inventory-service instead of one call per line.
+     * Keys come from {@link #inventoryKey}; lines inventory-service has no record for are absent.
+     */
+    private Map<String, InventoryDto> checkInventoriesWithCircuitBreaker(List<CartItemIdentifier> items) throws InvalidItemException {
+        return fetchInventories(new ArrayList<>(distinctInventoryLines(items).values()));
+    }
+
+    /**
+     * Same as {@link #checkInventoriesWithCircuitBreaker} but may answer from {@link InventoryNearCache}.
+     * Only for display; anything that decides whether a checkout may proceed must stay live.
+     */
+    private Map<String, InventoryDto> checkInventoriesCached(List<CartItemIdentifier> items) throws InvalidItemException {
+        Map<String, CartItemIdentifier> distinctItems = distinctInventoryLines(items);
+        if (distinctItems.isEmpty()) {
+            return new HashMap<>();
+        }
+        return inventoryNearCache.getAll(distinctItems, this::fetchInventories);
+    }
+
+    private Map<String, CartItemIdentifier> distinctInventoryLines(List<CartItemIdentifier> items) {
+        Map<String, CartItemIdentifier> distinctItems = new LinkedHashMap<>();
+        for (CartItemIdentifier item : items) {
+            String normalizedColor = normalizeColor(item.getColor());
+            distinctItems.putIfAbsent(inventoryKey(item.getProductId(), normalizedColor),
+                    new CartItemIdentifier(item.getProductId(), normalizedColor));
+        }
+        return distinctItems;
+    }
+
+    private Map<String, InventoryDto> fetchInventories(List<CartItemIdentifier> request) throws InvalidItemException {
+        if (request.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<InventoryDto> inventories = cbFactory.create("inventoryService").run(
+                () -> {
+                    log.debug("Calling inventory service for {} cart lines", request.size());
+                    return inventoryClient.getProductInventories(request).getBody();
+                },
+                throwable -> {
+                    log.error("CircuitBreaker: Failed to fetch inventory for {} cart lines", request.size(), throwable);
+                    throw new InvalidItemException("Unable to verify inventory (service unavailable) for " + request.size() + " items");
+                }
+        );
+        // Fallback trả về danh sách rỗng: kết quả không khớp từng dòng thì không dùng được
+        if (inventories == null || inventories.size() != request.size()) {
+            log.error("Inventory service returned {} results for {} cart lines",
+                    inventories != null ? inventories.size() : null, request.size());
+            throw new InvalidItemException("Unable to verify inventory (service unavailable) for " + request.size() + " items");
+        }
+
+        Map<String, InventoryDto> result = new HashMap<>();
+        for (int i = 0; i < request.size(); i++) {
+            if (inventories.get(i) != null) {
+                CartItemIdentifier item = request.get(i);
+                result.put(inventoryKey(item.getProductId(), item.getColor()), inventories.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static String inventoryKey(String productId, String normalizedColor) {
+        return productId + "|" + normalizedColor;
+    }
+
+    private List<CartItemIdentifier> identifiersOf(List<CartItems> items) {
+        return items.stream()
+                .map(item -> new CartItemIdentifier(item.getProductId(), item.getColor()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Live check of every checkout line, fanned out by {@link InventoryFanOut} under one deadline.
+     * The returned inventories are also what the CheckoutInitiatedEvent lines are built from.
+     */
+    private Map<String, InventoryDto> validateAllItemInventories(List<CartItems> items) throws InvalidItemException {
+        Map<String, InventoryDto> inventories = inventoryFanOut.getAll(distinctInventoryLines(identifiersOf(items)), this::fetchInventories);
         for (CartItems item : items) {
-            InventoryDto inventory = checkInventoryWithCircuitBreaker(item.getProductId(), item.getColor());
+            String normalizedColor = normalizeColor(item.getColor());
+            InventoryDto inventory = inventories.get(inventoryKey(item.getProductId(), normalizedColor));
+            if (inventory == null) {
+                throw new InvalidItemException("Inventory information not found for product: " + item.getProductId() + ", color: " + normalizedColor);
+            }
             if (item.getQuantity() > inventory.getQuantity()) {
                 throw new InvalidItemException("Insufficient inventory during final check for " + item.getProductId() + ", color: " + item.getColor() +
                         ". Available: " + inventory.getQuantity() + ", requested: " + item.getQuantity());
             }
         }
         log.info("All item inventories validated successfully.");
+        return inventories;
     }
 
     private void sleepBeforeRetry() {
@@ -977,22 +1094,21 @@ public class CartServiceImpl implements CartService {
     }
 
     private CartResponse toCartResponse(Cart cart) {
+        Map<String, InventoryDto> inventories;
+        try {
+            inventories = checkInventoriesCached(identifiersOf(cart.getItems()));
+        } catch (Exception e) {
+            log.warn("Failed to get inventory during response mapping for cart of user: {}. Marking items as unavailable.",
+                    cart.getUserId(), e);
+            inventories = Map.of();
+        }
+        Map<String, InventoryDto> inventoryByLine = inventories;
+
         List<CartItemResponse> itemResponses = cart.getItems().stream()
                 .map(item -> {
                     // Normalize color
                     String normalizedColor = normalizeColor(item.getColor());
-                    InventoryDto inventory = null;
-                    boolean checkInventory = true;
-
-                    if (checkInventory) {
-                        try {
-                            inventory = checkInventoryWithCircuitBreaker(item.getProductId(), normalizedColor);
-                        } catch (Exception e) {
-                            log.warn("Failed to get inventory during response mapping for product: {}, color: {}. Marking as unavailable.",
-                                    item.getProductId(), normalizedColor, e);
-                            inventory = null;
-                        }
-                    }
+                    InventoryDto inventory = inventoryByLine.get(inventoryKey(item.getProductId(), normalizedColor));
 
                     boolean available = inventory != null && item.getQuantity() <= inventory.getQuantity();
 
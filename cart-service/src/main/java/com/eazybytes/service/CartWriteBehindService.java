@@ -0,0 +1,314 @@
+package com.eazybytes.service;
+
+import com.eazybytes.model.Cart;
+import com.eazybytes.model.CartItems;
+import com.eazybytes.repository.CartRedisRepository;
+import com.eazybytes.repository.CartRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisCallback;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flushes user carts from Redis to MySQL behind the request path.
+ *
+ * In write-behind mode the Redis hash is the live copy of a user cart. Every line write appends the
+ * userId to the dirty-cart stream in the same MULTI/EXEC (see CartRedisRepositoryImpl). This service
+ * reads the stream through a consumer group, collapses all entries of a user into one flush, writes
+ * the cart to MySQL, then acknowledges and deletes the entries. Entries are only acknowledged after
+ * the commit. Entries whose flush failed are retried by the same consumer on its next poll;
+ * entries left pending by a node that died are claimed by another node once idle longer than
+ * claim-idle-ms.
+ *
+ * Code that changes a cart in MySQL (checkout, saga callbacks, clear) calls {@link #flushUser} first.
+ * A flush locks the cart row before it reads Redis, so it never writes a snapshot taken while such
+ * a change was still uncommitted.
+ */
+@Slf4j
+@Service
+public class CartWriteBehindService {
+
+    private static final String CONSUMER_GROUP = "cart-flush";
+
+    @Autowired
+    private CartRedisRepository cartRedisRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${cart.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cart.write-behind.stream-key:cart:dirty}")
+    private String streamKey;
+
+    @Value("${cart.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${cart.write-behind.claim-idle-ms:60000}")
+    private long claimIdleMillis;
+
+    private final String consumerName = System.getenv().getOrDefault("HOSTNAME", "cart-service")
+            + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final AtomicLong pendingEntries = new AtomicLong();
+    private Counter flushedCarts;
+    private Counter failedFlushes;
+    private Timer flushLatency;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            byte[] rawKey = streamKey.getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(rawKey, CONSUMER_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // BUSYGROUP: group đã được node khác tạo
+            log.debug("Cart flush consumer group not created: {}", e.getMessage());
+        }
+        flushedCarts = Counter.builder("cart.write_behind.flushed").register(meterRegistry);
+        failedFlushes = Counter.builder("cart.write_behind.failures").register(meterRegistry);
+        flushLatency = Timer.builder("cart.write_behind.flush.latency").register(meterRegistry);
+        meterRegistry.gauge("cart.write_behind.lag.seconds", lagMillis, lag -> lag.get() / 1000.0);
+        meterRegistry.gauge("cart.write_behind.pending", pendingEntries);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes the live Redis cart of the user to MySQL now. No-op when write-behind is off or the
+     * user has no cart in Redis. Joins the caller's transaction if there is one; the cart row lock
+     * taken here is then held until that transaction ends, which is how checkout and its saga
+     * callbacks keep background flushes out while they change the cart in MySQL.
+     */
+    public void flushUser(String userId) {
+        if (!enabled) {
+            return;
+        }
+        // Không thử lại trong cùng transaction: khi join transaction của caller, lỗi đã đánh dấu rollback-only.
+        // Khóa dòng giỏ loại trừ xung đột optimistic giữa các lần flush; chỉ còn lần tạo dòng đầu tiên là có thể đua.
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> lockAndWrite(userId));
+    }
+
+    // Khóa dòng giỏ rồi mới đọc Redis: thay đổi của checkout đã commit (và đã ghi vào cache) trước khi ta đọc
+    private void lockAndWrite(String userId) {
+        Cart cart = cartRepository.lockByUserId(userId).orElse(null);
+        if (cart == null) {
+            if (cartRedisRepository.findByUserId(userId) == null) {
+                return;
+            }
+            createCartRow(userId);
+            cart = cartRepository.lockByUserId(userId)
+                    .orElseThrow(() -> new IllegalStateException("Cart row of user " + userId + " missing after insert"));
+        }
+        Cart live = cartRedisRepository.findByUserId(userId);
+        if (live == null) {
+            return;
+        }
+        writeToDatabase(cart, live);
+    }
+
+    /**
+     * Inserts the empty cart row in its own transaction, so losing the insert race to another flush
+     * (unique user_id) does not doom the caller's transaction; the winner's row is then locked instead.
+     */
+    private void createCartRow(String userId) {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            requiresNew.executeWithoutResult(status -> {
+                Cart cart = new Cart();
+                cart.setUserId(userId);
+                cart.setTotalPrice(0);
+                cartRepository.saveAndFlush(cart);
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Cart row of user {} was created concurrently, locking that one", userId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:1000}")
+    public void flushDirtyCarts() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            // Entry đã giao cho node này nhưng chưa ack vì lần flush trước lỗi
+            flushRecords(read(ReadOffset.from("0")));
+            flushRecords(claimAbandoned());
+            List<MapRecord<String, Object, Object>> fresh;
+            do {
+                fresh = read(ReadOffset.lastConsumed());
+                flushRecords(fresh);
+            } while (fresh.size() == batchSize);
+        } catch (Exception e) {
+            log.error("Cart write-behind flush failed: ", e);
+        } finally {
+            updateLag();
+        }
+    }
+
+    private List<MapRecord<String, Object, Object>> read(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+                Consumer.from(CONSUMER_GROUP, consumerName),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(streamKey, offset));
+        return records != null ? records : List.of();
+    }
+
+    private List<MapRecord<String, Object, Object>> claimAbandoned() {
+        PendingMessages pending = redisTemplate.opsForStream().pending(streamKey, CONSUMER_GROUP, Range.unbounded(), batchSize);
+        List<RecordId> stale = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (!consumerName.equals(message.getConsumerName())
+                    && message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+                stale.add(message.getId());
+            }
+        }
+        if (stale.isEmpty()) {
+            return List.of();
+        }
+        log.info("Claiming {} dirty cart entries abandoned by other consumers", stale.size());
+        return redisTemplate.opsForStream().claim(streamKey, CONSUMER_GROUP, consumerName,
+                Duration.ofMillis(claimIdleMillis), stale.toArray(new RecordId[0]));
+    }
+
+    private void flushRecords(List<MapRecord<String, Object, Object>> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        // Gộp: nhiều thao tác trên cùng một giỏ chỉ cần một lần ghi MySQL
+        Map<String, List<RecordId>> idsByUser = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Object userId = record.getValue().get("userId");
+            if (userId == null) {
+                acknowledge(List.of(record.getId()));
+                continue;
+            }
+            idsByUser.computeIfAbsent(userId.toString(), id -> new ArrayList<>()).add(record.getId());
+        }
+
+        long started = System.nanoTime();
+        idsByUser.forEach((userId, ids) -> {
+            try {
+                flushUser(userId);
+                acknowledge(ids);
+                flushedCarts.increment();
+            } catch (Exception e) {
+                failedFlushes.increment();
+                log.warn("Failed to flush cart of user {} to database, will retry: {}", userId, e.getMessage());
+            }
+        });
+        flushLatency.record(Duration.ofNanos(System.nanoTime() - started));
+        log.debug("Flushed {} carts from {} dirty entries", idsByUser.size(), records.size());
+    }
+
+    private void acknowledge(List<RecordId> ids) {
+        RecordId[] recordIds = ids.toArray(new RecordId[0]);
+        redisTemplate.opsForStream().acknowledge(streamKey, CONSUMER_GROUP, recordIds);
+        // Stream chỉ giữ entry chưa flush, nên entry cũ nhất cho biết độ trễ flush
+        redisTemplate.opsForStream().delete(streamKey, recordIds);
+    }
+
+    private void updateLag() {
+        try {
+            List<MapRecord<String, Object, Object>> oldest = redisTemplate.opsForStream()
+                    .range(streamKey, Range.unbounded(), Limit.limit().count(1));
+            long lag = 0;
+            if (oldest != null && !oldest.isEmpty() && oldest.get(0).getId().getTimestamp() != null) {
+                lag = Math.max(0, System.currentTimeMillis() - oldest.get(0).getId().getTimestamp());
+            }
+            lagMillis.set(lag);
+            Long size = redisTemplate.opsForStream().size(streamKey);
+            pendingEntries.set(size != null ? size : 0);
+        } catch (Exception e) {
+            log.debug("Could not update cart write-behind lag: {}", e.getMessage());
+        }
+    }
+
+    // cart là dòng đã khóa; các dòng của nó được đồng bộ theo giỏ trong Redis
+    private void writeToDatabase(Cart cart, Cart live) {
+        Map<String, CartItems> liveLines = new LinkedHashMap<>();
+        for (CartItems item : live.getItems()) {
+            liveLines.put(lineKey(item), item);
+        }
+        Iterator<CartItems> dbItems = cart.getItems().iterator();
+        while (dbItems.hasNext()) {
+            CartItems item = dbItems.next();
+            // Không còn trong Redis (hoặc là dòng trùng trong DB) thì xóa
+            CartItems liveItem = liveLines.remove(lineKey(item));
+            if (liveItem == null) {
+                dbItems.remove();
+                continue;
+            }
+            item.setQuantity(liveItem.getQuantity());
+            item.setProductName(liveItem.getProductName());
+            item.setPrice(liveItem.getPrice());
+        }
+        for (CartItems liveItem : liveLines.values()) {
+            CartItems item = new CartItems();
+            item.setProductId(liveItem.getProductId());
+            item.setColor(liveItem.getColor());
+            item.setQuantity(liveItem.getQuantity());
+            item.setProductName(liveItem.getProductName());
+            item.setPrice(liveItem.getPrice());
+            item.setCart(cart);
+            cart.getItems().add(item);
+        }
+        cart.setTotalPrice(cart.getItems().stream()
+                .mapToInt(item -> (item.getPrice() != null ? item.getPrice() : 0) * item.getQuantity())
+                .sum());
+        cartRepository.save(cart);
+    }
+
+    // Cùng cách ghép field của CartRedisRepositoryImpl: color null và rỗng là một dòng
+    private static String lineKey(CartItems item) {
+        return item.getProductId() + ":" + (item.getColor() != null ? item.getColor() : "");
+    }
+}
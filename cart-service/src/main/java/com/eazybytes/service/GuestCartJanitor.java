@@ -0,0 +1,104 @@
+package com.eazybytes.service;
+
+import com.eazybytes.repository.CartRedisRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps guest carts in Redis bounded.
+ *
+ * Guest carts already expire after cart.guest.ttl without access. This job additionally deletes
+ * carts idle longer than abandon-after (much shorter than the TTL: a guest who comes back after that
+ * rarely still wants the cart), and when more than max-carts remain, the least recently used ones,
+ * so a burst of bot traffic cannot fill Redis before the TTL catches up.
+ *
+ * Every replica may run the job; deleting a cart twice is harmless.
+ */
+@Slf4j
+@Service
+public class GuestCartJanitor {
+
+    @Autowired
+    private CartRedisRepository cartRedisRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${cart.guest.janitor.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cart.guest.abandon-after:3d}")
+    private Duration abandonAfter;
+
+    @Value("${cart.guest.max-carts:1000000}")
+    private long maxCarts;
+
+    @Value("${cart.guest.janitor.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${cart.guest.janitor.memory-samples:50}")
+    private int memorySamples;
+
+    private final AtomicLong guestCarts = new AtomicLong();
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private Counter abandonedCarts;
+    private Counter evictedCarts;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("cart.guest.carts", guestCarts);
+        meterRegistry.gauge("cart.guest.memory.bytes", estimatedBytes);
+        abandonedCarts = Counter.builder("cart.guest.trimmed").tag("reason", "abandoned").register(meterRegistry);
+        evictedCarts = Counter.builder("cart.guest.trimmed").tag("reason", "over-capacity").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.guest.janitor.interval-ms:300000}")
+    public void trim() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long idleBefore = System.currentTimeMillis() - abandonAfter.toMillis();
+            int abandoned = 0;
+            List<String> batch;
+            do {
+                batch = cartRedisRepository.findGuestIdsIdleSince(idleBefore, batchSize);
+                cartRedisRepository.deleteGuestCarts(batch);
+                abandoned += batch.size();
+            } while (batch.size() == batchSize);
+            abandonedCarts.increment(abandoned);
+
+            long count = cartRedisRepository.countGuestCarts();
+            long evicted = 0;
+            while (count > maxCarts) {
+                List<String> oldest = cartRedisRepository.findLeastRecentGuestIds((int) Math.min(batchSize, count - maxCarts));
+                if (oldest.isEmpty()) {
+                    break;
+                }
+                cartRedisRepository.deleteGuestCarts(oldest);
+                evicted += oldest.size();
+                count -= oldest.size();
+            }
+            evictedCarts.increment(evicted);
+
+            guestCarts.set(count);
+            estimatedBytes.set(count * cartRedisRepository.sampleGuestCartBytes(memorySamples));
+            if (abandoned > 0 || evicted > 0) {
+                log.info("Trimmed {} abandoned and {} over-capacity guest carts, {} remain (~{} KB)",
+                        abandoned, evicted, count, estimatedBytes.get() / 1024);
+            }
+        } catch (Exception e) {
+            log.error("Guest cart trim failed: ", e);
+        }
+    }
+}
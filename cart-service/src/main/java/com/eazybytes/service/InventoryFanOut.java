@@ -0,0 +1,107 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.InventoryDto;
+import com.eazybytes.exception.InvalidItemException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live inventory lookup for checkout, bounded by one overall deadline.
+ *
+ * Lines are split into chunks of chunk-size, and all chunks are sent to inventory-service at
+ * once, so a large cart costs about one round trip instead of one per chunk. If any chunk fails,
+ * or the deadline passes before every chunk has answered, the whole lookup fails and the
+ * remaining calls are cancelled. When the pool's queue is full the lookup fails at once instead
+ * of running a chunk on the request thread, where the deadline could not bound it.
+ */
+@Slf4j
+@Component
+public class InventoryFanOut {
+
+    @Value("${checkout.inventory.chunk-size:20}")
+    private int chunkSize;
+
+    @Value("${checkout.inventory.deadline-ms:3000}")
+    private long deadlineMillis;
+
+    @Value("${checkout.inventory.max-threads:16}")
+    private int maxThreads;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void startExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Hàng đợi đầy thì từ chối: chạy trên thread gọi sẽ không bị deadline chặn
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(256), runnable -> {
+            Thread thread = new Thread(runnable, "checkout-inventory-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns inventory for the given distinct lines, keyed like {@code itemsByKey}; lines without
+     * an inventory record are absent.
+     */
+    public Map<String, InventoryDto> getAll(Map<String, CartItemIdentifier> itemsByKey, InventoryNearCache.BatchLoader loader) throws InvalidItemException {
+        List<CartItemIdentifier> items = new ArrayList<>(itemsByKey.values());
+        if (items.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        List<Future<Map<String, InventoryDto>>> futures = new ArrayList<>();
+        Map<String, InventoryDto> result = new HashMap<>();
+        try {
+            for (int from = 0; from < items.size(); from += chunkSize) {
+                List<CartItemIdentifier> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+                futures.add(executor.submit(() -> loader.load(chunk)));
+            }
+            for (Future<Map<String, InventoryDto>> future : futures) {
+                result.putAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+        } catch (RejectedExecutionException e) {
+            log.error("Inventory check for {} lines rejected, checkout inventory pool is saturated", items.size());
+            throw new InvalidItemException("Unable to verify inventory (too many concurrent checkouts) for " + items.size() + " items");
+        } catch (TimeoutException e) {
+            log.error("Inventory check for {} lines did not finish within {} ms", items.size(), deadlineMillis);
+            throw new InvalidItemException("Unable to verify inventory in time for " + items.size() + " items");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidItemException invalidItem) {
+                throw invalidItem;
+            }
+            log.error("Inventory check failed for {} lines", items.size(), e.getCause());
+            throw new InvalidItemException("Unable to verify inventory (service unavailable) for " + items.size() + " items");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidItemException("Inventory check interrupted for " + items.size() + " items");
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        log.debug("Checked inventory for {} lines in {} parallel calls", items.size(), futures.size());
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.InventoryDto;
+import com.eazybytes.exception.InvalidItemException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Short-lived inventory snapshots per (productId, color), used only to render carts.
+ *
+ * A snapshot younger than refresh-after is served as is. Between refresh-after and the TTL it is
+ * still served, and one background call reloads it. Past the TTL (or when absent) it is loaded
+ * before returning. "No inventory record" is cached the same way as a record.
+ *
+ * Entries of a product are evicted when inventory-service reports an {@code InventoryChangedEvent},
+ * and a load that started before such an event does not store its (possibly stale) result.
+ * Checkout never reads from here.
+ */
+@Slf4j
+@Component
+public class InventoryNearCache {
+
+    @FunctionalInterface
+    public interface BatchLoader {
+        /**
+         * @param items distinct lines with normalized color
+         * @return inventory by cache key; lines without an inventory record are absent
+         */
+        Map<String, InventoryDto> load(List<CartItemIdentifier> items) throws InvalidItemException;
+    }
+
+    private record Entry(InventoryDto inventory, long loadedAt) {
+    }
+
+    @Value("${inventory-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${inventory-cache.ttl-ms:30000}")
+    private long ttlMillis;
+
+    @Value("${inventory-cache.refresh-after-ms:5000}")
+    private long refreshAfterMillis;
+
+    // LRU giống LLMAnalysisCache bên inventory-service; mọi truy cập đều synchronized trên map
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    // productId -> thời điểm invalidate gần nhất; chỉ cần giữ trong khoảng một TTL
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+
+    // Key đang được refresh nền, để mỗi key chỉ có một lần gọi inventory-service
+    private final Set<String> refreshing = new HashSet<>();
+
+    private ThreadPoolExecutor refreshExecutor;
+
+    @PostConstruct
+    void startRefreshExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        // Hàng đợi đầy thì bỏ qua lần refresh: snapshot cũ vẫn dùng được đến hết TTL
+        refreshExecutor = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(64), runnable -> {
+            Thread thread = new Thread(runnable, "inventory-cache-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stopRefreshExecutor() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns inventory for the given lines, keyed like {@code itemsByKey}, calling {@code loader}
+     * at most once synchronously (for missing or expired lines) and at most once in the background.
+     */
+    public Map<String, InventoryDto> getAll(Map<String, CartItemIdentifier> itemsByKey, BatchLoader loader) throws InvalidItemException {
+        if (!enabled) {
+            return loader.load(new ArrayList<>(itemsByKey.values()));
+        }
+        long now = System.currentTimeMillis();
+        Map<String, InventoryDto> result = new HashMap<>();
+        List<CartItemIdentifier> toLoad = new ArrayList<>();
+        List<String> keysToLoad = new ArrayList<>();
+        List<CartItemIdentifier> toRefresh = new ArrayList<>();
+        List<String> keysToRefresh = new ArrayList<>();
+
+        synchronized (entries) {
+            for (Map.Entry<String, CartItemIdentifier> requested : itemsByKey.entrySet()) {
+                String key = requested.getKey();
+                Entry entry = entries.get(key);
+                long age = entry != null ? now - entry.loadedAt() : Long.MAX_VALUE;
+                if (age >= ttlMillis) {
+                    toLoad.add(requested.getValue());
+                    keysToLoad.add(key);
+                    continue;
+                }
+                if (entry.inventory() != null) {
+                    result.put(key, entry.inventory());
+                }
+                if (age >= refreshAfterMillis && refreshing.add(key)) {
+                    toRefresh.add(requested.getValue());
+                    keysToRefresh.add(key);
+                }
+            }
+        }
+
+        if (!toRefresh.isEmpty()) {
+            scheduleRefresh(toRefresh, keysToRefresh, loader);
+        }
+        if (!toLoad.isEmpty()) {
+            Map<String, InventoryDto> loaded = loader.load(toLoad);
+            store(toLoad, keysToLoad, loaded, now);
+            keysToLoad.forEach(key -> {
+                InventoryDto inventory = loaded.get(key);
+                if (inventory != null) {
+                    result.put(key, inventory);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Drops every snapshot of the product. Called for each inventory-changed event.
+     */
+    public void invalidateProduct(String productId) {
+        if (productId == null) {
+            return;
+        }
+        String prefix = productId + "|";
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> key.startsWith(prefix));
+            invalidatedAt.put(productId, now);
+            if (invalidatedAt.size() > maxEntries) {
+                // Lần load bắt đầu trước đó hơn một TTL thì đằng nào cũng không được lưu
+                invalidatedAt.values().removeIf(at -> now - at > ttlMillis);
+            }
+        }
+    }
+
+    private void scheduleRefresh(List<CartItemIdentifier> items, List<String> keys, BatchLoader loader) {
+        try {
+            refreshExecutor.execute(() -> {
+                long startedAt = System.currentTimeMillis();
+                try {
+                    store(items, keys, loader.load(items), startedAt);
+                } catch (Exception e) {
+                    log.debug("Background inventory refresh failed for {} lines: {}", items.size(), e.getMessage());
+                } finally {
+                    synchronized (entries) {
+                        keys.forEach(refreshing::remove);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (entries) {
+                keys.forEach(refreshing::remove);
+            }
+        }
+    }
+
+    private void store(List<CartItemIdentifier> items, List<String> keys, Map<String, InventoryDto> loaded, long startedAt) {
+        synchronized (entries) {
+            for (int i = 0; i < keys.size(); i++) {
+                Long invalidated = invalidatedAt.get(items.get(i).getProductId());
+                if (invalidated != null && invalidated >= startedAt) {
+                    continue;
+                }
+                entries.put(keys.get(i), new Entry(loaded.get(keys.get(i)), startedAt));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+-- Cộng delta vào một dòng giỏ nếu tổng không vượt maxQuantity; đọc, kiểm tra và ghi trong một lệnh.
+-- KEYS[1] giỏ (hash), KEYS[2] stream các giỏ cần ghi xuống MySQL
+-- ARGV[1] delta, ARGV[2] maxQuantity, ARGV[3] chi tiết dòng (CartCacheCodec), ARGV[4] TTL giây (0 = không đặt),
+-- ARGV[5] userId ghi vào stream ('' = không ghi), ARGV[6] header tạo giỏ nếu chưa có ('' = không tạo),
+-- ARGV[7..] các field có thể của dòng; cộng vào field đầu tiên đang có, nếu không có thì tạo field đầu tiên
+-- Trả về {cartExists, applied, quantity}; giỏ mới mà lần thêm đầu bị từ chối thì không tạo gì, trả về {0, 0, 0}
+local exists = redis.call('HEXISTS', KEYS[1], '#cart') == 1
+if not exists and ARGV[6] == '' then
+  return {0, 0, 0}
+end
+
+local field = ARGV[7]
+local current = 0
+if exists then
+  for i = 7, #ARGV do
+    local value = redis.call('HGET', KEYS[1], ARGV[i])
+    if value then
+      field = ARGV[i]
+      current = tonumber(value)
+      break
+    end
+  end
+end
+
+local total = current + tonumber(ARGV[1])
+if total > tonumber(ARGV[2]) then
+  return {exists and 1 or 0, 0, current}
+end
+
+-- Chỉ tạo header khi dòng được ghi; field sót lại trên hash không có header không thuộc giỏ nào
+if not exists then
+  redis.call('DEL', KEYS[1])
+  redis.call('HSET', KEYS[1], '#cart', ARGV[6])
+end
+redis.call('HSET', KEYS[1], field, total)
+if current == 0 then
+  redis.call('HSET', KEYS[1], '#' .. field, ARGV[3])
+end
+if tonumber(ARGV[4]) > 0 then
+  redis.call('EXPIRE', KEYS[1], ARGV[4])
+end
+if ARGV[5] ~= '' then
+  redis.call('XADD', KEYS[2], '*', 'userId', ARGV[5])
+end
+return {1, 1, total}
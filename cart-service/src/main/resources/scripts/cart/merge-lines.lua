@@ -0,0 +1,47 @@
+-- Gộp nhiều dòng (thường là giỏ khách) vào giỏ người dùng trong một lệnh.
+-- Dòng nào làm tổng vượt maxQuantity thì bỏ qua, giống mergeListItemToCart.
+-- KEYS[1] giỏ người dùng, KEYS[2] stream các giỏ cần ghi xuống MySQL, KEYS[3] giỏ khách cần xóa sau khi gộp
+-- ARGV[1] userId ghi vào stream ('' = không ghi), ARGV[2] '1' để xóa KEYS[3],
+-- sau đó từng dòng: số field n, n field có thể của dòng, quantity, maxQuantity, chi tiết dòng (CartCacheCodec);
+-- cộng vào field đầu tiên đang có, nếu không có thì tạo field đầu tiên (giống add-item.lua)
+-- Trả về {cartExists, merged, skipped}
+if redis.call('HEXISTS', KEYS[1], '#cart') == 0 then
+  return {0, 0, 0}
+end
+
+local merged = 0
+local skipped = 0
+local i = 3
+while i <= #ARGV do
+  local count = tonumber(ARGV[i])
+  local field = ARGV[i + 1]
+  local current = 0
+  for j = i + 1, i + count do
+    local value = redis.call('HGET', KEYS[1], ARGV[j])
+    if value then
+      field = ARGV[j]
+      current = tonumber(value)
+      break
+    end
+  end
+  local quantity = tonumber(ARGV[i + count + 1])
+  local total = current + quantity
+  if total > tonumber(ARGV[i + count + 2]) then
+    skipped = skipped + 1
+  else
+    redis.call('HSET', KEYS[1], field, total)
+    if current == 0 then
+      redis.call('HSET', KEYS[1], '#' .. field, ARGV[i + count + 3])
+    end
+    merged = merged + 1
+  end
+  i = i + count + 4
+end
+
+if ARGV[2] == '1' then
+  redis.call('DEL', KEYS[3])
+end
+if merged > 0 and ARGV[1] ~= '' then
+  redis.call('XADD', KEYS[2], '*', 'userId', ARGV[1])
+end
+return {1, merged, skipped}
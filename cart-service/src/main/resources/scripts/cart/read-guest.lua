@@ -0,0 +1,10 @@
+-- Đọc giỏ khách và gia hạn TTL (TTL trượt theo lần truy cập) trong một lệnh.
+-- KEYS[1] giỏ khách (hash), KEYS[2] sorted set guestId -> lần truy cập cuối
+-- ARGV[1] TTL giây, ARGV[2] thời điểm hiện tại (ms), ARGV[3] guestId
+-- Trả về HGETALL của giỏ; chỉ gia hạn khi giỏ có header
+local fields = redis.call('HGETALL', KEYS[1])
+if redis.call('HEXISTS', KEYS[1], '#cart') == 1 then
+  redis.call('EXPIRE', KEYS[1], ARGV[1])
+  redis.call('ZADD', KEYS[2], ARGV[2], ARGV[3])
+end
+return fields
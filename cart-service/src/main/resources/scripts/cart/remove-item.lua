@@ -0,0 +1,26 @@
+-- Xóa mọi field của một dòng (color null/rỗng/"default" là cùng một dòng).
+-- KEYS[1] giỏ (hash), KEYS[2] stream các giỏ cần ghi xuống MySQL
+-- ARGV[1] TTL giây (0 = không đặt), ARGV[2] userId ghi vào stream ('' = không ghi), ARGV[3..] các field
+-- Trả về số dòng đã xóa, -1 nếu giỏ không tồn tại
+if redis.call('HEXISTS', KEYS[1], '#cart') == 0 then
+  return -1
+end
+
+local removed = 0
+for i = 3, #ARGV do
+  if redis.call('HDEL', KEYS[1], ARGV[i], '#' .. ARGV[i]) > 0 then
+    removed = removed + 1
+  end
+end
+-- Giỏ có TTL (giỏ khách) không được giữ lại khi chỉ còn header
+if tonumber(ARGV[1]) > 0 then
+  if redis.call('HLEN', KEYS[1]) <= 1 then
+    redis.call('DEL', KEYS[1])
+  else
+    redis.call('EXPIRE', KEYS[1], ARGV[1])
+  end
+end
+if removed > 0 and ARGV[2] ~= '' then
+  redis.call('XADD', KEYS[2], '*', 'userId', ARGV[2])
+end
+return removed
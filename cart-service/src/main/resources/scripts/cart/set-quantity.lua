@@ -0,0 +1,46 @@
+-- Đặt số lượng của một dòng đã có trong giỏ; số lượng <= 0 thì xóa dòng.
+-- KEYS[1] giỏ (hash), KEYS[2] stream các giỏ cần ghi xuống MySQL
+-- ARGV[1] quantity, ARGV[2] maxQuantity, ARGV[3] TTL giây (0 = không đặt),
+-- ARGV[4] userId ghi vào stream ('' = không ghi), ARGV[5..] các field có thể của dòng
+-- Trả về {cartExists, applied, quantity}; applied = 0 khi dòng không có hoặc vượt maxQuantity
+if redis.call('HEXISTS', KEYS[1], '#cart') == 0 then
+  return {0, 0, 0}
+end
+
+local field = nil
+local current = 0
+for i = 5, #ARGV do
+  local value = redis.call('HGET', KEYS[1], ARGV[i])
+  if value then
+    field = ARGV[i]
+    current = tonumber(value)
+    break
+  end
+end
+if field == nil then
+  return {1, 0, 0}
+end
+
+local quantity = tonumber(ARGV[1])
+if quantity > tonumber(ARGV[2]) then
+  return {1, 0, current}
+end
+
+if quantity <= 0 then
+  redis.call('HDEL', KEYS[1], field, '#' .. field)
+  quantity = 0
+else
+  redis.call('HSET', KEYS[1], field, quantity)
+end
+-- Giỏ có TTL (giỏ khách) không được giữ lại khi chỉ còn header
+if tonumber(ARGV[3]) > 0 then
+  if redis.call('HLEN', KEYS[1]) <= 1 then
+    redis.call('DEL', KEYS[1])
+  else
+    redis.call('EXPIRE', KEYS[1], ARGV[3])
+  end
+end
+if ARGV[4] ~= '' then
+  redis.call('XADD', KEYS[2], '*', 'userId', ARGV[4])
+end
+return {1, 1, quantity}
@@ -0,0 +1,21 @@
+-- Ghi hoặc xóa một dòng cùng header mới sau khi giỏ đã được lưu xuống MySQL.
+-- Chỉ ghi khi giỏ đang có trong Redis: nếu không, hash tạo ra chỉ chứa dòng này mà vẫn có header,
+-- lần đọc sau sẽ coi đó là cả giỏ. Bỏ qua thì lần đọc sau nạp đủ giỏ từ MySQL.
+-- KEYS[1] giỏ (hash), KEYS[2] stream các giỏ cần ghi xuống MySQL
+-- ARGV[1] header (CartCacheCodec), ARGV[2] userId ghi vào stream ('' = không ghi), ARGV[3] field của dòng,
+-- ARGV[4] quantity ('' = xóa dòng), ARGV[5] chi tiết dòng (CartCacheCodec)
+-- Trả về 1 nếu đã ghi, 0 nếu giỏ không có trong Redis
+if redis.call('HEXISTS', KEYS[1], '#cart') == 0 then
+  return 0
+end
+
+if ARGV[4] == '' then
+  redis.call('HDEL', KEYS[1], ARGV[3], '#' .. ARGV[3])
+else
+  redis.call('HSET', KEYS[1], ARGV[3], ARGV[4], '#' .. ARGV[3], ARGV[5])
+end
+redis.call('HSET', KEYS[1], '#cart', ARGV[1])
+if ARGV[2] ~= '' then
+  redis.call('XADD', KEYS[2], '*', 'userId', ARGV[2])
+end
+return 1
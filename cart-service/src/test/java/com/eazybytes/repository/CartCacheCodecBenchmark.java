@@ -0,0 +1,152 @@
+package com.eazybytes.repository;
+
+import com.eazybytes.config.JacksonConfig;
+import com.eazybytes.model.Cart;
+import com.eazybytes.model.CartItems;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the cached values of one cart: the whole entity as JSON through the
+ * mixins (the old single-key layout), the per-field Jackson values, and {@link CartCacheCodec}.
+ * Run with {@code main}, which prints the encoded sizes first; not part of the unit test suite.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartCacheCodecBenchmark {
+
+    @Param({"3", "20"})
+    private int lines;
+
+    private ObjectMapper objectMapper;
+    private Cart cart;
+    private String entityJson;
+    private List<byte[]> jsonValues;
+    private List<byte[]> binaryValues;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        objectMapper = new JacksonConfig().objectMapper();
+        cart = sampleCart(lines);
+        entityJson = objectMapper.writeValueAsString(cart);
+        jsonValues = encodeJson(objectMapper, cart);
+        binaryValues = encodeBinary(cart);
+    }
+
+    @Benchmark
+    public String entityJsonEncode() throws Exception {
+        return objectMapper.writeValueAsString(cart);
+    }
+
+    @Benchmark
+    public Cart entityJsonDecode() throws Exception {
+        return objectMapper.readValue(entityJson, Cart.class);
+    }
+
+    @Benchmark
+    public List<byte[]> fieldJsonEncode() throws Exception {
+        return encodeJson(objectMapper, cart);
+    }
+
+    @Benchmark
+    public void fieldJsonDecode(Blackhole blackhole) throws Exception {
+        blackhole.consume(objectMapper.readValue(jsonValues.get(0), CartCacheCodec.Header.class));
+        for (int i = 1; i < jsonValues.size(); i++) {
+            blackhole.consume(objectMapper.readValue(jsonValues.get(i), CartCacheCodec.Line.class));
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> binaryEncode() {
+        return encodeBinary(cart);
+    }
+
+    @Benchmark
+    public void binaryDecode(Blackhole blackhole) {
+        blackhole.consume(CartCacheCodec.decodeHeader(binaryValues.get(0)));
+        for (int i = 1; i < binaryValues.size(); i++) {
+            blackhole.consume(CartCacheCodec.decodeLine(binaryValues.get(i)));
+        }
+    }
+
+    private static List<byte[]> encodeJson(ObjectMapper objectMapper, Cart cart) throws Exception {
+        List<byte[]> values = new ArrayList<>(cart.getItems().size() + 1);
+        values.add(objectMapper.writeValueAsBytes(CartRedisRepositoryImpl.headerOf(cart)));
+        for (CartItems item : cart.getItems()) {
+            values.add(objectMapper.writeValueAsBytes(CartRedisRepositoryImpl.detailOf(item)));
+        }
+        return values;
+    }
+
+    private static List<byte[]> encodeBinary(Cart cart) {
+        List<byte[]> values = new ArrayList<>(cart.getItems().size() + 1);
+        values.add(CartCacheCodec.encodeHeader(CartRedisRepositoryImpl.headerOf(cart)));
+        for (CartItems item : cart.getItems()) {
+            values.add(CartCacheCodec.encodeLine(CartRedisRepositoryImpl.detailOf(item)));
+        }
+        return values;
+    }
+
+    private static Cart sampleCart(int lines) {
+        Cart cart = new Cart();
+        cart.setId(48213);
+        cart.setUserId("user-7f3a9c");
+        cart.setVersion(17L);
+        cart.setTransactionId("7d9f1c2e-5b4a-4c3d-9e8f-1a2b3c4d5e6f");
+        int total = 0;
+        for (int i = 0; i < lines; i++) {
+            CartItems item = new CartItems();
+            item.setId(900_000L + i);
+            item.setProductId("6650c0a1e4b0f2" + String.format("%010d", i));
+            item.setColor(i % 2 == 0 ? "Titan Đen" : "default");
+            item.setQuantity(1 + i % 3);
+            item.setProductName("Điện thoại Samsung Galaxy S24 Ultra 12GB 256GB " + i);
+            item.setPrice(29_990_000 + i * 10_000);
+            item.setCart(cart);
+            cart.getItems().add(item);
+            total += item.getPrice() * item.getQuantity();
+        }
+        cart.setTotalPrice(total);
+        return cart;
+    }
+
+    private static int totalSize(List<byte[]> values) {
+        return values.stream().mapToInt(value -> value.length).sum();
+    }
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+        for (int lines : new int[]{3, 20}) {
+            Cart cart = sampleCart(lines);
+            System.out.printf("%d lines: entity JSON %d bytes, field JSON %d bytes, binary %d bytes%n", lines,
+                    objectMapper.writeValueAsString(cart).getBytes(StandardCharsets.UTF_8).length,
+                    totalSize(encodeJson(objectMapper, cart)), totalSize(encodeBinary(cart)));
+        }
+        new Runner(new OptionsBuilder()
+                .include(CartCacheCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
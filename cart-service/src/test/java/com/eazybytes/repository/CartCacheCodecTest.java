@@ -0,0 +1,88 @@
+package com.eazybytes.repository;
+
+import com.eazybytes.config.JacksonConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartCacheCodecTest {
+
+    @Test
+    void nullFieldsAreLeftOutAndReadBackAsNull() {
+        CartCacheCodec.Header header = new CartCacheCodec.Header(null, null, null);
+        CartCacheCodec.Line line = new CartCacheCodec.Line(null, null, null);
+
+        byte[] encodedHeader = CartCacheCodec.encodeHeader(header);
+        byte[] encodedLine = CartCacheCodec.encodeLine(line);
+
+        // Chỉ còn byte version và byte cờ
+        assertEquals(2, encodedHeader.length);
+        assertEquals(2, encodedLine.length);
+        assertEquals(header, CartCacheCodec.decodeHeader(encodedHeader));
+        assertEquals(line, CartCacheCodec.decodeLine(encodedLine));
+    }
+
+    @Test
+    void someFieldsNull() {
+        CartCacheCodec.Header header = new CartCacheCodec.Header(7, null, "tx-1");
+        CartCacheCodec.Line line = new CartCacheCodec.Line(null, "Ốp lưng", 0);
+
+        assertEquals(header, CartCacheCodec.decodeHeader(CartCacheCodec.encodeHeader(header)));
+        assertEquals(line, CartCacheCodec.decodeLine(CartCacheCodec.encodeLine(line)));
+    }
+
+    @Test
+    void negativeAndLargeVarintsRoundTrip() {
+        CartCacheCodec.Header extremes = new CartCacheCodec.Header(Integer.MIN_VALUE, Long.MAX_VALUE, null);
+        CartCacheCodec.Header negative = new CartCacheCodec.Header(-1, Long.MIN_VALUE, null);
+        CartCacheCodec.Line line = new CartCacheCodec.Line(Long.MIN_VALUE, null, Integer.MAX_VALUE);
+
+        assertEquals(extremes, CartCacheCodec.decodeHeader(CartCacheCodec.encodeHeader(extremes)));
+        assertEquals(negative, CartCacheCodec.decodeHeader(CartCacheCodec.encodeHeader(negative)));
+        assertEquals(line, CartCacheCodec.decodeLine(CartCacheCodec.encodeLine(line)));
+    }
+
+    @Test
+    void smallNegativeNumbersTakeOneByteAfterZigzag() {
+        byte[] encoded = CartCacheCodec.encodeHeader(new CartCacheCodec.Header(-1, 63L, null));
+
+        assertEquals(4, encoded.length);
+        assertEquals(new CartCacheCodec.Header(-1, 63L, null), CartCacheCodec.decodeHeader(encoded));
+    }
+
+    @Test
+    void multibyteUtf8RoundTrips() {
+        // Độ dài byte > 127 nên độ dài chuỗi cũng là varint nhiều byte
+        String name = "Điện thoại Samsung Galaxy S24 Ultra – màu Titan Đen 🚀 ".repeat(4);
+        CartCacheCodec.Line line = new CartCacheCodec.Line(42L, name, 33990000);
+        CartCacheCodec.Header header = new CartCacheCodec.Header(1, 2L, "giao-dịch-✓");
+
+        CartCacheCodec.Line decodedLine = CartCacheCodec.decodeLine(CartCacheCodec.encodeLine(line));
+        assertTrue(name.getBytes(StandardCharsets.UTF_8).length > 127);
+        assertEquals(line, decodedLine);
+        assertEquals(header, CartCacheCodec.decodeHeader(CartCacheCodec.encodeHeader(header)));
+    }
+
+    @Test
+    void legacyJsonValuesAreNotTakenForBinaryAndStillParse() throws Exception {
+        ObjectMapper objectMapper = new JacksonConfig().objectMapper();
+        byte[] header = "{\"id\":5,\"version\":3,\"transactionId\":\"tx\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] line = "{\"id\":9,\"productName\":\"Tai nghe\",\"price\":1500000}".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(CartCacheCodec.isBinary(header));
+        assertFalse(CartCacheCodec.isBinary(line));
+        assertTrue(CartCacheCodec.isBinary(CartCacheCodec.encodeHeader(new CartCacheCodec.Header(5, 3L, "tx"))));
+        assertEquals(new CartCacheCodec.Header(5, 3L, "tx"), objectMapper.readValue(header, CartCacheCodec.Header.class));
+        assertEquals(new CartCacheCodec.Line(9L, "Tai nghe", 1500000), objectMapper.readValue(line, CartCacheCodec.Line.class));
+        assertThrows(IllegalArgumentException.class, () -> CartCacheCodec.decodeHeader(header));
+    }
+
+    @Test
+    void emptyValueIsRejected() {
+        assertFalse(CartCacheCodec.isBinary(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> CartCacheCodec.decodeLine(new byte[0]));
+    }
+}
@@ -0,0 +1,206 @@
+package com.eazybytes.repository;
+
+import com.eazybytes.config.JacksonConfig;
+import com.eazybytes.model.Cart;
+import com.eazybytes.model.CartItems;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads adding the same line to one cart against a real Redis. Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CartRedisContentionLoadTest {
+
+    private static final int THREADS = 32;
+    private static final int ADDS_PER_THREAD = 50;
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisTemplate<String, String> redisTemplate;
+
+    private CartRedisRepositoryImpl repository;
+
+    @BeforeAll
+    static void startConnection() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashValueSerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void closeConnection() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+        repository = new CartRedisRepositoryImpl(redisTemplate, new JacksonConfig().objectMapper());
+        ReflectionTestUtils.setField(repository, "writeBehind", false);
+        ReflectionTestUtils.setField(repository, "dirtyStreamKey", "cart:dirty");
+    }
+
+    @Test
+    void concurrentAddsNeverLoseUpdatesOrExceedInventory() throws Exception {
+        int max = 1000;
+        AtomicInteger applied = new AtomicInteger();
+
+        long elapsedMs = runConcurrently(() -> {
+            if (repository.addGuestItemAtomically("g1", line("hot", "Black", 1), 1, max).applied()) {
+                applied.incrementAndGet();
+            }
+        });
+        System.out.printf("%d scripted adds on %d threads in %d ms, %d applied%n",
+                THREADS * ADDS_PER_THREAD, THREADS, elapsedMs, applied.get());
+
+        assertEquals(max, applied.get());
+        assertEquals(max, quantityOf(repository.findByGuestId("g1"), "hot"));
+    }
+
+    @Test
+    void readModifyWriteLosesAnUpdateWhenTwoRequestsInterleave() {
+        Cart seeded = new Cart();
+        seeded.getItems().add(line("hot", "Black", 1));
+        repository.saveGuestCart("g2", seeded);
+
+        // Cách cũ: đọc cả giỏ, cộng trong bộ nhớ, ghi đè lại; hai request đọc trước khi request kia ghi
+        Cart first = repository.findByGuestId("g2");
+        Cart second = repository.findByGuestId("g2");
+        first.getItems().get(0).setQuantity(first.getItems().get(0).getQuantity() + 1);
+        second.getItems().get(0).setQuantity(second.getItems().get(0).getQuantity() + 1);
+        repository.saveGuestCart("g2", first);
+        repository.saveGuestCart("g2", second);
+        assertEquals(2, quantityOf(repository.findByGuestId("g2"), "hot"));
+
+        // Cùng hai lần cộng qua script không mất lần nào
+        repository.addGuestItemAtomically("g2", line("hot", "Black", 1), 1, 10);
+        repository.addGuestItemAtomically("g2", line("hot", "Black", 1), 1, 10);
+        assertEquals(4, quantityOf(repository.findByGuestId("g2"), "hot"));
+    }
+
+    @Test
+    void mergeSkipsLinesOverInventoryAndDeletesGuestCart() {
+        Cart userCart = new Cart();
+        userCart.setUserId("u1");
+        repository.save("u1", userCart);
+        repository.addItemAtomically("u1", line("a", "Black", 3), 3, 10);
+        repository.addGuestItemAtomically("g3", line("a", "Black", 8), 8, 10);
+        repository.addGuestItemAtomically("g3", line("b", "default", 2), 2, 5);
+
+        CartMergeResult result = repository.mergeIntoUserCart("u1",
+                List.of(line("a", "Black", 8), line("b", "default", 2)), List.of(10, 5), "g3");
+
+        assertTrue(result.cartExists());
+        assertEquals(1, result.merged());
+        assertEquals(1, result.skipped());
+        Cart merged = repository.findByUserId("u1");
+        assertEquals(3, quantityOf(merged, "a"));
+        assertEquals(2, quantityOf(merged, "b"));
+        assertNull(repository.findByGuestId("g3"));
+    }
+
+    @Test
+    void rejectedFirstAddLeavesNoGuestCartBehind() {
+        CartLineResult result = repository.addGuestItemAtomically("g4", line("hot", "Black", 5), 5, 3);
+
+        assertFalse(result.applied());
+        assertFalse(repository.existsByGuestId("g4"));
+        assertEquals(0, repository.countGuestCarts());
+    }
+
+    @Test
+    void mergeAddsDefaultColorToLegacyLineWithoutColor() {
+        // Dòng cũ lưu color rỗng, field "b:"; dòng gộp vào mang color đã chuẩn hóa "default"
+        Cart userCart = new Cart();
+        userCart.setUserId("u2");
+        userCart.getItems().add(line("b", "", 1));
+        repository.save("u2", userCart);
+
+        CartMergeResult result = repository.mergeIntoUserCart("u2", List.of(line("b", "default", 2)), List.of(5), null);
+
+        assertEquals(1, result.merged());
+        Cart merged = repository.findByUserId("u2");
+        assertEquals(1, merged.getItems().size());
+        assertEquals(3, quantityOf(merged, "b"));
+    }
+
+    private long runConcurrently(Runnable add) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ADDS_PER_THREAD; i++) {
+                        add.run();
+                    }
+                    return null;
+                }));
+            }
+
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CartItems line(String productId, String color, int quantity) {
+        CartItems item = new CartItems();
+        item.setProductId(productId);
+        item.setColor(color);
+        item.setQuantity(quantity);
+        item.setProductName(productId);
+        item.setPrice(100);
+        return item;
+    }
+
+    private static int quantityOf(Cart cart, String productId) {
+        return cart.getItems().stream()
+                .filter(item -> item.getProductId().equals(productId))
+                .mapToInt(CartItems::getQuantity)
+                .sum();
+    }
+}
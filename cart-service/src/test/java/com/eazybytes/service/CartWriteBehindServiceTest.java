@@ -0,0 +1,141 @@
+package com.eazybytes.service;
+
+import com.eazybytes.model.Cart;
+import com.eazybytes.model.CartItems;
+import com.eazybytes.repository.CartRedisRepository;
+import com.eazybytes.repository.CartRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * flushUser with the repositories mocked; the transaction manager is a no-op mock.
+ */
+@ExtendWith(MockitoExtension.class)
+class CartWriteBehindServiceTest {
+
+    @Mock
+    private CartRedisRepository cartRedisRepository;
+    @Mock
+    private CartRepository cartRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private CartWriteBehindService writeBehindService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(writeBehindService, "enabled", true);
+    }
+
+    @Test
+    void flushUpdatesKeptLinesAddsNewOnesAndDropsTheRest() {
+        Cart stored = cart(line("a", "Black", 1, 100), line("b", "", 2, 200), line("a", "Black", 4, 100));
+        Cart live = cart(line("a", "Black", 5, 150), line("c", "default", 1, 300));
+        when(cartRepository.lockByUserId("u1")).thenReturn(Optional.of(stored));
+        when(cartRedisRepository.findByUserId("u1")).thenReturn(live);
+
+        writeBehindService.flushUser("u1");
+
+        InOrder order = inOrder(cartRepository, cartRedisRepository);
+        order.verify(cartRepository).lockByUserId("u1");
+        order.verify(cartRedisRepository).findByUserId("u1");
+        order.verify(cartRepository).save(stored);
+
+        // Dòng trùng "a" trong DB và dòng "b" không còn trong Redis bị xóa
+        assertEquals(2, stored.getItems().size());
+        CartItems a = stored.getItems().get(0);
+        assertEquals("a", a.getProductId());
+        assertEquals(5, a.getQuantity());
+        assertEquals(150, a.getPrice());
+        CartItems c = stored.getItems().get(1);
+        assertEquals("c", c.getProductId());
+        assertEquals("default", c.getColor());
+        assertSame(stored, c.getCart());
+        assertEquals(5 * 150 + 300, stored.getTotalPrice());
+    }
+
+    @Test
+    void colorlessDatabaseLineMatchesColorlessRedisLine() {
+        CartItems legacy = line("b", null, 1, 200);
+        Cart stored = cart(legacy);
+        when(cartRepository.lockByUserId("u1")).thenReturn(Optional.of(stored));
+        when(cartRedisRepository.findByUserId("u1")).thenReturn(cart(line("b", "", 3, 200)));
+
+        writeBehindService.flushUser("u1");
+
+        assertEquals(1, stored.getItems().size());
+        assertSame(legacy, stored.getItems().get(0));
+        assertEquals(3, legacy.getQuantity());
+    }
+
+    @Test
+    void nothingIsWrittenWithoutALiveCart() {
+        when(cartRepository.lockByUserId("u1")).thenReturn(Optional.of(cart()));
+
+        writeBehindService.flushUser("u1");
+
+        verify(cartRepository, never()).save(any());
+    }
+
+    @Test
+    void missingRowIsCreatedThenLockedBeforeTheWrite() {
+        Cart created = cart();
+        when(cartRepository.lockByUserId("u1")).thenReturn(Optional.empty(), Optional.of(created));
+        when(cartRedisRepository.findByUserId("u1")).thenReturn(cart(line("a", "Black", 2, 100)));
+
+        writeBehindService.flushUser("u1");
+
+        verify(cartRepository).saveAndFlush(any(Cart.class));
+        verify(cartRepository, times(2)).lockByUserId("u1");
+        verify(cartRepository).save(created);
+        assertEquals(1, created.getItems().size());
+    }
+
+    @Test
+    void losingTheFirstInsertRaceWritesIntoTheWinnersRow() {
+        Cart winner = cart();
+        when(cartRepository.lockByUserId("u1")).thenReturn(Optional.empty(), Optional.of(winner));
+        when(cartRedisRepository.findByUserId("u1")).thenReturn(cart(line("a", "Black", 2, 100)));
+        when(cartRepository.saveAndFlush(any(Cart.class))).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+
+        writeBehindService.flushUser("u1");
+
+        verify(cartRepository).save(winner);
+        assertEquals(2, winner.getItems().get(0).getQuantity());
+    }
+
+    private static Cart cart(CartItems... lines) {
+        Cart cart = new Cart();
+        cart.setUserId("u1");
+        for (CartItems line : lines) {
+            line.setCart(cart);
+            cart.getItems().add(line);
+        }
+        return cart;
+    }
+
+    private static CartItems line(String productId, String color, int quantity, int price) {
+        CartItems item = new CartItems();
+        item.setProductId(productId);
+        item.setColor(color);
+        item.setQuantity(quantity);
+        item.setProductName(productId);
+        item.setPrice(price);
+        return item;
+    }
+}
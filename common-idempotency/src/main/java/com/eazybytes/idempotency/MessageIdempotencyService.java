@@ -0,0 +1,125 @@
+package com.eazybytes.idempotency;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Drops redelivered saga messages before they reach the business tables.
+ *
+ * A message is identified by (topic, key, transactionId) and claimed in processed_message before
+ * its handler runs. A failed handler gives the claim back so the retry is processed; a claim left
+ * behind by a node that died mid-message can be taken over after the processing timeout.
+ *
+ * A new message costs one INSERT IGNORE before its handler and one UPDATE after it; a duplicate
+ * costs the INSERT IGNORE plus the takeover check. The table is the only source of truth because
+ * any replica may have completed the message.
+ *
+ * Settings (defaults in brackets): idempotency.enabled [true], idempotency.processing-timeout-seconds
+ * [300], idempotency.retention-hours [168], idempotency.purge-interval-ms [3600000].
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageIdempotencyService {
+
+    private static final int PURGE_BATCH_SIZE = 5000;
+
+    private final ProcessedMessageRepository repository;
+
+    @Value("${idempotency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${idempotency.processing-timeout-seconds:300}")
+    private int processingTimeoutSeconds;
+
+    // Phải dài hơn thời gian Kafka có thể giao lại message (retention của topic)
+    @Value("${idempotency.retention-hours:168}")
+    private int retentionHours;
+
+    /**
+     * Runs {@code handler} unless the same (topic, key, transactionId) was already processed.
+     * Exceptions from the handler are rethrown after the claim is released.
+     *
+     * @return false if the message was a duplicate and the handler did not run
+     */
+    public boolean processOnce(String topic, String key, String transactionId, Runnable handler) {
+        if (!enabled || (key == null && transactionId == null)) {
+            handler.run();
+            return true;
+        }
+        String messageId = messageId(topic, key, transactionId);
+
+        if (!claim(topic, messageId)) {
+            log.info("Skipping duplicate message on topic {} (key={}, transactionId={})", topic, key, transactionId);
+            return false;
+        }
+        try {
+            handler.run();
+        } catch (RuntimeException e) {
+            release(messageId);
+            throw e;
+        }
+        try {
+            repository.markDone(messageId);
+        } catch (Exception e) {
+            // Handler đã chạy xong; chỉ mất dấu, message có thể được xử lý lại sau processing timeout
+            log.warn("Could not mark message {} on topic {} as processed: {}", messageId, topic, e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean claim(String topic, String messageId) {
+        if (repository.insertProcessing(messageId, topic)) {
+            return true;
+        }
+        // Dòng đã có: DONE hoặc đang được node khác xử lý thì bỏ qua, chỉ nhận lại claim đã quá hạn
+        return repository.takeOverStale(messageId, processingTimeoutSeconds);
+    }
+
+    private void release(String messageId) {
+        try {
+            repository.delete(messageId);
+        } catch (Exception e) {
+            log.warn("Could not release claim on message {}: {}", messageId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:3600000}", initialDelayString = "${idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        try {
+            int purged = 0;
+            int batch;
+            do {
+                batch = repository.deleteOlderThan(retentionHours, PURGE_BATCH_SIZE);
+                purged += batch;
+            } while (batch == PURGE_BATCH_SIZE);
+            if (purged > 0) {
+                log.info("Purged {} processed message records older than {} hours", purged, retentionHours);
+            }
+        } catch (Exception e) {
+            log.error("Processed message purge failed: ", e);
+        }
+    }
+
+    private static String messageId(String topic, String key, String transactionId) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update(topic.getBytes(StandardCharsets.UTF_8));
+            md5.update((byte) 0);
+            md5.update(String.valueOf(key).getBytes(StandardCharsets.UTF_8));
+            md5.update((byte) 0);
+            md5.update(String.valueOf(transactionId).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(md5.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
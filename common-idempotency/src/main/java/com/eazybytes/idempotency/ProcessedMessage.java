@@ -0,0 +1,39 @@
+package com.eazybytes.idempotency;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row per Kafka message handled by a saga listener, keyed by a hash of (topic, key, transactionId).
+ * Rows are purged after the retention window; written through
+ * {@link ProcessedMessageRepository}.
+ */
+@Entity
+@Table(name = "processed_message", indexes = {
+        @Index(name = "idx_processed_message_updated", columnList = "updated_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedMessage {
+
+    @Id
+    @Column(name = "message_id", length = 32, columnDefinition = "CHAR(32)")
+    private String messageId;
+
+    @Column(name = "topic", nullable = false)
+    private String topic;
+
+    // PROCESSING khi đang xử lý, DONE khi handler đã chạy xong
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,54 @@
+package com.eazybytes.idempotency;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Claims and completions for processed_message.
+ *
+ * The primary key makes the INSERT IGNORE claim atomic across replicas. Times use the database
+ * clock (NOW(3)). Every call commits in its own transaction, so a claim is visible to other
+ * replicas immediately and is not rolled back together with the message handler.
+ */
+@Repository
+@RequiredArgsConstructor
+@Transactional(propagation = Propagation.REQUIRES_NEW)
+public class ProcessedMessageRepository {
+
+    static final String STATUS_PROCESSING = "PROCESSING";
+    static final String STATUS_DONE = "DONE";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public boolean insertProcessing(String messageId, String topic) {
+        return jdbcTemplate.update("INSERT IGNORE INTO processed_message (message_id, topic, status, updated_at) " +
+                "VALUES (?, ?, '" + STATUS_PROCESSING + "', NOW(3))", messageId, topic) == 1;
+    }
+
+    /**
+     * Re-claims a message whose claim is older than {@code timeoutSeconds} and never completed,
+     * i.e. the node handling it died before finishing.
+     */
+    public boolean takeOverStale(String messageId, int timeoutSeconds) {
+        return jdbcTemplate.update("UPDATE processed_message SET updated_at = NOW(3) " +
+                "WHERE message_id = ? AND status = '" + STATUS_PROCESSING + "' " +
+                "AND updated_at < NOW(3) - INTERVAL ? SECOND", messageId, timeoutSeconds) == 1;
+    }
+
+    public void markDone(String messageId) {
+        jdbcTemplate.update("UPDATE processed_message SET status = '" + STATUS_DONE + "', updated_at = NOW(3) " +
+                "WHERE message_id = ?", messageId);
+    }
+
+    public void delete(String messageId) {
+        jdbcTemplate.update("DELETE FROM processed_message WHERE message_id = ?", messageId);
+    }
+
+    public int deleteOlderThan(int retentionHours, int limit) {
+        return jdbcTemplate.update("DELETE FROM processed_message WHERE updated_at < NOW(3) - INTERVAL ? HOUR LIMIT ?",
+                retentionHours, limit);
+    }
+}
@@ -0,0 +1,170 @@
+package com.eazybytes.search;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Numeric shadow fields stored under {@code numericSpecs} in baseProduct documents.
+ *
+ * Spec fields are free text ("8 GB", "5.000 mAh", "6.7\""), which cannot be range-queried or sorted.
+ * Each supported (type, field) pair maps to a key such as {@code ram_gb} holding the value in a
+ * canonical unit. product-service writes these fields and inventory-service queries them for smart search.
+ */
+public final class NumericSpecs {
+
+    public static final String FIELD = "numericSpecs";
+
+    private static final Map<String, Double> GIGABYTES = Map.of("gb", 1.0, "tb", 1024.0, "mb", 1.0 / 1024);
+    private static final Map<String, Double> MILLIAMP_HOURS = Map.of("mah", 1.0);
+    private static final Map<String, Double> WATT_HOURS = Map.of("wh", 1.0);
+    private static final Map<String, Double> INCHES = Map.of("inch", 1.0, "inches", 1.0, "in", 1.0, "\"", 1.0, "″", 1.0, "′", 1.0);
+    private static final Map<String, Double> NITS = Map.of("nits", 1.0, "nit", 1.0, "cd/m²", 1.0, "cd/m2", 1.0);
+    private static final Map<String, Double> WATTS = Map.of("w", 1.0, "watt", 1.0);
+    private static final Map<String, Double> MEGAPIXELS = Map.of("mp", 1.0, "megapixel", 1.0);
+    private static final Map<String, Double> GIGAHERTZ = Map.of("ghz", 1.0, "mhz", 0.001);
+    private static final Map<String, Double> MEGAHERTZ = Map.of("mhz", 1.0, "mt/s", 1.0);
+    private static final Map<String, Double> HERTZ = Map.of("hz", 1.0);
+    private static final Map<String, Double> COUNT = Map.of("core", 1.0, "cores", 1.0, "nhân", 1.0,
+            "thread", 1.0, "threads", 1.0, "luồng", 1.0);
+    private static final Map<String, Double> HOURS = Map.of("giờ", 1.0, "h", 1.0, "hour", 1.0, "hours", 1.0,
+            "tiếng", 1.0, "phút", 1.0 / 60);
+    private static final Map<String, Double> GRAMS = Map.of("g", 1.0, "gram", 1.0, "grams", 1.0, "gr", 1.0, "kg", 1000.0);
+    private static final Map<String, Double> METERS = Map.of("m", 1.0, "meter", 1.0, "mét", 1.0, "cm", 0.01, "mm", 0.001);
+
+    private static final Map<String, Map<String, Spec>> SPECS = Map.of(
+        "phone", Map.of(
+            "batteryCapacity", new Spec("batteryCapacity_mah", MILLIAMP_HOURS),
+            "ram", new Spec("ram_gb", GIGABYTES),
+            "storage", new Spec("storage_gb", GIGABYTES),
+            "availableStorage", new Spec("availableStorage_gb", GIGABYTES),
+            "screenSize", new Spec("screenSize_inch", INCHES),
+            "maxBrightness", new Spec("maxBrightness_nits", NITS),
+            "maxChargingPower", new Spec("maxChargingPower_w", WATTS),
+            "rearCameraResolution", new Spec("rearCameraResolution_mp", MEGAPIXELS),
+            "frontCameraResolution", new Spec("frontCameraResolution_mp", MEGAPIXELS)
+        ),
+        "laptop", Map.ofEntries(
+            Map.entry("ram", new Spec("ram_gb", GIGABYTES)),
+            Map.entry("maxRam", new Spec("maxRam_gb", GIGABYTES)),
+            Map.entry("storage", new Spec("storage_gb", GIGABYTES)),
+            Map.entry("battery", new Spec("battery_wh", WATT_HOURS)),
+            Map.entry("screenSize", new Spec("screenSize_inch", INCHES)),
+            Map.entry("refreshRate", new Spec("refreshRate_hz", HERTZ)),
+            Map.entry("coreCount", new Spec("coreCount_count", COUNT, true)),
+            Map.entry("threadCount", new Spec("threadCount_count", COUNT, true)),
+            Map.entry("cpuSpeed", new Spec("cpuSpeed_ghz", GIGAHERTZ)),
+            Map.entry("maxCpuSpeed", new Spec("maxCpuSpeed_ghz", GIGAHERTZ)),
+            Map.entry("ramBusSpeed", new Spec("ramBusSpeed_mhz", MEGAHERTZ))
+        ),
+        "wireless_earphone", Map.of(
+            "batteryLife", new Spec("batteryLife_h", HOURS),
+            "chargingCaseBatteryLife", new Spec("chargingCaseBatteryLife_h", HOURS),
+            "weight", new Spec("weight_g", GRAMS)
+        ),
+        "wired_earphone", Map.of(
+            "weight", new Spec("weight_g", GRAMS),
+            "cableLength", new Spec("cableLength_m", METERS)
+        ),
+        "headphone", Map.of(
+            "batteryLife", new Spec("batteryLife_h", HOURS),
+            "weight", new Spec("weight_g", GRAMS)
+        ),
+        "backup_charger", Map.of(
+            "batteryCapacity", new Spec("batteryCapacity_mah", MILLIAMP_HOURS),
+            "weight", new Spec("weight_g", GRAMS)
+        )
+    );
+
+    // A number, optionally followed by a unit token: "5.000 mAh", "6,7\"", "50MP", "2.4 GHz"
+    private static final Pattern VALUE_WITH_UNIT =
+            Pattern.compile("(\\d+(?:[.,]\\d+)*)\\s*([\\p{L}/²\"″′]+)?");
+    private static final Pattern THOUSANDS = Pattern.compile("\\d{1,3}(?:[.,]\\d{3})+");
+
+    private NumericSpecs() {
+    }
+
+    public static Map<String, Spec> forType(String type) {
+        return type == null ? Map.of() : SPECS.getOrDefault(type.toLowerCase(), Map.of());
+    }
+
+    public static Spec find(String type, String field) {
+        return forType(type).get(field);
+    }
+
+    public static Set<String> allKeys() {
+        Set<String> keys = new LinkedHashSet<>();
+        SPECS.values().forEach(specs -> specs.values().forEach(spec -> keys.add(spec.key())));
+        return keys;
+    }
+
+    /**
+     * Parses a spec value (a String, a Number or a collection of Strings) into the spec's canonical unit.
+     * When several quantities are present ("Chính 50 MP & Phụ 12 MP") the largest one wins.
+     *
+     * @param allowBareNumber accept numbers without a unit as already being in the canonical unit
+     */
+    public static Double parse(Spec spec, Object value, boolean allowBareNumber) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Collection) {
+            Double max = null;
+            for (Object item : (Collection<?>) value) {
+                Double parsed = parse(spec, item, allowBareNumber);
+                if (parsed != null && (max == null || parsed > max)) {
+                    max = parsed;
+                }
+            }
+            return max;
+        }
+
+        Double max = null;
+        Matcher matcher = VALUE_WITH_UNIT.matcher(value.toString());
+        while (matcher.find()) {
+            String unit = matcher.group(2);
+            Double factor = unit != null ? spec.units().get(unit.toLowerCase()) : null;
+            if (factor == null && (allowBareNumber || (unit == null && spec.bareNumberAllowed()))) {
+                factor = 1.0;
+            }
+            if (factor == null) {
+                continue;
+            }
+            double parsed = parseNumber(matcher.group(1)) * factor;
+            if (max == null || parsed > max) {
+                max = parsed;
+            }
+        }
+        return max;
+    }
+
+    // "5.000" và "1,500" là dấu phân cách hàng nghìn; "6.7" và "6,7" là số thập phân
+    private static double parseNumber(String number) {
+        if (THOUSANDS.matcher(number).matches()) {
+            return Double.parseDouble(number.replace(".", "").replace(",", ""));
+        }
+        return Double.parseDouble(number.replace(',', '.'));
+    }
+
+    /**
+     * @param key               key under {@link #FIELD}, suffixed with the canonical unit
+     * @param units             accepted unit tokens (lower-case) and their factor to the canonical unit
+     * @param bareNumberAllowed whether stored values may omit the unit, e.g. coreCount "8"
+     */
+    public record Spec(String key, Map<String, Double> units, boolean bareNumberAllowed) {
+
+        Spec(String key, Map<String, Double> units) {
+            this(key, units, false);
+        }
+
+        public String path() {
+            return FIELD + "." + key;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.eazybytes.search;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Accent folding for the baseProduct {@code searchText} field.
+ *
+ * Mongo's text index (v3) drops most diacritics but keeps "đ" as its own letter, so "dien thoai"
+ * would never match "Điện thoại". product-service stores searchText folded with {@link #fold} and
+ * inventory-service folds query keywords the same way.
+ */
+public final class VietnameseText {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private VietnameseText() {
+    }
+
+    // "Điện Thoại" -> "dien thoai"
+    public static String fold(String value) {
+        if (value == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        String folded = COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                .replace('đ', 'd')
+                .replace('Đ', 'D');
+        return folded.toLowerCase(Locale.ROOT).trim();
+    }
+}
@@ -1,5 +1,7 @@
 package com.eazybytes.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -7,17 +9,24 @@ import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
 import org.springframework.kafka.listener.CommonErrorHandler;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -30,6 +39,43 @@ public class KafkaConfig {
     @Value("${spring.kafka.consumer.group-id:inventory-service-group}")
     private String groupId;
 
+    @Value("${kafka.topics.reserve-inventory-request}")
+    private String reserveInventoryRequestTopic;
+
+    @Value("${kafka.topics.confirm-inventory-reservation}")
+    private String confirmInventoryReservationTopic;
+
+    @Value("${kafka.topics.cancel-inventory-reservation}")
+    private String cancelInventoryReservationTopic;
+
+    @Value("${kafka.topics.inventory.changed:inventory-changed}")
+    private String inventoryChangedTopic;
+
+    // Số partition của các topic request; concurrency lớn hơn số partition thì thread thừa sẽ ngồi không
+    @Value("${kafka.topics.partitions:6}")
+    private int partitions;
+
+    @Value("${kafka.topics.replication-factor:1}")
+    private short replicationFactor;
+
+    @Value("${kafka.consumer.concurrency:6}")
+    private int concurrency;
+
+    @Value("${kafka.retry.attempts:4}")
+    private int retryAttempts;
+
+    @Value("${kafka.retry.initial-delay-ms:1000}")
+    private long retryInitialDelayMs;
+
+    @Value("${kafka.retry.max-delay-ms:30000}")
+    private long retryMaxDelayMs;
+
+    private final MeterRegistry meterRegistry;
+
+    public KafkaConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     // Producer Configuration
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
@@ -81,18 +127,73 @@ public class KafkaConfig {
                 "com.eazybytes.event.model.CancelInventoryReservationRequest:com.eazybytes.dto.CancelInventoryReservationRequest," +
                 "CancelInventoryReservationRequest:com.eazybytes.dto.CancelInventoryReservationRequest");
         
-        return new DefaultKafkaConsumerFactory<>(props);
+        DefaultKafkaConsumerFactory<String, Object> factory = new DefaultKafkaConsumerFactory<>(props);
+        // Metric của Kafka client (kafka.consumer.fetch.manager.records.lag...) theo topic/partition
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
+    }
+
+    // Các record được key theo orderId: cùng đơn hàng luôn vào cùng partition, khác đơn hàng xử lý song song
+    @Bean
+    public NewTopic reserveInventoryRequestTopic() {
+        return TopicBuilder.name(reserveInventoryRequestTopic).partitions(partitions).replicas(replicationFactor).build();
+    }
+
+    @Bean
+    public NewTopic confirmInventoryReservationTopic() {
+        return TopicBuilder.name(confirmInventoryReservationTopic).partitions(partitions).replicas(replicationFactor).build();
+    }
+
+    @Bean
+    public NewTopic cancelInventoryReservationTopic() {
+        return TopicBuilder.name(cancelInventoryReservationTopic).partitions(partitions).replicas(replicationFactor).build();
+    }
+
+    // Key theo productId; cart-service dùng để xóa snapshot tồn kho trong near-cache
+    @Bean
+    public NewTopic inventoryChangedTopic() {
+        return TopicBuilder.name(inventoryChangedTopic).partitions(partitions).replicas(replicationFactor).build();
+    }
+
+    /**
+     * Non-blocking retries for the saga request topics: a message failing with a transient error
+     * (deadlock, lock timeout, lost connection) is republished to <topic>-retry-N with exponential
+     * backoff and finally to <topic>-dlt, so the partition keeps moving. Other errors are not
+     * retried and go straight to the DLT handler.
+     */
+    @Bean
+    public RetryTopicConfiguration inventoryRequestRetryTopics(KafkaTemplate<String, Object> kafkaTemplate) {
+        return RetryTopicConfigurationBuilder
+                .newInstance()
+                .includeTopics(List.of(reserveInventoryRequestTopic, confirmInventoryReservationTopic,
+                        cancelInventoryReservationTopic))
+                .maxAttempts(retryAttempts)
+                .exponentialBackoff(retryInitialDelayMs, 2.0, retryMaxDelayMs)
+                .retryOn(List.of(TransientDataAccessException.class, RecoverableDataAccessException.class,
+                        CannotCreateTransactionException.class))
+                .traversingCauses()
+                .suffixTopicsWithIndexValues()
+                .autoCreateTopicsWith(partitions, replicationFactor)
+                .dltHandlerMethod("inventoryConsumerEvent", "handleDeadLetter")
+                .listenerFactory("kafkaListenerContainerFactory")
+                .create(kafkaTemplate);
     }
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
-        factory.setConcurrency(1);
+        // Mỗi partition do đúng một thread xử lý nên thứ tự theo key (orderId) vẫn được giữ
+        factory.setConcurrency(concurrency);
+
+        // Timer spring.kafka.listener có thêm tag topic để theo dõi thời gian xử lý từng topic
+        factory.getContainerProperties().setMicrometerEnabled(true);
+        factory.getContainerProperties().setMicrometerTagsProvider(record -> Map.of("topic", record.topic()));
         
-        // Cấu hình xử lý lỗi với retry
+        // Listener không dùng retry topic (checkout-failed): không retry chặn thread, bỏ qua sau lần lỗi đầu
+        // Các topic request có retry topic riêng, xem inventoryRequestRetryTopics()
         CommonErrorHandler errorHandler = new DefaultErrorHandler(
-            new FixedBackOff(1000L, 3)  // Retry 3 lần, mỗi lần cách nhau 1 giây
+            new FixedBackOff(0L, 0)
         );
         factory.setCommonErrorHandler(errorHandler);
         
@@ -1,23 +1,21 @@
 package com.eazybytes.controller;
 
 import com.eazybytes.dto.GroupDto;
-import com.eazybytes.dto.GroupProductDto;
 import com.eazybytes.dto.GroupWithProductsDto;
 import com.eazybytes.dto.InventoryDto;
 import com.eazybytes.model.Group;
-import com.eazybytes.model.GroupProduct;
 import com.eazybytes.repository.GroupRepository;
 import com.eazybytes.service.GroupService;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.TypedQuery;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.*;
 
@@ -35,9 +33,6 @@ public class GroupController {
     @Autowired
     private GroupRepository groupRepository;
 
-    @Autowired
-    private EntityManager entityManager;
-
     @GetMapping("/search")
     public ResponseEntity<List<GroupDto>> searchProducts(
             @RequestParam("query") String query
@@ -49,7 +44,7 @@ public class GroupController {
 
     @GetMapping("/get")
     public ResponseEntity<List<GroupWithProductsDto>> getGroupsWithProducts(
-            @RequestParam String groupIds) {
+            @RequestParam String groupIds, WebRequest webRequest) {
 
         try {
             // 1. Parse chuỗi "1,2,3" thành List<Integer>
@@ -63,51 +58,16 @@ public class GroupController {
                 return ResponseEntity.badRequest().body(Collections.emptyList());
             }
 
-            // 2. Query database để lấy tất cả GroupProduct thuộc các groupIds
-            TypedQuery<GroupProduct> query = entityManager.createQuery(
-                    "SELECT gp FROM GroupProduct gp WHERE gp.groupId IN :groupIds",
-                    GroupProduct.class
-            );
-            query.setParameter("groupIds", ids);
-            List<GroupProduct> groupProducts = query.getResultList();
-
-            // 3. Nhóm sản phẩm theo groupId
-            Map<Integer, List<GroupProduct>> productsByGroupId = groupProducts.stream()
-                    .collect(Collectors.groupingBy(GroupProduct::getGroupId));
-
-            // 4. Tạo response cho từng group
-            List<GroupWithProductsDto> response = ids.stream().map(groupId -> {
-                // Lấy danh sách sản phẩm của group hiện tại
-                List<GroupProduct> products = productsByGroupId.getOrDefault(groupId, Collections.emptyList());
-
-                // Chuyển đổi sang DTO
-                List<GroupProductDto> productDtos = products.stream()
-                        .map(gp -> GroupProductDto.builder()
-                                .productId(gp.getProductId())
-                                .variant(gp.getVariant())
-                                .orderNumber(gp.getOrderNumber())
-                                .productName(gp.getProductName())
-                                .defaultOriginalPrice(gp.getDefaultOriginalPrice())
-                                .defaultCurrentPrice(gp.getDefaultCurrentPrice())
-                                .defaultColor(gp.getDefaultColor())
-                                .build())
-                        .collect(Collectors.toList());
-                Group group = groupRepository.getById(groupId);
-                // Tạo GroupDto (chỉ chứa groupId nếu không có thông tin khác)
-                GroupDto groupDto = GroupDto.builder()
-                        .groupId(group.getGroupId())
-                        .orderNumber(group.getOrderNumber())
-                        .image(group.getImage())
-                        .type(group.getType())
-                        .build();
-
-                return GroupWithProductsDto.builder()
-                        .groupDto(groupDto)
-                        .products(productDtos)
-                        .build();
-            }).collect(Collectors.toList());
+            // 2. ETag từ version của các group; client gửi If-None-Match trùng thì trả 304, không load dữ liệu
+            String etag = groupService.getGroupsEtag(ids);
+            if (webRequest.checkNotModified(etag)) {
+                return null; // checkNotModified đã set 304 và header ETag
+            }
+
+            // 3. Lấy groups và products trong một query, giữ thứ tự ids được yêu cầu
+            List<GroupWithProductsDto> response = groupService.getGroupsWithProducts(ids);
 
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(etag).body(response);
 
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().body(Collections.emptyList());
@@ -138,41 +98,15 @@ public class GroupController {
                     ? Arrays.asList(brand.split(","))
                     : Collections.emptyList();
 
-            // Lấy toàn bộ dữ liệu đã lọc để tính tổng số phần tử
-            List<GroupWithProductsDto> allFilteredGroups = groupService.getAllProductsByGroup(
-                    0, Integer.MAX_VALUE, type, tagList, brandList, sortByPrice, minPrice, maxPrice, searchQuery);
-
-            // Sắp xếp dữ liệu - chỉ sắp xếp theo orderNumber khi không có sortByPrice
-            // Khi có sortByPrice (cả "asc" và "desc"), service đã xử lý sắp xếp theo giá
-            if (sortByPrice == null || sortByPrice.isEmpty()) {
-                // Không có sortByPrice: sắp xếp theo orderNumber tăng dần (orderNumber nhỏ nhất ưu tiên hiển thị trước)
-                allFilteredGroups.sort((g1, g2) -> {
-                    Integer order1 = (g1.getGroupDto() != null) ? g1.getGroupDto().getOrderNumber() : null;
-                    Integer order2 = (g2.getGroupDto() != null) ? g2.getGroupDto().getOrderNumber() : null;
-                    // Xử lý trường hợp null - đặt null cuối cùng
-                    if (order1 == null && order2 == null) return 0;
-                    if (order1 == null) return 1;
-                    if (order2 == null) return -1;
-                    return order1.compareTo(order2);
-                });
-            }
-            // Khi có sortByPrice ("asc" hoặc "desc"), giữ nguyên thứ tự đã được service sắp xếp theo giá
-
-            // Tính toán phân trang
-            int totalElements = allFilteredGroups.size();
-            int totalPages = (int) Math.ceil((double) totalElements / size);
-            
-            // Cắt dữ liệu theo trang hiện tại
-            int startIndex = page * size;
-            int endIndex = Math.min(startIndex + size, totalElements);
-            List<GroupWithProductsDto> pagedGroups = (startIndex < totalElements) 
-                ? allFilteredGroups.subList(startIndex, endIndex)
-                : Collections.emptyList();
+            // Sắp xếp (theo giá hoặc orderNumber) và phân trang đều do service xử lý,
+            // chỉ trang hiện tại được dựng thành DTO
+            Page<GroupWithProductsDto> pagedGroups = groupService.getProductsByGroupPage(
+                    page, size, type, tagList, brandList, sortByPrice, minPrice, maxPrice, searchQuery);
 
             Map<String, Object> response = new LinkedHashMap<>();
-            response.put("content", pagedGroups);
-            response.put("totalElements", totalElements);
-            response.put("totalPages", totalPages);
+            response.put("content", pagedGroups.getContent());
+            response.put("totalElements", (int) pagedGroups.getTotalElements());
+            response.put("totalPages", pagedGroups.getTotalPages());
             response.put("currentPage", page);
             response.put("pageSize", size);
 
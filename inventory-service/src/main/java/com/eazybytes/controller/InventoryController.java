@@ -1,6 +1,7 @@
 package com.eazybytes.controller;
 
 import com.eazybytes.dto.InventoryDto;
+import com.eazybytes.dto.InventoryLookupItem;
 import com.eazybytes.dto.VariantDto;
 import com.eazybytes.dto.GroupVariantResponseDto;
 import com.eazybytes.exception.InventoryAlreadyExistsException;
@@ -24,6 +25,8 @@ import java.util.List;
 @Slf4j
 public class InventoryController {
 
+    private static final int MAX_LOOKUP_ITEMS = 500;
+
     private final InventoryService inventoryService;
     private final GroupService groupService;
 
@@ -70,6 +73,15 @@ public class InventoryController {
         return ResponseEntity.ok(inventoryDto);
     }
 
+    // Cả giỏ hàng trong một request thay vì một GET /product cho mỗi dòng; phần tử null = không có tồn kho
+    @PostMapping("/products/lookup")
+    public ResponseEntity<List<InventoryDto>> getInventories(@RequestBody List<InventoryLookupItem> items) {
+        if (items.size() > MAX_LOOKUP_ITEMS) {
+            log.warn("Rejected inventory lookup with {} items (max {})", items.size(), MAX_LOOKUP_ITEMS);
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(inventoryService.getProductInventories(items));
+    }
 
     @PostMapping("/create")
     @PreAuthorize("@roleChecker.hasRole('ADMIN')")
@@ -0,0 +1,18 @@
+package com.eazybytes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One (productId, color) pair in a batch inventory lookup; a null or empty color means "default".
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryLookupItem {
+    private String productId;
+    private String color;
+}
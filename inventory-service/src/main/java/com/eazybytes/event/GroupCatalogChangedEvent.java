@@ -0,0 +1,37 @@
+package com.eazybytes.event;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * In-process event published whenever groups, their products or their tags change.
+ * A null {@code groupIds} means the change cannot be narrowed down to specific groups
+ * (e.g. a tag was renamed) and listeners should reload everything.
+ */
+@Getter
+public class GroupCatalogChangedEvent {
+
+    private final Collection<Integer> groupIds;
+
+    private GroupCatalogChangedEvent(Collection<Integer> groupIds) {
+        this.groupIds = groupIds;
+    }
+
+    public static GroupCatalogChangedEvent forGroup(Integer groupId) {
+        return new GroupCatalogChangedEvent(List.of(groupId));
+    }
+
+    public static GroupCatalogChangedEvent forGroups(Collection<Integer> groupIds) {
+        return new GroupCatalogChangedEvent(List.copyOf(groupIds));
+    }
+
+    public static GroupCatalogChangedEvent all() {
+        return new GroupCatalogChangedEvent(null);
+    }
+
+    public boolean isFullReload() {
+        return groupIds == null;
+    }
+}
@@ -0,0 +1,35 @@
+package com.eazybytes.event;
+
+import com.eazybytes.event.model.InventoryChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Forwards {@link InventoryChangedEvent}s from InventoryService to Kafka once the change is committed,
+ * so a rolled-back reservation never invalidates anything. Losing one is tolerable: readers keep
+ * their snapshots only for a short TTL.
+ */
+@Component
+public class InventoryChangePublisher {
+    private static final Logger logger = LoggerFactory.getLogger(InventoryChangePublisher.class);
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Value("${kafka.topics.inventory.changed:inventory-changed}")
+    private String inventoryChangedTopic;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(InventoryChangedEvent event) {
+        try {
+            kafkaTemplate.send(inventoryChangedTopic, event.getProductId(), event);
+        } catch (Exception e) {
+            logger.warn("Failed to publish inventory change for product {}: {}", event.getProductId(), e.getMessage());
+        }
+    }
+}
@@ -9,18 +9,25 @@ import com.eazybytes.event.model.InventoryReservationFailedEvent;
 import com.eazybytes.event.model.InventoryReservedEvent;
 import com.eazybytes.model.InventoryReservation;
 import com.eazybytes.service.InventoryService;
+import com.eazybytes.idempotency.MessageIdempotencyService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -41,19 +48,105 @@ public class InventoryConsumerEvent {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MessageIdempotencyService idempotencyService;
+
+    @Value("${kafka.topics.reserve-inventory-request}")
+    private String reserveInventoryRequestTopic;
+
+    @Value("${kafka.topics.confirm-inventory-reservation}")
+    private String confirmInventoryReservationTopic;
+
+    @Value("${kafka.topics.cancel-inventory-reservation}")
+    private String cancelInventoryReservationTopic;
+
+    // Mỗi topic một listener (container riêng): một đơn giữ hàng chậm không chặn confirm/cancel.
+    // Lỗi tạm thời được ném ra để chuyển sang retry topic, xem KafkaConfig.inventoryRequestRetryTopics()
     @KafkaListener(
-            topics = {
-                    "${kafka.topics.reserve-inventory-request}",
-                    "${kafka.topics.confirm-inventory-reservation}",
-                    "${kafka.topics.cancel-inventory-reservation}"
-            },
+            id = "reserve-inventory-request-listener",
+            topics = "${kafka.topics.reserve-inventory-request}",
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "kafkaListenerContainerFactory"
     )
-    public void consumeRequest(
+    public void consumeReserveRequest(
+                              @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                              @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+                              Acknowledgment acknowledgment,
+                              @Payload Object payload) {
+        consumeRequest(reserveInventoryRequestTopic, topic, key, acknowledgment, payload);
+    }
+
+    @KafkaListener(
+            id = "confirm-inventory-reservation-listener",
+            topics = "${kafka.topics.confirm-inventory-reservation}",
+            groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = "kafkaListenerContainerFactory"
+    )
+    public void consumeConfirmRequest(
+                              @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                              @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+                              Acknowledgment acknowledgment,
+                              @Payload Object payload) {
+        consumeRequest(confirmInventoryReservationTopic, topic, key, acknowledgment, payload);
+    }
+
+    @KafkaListener(
+            id = "cancel-inventory-reservation-listener",
+            topics = "${kafka.topics.cancel-inventory-reservation}",
+            groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = "kafkaListenerContainerFactory"
+    )
+    public void consumeCancelRequest(
+                              @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                              @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+                              Acknowledgment acknowledgment,
+                              @Payload Object payload) {
+        consumeRequest(cancelInventoryReservationTopic, topic, key, acknowledgment, payload);
+    }
+
+    /**
+     * Called for a record that exhausted its retry topics or failed with a non-retryable error.
+     * A reserve request still gets a failed event so the order saga does not wait forever.
+     */
+    public void handleDeadLetter(
                               @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
                               Acknowledgment acknowledgment,
                               @Payload Object payload) {
+        Object actualPayload = payload instanceof org.apache.kafka.clients.consumer.ConsumerRecord
+                ? ((org.apache.kafka.clients.consumer.ConsumerRecord<?, ?>) payload).value()
+                : payload;
+        logger.error("[DLT] Giving up on message from topic {}: {}", topic, actualPayload);
+        meterRegistry.counter("inventory.kafka.dead.letters", "topic", topic).increment();
+
+        try {
+            if (topic.startsWith(reserveInventoryRequestTopic) && actualPayload != null) {
+                Map<String, Object> map = actualPayload instanceof String
+                        ? objectMapper.readValue((String) actualPayload, new TypeReference<Map<String, Object>>() {})
+                        : objectMapper.convertValue(actualPayload, new TypeReference<Map<String, Object>>() {});
+                InventoryReservationFailedEvent failedEvent = InventoryReservationFailedEvent.builder()
+                        .transactionId(map.get("transactionId") != null ? map.get("transactionId").toString() : null)
+                        .orderId(map.get("orderId") != null ? map.get("orderId").toString() : null)
+                        .reason("Failed to reserve inventory: request could not be processed after retries")
+                        .build();
+                producer.sendInventoryEvent(failedEvent);
+            }
+        } catch (Exception e) {
+            logger.error("[DLT] Failed to publish failure for message from topic {}: {}", topic, e.getMessage(), e);
+        }
+
+        if (acknowledgment != null) {
+            acknowledgment.acknowledge();
+        }
+    }
+
+    /**
+     * @param requestTopic the listener's main topic; retry topics deliver the same message under another
+     *                     name, so duplicates are tracked against this one
+     */
+    private void consumeRequest(String requestTopic, String topic, String key, Acknowledgment acknowledgment, Object payload) {
         String messageId = UUID.randomUUID().toString().substring(0, 8); // Tạo ID ngắn để theo dõi message
         try {
             logger.info("[{}] Received payload from topic {}: {}", messageId, topic, payload);
@@ -68,54 +161,16 @@ public class InventoryConsumerEvent {
                 logger.info("[{}] Extracted actual payload from ConsumerRecord: {}", messageId, actualPayload);
             }
             
-            // Special handling for different topics
+            // Bản giao lại của message đã xử lý bị bỏ qua trước khi đọc bảng reservation
+            Object request = actualPayload;
             try {
-                if (topic.contains("cancel-inventory-reservation")) {
-                    handleCancelInventoryTopic(topic, actualPayload);
-                } else if (topic.contains("confirm-inventory-reservation")) {
-                    if (actualPayload instanceof ConfirmInventoryReservationRequest) {
-                        handleConfirmInventoryRequest((ConfirmInventoryReservationRequest) actualPayload);
-                    } else if (actualPayload instanceof Map) {
-                        // Xử lý Map payload cho confirm
-                        Map<String, Object> map = (Map<String, Object>) actualPayload;
-                        ConfirmInventoryReservationRequest request = convertMapToConfirmRequest(map);
-                        handleConfirmInventoryRequest(request);
-                    } else {
-                        logger.warn("[{}] Unknown payload type for confirm-inventory-reservation: {}", 
-                                messageId, actualPayload.getClass().getName());
-                    }
-                } else if (topic.contains("reserve-inventory-request")) {
-                    if (actualPayload instanceof ReserveInventoryRequest) {
-                        handleReserveInventoryRequest((ReserveInventoryRequest) actualPayload);
-                    } else if (actualPayload instanceof Map) {
-                        // Xử lý Map payload cho reserve
-                        Map<String, Object> map = (Map<String, Object>) actualPayload;
-                        ReserveInventoryRequest request = convertMapToReserveRequest(map);
-                        handleReserveInventoryRequest(request);
-                    } else {
-                        logger.warn("[{}] Unknown payload type for reserve-inventory-request: {}", 
-                                messageId, actualPayload.getClass().getName());
-                    }
-                } else {
-                    // Fallback xử lý dựa vào kiểu payload
-                    if (actualPayload instanceof ReserveInventoryRequest) {
-                        handleReserveInventoryRequest((ReserveInventoryRequest) actualPayload);
-                    } else if (actualPayload instanceof ConfirmInventoryReservationRequest) {
-                        handleConfirmInventoryRequest((ConfirmInventoryReservationRequest) actualPayload);
-                    } else if (actualPayload instanceof CancelInventoryReservationRequest) {
-                        handleCancelInventoryRequest((CancelInventoryReservationRequest) actualPayload);
-                    } else if (actualPayload instanceof Map) {
-                        // Trường hợp nó đến dưới dạng Map (thường là từ JSON)
-                        handleMapPayload((Map<String, Object>) actualPayload, topic);
-                    } else if (actualPayload instanceof String) {
-                        // Trường hợp nó đến dưới dạng String
-                        handleStringPayload((String) actualPayload, topic);
-                    } else {
-                        logger.warn("[{}] Unknown payload type: {} on topic {}", 
-                                messageId, actualPayload.getClass().getName(), topic);
-                    }
+                boolean processed = idempotencyService.processOnce(requestTopic, key, transactionIdOf(request),
+                        () -> dispatchRequest(messageId, topic, request));
+                if (!processed) {
+                    meterRegistry.counter("inventory.kafka.duplicates", "topic", requestTopic).increment();
                 }
             } catch (Exception e) {
+                rethrowIfRetryable(e);
                 logger.error("[{}] Error processing message content: {}", messageId, e.getMessage(), e);
                 // Không throw exception ra ngoài để đảm bảo message được acknowledge
             }
@@ -126,6 +181,7 @@ public class InventoryConsumerEvent {
                 logger.debug("[{}] Message acknowledged on topic {}", messageId, topic);
             }
         } catch (Exception e) {
+            rethrowIfRetryable(e);
             logger.error("[{}] Critical error processing message on topic {}: {}", 
                     messageId, topic, e.getMessage(), e);
             
@@ -137,6 +193,54 @@ public class InventoryConsumerEvent {
         }
     }
 
+    private void dispatchRequest(String messageId, String topic, Object actualPayload) {
+        if (topic.contains("cancel-inventory-reservation")) {
+            handleCancelInventoryTopic(topic, actualPayload);
+        } else if (topic.contains("confirm-inventory-reservation")) {
+            if (actualPayload instanceof ConfirmInventoryReservationRequest) {
+                handleConfirmInventoryRequest((ConfirmInventoryReservationRequest) actualPayload);
+            } else if (actualPayload instanceof Map) {
+                // Xử lý Map payload cho confirm
+                Map<String, Object> map = (Map<String, Object>) actualPayload;
+                ConfirmInventoryReservationRequest request = convertMapToConfirmRequest(map);
+                handleConfirmInventoryRequest(request);
+            } else {
+                logger.warn("[{}] Unknown payload type for confirm-inventory-reservation: {}", 
+                        messageId, actualPayload.getClass().getName());
+            }
+        } else if (topic.contains("reserve-inventory-request")) {
+            if (actualPayload instanceof ReserveInventoryRequest) {
+                handleReserveInventoryRequest((ReserveInventoryRequest) actualPayload);
+            } else if (actualPayload instanceof Map) {
+                // Xử lý Map payload cho reserve
+                Map<String, Object> map = (Map<String, Object>) actualPayload;
+                ReserveInventoryRequest request = convertMapToReserveRequest(map);
+                handleReserveInventoryRequest(request);
+            } else {
+                logger.warn("[{}] Unknown payload type for reserve-inventory-request: {}", 
+                        messageId, actualPayload.getClass().getName());
+            }
+        } else {
+            // Fallback xử lý dựa vào kiểu payload
+            if (actualPayload instanceof ReserveInventoryRequest) {
+                handleReserveInventoryRequest((ReserveInventoryRequest) actualPayload);
+            } else if (actualPayload instanceof ConfirmInventoryReservationRequest) {
+                handleConfirmInventoryRequest((ConfirmInventoryReservationRequest) actualPayload);
+            } else if (actualPayload instanceof CancelInventoryReservationRequest) {
+                handleCancelInventoryRequest((CancelInventoryReservationRequest) actualPayload);
+            } else if (actualPayload instanceof Map) {
+                // Trường hợp nó đến dưới dạng Map (thường là từ JSON)
+                handleMapPayload((Map<String, Object>) actualPayload, topic);
+            } else if (actualPayload instanceof String) {
+                // Trường hợp nó đến dưới dạng String
+                handleStringPayload((String) actualPayload, topic);
+            } else {
+                logger.warn("[{}] Unknown payload type: {} on topic {}", 
+                        messageId, actualPayload.getClass().getName(), topic);
+            }
+        }
+    }
+
     @KafkaListener(
             topics = "${kafka.topics.checkout.failed}",
             groupId = "${spring.kafka.consumer.group-id}",
@@ -144,6 +248,8 @@ public class InventoryConsumerEvent {
     )
     public void consumeCheckoutFailedEvent(
                               @Payload Object payload,
+                              @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                              @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
                               Acknowledgment acknowledgment) {
         String messageId = UUID.randomUUID().toString().substring(0, 8);
         try {
@@ -206,8 +312,10 @@ public class InventoryConsumerEvent {
                         .build();
                 
                 logger.info("[{}] Processing inventory cancellation for failed checkout, orderId: {}", messageId, orderId);
-                inventoryService.cancelReservation(cancelRequest);
-                logger.info("[{}] Successfully cancelled inventory for failed order {}", messageId, orderId);
+                if (idempotencyService.processOnce(topic, key, transactionIdOf(eventMap),
+                        () -> inventoryService.cancelReservation(cancelRequest))) {
+                    logger.info("[{}] Successfully cancelled inventory for failed order {}", messageId, orderId);
+                }
             } else {
                 logger.warn("[{}] Received checkout failed event without orderId: {}", messageId, eventMap);
             }
@@ -333,59 +441,18 @@ public class InventoryConsumerEvent {
                 return;
             }
             
-            // Thử xử lý với retry logic đơn giản
-            int maxRetries = 3;
-            int retryCount = 0;
-            boolean success = false;
-            Exception lastException = null;
-            
-            while (retryCount < maxRetries && !success) {
-                try {
-                    inventoryService.reserveInventory(request);
-                    success = true;
-                } catch (Exception e) {
-                    lastException = e;
-                    logger.warn("Error on attempt {}/{}: {}", 
-                              retryCount + 1, maxRetries, e.getMessage());
-                    retryCount++;
-                    
-                    if (retryCount < maxRetries) {
-                        try {
-                            // Delay tăng dần theo số lần retry
-                            Thread.sleep(1000 * retryCount);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }
-                }
-            }
-            
-            if (success) {
-                InventoryReservedEvent event = InventoryReservedEvent.builder()
-                        .transactionId(request.getTransactionId())
-                        .orderId(request.getOrderId())
-                        .items(request.getItems())
-                        .build();
-                producer.sendInventoryEvent(event);
-                logger.info("Reserved inventory for order {}", request.getOrderId());
-            } else {
-                logger.error("Failed to reserve inventory for order {} after {} attempts: {}", 
-                          request.getOrderId(), retryCount, lastException != null ? lastException.getMessage() : "Unknown error");
-                
-                InventoryReservationFailedEvent failedEvent = InventoryReservationFailedEvent.builder()
-                        .transactionId(request.getTransactionId())
-                        .orderId(request.getOrderId())
-                        .items(request.getItems())
-                        .reason("Failed to reserve inventory after " + retryCount + " attempts: " + 
-                               (lastException != null ? lastException.getMessage() : "Unknown error"))
-                        .build();
-                producer.sendInventoryEvent(failedEvent);
-                
-                if (lastException != null) {
-                    throw new RuntimeException("Failed to process reserve inventory request", lastException);
-                }
-            }
+            // Không retry/sleep trong poll loop: lỗi tạm thời đi qua retry topic, lỗi nghiệp vụ trả failed event ngay
+            inventoryService.reserveInventory(request);
+
+            InventoryReservedEvent event = InventoryReservedEvent.builder()
+                    .transactionId(request.getTransactionId())
+                    .orderId(request.getOrderId())
+                    .items(request.getItems())
+                    .build();
+            producer.sendInventoryEvent(event);
+            logger.info("Reserved inventory for order {}", request.getOrderId());
         } catch (Exception e) {
+            rethrowIfRetryable(e);
             logger.error("Failed to reserve inventory for order {}: {}", request.getOrderId(), e.getMessage(), e);
             
             try {
@@ -399,8 +466,6 @@ public class InventoryConsumerEvent {
             } catch (Exception ex) {
                 logger.error("Also failed to send failed event: {}", ex.getMessage(), ex);
             }
-            
-            throw new RuntimeException("Failed to process reserve inventory request", e);
         }
     }
 
@@ -445,53 +510,18 @@ public class InventoryConsumerEvent {
                 return;
             }
             
-            // Xử lý với retry logic
-            int maxRetries = 3;
-            int retryCount = 0;
-            boolean success = false;
-            Exception lastException = null;
-            
-            while (retryCount < maxRetries && !success) {
-                try {
-                    inventoryService.confirmReservation(request);
-                    success = true;
-                    logger.info("Successfully confirmed inventory for order {}, attempt {}/{}", 
-                              request.getOrderId(), retryCount + 1, maxRetries);
-                } catch (Exception e) {
-                    lastException = e;
-                    logger.warn("Error confirming reservation on attempt {}/{} for order {}: {}", 
-                              retryCount + 1, maxRetries, request.getOrderId(), e.getMessage());
-                    retryCount++;
-                    
-                    if (retryCount < maxRetries) {
-                        try {
-                            // Delay tăng dần theo số lần retry
-                            Thread.sleep(1000 * retryCount);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }
-                }
-            }
-            
-            if (success) {
-                InventoryConfirmedEvent event = InventoryConfirmedEvent.builder()
-                        .transactionId(request.getTransactionId())
-                        .orderId(request.getOrderId())
-                        .items(request.getItems())
-                        .build();
-                producer.sendInventoryEvent(event);
-                logger.info("Confirmed inventory for order {}", request.getOrderId());
-            } else {
-                logger.error("Failed to confirm inventory for order {} after {} attempts: {}", 
-                          request.getOrderId(), retryCount, lastException != null ? lastException.getMessage() : "Unknown error");
-                
-                if (lastException != null) {
-                    throw new RuntimeException("Failed to process confirm inventory request after " + 
-                                             retryCount + " attempts", lastException);
-                }
-            }
+            // Lỗi tạm thời được ném ra để chuyển sang retry topic thay vì sleep trong poll loop
+            inventoryService.confirmReservation(request);
+
+            InventoryConfirmedEvent event = InventoryConfirmedEvent.builder()
+                    .transactionId(request.getTransactionId())
+                    .orderId(request.getOrderId())
+                    .items(request.getItems())
+                    .build();
+            producer.sendInventoryEvent(event);
+            logger.info("Confirmed inventory for order {}", request.getOrderId());
         } catch (Exception e) {
+            rethrowIfRetryable(e);
             logger.error("Failed to confirm inventory for order {}: {}", request.getOrderId(), e.getMessage(), e);
             
             try {
@@ -530,6 +560,7 @@ public class InventoryConsumerEvent {
             logger.info("Successfully cancelled inventory reservation for order {}", request.getOrderId());
             
         } catch (Exception e) {
+            rethrowIfRetryable(e);
             logger.error("Failed to cancel inventory for order {}: {}", request.getOrderId(), e.getMessage(), e);
             
             // Still acknowledge message (done at caller level) but log the error
@@ -680,4 +711,40 @@ public class InventoryConsumerEvent {
             throw new RuntimeException("Failed to convert map to ConfirmInventoryReservationRequest", e);
         }
     }
+
+    private String transactionIdOf(Object payload) {
+        if (payload instanceof String) {
+            // Payload chưa được deserialize; đọc transactionId từ JSON để không gộp các giao dịch cùng orderId
+            try {
+                JsonNode transactionId = objectMapper.readTree((String) payload).get("transactionId");
+                return transactionId != null && !transactionId.isNull() ? transactionId.asText() : null;
+            } catch (Exception e) {
+                return null;
+            }
+        } else if (payload instanceof ReserveInventoryRequest) {
+            return ((ReserveInventoryRequest) payload).getTransactionId();
+        } else if (payload instanceof ConfirmInventoryReservationRequest) {
+            return ((ConfirmInventoryReservationRequest) payload).getTransactionId();
+        } else if (payload instanceof CancelInventoryReservationRequest) {
+            return ((CancelInventoryReservationRequest) payload).getTransactionId();
+        } else if (payload instanceof Map) {
+            Object transactionId = ((Map<?, ?>) payload).get("transactionId");
+            return transactionId != null ? transactionId.toString() : null;
+        }
+        return null;
+    }
+
+    /**
+     * Rethrows errors worth retrying later (deadlocks, lock timeouts, lost DB connections) so the
+     * container hands the record to the next retry topic; anything else is left to the caller.
+     */
+    private static void rethrowIfRetryable(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof CannotCreateTransactionException) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.eazybytes.event;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * In-process event published after reservations are written, so the expiry wheel of this node
+ * can schedule their deadline without waiting for its next reload from the database.
+ */
+@Getter
+public class ReservationsCreatedEvent {
+
+    private final String orderId;
+    private final LocalDateTime expiresAt;
+
+    public ReservationsCreatedEvent(String orderId, LocalDateTime expiresAt) {
+        this.orderId = orderId;
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,19 @@
+package com.eazybytes.event.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Quantity, price or existence of a product's stock changed. Published after commit on the
+ * inventory-changed topic, keyed by productId, so other services can drop cached snapshots.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryChangedEvent {
+    private String productId;
+    private String color;
+}
@@ -0,0 +1,11 @@
+package com.eazybytes.exception;
+
+public class LLMUnavailableException extends RuntimeException {
+    public LLMUnavailableException(String message) {
+        super(message);
+    }
+
+    public LLMUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -13,7 +13,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "group_product")
+@Table(name = "group_product", indexes = {
+        @Index(name = "idx_group_type_brand", columnList = "type, brand")
+})
 @Data
 @Builder
 @NoArgsConstructor
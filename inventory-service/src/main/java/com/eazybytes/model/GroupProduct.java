@@ -9,7 +9,10 @@
     import java.util.List;
 
     @Entity
-    @Table(name = "group_product_junction")
+    @Table(name = "group_product_junction", indexes = {
+            @Index(name = "idx_gpj_group_order", columnList = "group_id, order_number"),
+            @Index(name = "idx_gpj_product", columnList = "product_id")
+    })
     @Data
     @Builder
     @NoArgsConstructor
@@ -10,7 +10,10 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "inventory_reservation")
+@Table(name = "inventory_reservation", indexes = {
+        @Index(name = "idx_reservation_order", columnList = "order_id"),
+        @Index(name = "idx_reservation_status_expires", columnList = "status, expires_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -34,8 +37,9 @@ public class InventoryReservation {
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
+    // VARCHAR thay vì ENUM của MySQL để thêm trạng thái mới không cần ALTER, xem ReservationStatusColumnMigration
     @Enumerated(EnumType.STRING)
-    @Column(name = "status", nullable = false)
+    @Column(name = "status", nullable = false, columnDefinition = "VARCHAR(20)")
     private ReservationStatus status;
 
     @Column(name = "expires_at", nullable = false)
@@ -48,6 +52,7 @@ public class InventoryReservation {
     public enum ReservationStatus {
         RESERVED, // Đang giữ hàng
         CONFIRMED, // Đã xác nhận (thanh toán thành công)
-        CANCELLED // Đã hủy (thanh toán thất bại hoặc timeout)
+        CANCELLED, // Đã hủy (thanh toán thất bại hoặc timeout)
+        RELEASE_FAILED // Hủy/hết hạn nhưng không hoàn được tồn kho (không còn bản ghi khớp), cần xử lý tay
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.eazybytes.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row per cluster-wide background job; the node whose lease has not run out is the only one
+ * running that job. Written through {@link com.eazybytes.repository.SchedulerLeaseRepository}.
+ */
+@Entity
+@Table(name = "scheduler_lease")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SchedulerLease {
+
+    @Id
+    @Column(name = "lease_name", length = 100)
+    private String leaseName;
+
+    @Column(name = "owner", length = 200)
+    private String owner;
+
+    @Column(name = "lease_until", nullable = false)
+    private LocalDateTime leaseUntil;
+}
@@ -9,7 +9,7 @@ import org.springframework.stereotype.Repository;
 import java.util.List;
 
 @Repository
-public interface GroupRepository extends JpaRepository<Group, Integer> {
+public interface GroupRepository extends JpaRepository<Group, Integer>, GroupRepositoryCustom {
 
     @Query("SELECT MAX(g.orderNumber) FROM Group g WHERE g.type = :type")
     Integer findMaxOrderNumberByType(@Param("type") String type);
@@ -55,6 +55,17 @@ public interface GroupRepository extends JpaRepository<Group, Integer> {
 
     @Query("SELECT g FROM Group g JOIN g.groupTags gt WHERE g.brand IN :brand AND gt.tag.tagName IN :tags GROUP BY g HAVING COUNT(DISTINCT gt.tag) = :tagCount")
     List<Group> findByAllTagsAndBrands(@Param("tags") List<String> tags, @Param("tagCount") Long tagCount, @Param("brand") List<String> brand);
+
+    // Rows of [Group, GroupProduct or null] for a batch of groups in one result set
+    @Query("SELECT g, gp FROM Group g LEFT JOIN GroupProduct gp ON g.groupId = gp.groupId " +
+           "WHERE g.groupId IN :groupIds ORDER BY g.groupId, gp.orderNumber")
+    List<Object[]> findGroupsWithProductsByGroupIdIn(@Param("groupIds") List<Integer> groupIds);
+
+    // Rows of [groupId, group updatedAt, product count, latest product updatedAt] used to build ETags
+    @Query("SELECT g.groupId, g.updatedAt, COUNT(gp), MAX(gp.updatedAt) FROM Group g " +
+           "LEFT JOIN GroupProduct gp ON g.groupId = gp.groupId " +
+           "WHERE g.groupId IN :groupIds GROUP BY g.groupId, g.updatedAt ORDER BY g.groupId")
+    List<Object[]> findGroupVersionsByGroupIdIn(@Param("groupIds") List<Integer> groupIds);
 <<<<<<< HEAD
 =======
 
@@ -0,0 +1,18 @@
+package com.eazybytes.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+public interface GroupRepositoryCustom {
+
+    /**
+     * Database-side listing for /api/group-variants/groups: applies type/ALL tags/ANY brand and the
+     * price bounds, sorts by the first in-range product's price ("asc"/"desc") or by group orderNumber,
+     * and returns only the group ids of the requested page plus the total count.
+     */
+    Page<Integer> findListingGroupIds(String type, List<String> tags, List<String> brands,
+                                      Integer minPrice, Integer maxPrice, String sortByPrice,
+                                      Pageable pageable);
+}
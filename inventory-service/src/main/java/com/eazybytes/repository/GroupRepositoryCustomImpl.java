@@ -0,0 +1,90 @@
+package com.eazybytes.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class GroupRepositoryCustomImpl implements GroupRepositoryCustom {
+
+    private static final String FROM_CLAUSE =
+            " FROM group_product g JOIN group_product_junction gp ON gp.group_id = g.group_id";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Integer> findListingGroupIds(String type, List<String> tags, List<String> brands,
+                                             Integer minPrice, Integer maxPrice, String sortByPrice,
+                                             Pageable pageable) {
+        Map<String, Object> params = new HashMap<>();
+        StringBuilder where = new StringBuilder(" WHERE gp.default_current_price IS NOT NULL");
+
+        if (type != null && !type.isEmpty()) {
+            where.append(" AND g.type = :type");
+            params.put("type", type);
+        }
+        if (brands != null && !brands.isEmpty()) {
+            where.append(" AND g.brand IN (:brands)");
+            params.put("brands", brands);
+        }
+        if (tags != null && !tags.isEmpty()) {
+            Set<String> distinctTags = new LinkedHashSet<>(tags);
+            where.append(" AND g.group_id IN (SELECT gt.group_id FROM group_tags gt JOIN tags t ON t.tag_id = gt.tag_id")
+                 .append(" WHERE t.tag_name IN (:tags) GROUP BY gt.group_id HAVING COUNT(DISTINCT t.tag_id) = :tagCount)");
+            params.put("tags", distinctTags);
+            params.put("tagCount", distinctTags.size());
+        }
+        if (minPrice != null) {
+            where.append(" AND gp.default_current_price >= :minPrice");
+            params.put("minPrice", minPrice);
+        }
+        if (maxPrice != null) {
+            where.append(" AND gp.default_current_price <= :maxPrice");
+            params.put("maxPrice", maxPrice);
+        }
+
+        Query countQuery = entityManager.createNativeQuery("SELECT COUNT(DISTINCT g.group_id)" + FROM_CLAUSE + where);
+        params.forEach(countQuery::setParameter);
+        long total = ((Number) countQuery.getSingleResult()).longValue();
+
+        if (total == 0 || pageable.getOffset() >= total) {
+            return new PageImpl<>(Collections.emptyList(), pageable, total);
+        }
+
+        // rn = 1 keeps the first in-range product of each group (by order_number), whose price is the sort key
+        String orderBy;
+        if ("asc".equalsIgnoreCase(sortByPrice)) {
+            orderBy = " ORDER BY ranked.sort_price ASC, ranked.group_id ASC";
+        } else if ("desc".equalsIgnoreCase(sortByPrice)) {
+            orderBy = " ORDER BY ranked.sort_price DESC, ranked.group_id ASC";
+        } else {
+            orderBy = " ORDER BY ranked.order_number ASC, ranked.group_id ASC";
+        }
+
+        String sql = "SELECT ranked.group_id FROM ("
+                + "SELECT g.group_id, g.order_number, gp.default_current_price AS sort_price, "
+                + "ROW_NUMBER() OVER (PARTITION BY g.group_id ORDER BY gp.order_number, gp.group_product_id) AS rn"
+                + FROM_CLAUSE + where
+                + ") ranked WHERE ranked.rn = 1"
+                + orderBy
+                + " LIMIT :limit OFFSET :offset";
+
+        Query pageQuery = entityManager.createNativeQuery(sql);
+        params.forEach(pageQuery::setParameter);
+        pageQuery.setParameter("limit", pageable.getPageSize());
+        pageQuery.setParameter("offset", pageable.getOffset());
+
+        List<?> rows = pageQuery.getResultList();
+        List<Integer> groupIds = rows.stream()
+                .map(row -> ((Number) row).intValue())
+                .collect(Collectors.toList());
+
+        return new PageImpl<>(groupIds, pageable, total);
+    }
+}
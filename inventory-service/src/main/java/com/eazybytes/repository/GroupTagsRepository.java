@@ -2,6 +2,8 @@ package com.eazybytes.repository;
 
 import com.eazybytes.model.GroupTags;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -10,4 +12,11 @@ public interface GroupTagsRepository extends JpaRepository<GroupTags, Integer> {
     boolean existsByGroup_GroupIdAndTag_TagId(Integer groupId, Integer tagId);
     void deleteByGroup_GroupIdAndTag_TagId(Integer groupId, Integer tagId);
     List<GroupTags> findByTagTagIdIn(List<Integer> tagIds);
-}
\ No newline at end of file
+
+    // Rows of [groupId, tagId, tagName] without hydrating GroupTags entities
+    @Query("SELECT gt.group.groupId, t.tagId, t.tagName FROM GroupTags gt JOIN gt.tag t")
+    List<Object[]> findAllGroupTagRows();
+
+    @Query("SELECT gt.group.groupId, t.tagId, t.tagName FROM GroupTags gt JOIN gt.tag t WHERE gt.group.groupId = :groupId")
+    List<Object[]> findGroupTagRowsByGroupId(@Param("groupId") Integer groupId);
+}
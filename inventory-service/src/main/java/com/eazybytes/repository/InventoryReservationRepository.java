@@ -1,9 +1,15 @@
 package com.eazybytes.repository;
 
 import com.eazybytes.model.InventoryReservation;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface InventoryReservationRepository extends JpaRepository<InventoryReservation, Long> {
@@ -14,4 +20,31 @@ public interface InventoryReservationRepository extends JpaRepository<InventoryR
     List<InventoryReservation> findByOrderId(String orderId);
     List<InventoryReservation> findByStatusAndExpiresAtBefore(
                InventoryReservation.ReservationStatus status, LocalDateTime expiresAt);
+
+    /**
+     * Same as {@link #findByOrderId} but takes row locks (SELECT ... FOR UPDATE), so concurrent
+     * confirm/cancel requests for one order are applied one after the other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM InventoryReservation r WHERE r.orderId = :orderId")
+    List<InventoryReservation> findByOrderIdForUpdate(@Param("orderId") String orderId);
+
+    /**
+     * Deadlines of RESERVED rows expiring before {@code until}, to fill the expiry wheel.
+     */
+    @Query("SELECT DISTINCT r.expiresAt FROM InventoryReservation r " +
+            "WHERE r.status = com.eazybytes.model.InventoryReservation.ReservationStatus.RESERVED AND r.expiresAt < :until")
+    List<LocalDateTime> findReservedExpiryTimesBefore(@Param("until") LocalDateTime until);
+
+    /**
+     * Locks up to {@code limit} expired RESERVED rows, skipping rows another instance already holds.
+     */
+    @Query(value = "SELECT * FROM inventory_reservation WHERE status = 'RESERVED' AND expires_at < :now " +
+            "ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<InventoryReservation> lockExpiredReservations(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE InventoryReservation r SET r.status = :status WHERE r.reservationId IN :reservationIds")
+    int updateStatusByReservationIdIn(@Param("reservationIds") Collection<Long> reservationIds,
+                                      @Param("status") InventoryReservation.ReservationStatus status);
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.eazybytes.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Stock writes that must not read-modify-write ProductInventory.
+ *
+ * Each line is a single conditional UPDATE; the row count is the success signal, so concurrent
+ * reservations never overwrite each other and never drive quantity below zero. Statements run
+ * through JdbcTemplate and therefore join the surrounding JPA transaction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class InventoryStockJdbcRepository {
+
+    // "default" khớp với bản ghi color NULL hoặc rỗng, giống các native query trong ProductInventoryRepository
+    static final String DECREASE_IF_AVAILABLE_SQL =
+            "UPDATE product_inventory SET quantity = quantity - ?, version = COALESCE(version, 0) + 1 " +
+            "WHERE product_id = ? AND " +
+            "CASE WHEN ? = 'default' THEN (color IS NULL OR color = '') ELSE color = ? END " +
+            "AND quantity >= ?";
+
+    static final String INCREASE_SQL =
+            "UPDATE product_inventory SET quantity = quantity + ?, version = COALESCE(version, 0) + 1 " +
+            "WHERE product_id = ? AND " +
+            "CASE WHEN ? = 'default' THEN (color IS NULL OR color = '') ELSE color = ? END";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record StockChange(String productId, String color, int quantity) {
+    }
+
+    /**
+     * Applies all decrements as one JDBC batch.
+     *
+     * @return rows affected per change, in input order; 0 means the row is missing or short of stock
+     */
+    public int[] decreaseIfAvailable(List<StockChange> changes) {
+        if (changes.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.batchUpdate(DECREASE_IF_AVAILABLE_SQL, changes, changes.size(), (ps, change) -> {
+            ps.setInt(1, change.quantity());
+            ps.setString(2, change.productId());
+            ps.setString(3, change.color());
+            ps.setString(4, change.color());
+            ps.setInt(5, change.quantity());
+        })[0];
+    }
+
+    /**
+     * Returns stock for all changes as one JDBC batch.
+     *
+     * @return rows affected per change, in input order; 0 means the inventory row no longer exists
+     */
+    public int[] increase(List<StockChange> changes) {
+        if (changes.isEmpty()) {
+            return new int[0];
+        }
+        return jdbcTemplate.batchUpdate(INCREASE_SQL, changes, changes.size(), (ps, change) -> {
+            ps.setInt(1, change.quantity());
+            ps.setString(2, change.productId());
+            ps.setString(3, change.color());
+            ps.setString(4, change.color());
+        })[0];
+    }
+}
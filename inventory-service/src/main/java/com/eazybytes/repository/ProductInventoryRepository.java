@@ -41,6 +41,15 @@ public interface ProductInventoryRepository extends JpaRepository<ProductInvento
             "CASE WHEN :color = 'default' THEN (color IS NULL OR color = '') ELSE color = :color END", nativeQuery = true)
     int increaseInventoryQuantity(@Param("productId") String productId, @Param("color") String color, @Param("quantityToAdd") Integer quantityToAdd);
 
+    // Trừ kho có điều kiện trong một câu lệnh: trả về 0 nếu không tồn tại hoặc không đủ hàng
+    @Modifying
+    @jakarta.transaction.Transactional
+    @Query(value = "UPDATE product_inventory SET quantity = quantity - :quantityToRemove, version = COALESCE(version, 0) + 1 " +
+            "WHERE product_id = :productId AND " +
+            "CASE WHEN :color = 'default' THEN (color IS NULL OR color = '') ELSE color = :color END " +
+            "AND quantity >= :quantityToRemove", nativeQuery = true)
+    int decreaseInventoryQuantityIfAvailable(@Param("productId") String productId, @Param("color") String color, @Param("quantityToRemove") Integer quantityToRemove);
+
     Optional<ProductInventory> findFirstByProductId(String productId);
 
     List<ProductInventory> findByProductId(String productId);
@@ -0,0 +1,105 @@
+package com.eazybytes.repository;
+
+import com.eazybytes.model.InventoryHistory;
+import com.eazybytes.model.InventoryReservation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-row INSERTs for inventory_reservation and inventory_history.
+ *
+ * Both tables keep their AUTO_INCREMENT keys (Hibernate cannot batch IDENTITY inserts), so rows are
+ * written here as one INSERT ... VALUES (...), (...) per chunk instead of one save() per cart line.
+ * created_at is set explicitly because @CreationTimestamp only applies to entity saves.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReservationHistoryJdbcRepository {
+
+    // Giữ số placeholder mỗi câu lệnh thấp hơn nhiều so với giới hạn 65535 của MySQL
+    static final int ROWS_PER_STATEMENT = 500;
+
+    private static final String INSERT_RESERVATIONS =
+            "INSERT INTO inventory_reservation (order_id, product_id, color, quantity, status, expires_at, created_at) VALUES ";
+    private static final String RESERVATION_ROW = "(?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_HISTORY =
+            "INSERT INTO inventory_history (product_id, color, quantity_change, reason, order_id, created_at) VALUES ";
+    private static final String HISTORY_ROW = "(?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Converts inventory_reservation.status to VARCHAR(20) when an older schema created it as a MySQL
+     * ENUM, which rejects statuses added later. ddl-auto=update never alters an existing column.
+     *
+     * @return true if the column was changed
+     */
+    public boolean widenStatusColumnIfEnum() {
+        List<String> types = jdbcTemplate.queryForList("SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'inventory_reservation' AND COLUMN_NAME = 'status'",
+                String.class);
+        if (types.isEmpty() || !"enum".equalsIgnoreCase(types.get(0))) {
+            return false;
+        }
+        jdbcTemplate.execute("ALTER TABLE inventory_reservation MODIFY status VARCHAR(20) NOT NULL");
+        return true;
+    }
+
+    public int insertReservations(List<InventoryReservation> reservations) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int inserted = 0;
+        for (int from = 0; from < reservations.size(); from += ROWS_PER_STATEMENT) {
+            List<InventoryReservation> chunk = reservations.subList(from, Math.min(from + ROWS_PER_STATEMENT, reservations.size()));
+            List<Object> args = new ArrayList<>(chunk.size() * 7);
+            for (InventoryReservation reservation : chunk) {
+                args.add(reservation.getOrderId());
+                args.add(reservation.getProductId());
+                args.add(reservation.getColor());
+                args.add(reservation.getQuantity());
+                args.add(reservation.getStatus().name());
+                args.add(Timestamp.valueOf(reservation.getExpiresAt()));
+                args.add(now);
+            }
+            inserted += jdbcTemplate.update(multiRowSql(INSERT_RESERVATIONS, RESERVATION_ROW, chunk.size()), args.toArray());
+        }
+        return inserted;
+    }
+
+    public int insertHistory(List<InventoryHistory> histories) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int inserted = 0;
+        for (int from = 0; from < histories.size(); from += ROWS_PER_STATEMENT) {
+            List<InventoryHistory> chunk = histories.subList(from, Math.min(from + ROWS_PER_STATEMENT, histories.size()));
+            List<Object> args = new ArrayList<>(chunk.size() * 6);
+            for (InventoryHistory history : chunk) {
+                args.add(history.getProductId());
+                args.add(history.getColor());
+                args.add(history.getQuantityChange());
+                args.add(history.getReason());
+                args.add(history.getOrderId());
+                args.add(now);
+            }
+            inserted += jdbcTemplate.update(multiRowSql(INSERT_HISTORY, HISTORY_ROW, chunk.size()), args.toArray());
+        }
+        return inserted;
+    }
+
+    private static String multiRowSql(String insert, String row, int rows) {
+        StringBuilder sql = new StringBuilder(insert.length() + rows * (row.length() + 2));
+        sql.append(insert);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.eazybytes.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Database lease used to elect a single node for cluster-wide jobs.
+ *
+ * Expiry is compared against the database clock (NOW(3)), so clock skew between replicas
+ * does not matter. Each call is its own auto-committed statement.
+ */
+@Repository
+@RequiredArgsConstructor
+public class SchedulerLeaseRepository {
+
+    private static final String CLAIM_SQL =
+            "UPDATE scheduler_lease SET owner = ?, lease_until = NOW(3) + INTERVAL ? SECOND " +
+            "WHERE lease_name = ? AND (owner = ? OR lease_until < NOW(3))";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Takes the lease if it is free or expired, or extends it if {@code owner} already holds it.
+     */
+    public boolean tryAcquire(String leaseName, String owner, int ttlSeconds) {
+        if (jdbcTemplate.update(CLAIM_SQL, owner, ttlSeconds, leaseName, owner) == 1) {
+            return true;
+        }
+        // Lần đầu chưa có dòng cho lease này; IGNORE nếu node khác vừa tạo cùng lúc
+        jdbcTemplate.update("INSERT IGNORE INTO scheduler_lease (lease_name, owner, lease_until) VALUES (?, NULL, NOW(3) - INTERVAL 1 SECOND)",
+                leaseName);
+        return jdbcTemplate.update(CLAIM_SQL, owner, ttlSeconds, leaseName, owner) == 1;
+    }
+
+    public void release(String leaseName, String owner) {
+        jdbcTemplate.update("UPDATE scheduler_lease SET lease_until = NOW(3) - INTERVAL 1 SECOND " +
+                "WHERE lease_name = ? AND owner = ?", leaseName, owner);
+    }
+}
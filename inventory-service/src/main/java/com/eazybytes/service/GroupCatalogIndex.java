@@ -0,0 +1,429 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.GroupDto;
+import com.eazybytes.dto.GroupProductDto;
+import com.eazybytes.dto.GroupWithProductsDto;
+import com.eazybytes.event.GroupCatalogChangedEvent;
+import com.eazybytes.model.Group;
+import com.eazybytes.model.GroupProduct;
+import com.eazybytes.repository.GroupProductRepository;
+import com.eazybytes.repository.GroupRepository;
+import com.eazybytes.repository.GroupTagsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resident index of the group catalog used to answer /api/group-variants/groups listings
+ * (type/tag/brand/price filters, price sort, pagination) without touching the database.
+ *
+ * Groups live in dense slots; filters are BitSets over those slots and prices are int arrays,
+ * so a query costs one pass over the matching slots plus a primitive sort, and only the
+ * requested page is turned into DTOs.
+ *
+ * The index is rebuilt on startup and periodically (to pick up writes made by other replicas),
+ * and refreshed per group after every committed change published as {@link GroupCatalogChangedEvent}.
+ */
+@Slf4j
+@Service
+public class GroupCatalogIndex {
+
+    @Autowired
+    private GroupRepository groupRepository;
+
+    @Autowired
+    private GroupProductRepository groupProductRepository;
+
+    @Autowired
+    private GroupTagsRepository groupTagsRepository;
+
+    @Value("${inventory.catalog-index.enabled:true}")
+    private boolean enabled;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Writers (rebuild/refresh) are serialized so a slow rebuild cannot overwrite a newer refresh
+    private final Object writerMonitor = new Object();
+
+    private Catalog catalog = new Catalog();
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${inventory.catalog-index.rebuild-interval-ms:300000}",
+               fixedDelayString = "${inventory.catalog-index.rebuild-interval-ms:300000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGroupCatalogChanged(GroupCatalogChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.isFullReload()) {
+            rebuild();
+        } else {
+            event.getGroupIds().forEach(this::refreshGroup);
+        }
+    }
+
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writerMonitor) {
+            try {
+                long start = System.currentTimeMillis();
+
+                List<Group> groups = groupRepository.findAll();
+                Map<Integer, List<GroupProduct>> productsByGroup = new HashMap<>();
+                for (GroupProduct gp : groupProductRepository.findAll(Sort.by("groupId", "orderNumber"))) {
+                    if (gp.getGroupId() != null) {
+                        productsByGroup.computeIfAbsent(gp.getGroupId(), id -> new ArrayList<>()).add(gp);
+                    }
+                }
+                Map<Integer, List<Object[]>> tagRowsByGroup = new HashMap<>();
+                for (Object[] row : groupTagsRepository.findAllGroupTagRows()) {
+                    tagRowsByGroup.computeIfAbsent((Integer) row[0], id -> new ArrayList<>()).add(row);
+                }
+
+                Catalog fresh = new Catalog();
+                for (Group group : groups) {
+                    fresh.put(toEntry(group,
+                            productsByGroup.getOrDefault(group.getGroupId(), Collections.emptyList()),
+                            tagRowsByGroup.getOrDefault(group.getGroupId(), Collections.emptyList()),
+                            fresh));
+                }
+
+                lock.writeLock().lock();
+                try {
+                    catalog = fresh;
+                    ready = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("Catalog index rebuilt with {} groups in {} ms", groups.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.error("Failed to rebuild catalog index, listings fall back to the database: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public void refreshGroup(Integer groupId) {
+        if (!enabled || groupId == null) {
+            return;
+        }
+        synchronized (writerMonitor) {
+            try {
+                Optional<Group> group = groupRepository.findById(groupId);
+                if (group.isEmpty()) {
+                    lock.writeLock().lock();
+                    try {
+                        catalog.remove(groupId);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    log.debug("Removed group {} from catalog index", groupId);
+                    return;
+                }
+
+                List<GroupProduct> products = groupProductRepository.findAllByGroupIdOrderByOrderNumberAsc(groupId);
+                List<Object[]> tagRows = groupTagsRepository.findGroupTagRowsByGroupId(groupId);
+
+                lock.writeLock().lock();
+                try {
+                    catalog.put(toEntry(group.get(), products, tagRows, catalog));
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.debug("Refreshed group {} in catalog index", groupId);
+            } catch (Exception e) {
+                // The periodic rebuild will converge the index
+                log.warn("Failed to refresh group {} in catalog index: {}", groupId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Same contract as the /groups listing: groups matching type, ALL tags and ANY brand, with products
+     * restricted to the price range; sorted by the first matching product's price when sortByPrice is
+     * "asc"/"desc", otherwise by group orderNumber.
+     */
+    public Page<GroupWithProductsDto> query(int page, int size, String type, List<String> tags, List<String> brands,
+                                            String sortByPrice, Integer minPrice, Integer maxPrice) {
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.max(size, 1));
+        int lo = minPrice != null ? minPrice : Integer.MIN_VALUE;
+        int hi = maxPrice != null ? maxPrice : Integer.MAX_VALUE;
+        boolean priceAsc = "asc".equalsIgnoreCase(sortByPrice);
+        boolean priceDesc = "desc".equalsIgnoreCase(sortByPrice);
+
+        lock.readLock().lock();
+        try {
+            BitSet candidates = catalog.match(type, tags, brands);
+
+            // key = sortValue in the high 32 bits, slot in the low 32 bits -> one primitive sort
+            long[] keys = new long[candidates.cardinality()];
+            int matched = 0;
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                Entry entry = catalog.entries[slot];
+                int first = entry.firstPriceIndex(lo, hi);
+                if (first < 0) {
+                    continue;
+                }
+                int sortValue;
+                if (priceAsc) {
+                    sortValue = entry.prices[first];
+                } else if (priceDesc) {
+                    sortValue = -entry.prices[first];
+                } else {
+                    sortValue = entry.orderNumber;
+                }
+                keys[matched++] = ((long) sortValue << 32) | slot;
+            }
+            Arrays.sort(keys, 0, matched);
+
+            long from = pageRequest.getOffset();
+            int to = (int) Math.min(from + pageRequest.getPageSize(), matched);
+            List<GroupWithProductsDto> content = new ArrayList<>();
+            for (int i = (int) Math.min(from, matched); i < to; i++) {
+                content.add(catalog.entries[(int) keys[i]].toDto(lo, hi));
+            }
+            return new PageImpl<>(content, pageRequest, matched);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Entry toEntry(Group group, List<GroupProduct> products, List<Object[]> tagRows, Catalog target) {
+        List<GroupProduct> priced = products.stream()
+                .filter(gp -> gp.getDefaultCurrentPrice() != null)
+                .toList();
+
+        int[] prices = new int[priced.size()];
+        GroupProductDto[] productDtos = new GroupProductDto[priced.size()];
+        for (int i = 0; i < priced.size(); i++) {
+            GroupProduct gp = priced.get(i);
+            prices[i] = gp.getDefaultCurrentPrice();
+            productDtos[i] = GroupProductDto.builder()
+                    .productId(gp.getProductId())
+                    .variant(gp.getVariant())
+                    .productName(gp.getProductName())
+                    .defaultOriginalPrice(gp.getDefaultOriginalPrice())
+                    .defaultCurrentPrice(gp.getDefaultCurrentPrice())
+                    .defaultColor(gp.getDefaultColor())
+                    .orderNumber(gp.getOrderNumber())
+                    .build();
+        }
+
+        int[] tagIds = new int[tagRows.size()];
+        for (int i = 0; i < tagRows.size(); i++) {
+            Object[] row = tagRows.get(i);
+            tagIds[i] = (Integer) row[1];
+            target.tagIdByName.put(key((String) row[2]), tagIds[i]);
+        }
+
+        return new Entry(group.getGroupId(),
+                group.getOrderNumber() != null ? group.getOrderNumber() : Integer.MAX_VALUE,
+                group.getGroupName(), group.getImage(), group.getType(), group.getBrand(),
+                tagIds, prices, productDtos);
+    }
+
+    // MySQL compares these columns case-insensitively, so the index does too
+    private static String key(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Slot-addressed storage. Not thread-safe; guarded by the outer read/write lock.
+     */
+    private static final class Catalog {
+
+        private Entry[] entries = new Entry[256];
+        private final BitSet liveSlots = new BitSet();
+        private int[] slotByGroupId = new int[0]; // groupId -> slot + 1, 0 = absent
+        private final Map<String, BitSet> slotsByType = new HashMap<>();
+        private final Map<String, BitSet> slotsByBrand = new HashMap<>();
+        private BitSet[] slotsByTagId = new BitSet[0];
+        private final Map<String, Integer> tagIdByName = new HashMap<>();
+
+        void put(Entry entry) {
+            remove(entry.groupId);
+
+            int slot = liveSlots.nextClearBit(0);
+            if (slot >= entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[slot] = entry;
+            liveSlots.set(slot);
+
+            if (entry.groupId >= slotByGroupId.length) {
+                slotByGroupId = Arrays.copyOf(slotByGroupId, Math.max(entry.groupId + 1, slotByGroupId.length * 2));
+            }
+            slotByGroupId[entry.groupId] = slot + 1;
+
+            slotsByType.computeIfAbsent(key(entry.type), k -> new BitSet()).set(slot);
+            slotsByBrand.computeIfAbsent(key(entry.brand), k -> new BitSet()).set(slot);
+            for (int tagId : entry.tagIds) {
+                if (tagId >= slotsByTagId.length) {
+                    slotsByTagId = Arrays.copyOf(slotsByTagId, Math.max(tagId + 1, slotsByTagId.length * 2));
+                }
+                if (slotsByTagId[tagId] == null) {
+                    slotsByTagId[tagId] = new BitSet();
+                }
+                slotsByTagId[tagId].set(slot);
+            }
+        }
+
+        void remove(int groupId) {
+            if (groupId >= slotByGroupId.length || slotByGroupId[groupId] == 0) {
+                return;
+            }
+            int slot = slotByGroupId[groupId] - 1;
+            Entry entry = entries[slot];
+
+            clear(slotsByType, key(entry.type), slot);
+            clear(slotsByBrand, key(entry.brand), slot);
+            for (int tagId : entry.tagIds) {
+                slotsByTagId[tagId].clear(slot);
+            }
+            liveSlots.clear(slot);
+            entries[slot] = null;
+            slotByGroupId[groupId] = 0;
+        }
+
+        BitSet match(String type, List<String> tags, List<String> brands) {
+            BitSet result;
+            if (type != null && !type.isEmpty()) {
+                BitSet byType = slotsByType.get(key(type));
+                if (byType == null) {
+                    return new BitSet();
+                }
+                result = (BitSet) byType.clone();
+            } else {
+                result = (BitSet) liveSlots.clone();
+            }
+
+            if (brands != null && !brands.isEmpty()) {
+                BitSet anyBrand = new BitSet();
+                for (String brand : brands) {
+                    BitSet byBrand = slotsByBrand.get(key(brand));
+                    if (byBrand != null) {
+                        anyBrand.or(byBrand);
+                    }
+                }
+                result.and(anyBrand);
+            }
+
+            if (tags != null) {
+                for (String tag : tags) {
+                    Integer tagId = tagIdByName.get(key(tag));
+                    if (tagId == null || tagId >= slotsByTagId.length || slotsByTagId[tagId] == null) {
+                        return new BitSet();
+                    }
+                    result.and(slotsByTagId[tagId]);
+                }
+            }
+            return result;
+        }
+
+        private static void clear(Map<String, BitSet> index, String key, int slot) {
+            BitSet slots = index.get(key);
+            if (slots != null) {
+                slots.clear(slot);
+                if (slots.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable snapshot of one group; products only include those with a current price,
+     * ordered by orderNumber like findAllByGroupIdInOrderByOrderNumberAsc.
+     */
+    private static final class Entry {
+        final int groupId;
+        final int orderNumber;
+        final String groupName;
+        final String image;
+        final String type;
+        final String brand;
+        final int[] tagIds;
+        final int[] prices;
+        final GroupProductDto[] products;
+
+        Entry(int groupId, int orderNumber, String groupName, String image, String type, String brand,
+              int[] tagIds, int[] prices, GroupProductDto[] products) {
+            this.groupId = groupId;
+            this.orderNumber = orderNumber;
+            this.groupName = groupName;
+            this.image = image;
+            this.type = type;
+            this.brand = brand;
+            this.tagIds = tagIds;
+            this.prices = prices;
+            this.products = products;
+        }
+
+        int firstPriceIndex(int lo, int hi) {
+            for (int i = 0; i < prices.length; i++) {
+                if (prices[i] >= lo && prices[i] <= hi) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        GroupWithProductsDto toDto(int lo, int hi) {
+            List<GroupProductDto> productDtos = new ArrayList<>();
+            for (int i = 0; i < prices.length; i++) {
+                if (prices[i] >= lo && prices[i] <= hi) {
+                    GroupProductDto p = products[i];
+                    productDtos.add(GroupProductDto.builder()
+                            .productId(p.getProductId())
+                            .variant(p.getVariant())
+                            .productName(p.getProductName())
+                            .defaultOriginalPrice(p.getDefaultOriginalPrice())
+                            .defaultCurrentPrice(p.getDefaultCurrentPrice())
+                            .defaultColor(p.getDefaultColor())
+                            .orderNumber(p.getOrderNumber())
+                            .build());
+                }
+            }
+
+            return GroupWithProductsDto.builder()
+                    .groupDto(GroupDto.builder()
+                            .groupName(groupName)
+                            .groupId(groupId)
+                            .orderNumber(orderNumber == Integer.MAX_VALUE ? null : orderNumber)
+                            .image(image)
+                            .type(type)
+                            .brand(brand)
+                            .build())
+                    .products(productDtos)
+                    .elasticsearchScore(0f)
+                    .build();
+        }
+    }
+}
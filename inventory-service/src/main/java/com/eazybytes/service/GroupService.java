@@ -11,18 +11,24 @@ import co.elastic.clients.elasticsearch.core.SearchRequest;
 =======
 >>>>>>> server
 import com.eazybytes.dto.*;
+import com.eazybytes.event.GroupCatalogChangedEvent;
 import com.eazybytes.model.GroupProduct;
 import com.eazybytes.model.Group;
 import com.eazybytes.model.ProductInventory;
 import com.eazybytes.repository.GroupProductRepository;
 import com.eazybytes.repository.GroupRepository;
 import com.eazybytes.repository.ProductInventoryRepository;
+import com.eazybytes.search.NumericSpecs;
+import com.eazybytes.search.VietnameseText;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.service.spi.ServiceException;
 import org.springframework.beans.factory.annotation.Autowired;
-<<<<<<< HEAD
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+<<<<<<< HEAD
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -31,10 +37,14 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.*;
 =======
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.*;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.util.DigestUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -44,6 +54,7 @@ import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 
 import java.util.*;
+import java.nio.charset.StandardCharsets;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 >>>>>>> server
@@ -62,6 +73,12 @@ public class GroupService {
     @Autowired
     private GroupProductRepository groupProductRepository;
 
+    @Autowired
+    private GroupCatalogIndex groupCatalogIndex;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Autowired
 <<<<<<< HEAD
     private ElasticsearchService elasticsearchService;
@@ -74,6 +91,9 @@ public class GroupService {
 =======
     private LLMService llmService; // Service để gọi LLM
 
+    @Autowired
+    private LLMAnalysisCache llmAnalysisCache;
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
@@ -158,55 +178,6 @@ public class GroupService {
         )
     );
 
-    // Sortable fields with units for numeric sorting
-    private static final Map<String, Map<String, List<String>>> SORTABLE_FIELDS_WITH_UNITS = Map.of(
-        "phone", Map.of(
-            "batteryCapacity", Arrays.asList("mAh", "mah", "MAH"), // Pin lớn nhất/nhỏ nhất
-            "ram", Arrays.asList("GB", "gb", "Gb", "MB", "mb", "Mb"), // RAM lớn nhất/nhỏ nhất
-            "storage", Arrays.asList("GB", "gb", "Gb", "TB", "tb", "Tb", "MB", "mb", "Mb"), // Bộ nhớ lớn nhất/nhỏ nhất
-            "availableStorage", Arrays.asList("GB", "gb", "Gb", "TB", "tb", "Tb", "MB", "mb", "Mb"), // Bộ nhớ khả dụng lớn nhất/nhỏ nhất
-            "screenSize", Arrays.asList("inch", "in", "\"", "′", "inches"), // Màn hình lớn nhất/nhỏ nhất
-            "maxBrightness", Arrays.asList("nits", "cd/m²", "cd/m2"), // Độ sáng cao nhất/thấp nhất
-            "maxChargingPower", Arrays.asList("W", "w", "watt", "Watt"), // Sạc nhanh nhất/chậm nhất
-            "rearCameraResolution", Arrays.asList("MP", "mp", "megapixel", "Megapixel"), // Camera sau tốt nhất
-            "frontCameraResolution", Arrays.asList("MP", "mp", "megapixel", "Megapixel") // Camera trước tốt nhất
-        ),
-        
-        "laptop", Map.of(
-            "ram", Arrays.asList("GB", "gb", "Gb", "MB", "mb", "Mb"), // RAM lớn nhất/nhỏ nhất
-            "maxRam", Arrays.asList("GB", "gb", "Gb", "MB", "mb", "Mb"), // RAM tối đa lớn nhất/nhỏ nhất
-            "battery", Arrays.asList("Wh", "wh", "WH", "mAh", "mah", "MAH"), // Pin lớn nhất/nhỏ nhất
-            "screenSize", Arrays.asList("inch", "in", "\"", "′", "inches"), // Màn hình lớn nhất/nhỏ nhất
-            "refreshRate", Arrays.asList("Hz", "hz", "HZ"), // Tần số quét cao nhất/thấp nhất
-            "coreCount", Arrays.asList("core", "cores", "nhân"), // Số nhân nhiều nhất/ít nhất
-            "threadCount", Arrays.asList("thread", "threads", "luồng"), // Số luồng nhiều nhất/ít nhất
-            "cpuSpeed", Arrays.asList("GHz", "ghz", "GHZ", "MHz", "mhz", "MHZ"), // Tốc độ CPU cao nhất/thấp nhất
-            "maxCpuSpeed", Arrays.asList("GHz", "ghz", "GHZ", "MHz", "mhz", "MHZ"), // Tốc độ CPU tối đa cao nhất/thấp nhất
-            "ramBusSpeed", Arrays.asList("MHz", "mhz", "MHZ", "MT/s", "mt/s") // Tốc độ RAM cao nhất/thấp nhất
-        ),
-        
-        "wireless_earphone", Map.of(
-            "batteryLife", Arrays.asList("giờ", "h", "hour", "hours", "tiếng"), // Pin lâu nhất/ngắn nhất
-            "chargingCaseBatteryLife", Arrays.asList("giờ", "h", "hour", "hours", "tiếng"), // Pin hộp sạc lâu nhất/ngắn nhất
-            "weight", Arrays.asList("g", "gram", "grams", "gr", "kg") // Nhẹ nhất/nặng nhất
-        ),
-        
-        "wired_earphone", Map.of(
-            "weight", Arrays.asList("g", "gram", "grams", "gr", "kg"), // Nhẹ nhất/nặng nhất
-            "cableLength", Arrays.asList("m", "cm", "mm", "meter", "centimeter") // Dây dài nhất/ngắn nhất
-        ),
-        
-        "headphone", Map.of(
-            "batteryLife", Arrays.asList("giờ", "h", "hour", "hours", "tiếng"), // Pin lâu nhất/ngắn nhất
-            "weight", Arrays.asList("g", "gram", "grams", "gr", "kg") // Nhẹ nhất/nặng nhất
-        ),
-        
-        "backup_charger", Map.of(
-            "batteryCapacity", Arrays.asList("mAh", "mah", "MAH", "Wh", "wh", "WH"), // Dung lượng lớn nhất/nhỏ nhất
-            "weight", Arrays.asList("g", "gram", "grams", "gr", "kg") // Nhẹ nhất/nặng nhất
-        )
-    );
-
     // MongoDB-based search with actual database queries
     public MongoSearchResult smartSearchProducts(String query, String deviceType, int topK) {
         try {
@@ -216,8 +187,9 @@ public class GroupService {
             LLMAnalysisResult analysis;
             try {
                 List<String> deviceFields = DEVICE_FIELDS.getOrDefault(deviceType.toLowerCase(), Collections.emptyList());
-                String llmPrompt = buildLLMPrompt(query, deviceType, deviceFields);
-                analysis = llmService.analyzeQuery(llmPrompt);
+                // Repeated queries are answered from the analysis cache without an OpenAI round trip
+                analysis = llmAnalysisCache.getOrAnalyze(query, deviceType,
+                        () -> llmService.analyzeQuery(buildLLMPrompt(query, deviceType, deviceFields)));
                 log.info("LLM analysis successful: {}", analysis);
             } catch (Exception e) {
                 log.warn("LLM analysis failed, using fallback: {}", e.getMessage());
@@ -227,18 +199,10 @@ public class GroupService {
             // Step 2: Build MongoDB aggregation pipeline
             List<AggregationOperation> pipeline = buildMongoAggregationPipeline(analysis, deviceType, topK);
             
-            // Step 3: Execute MongoDB aggregation với numeric sorting
-            List<String> productIds;
+            // Step 3: Execute MongoDB aggregation; numeric sorts run in Mongo on the indexed numericSpecs fields
             boolean hasNumericSort = analysis.getSortFields().stream()
                 .anyMatch(sortField -> isNumericSortField(deviceType, sortField.getField()));
-                
-            if (hasNumericSort) {
-                log.info("Using numeric sorting for device type: {}", deviceType);
-                productIds = executeMongoAggregationWithNumericSort(pipeline, analysis, deviceType, topK);
-            } else {
-                log.info("Using regular sorting");
-                productIds = executeMongoAggregation(pipeline);
-            }
+            List<String> productIds = executeMongoAggregation(pipeline);
 
             // Step 4: If no results from field conditions, try text search
             if (productIds.isEmpty() && !analysis.getTextSearchKeywords().isEmpty()) {
@@ -289,13 +253,23 @@ public class GroupService {
 
         // Add conditions from LLM analysis
         for (SearchCondition condition : analysis.getConditions()) {
-            Criteria criteria = buildMongoCriteria(condition);
+            Criteria criteria = buildMongoCriteria(condition, deviceType);
             if (criteria != null) {
                 criteriaList.add(criteria);
                 log.debug("Added MongoDB criteria: {} {} {}", condition.getField(), condition.getOperator(), condition.getValue());
             }
         }
 
+        // Numeric sorts only rank products whose value could be parsed, as the in-memory sort used to
+        boolean hasNumericSort = false;
+        for (SortField sortField : analysis.getSortFields()) {
+            NumericSpecs.Spec spec = NumericSpecs.find(deviceType, sortField.getField());
+            if (spec != null) {
+                criteriaList.add(Criteria.where(spec.path()).exists(true));
+                hasNumericSort = true;
+            }
+        }
+
         // Add match stage if we have criteria
         if (!criteriaList.isEmpty()) {
             Criteria combinedCriteria = new Criteria().andOperator(criteriaList.toArray(new Criteria[0]));
@@ -303,15 +277,16 @@ public class GroupService {
             log.debug("Added match stage with {} criteria", criteriaList.size());
         }
 
-        // Step 2: Sort stage - sẽ xử lý numeric sorting ở application level
+        // Step 2: Sort stage - numeric fields sort on their numericSpecs shadow field ({_class, field} index)
         if (!analysis.getSortFields().isEmpty()) {
             List<Sort.Order> orders = new ArrayList<>();
             for (SortField sortField : analysis.getSortFields()) {
                 Sort.Direction direction = "desc".equals(sortField.getOrder()) ? Sort.Direction.DESC : Sort.Direction.ASC;
-                orders.add(new Sort.Order(direction, sortField.getField()));
+                NumericSpecs.Spec spec = NumericSpecs.find(deviceType, sortField.getField());
+                String sortPath = spec != null ? spec.path() : sortField.getField();
+                orders.add(new Sort.Order(direction, sortPath));
                 
-                log.info("Added sort field '{}' with direction '{}' (will apply numeric extraction if needed)", 
-                         sortField.getField(), direction);
+                log.info("Added sort field '{}' with direction '{}'", sortPath, direction);
             }
             if (!orders.isEmpty()) {
                 pipeline.add(Aggregation.sort(Sort.by(orders)));
@@ -319,36 +294,16 @@ public class GroupService {
             }
         }
 
-        // Step 3: Limit stage với buffer để có thể sort lại
-        // Lấy nhiều hơn để có thể sort numeric ở application level
-        int bufferLimit = topK * 3; // Lấy gấp 3 để có đủ data cho numeric sorting
-        pipeline.add(Aggregation.limit(bufferLimit));
+        // Step 3: Limit stage - numeric sorts are already final, so no buffer is needed for them
+        pipeline.add(Aggregation.limit(hasNumericSort ? topK : topK * 3));
 
-        // Step 4: Project all fields để có thể sort numeric
-        // Không project chỉ _id nữa mà lấy cả sort fields
-        List<String> projectFields = new ArrayList<>();
-        projectFields.add("_id");
-        
-        // Thêm sort fields vào projection
-        for (SortField sortField : analysis.getSortFields()) {
-            if (isNumericSortField(deviceType, sortField.getField())) {
-                projectFields.add(sortField.getField());
-            }
-        }
-        
-        if (projectFields.size() > 1) {
-            // Project specified fields
-            String[] fieldsArray = projectFields.toArray(new String[0]);
-            pipeline.add(Aggregation.project(fieldsArray));
-        } else {
-            // Default project only _id
-            pipeline.add(Aggregation.project("_id"));
-        }
+        // Step 4: Project only _id
+        pipeline.add(Aggregation.project("_id"));
 
         return pipeline;
     }
 
-    private Criteria buildMongoCriteria(SearchCondition condition) {
+    private Criteria buildMongoCriteria(SearchCondition condition, String deviceType) {
         String field = condition.getField();
         String operator = condition.getOperator();
         Object value = condition.getValue();
@@ -379,6 +334,10 @@ public class GroupService {
                             Criteria.where("$regex").is(value.toString()).and("$options").is("i")
                         );
                     } else if ("number".equals(type)) {
+                        Criteria shadowCriteria = buildNumericSpecCriteria(deviceType, field, "eq", value);
+                        if (shadowCriteria != null) {
+                            return shadowCriteria;
+                        }
                         // Extract number and use $expr for exact numeric comparison
                         Double numericValue = extractNumericValue(value);
                         if (numericValue != null) {
@@ -399,7 +358,11 @@ public class GroupService {
                             Criteria.where("$regex").is(value.toString()).and("$options").is("i")
                         );
                     } else if ("number".equals(type)) {
-                        // **ĐÚNG CÁCH: Sử dụng $expr như Python code**
+                        Criteria shadowCriteria = buildNumericSpecCriteria(deviceType, field, operator, value);
+                        if (shadowCriteria != null) {
+                            return shadowCriteria;
+                        }
+                        // Field chưa có numericSpecs: dùng $expr như Python code (không dùng được index)
                         Double numericValue = extractNumericValue(value);
                         if (numericValue != null) {
                             log.info("Using $expr numeric comparison for field '{}' {} {}", field, operator, numericValue);
@@ -475,6 +438,31 @@ public class GroupService {
         }
     }
 
+    /**
+     * Indexed range/equality criteria on the numericSpecs shadow field written by product-service.
+     * The condition value is converted to the field's canonical unit ("1TB" -> 1024 for storage_gb).
+     * Returns null when the field has no shadow field, so callers fall back to $expr.
+     */
+    private Criteria buildNumericSpecCriteria(String deviceType, String field, String operator, Object value) {
+        NumericSpecs.Spec spec = NumericSpecs.find(deviceType, field);
+        if (spec == null) {
+            return null;
+        }
+        Double numericValue = NumericSpecs.parse(spec, value, true);
+        if (numericValue == null) {
+            return null;
+        }
+
+        Criteria criteria = Criteria.where(spec.path());
+        switch (operator) {
+            case "gte": return criteria.gte(numericValue);
+            case "gt": return criteria.gt(numericValue);
+            case "lte": return criteria.lte(numericValue);
+            case "lt": return criteria.lt(numericValue);
+            default: return criteria.is(numericValue);
+        }
+    }
+
     /**
      * Build $expr criteria for numeric comparison (equivalent to Python's $expr logic)
      */
@@ -522,143 +510,7 @@ public class GroupService {
 
     // Helper method để check field có cần numeric sorting không
     private boolean isNumericSortField(String deviceType, String field) {
-        Map<String, List<String>> deviceSortableFields = SORTABLE_FIELDS_WITH_UNITS.get(deviceType.toLowerCase());
-        return deviceSortableFields != null && deviceSortableFields.containsKey(field);
-    }
-
-    // Method mới để xử lý numeric sorting ở application level
-    private List<String> executeMongoAggregationWithNumericSort(List<AggregationOperation> pipeline, 
-                                                               LLMAnalysisResult analysis, 
-                                                               String deviceType, 
-                                                               int topK) {
-        try {
-            if (pipeline.isEmpty()) {
-                log.info("Empty aggregation pipeline, skipping MongoDB query");
-                return Collections.emptyList();
-            }
-
-            Aggregation aggregation = Aggregation.newAggregation(pipeline);
-            AggregationResults<Map> results = mongoTemplate.aggregate(aggregation, mongoCollection, Map.class);
-            
-            List<Map> documents = results.getMappedResults();
-            log.info("MongoDB aggregation found {} products before numeric sorting", documents.size());
-
-            // Check if we need to apply numeric sorting
-            boolean needsNumericSort = false;
-            SortField numericSortField = null;
-            
-            for (SortField sortField : analysis.getSortFields()) {
-                if (isNumericSortField(deviceType, sortField.getField())) {
-                    needsNumericSort = true;
-                    numericSortField = sortField;
-                    break; // Chỉ xử lý sort field đầu tiên
-                }
-            }
-
-            if (needsNumericSort && numericSortField != null) {
-                log.info("Applying numeric sorting for field: {}", numericSortField.getField());
-                documents = applyNumericSorting(documents, numericSortField, deviceType);
-            }
-
-            // Extract product IDs và limit theo topK
-            List<String> productIds = documents.stream()
-                .limit(topK)
-                .map(doc -> doc.get("_id").toString())
-                .collect(Collectors.toList());
-
-            log.info("After numeric sorting: {} products returned", productIds.size());
-            return productIds;
-
-        } catch (Exception e) {
-            log.error("Error executing MongoDB aggregation with numeric sort: ", e);
-            return Collections.emptyList();
-        }
-    }
-
-    private List<Map> applyNumericSorting(List<Map> documents, SortField sortField, String deviceType) {
-        String field = sortField.getField();
-        String order = sortField.getOrder();
-        
-        List<String> validUnits = SORTABLE_FIELDS_WITH_UNITS.get(deviceType.toLowerCase()).get(field);
-        
-        // **THÊM DEBUG LOGGING**
-        log.info("=== DEBUG NUMERIC SORTING ===");
-        log.info("Field: {}, Order: {}, Valid units: {}", field, order, validUnits);
-        log.info("Total documents before sorting: {}", documents.size());
-        
-        List<Map<String, Object>> processedDocuments = documents.stream()
-            .filter(doc -> doc.get(field) != null) // Lọc documents có field
-            .map(doc -> {
-                String value = doc.get(field).toString();
-                Double numericValue = null;
-                
-                // Check xem value có chứa valid unit không
-                boolean hasUnit = hasValidUnit(value, validUnits);
-                if (hasUnit) {
-                    numericValue = extractNumericValueForSorting(value);
-                }
-                
-                // **DEBUG LOG từng document**
-                log.debug("Document ID: {}, Field value: '{}', Has valid unit: {}, Numeric value: {}", 
-                        doc.get("_id"), value, hasUnit, numericValue);
-                
-                // Tạo wrapper object để sort
-                Map<String, Object> wrapper = new HashMap<>();
-                wrapper.put("document", doc);
-                wrapper.put("numericValue", numericValue);
-                wrapper.put("originalValue", value); // Keep for debug
-                return wrapper;
-            })
-            .filter(wrapper -> wrapper.get("numericValue") != null) // Chỉ giữ documents có numeric value
-            .collect(Collectors.toList());
-        
-        log.info("Documents with valid numeric values: {}", processedDocuments.size());
-        
-        // **LOG TOP 5 VALUES TRƯỚC KHI SORT**
-        log.info("=== TOP 5 VALUES BEFORE SORTING ===");
-        processedDocuments.stream()
-            .limit(5)
-            .forEach(wrapper -> {
-                log.info("ID: {}, Original: '{}', Numeric: {}", 
-                        ((Map)wrapper.get("document")).get("_id"),
-                        wrapper.get("originalValue"),
-                        wrapper.get("numericValue"));
-            });
-        
-        // Sort documents
-        List<Map<String, Object>> sortedWrappers = processedDocuments.stream()
-            .sorted((w1, w2) -> {
-                Double v1 = (Double) w1.get("numericValue");
-                Double v2 = (Double) w2.get("numericValue");
-                
-                if ("desc".equals(order)) {
-                    return v2.compareTo(v1); // Descending: lớn nhất trước
-                } else {
-                    return v1.compareTo(v2); // Ascending: nhỏ nhất trước
-                }
-            })
-            .collect(Collectors.toList());
-        
-        // **LOG TOP 5 VALUES SAU KHI SORT**
-        log.info("=== TOP 5 VALUES AFTER SORTING ({}) ===", order.toUpperCase());
-        sortedWrappers.stream()
-            .limit(5)
-            .forEach(wrapper -> {
-                log.info("ID: {}, Original: '{}', Numeric: {}", 
-                        ((Map)wrapper.get("document")).get("_id"),
-                        wrapper.get("originalValue"),
-                        wrapper.get("numericValue"));
-            });
-        
-        // Extract sorted documents
-        List<Map> result = sortedWrappers.stream()
-            .map(wrapper -> (Map) wrapper.get("document"))
-            .collect(Collectors.toList());
-        
-        log.info("=== SORTING COMPLETE ===");
-        log.info("Final result count: {}", result.size());
-        
-        return result;
+        return NumericSpecs.find(deviceType, field) != null;
     }
 
     public void testQuery(String query, String deviceType) {
@@ -730,16 +582,6 @@ public class GroupService {
         }
     }
 
-    // Helper method để check value có chứa valid unit không
-    private boolean hasValidUnit(String value, List<String> validUnits) {
-        if (value == null || validUnits == null) {
-            return false;
-        }
-        
-        String valueLower = value.toLowerCase();
-        return validUnits.stream().anyMatch(unit -> valueLower.contains(unit.toLowerCase()));
-    }
-
     // Method để extract numeric value cho sorting
     private Double extractNumericValueForSorting(String value) {
         if (value == null || value.trim().isEmpty()) {
@@ -784,55 +626,51 @@ public class GroupService {
     }
 
     private List<String> executeMongoTextSearch(LLMAnalysisResult analysis, String deviceType, int topK) {
-        try {
-            List<String> keywords = analysis.getTextSearchKeywords();
-            List<String> searchFields = analysis.getTextSearchFields();
-            
-            if (keywords.isEmpty() || searchFields.isEmpty()) {
-                return Collections.emptyList();
-            }
+        List<String> keywords = analysis.getTextSearchKeywords();
+        if (keywords.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-            // Build text search criteria
-            List<Criteria> textCriteria = new ArrayList<>();
-            
-            // Add device type filter
-            String deviceClass = DEVICE_TYPE_TO_CLASS.get(deviceType.toLowerCase());
-            if (deviceClass != null) {
-                textCriteria.add(Criteria.where("_class").is(deviceClass));
-            }
+        List<String> productIds = searchByTextIndex(keywords, deviceType, topK);
+        log.info("MongoDB text search found {} products for keywords: {}", productIds.size(), keywords);
+        return productIds;
+    }
 
-            // Add text search conditions for keywords
-            for (String keyword : keywords.subList(0, Math.min(2, keywords.size()))) {
-                List<Criteria> keywordCriteria = new ArrayList<>();
-                for (String field : searchFields) {
-                    keywordCriteria.add(Criteria.where(field).regex(keyword, "i"));
-                }
-                if (!keywordCriteria.isEmpty()) {
-                    textCriteria.add(new Criteria().orOperator(keywordCriteria.toArray(new Criteria[0])));
-                }
+    /**
+     * Queries the weighted text index of baseProduct (product_text, created by product-service) and
+     * returns product ids by descending textScore. Each keyword is also sent folded ("điện" -> "dien")
+     * so it matches the accent-free searchText field as well as the original fields.
+     */
+    private List<String> searchByTextIndex(Collection<String> keywords, String deviceType, int topK) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String keyword : keywords) {
+            if (keyword != null && !keyword.isBlank()) {
+                terms.add(keyword.trim().toLowerCase());
+                terms.add(VietnameseText.fold(keyword));
             }
+        }
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-            // Execute text search query
-            if (!textCriteria.isEmpty()) {
-                Query textQuery = new Query();
-                textQuery.addCriteria(new Criteria().andOperator(textCriteria.toArray(new Criteria[0])));
-                textQuery.limit(topK);
-                textQuery.with(Sort.by(Sort.Direction.DESC, "_id")); // Default sort by _id
-
-                List<Map> textResults = mongoTemplate.find(textQuery, Map.class, mongoCollection);
-                List<String> productIds = textResults.stream()
-                    .map(doc -> doc.get("_id").toString())
-                    .collect(Collectors.toList());
+        try {
+            TextCriteria textCriteria = TextCriteria.forLanguage("none").matchingAny(terms.toArray(new String[0]));
+            Query textQuery = TextQuery.queryText(textCriteria).sortByScore();
 
-                log.info("MongoDB text search found {} products for keywords: {}", productIds.size(), keywords);
-                return productIds;
+            String deviceClass = DEVICE_TYPE_TO_CLASS.get(deviceType.toLowerCase());
+            if (deviceClass != null) {
+                textQuery.addCriteria(Criteria.where("_class").is(deviceClass));
             }
+            textQuery.fields().include("_id");
+            textQuery.limit(topK);
 
+            return mongoTemplate.find(textQuery, Map.class, mongoCollection).stream()
+                .map(doc -> doc.get("_id").toString())
+                .collect(Collectors.toList());
         } catch (Exception e) {
             log.error("Error in MongoDB text search: ", e);
+            return Collections.emptyList();
         }
-        
-        return Collections.emptyList();
     }
 
     private String determineSearchMethod(LLMAnalysisResult analysis, boolean isEmpty) {
@@ -864,44 +702,32 @@ public class GroupService {
     }
 
     private List<String> simpleKeywordSearch(String query, String deviceType, int topK) {
-        // Fallback search when all else fails
+        // Fallback search when all else fails; short tokens ("5g", "s9") are kept since $text ranks them
+        List<String> keywords = Arrays.stream(query.split("\\s+"))
+            .filter(keyword -> !keyword.isBlank())
+            .collect(Collectors.toList());
+
+        List<String> productIds = keywords.isEmpty()
+            ? topProductsOfType(deviceType, topK)
+            : searchByTextIndex(keywords, deviceType, topK);
+        log.info("Fallback search returned {} results", productIds.size());
+        return productIds;
+    }
+
+    // Không có từ khóa nào: trả về top-K sản phẩm cùng loại thay vì danh sách rỗng
+    private List<String> topProductsOfType(String deviceType, int topK) {
         try {
             Query fallbackQuery = new Query();
-            
-            // Add device type filter
             String deviceClass = DEVICE_TYPE_TO_CLASS.get(deviceType.toLowerCase());
             if (deviceClass != null) {
                 fallbackQuery.addCriteria(Criteria.where("_class").is(deviceClass));
             }
-
-            // Simple text search on product name and description
-            String[] keywords = query.toLowerCase().split("\\s+");
-            List<Criteria> keywordCriteria = new ArrayList<>();
-            
-            for (String keyword : keywords) {
-                if (keyword.length() > 2) { // Skip very short words
-                    List<Criteria> fieldCriteria = Arrays.asList(
-                        Criteria.where("productName").regex(keyword, "i"),
-                        Criteria.where("description").regex(keyword, "i")
-                    );
-                    keywordCriteria.add(new Criteria().orOperator(fieldCriteria.toArray(new Criteria[0])));
-                }
-            }
-
-            if (!keywordCriteria.isEmpty()) {
-                fallbackQuery.addCriteria(new Criteria().andOperator(keywordCriteria.toArray(new Criteria[0])));
-            }
-
+            fallbackQuery.fields().include("_id");
             fallbackQuery.limit(topK);
 
-            List<Map> results = mongoTemplate.find(fallbackQuery, Map.class, mongoCollection);
-            List<String> productIds = results.stream()
+            return mongoTemplate.find(fallbackQuery, Map.class, mongoCollection).stream()
                 .map(doc -> doc.get("_id").toString())
                 .collect(Collectors.toList());
-                
-            log.info("Fallback search returned {} results", productIds.size());
-            return productIds;
-
         } catch (Exception e) {
             log.error("Error in fallback keyword search: ", e);
             return Collections.emptyList();
@@ -1204,6 +1030,7 @@ public class GroupService {
             final Map<Integer, Float> groupScores;
             final Set<Integer> relevantGroupIds;
             final List<String> smartSearchProductIds; // **THÊM ĐỂ GIỮ THỨ TỰ**
+            final SearchRankMerger searchRanking;
             
             // 1. Nếu có search query, tìm relevant group IDs trước
             if (finalSearchQuery != null && !finalSearchQuery.isEmpty()) {
@@ -1219,11 +1046,10 @@ public class GroupService {
                         return Collections.emptyList();
                     }
                     
-                    // Lấy group IDs từ các product IDs tìm được
+                    // Lấy group IDs từ các product IDs tìm được; rank của mỗi group tính một lần ở đây
                     List<GroupProduct> groupProducts = groupProductRepository.findAllByProductIdIn(smartSearchProductIds);
-                    relevantGroupIds = groupProducts.stream()
-                        .map(GroupProduct::getGroupId)
-                        .collect(Collectors.toSet());
+                    searchRanking = SearchRankMerger.of(smartSearchProductIds, groupProducts);
+                    relevantGroupIds = searchRanking.groupIds();
                     
                     log.info("Found {} relevant group IDs from search results", relevantGroupIds.size());
                     
@@ -1233,7 +1059,7 @@ public class GroupService {
                     }
                     
                     // Tính scores cho các groups này - **GIỮ THỨ TỰ TỪ SMART SEARCH**
-                    groupScores = getGroupScoresFromSearchResultsWithOrder(smartSearchProductIds, new ArrayList<>(relevantGroupIds));
+                    groupScores = searchRanking.groupScores();
                     
                 } else {
                     log.warn("Smart search failed: {}", searchResult.getError());
@@ -1244,6 +1070,7 @@ public class GroupService {
                 relevantGroupIds = null;
                 groupScores = new HashMap<>();
                 smartSearchProductIds = Collections.emptyList();
+                searchRanking = null;
             }
             
             // 2. Lấy tất cả groups theo filter conditions
@@ -1391,40 +1218,15 @@ public class GroupService {
             // 6. Phân trang
 =======
             // 6. **QUAN TRỌNG: Sort results theo thứ tự từ smart search**
-            result.sort((g1, g2) -> {
-                if (finalSearchQuery != null && !finalSearchQuery.isEmpty() && !smartSearchProductIds.isEmpty()) {
-                    // **SẮP XẾP THEO THỨ TỰ CỦA SMART SEARCH**
-                    Float score1 = g1.getElasticsearchScore();
-                    Float score2 = g2.getElasticsearchScore();
-                    
-                    // Nếu có smart search results, ưu tiên sort theo smart search order
-                    int smartSearchCompare = Float.compare(score2, score1);
-                    if (smartSearchCompare != 0) {
-                        return smartSearchCompare;
-                    }
-                    
-                    // **FALLBACK: Sort theo thứ tự product đầu tiên xuất hiện trong smartSearchProductIds**
-                    Integer group1FirstProductIndex = getFirstProductIndexInSmartSearch(g1, smartSearchProductIds);
-                    Integer group2FirstProductIndex = getFirstProductIndexInSmartSearch(g2, smartSearchProductIds);
-                    
-                    if (group1FirstProductIndex != null && group2FirstProductIndex != null) {
-                        return Integer.compare(group1FirstProductIndex, group2FirstProductIndex);
-                    } else if (group1FirstProductIndex != null) {
-                        return -1; // g1 có trong smart search, g2 không có
-                    } else if (group2FirstProductIndex != null) {
-                        return 1;  // g2 có trong smart search, g1 không có
-                    }
-                }
-                
-                // Sort theo price nếu không có search hoặc score bằng nhau
-                if ("asc".equalsIgnoreCase(sortByPrice)) {
-                    return compareByPrice(g1, g2, false);
-                } else if ("desc".equalsIgnoreCase(sortByPrice)) {
-                    return compareByPrice(g1, g2, true);
-                }
-                
-                return 0;
-            });
+            // Sort theo price trước; sortByRank ổn định nên price chỉ còn là tie-breaker khi có search
+            if ("asc".equalsIgnoreCase(sortByPrice)) {
+                result.sort((g1, g2) -> compareByPrice(g1, g2, false));
+            } else if ("desc".equalsIgnoreCase(sortByPrice)) {
+                result.sort((g1, g2) -> compareByPrice(g1, g2, true));
+            }
+            if (searchRanking != null) {
+                searchRanking.sortByRank(result);
+            }
 
             // 7. Pagination
 >>>>>>> server
@@ -1449,53 +1251,168 @@ public class GroupService {
         }
     }
 
-<<<<<<< HEAD
-=======
-    // **THÊM METHOD HELPER**
-    private Integer getFirstProductIndexInSmartSearch(GroupWithProductsDto group, List<String> smartSearchProductIds) {
-        if (smartSearchProductIds.isEmpty()) {
-            return null;
+    /**
+     * Paged listing behind /api/group-variants/groups. Plain filter listings are served from the
+     * in-memory {@link GroupCatalogIndex}, or paged in SQL while the index is disabled or cold;
+     * smart-search listings go through getAllProductsByGroup and are paged here.
+     */
+    @Transactional(readOnly = true)
+    public Page<GroupWithProductsDto> getProductsByGroupPage(int page, int size, String type,
+                                                             List<String> tags, List<String> brands,
+                                                             String sortByPrice, Integer minPrice,
+                                                             Integer maxPrice, String searchQuery) {
+        if (searchQuery == null || searchQuery.isEmpty()) {
+            if (groupCatalogIndex.isReady()) {
+                return groupCatalogIndex.query(page, size, type, tags, brands, sortByPrice, minPrice, maxPrice);
+            }
+            return getProductsByGroupPageFromDatabase(page, size, type, tags, brands, sortByPrice, minPrice, maxPrice);
         }
-        
-        for (GroupProductDto product : group.getProducts()) {
-            int index = smartSearchProductIds.indexOf(product.getProductId());
-            if (index >= 0) {
-                return index;
+
+        List<GroupWithProductsDto> allFilteredGroups = getAllProductsByGroup(
+                0, Integer.MAX_VALUE, type, tags, brands, sortByPrice, minPrice, maxPrice, searchQuery);
+
+        // Không có sortByPrice: sắp xếp theo orderNumber tăng dần, null cuối cùng
+        if (sortByPrice == null || sortByPrice.isEmpty()) {
+            allFilteredGroups.sort(Comparator.comparing(
+                    (GroupWithProductsDto g) -> g.getGroupDto() != null ? g.getGroupDto().getOrderNumber() : null,
+                    Comparator.nullsLast(Comparator.<Integer>naturalOrder())));
+        }
+
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.max(size, 1));
+        int totalElements = allFilteredGroups.size();
+        int startIndex = (int) Math.min(pageRequest.getOffset(), totalElements);
+        int endIndex = Math.min(startIndex + pageRequest.getPageSize(), totalElements);
+        return new PageImpl<>(new ArrayList<>(allFilteredGroups.subList(startIndex, endIndex)), pageRequest, totalElements);
+    }
+
+    // Filter, sort and LIMIT/OFFSET run in MySQL; only the groups of the requested page are loaded
+    private Page<GroupWithProductsDto> getProductsByGroupPageFromDatabase(int page, int size, String type,
+                                                                          List<String> tags, List<String> brands,
+                                                                          String sortByPrice, Integer minPrice,
+                                                                          Integer maxPrice) {
+        PageRequest pageRequest = PageRequest.of(Math.max(page, 0), Math.max(size, 1));
+        Page<Integer> groupIdPage = groupRepository.findListingGroupIds(
+                type, tags, brands, minPrice, maxPrice, sortByPrice, pageRequest);
+
+        List<Integer> groupIds = groupIdPage.getContent();
+        if (groupIds.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageRequest, groupIdPage.getTotalElements());
+        }
+
+        Map<Integer, Group> groupsById = groupRepository.findAllById(groupIds).stream()
+                .collect(Collectors.toMap(Group::getGroupId, g -> g));
+        Map<Integer, List<GroupProduct>> productsByGroup = groupProductRepository
+                .findAllByGroupIdInOrderByOrderNumberAsc(groupIds)
+                .stream()
+                .collect(Collectors.groupingBy(GroupProduct::getGroupId));
+
+        List<GroupWithProductsDto> content = new ArrayList<>();
+        for (Integer groupId : groupIds) {
+            Group group = groupsById.get(groupId);
+            if (group == null) {
+                continue;
             }
+            List<GroupProductDto> products = productsByGroup.getOrDefault(groupId, Collections.emptyList())
+                    .stream()
+                    .filter(p -> p.getDefaultCurrentPrice() != null)
+                    .filter(p -> minPrice == null || p.getDefaultCurrentPrice() >= minPrice)
+                    .filter(p -> maxPrice == null || p.getDefaultCurrentPrice() <= maxPrice)
+                    .map(gp -> GroupProductDto.builder()
+                            .productId(gp.getProductId())
+                            .variant(gp.getVariant())
+                            .productName(gp.getProductName())
+                            .defaultOriginalPrice(gp.getDefaultOriginalPrice())
+                            .defaultCurrentPrice(gp.getDefaultCurrentPrice())
+                            .defaultColor(gp.getDefaultColor())
+                            .orderNumber(gp.getOrderNumber())
+                            .build())
+                    .collect(Collectors.toList());
+
+            content.add(GroupWithProductsDto.builder()
+                    .groupDto(GroupDto.builder()
+                            .groupName(group.getGroupName())
+                            .groupId(groupId)
+                            .orderNumber(group.getOrderNumber())
+                            .image(group.getImage())
+                            .type(group.getType())
+                            .brand(group.getBrand())
+                            .build())
+                    .products(products)
+                    .elasticsearchScore(0f)
+                    .build());
         }
-        return null;
+
+        log.info("Fetched page {} ({} groups, total {}) from database for type: {}, tags: {}, brands: {}",
+                page, content.size(), groupIdPage.getTotalElements(), type, tags, brands);
+        return new PageImpl<>(content, pageRequest, groupIdPage.getTotalElements());
     }
 
-    // **UPDATE METHOD SCORES**  
-    private Map<Integer, Float> getGroupScoresFromSearchResultsWithOrder(List<String> foundProductIds, List<Integer> groupIds) {
-        Map<Integer, Float> groupScores = new HashMap<>();
-        
-        // Get group mappings for found products
-        List<GroupProduct> groupProducts = groupProductRepository.findAllByProductIdIn(foundProductIds);
-        
-        // **TÍNH SCORE DỰA TRÊN THỨ TỰ TRONG SMART SEARCH**
-        Map<Integer, Integer> groupFirstIndex = new HashMap<>();
-        
-        for (GroupProduct gp : groupProducts) {
-            if (groupIds.contains(gp.getGroupId())) {
-                int productIndex = foundProductIds.indexOf(gp.getProductId());
-                if (productIndex >= 0) {
-                    // Lưu index nhỏ nhất (product đầu tiên) của mỗi group
-                    groupFirstIndex.merge(gp.getGroupId(), productIndex, Integer::min);
-                }
+    /**
+     * Groups with their products for an explicit list of ids, in the requested order.
+     * Groups and products come back from a single join query; unknown ids are skipped.
+     */
+    public List<GroupWithProductsDto> getGroupsWithProducts(List<Integer> groupIds) {
+        List<Integer> distinctIds = groupIds.stream().distinct().collect(Collectors.toList());
+
+        Map<Integer, Group> groupsById = new HashMap<>();
+        Map<Integer, List<GroupProductDto>> productsByGroup = new HashMap<>();
+        for (Object[] row : groupRepository.findGroupsWithProductsByGroupIdIn(distinctIds)) {
+            Group group = (Group) row[0];
+            GroupProduct gp = (GroupProduct) row[1];
+            groupsById.putIfAbsent(group.getGroupId(), group);
+            List<GroupProductDto> products = productsByGroup.computeIfAbsent(group.getGroupId(), id -> new ArrayList<>());
+            if (gp != null) {
+                products.add(GroupProductDto.builder()
+                        .productId(gp.getProductId())
+                        .variant(gp.getVariant())
+                        .orderNumber(gp.getOrderNumber())
+                        .productName(gp.getProductName())
+                        .defaultOriginalPrice(gp.getDefaultOriginalPrice())
+                        .defaultCurrentPrice(gp.getDefaultCurrentPrice())
+                        .defaultColor(gp.getDefaultColor())
+                        .build());
             }
         }
-        
-        // Convert index thành score (index nhỏ hơn = score cao hơn)
-        int maxIndex = foundProductIds.size();
-        groupFirstIndex.forEach((groupId, firstIndex) -> {
-            float score = (float) (maxIndex - firstIndex) / maxIndex;
-            groupScores.put(groupId, score);
-        });
-        
-        return groupScores;
+
+        List<GroupWithProductsDto> result = new ArrayList<>(groupIds.size());
+        for (Integer groupId : groupIds) {
+            Group group = groupsById.get(groupId);
+            if (group == null) {
+                log.debug("Group {} requested but not found", groupId);
+                continue;
+            }
+            result.add(GroupWithProductsDto.builder()
+                    .groupDto(GroupDto.builder()
+                            .groupId(group.getGroupId())
+                            .orderNumber(group.getOrderNumber())
+                            .image(group.getImage())
+                            .type(group.getType())
+                            .build())
+                    .products(productsByGroup.getOrDefault(groupId, Collections.emptyList()))
+                    .build());
+        }
+        return result;
     }
 
+    /**
+     * Weak ETag for {@link #getGroupsWithProducts}. It changes when a requested group or any of its
+     * products is updated, added or removed, and is computed from one aggregate query without
+     * loading the rows themselves.
+     */
+    public String getGroupsEtag(List<Integer> groupIds) {
+        List<Integer> distinctIds = groupIds.stream().distinct().collect(Collectors.toList());
+        StringBuilder versions = new StringBuilder(groupIds.toString());
+        for (Object[] row : groupRepository.findGroupVersionsByGroupIdIn(distinctIds)) {
+            versions.append('|').append(row[0])
+                    .append(':').append(row[1])
+                    .append(':').append(row[2])
+                    .append(':').append(row[3]);
+        }
+        return "W/\"" + DigestUtils.md5DigestAsHex(versions.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+<<<<<<< HEAD
+=======
     private Map<Integer, Float> getGroupScoresFromSearchResults(List<String> foundProductIds, List<Integer> groupIds) {
         Map<Integer, Float> groupScores = new HashMap<>();
         
@@ -1672,6 +1589,7 @@ public class GroupService {
             log.debug("Saved GroupProduct with ID: {}", savedGroupProduct.getGroupProductId());
         }
 
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroup(groupId));
         log.debug("Successfully created group with ID: {} and assigned {} products", groupId, productIds.size());
         return groupId;
     }
@@ -1773,6 +1691,7 @@ public class GroupService {
             }
         }
 
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroup(groupId));
         log.debug("Successfully updated group ID: {} with {} products", groupId,
                 productIds != null ? productIds.size() : "unchanged");
     }
@@ -1782,7 +1701,9 @@ public class GroupService {
                 .orElseThrow(() -> new IllegalArgumentException("Group not found with id: " + groupId));
 
         group.setOrderNumber(orderNumber);
-        return groupRepository.save(group);
+        Group savedGroup = groupRepository.save(group);
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroup(groupId));
+        return savedGroup;
     }
 
 <<<<<<< HEAD
@@ -1829,6 +1750,7 @@ public class GroupService {
             } else {
                 log.warn("Group with ID {} not found in groups table", groupId);
             }
+            eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroup(groupId));
             
         } catch (Exception e) {
             log.error("Error deleting group and junctions for group ID {}: {}", groupId, e.getMessage());
@@ -1842,6 +1764,9 @@ public class GroupService {
             if (!groupProducts.isEmpty()) {
                 groupProductRepository.deleteAll(groupProducts);
                 log.info("Deleted {} group-product links for product ID: {}", groupProducts.size(), productId);
+                eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroups(groupProducts.stream()
+                        .map(GroupProduct::getGroupId)
+                        .collect(Collectors.toSet())));
             }
         } catch (Exception e) {
             log.error("Error deleting group-product links for product ID {}: {}", productId, e.getMessage());
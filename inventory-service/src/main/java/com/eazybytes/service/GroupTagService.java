@@ -1,5 +1,6 @@
 package com.eazybytes.service;
 
+import com.eazybytes.event.GroupCatalogChangedEvent;
 import com.eazybytes.model.Group;
 import com.eazybytes.model.GroupTags;
 import com.eazybytes.model.Tags;
@@ -7,6 +8,7 @@ import com.eazybytes.repository.GroupRepository;
 import com.eazybytes.repository.GroupTagsRepository;
 import com.eazybytes.repository.TagsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -26,6 +28,9 @@ public class GroupTagService {
     @Autowired
     private TagsRepository tagsRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Thêm tag cho group
     public GroupTags addTagToGroup(Integer groupId, Integer tagId) {
         Optional<Group> optionalGroup = groupRepository.findById(groupId);
@@ -44,7 +49,9 @@ public class GroupTagService {
         Group group = optionalGroup.get();
         Tags tag = optionalTag.get();
         GroupTags groupTag = GroupTags.builder().group(group).tag(tag).build();
-        return groupTagsRepository.save(groupTag);
+        GroupTags savedGroupTag = groupTagsRepository.save(groupTag);
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroup(groupId));
+        return savedGroupTag;
     }
 
     // Xóa tag khỏi group
@@ -53,6 +60,7 @@ public class GroupTagService {
             throw new RuntimeException("Tag with ID " + tagId + " not found in Group with ID " + groupId);
         }
         groupTagsRepository.deleteByGroup_GroupIdAndTag_TagId(groupId, tagId);
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.forGroup(groupId));
     }
 
     // Sửa tag của group (thay tag cũ bằng tag mới)
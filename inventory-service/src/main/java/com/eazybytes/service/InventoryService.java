@@ -4,27 +4,39 @@ import com.eazybytes.dto.CancelInventoryReservationRequest;
 import com.eazybytes.dto.CartItemResponse;
 import com.eazybytes.dto.ConfirmInventoryReservationRequest;
 import com.eazybytes.dto.InventoryDto;
+import com.eazybytes.dto.InventoryLookupItem;
 import com.eazybytes.dto.ReserveInventoryRequest;
 import com.eazybytes.exception.InventoryAlreadyExistsException;
+import com.eazybytes.event.ReservationsCreatedEvent;
+import com.eazybytes.event.model.InventoryChangedEvent;
 import com.eazybytes.exception.InventoryNotFoundException;
 import com.eazybytes.model.InventoryHistory;
 import com.eazybytes.model.InventoryReservation;
 import com.eazybytes.model.ProductInventory;
 import com.eazybytes.repository.InventoryHistoryRepository;
 import com.eazybytes.repository.InventoryReservationRepository;
+import com.eazybytes.repository.InventoryStockJdbcRepository;
 import com.eazybytes.repository.ProductInventoryRepository;
+import com.eazybytes.repository.ReservationHistoryJdbcRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.OptimisticLockingFailureException;
 
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -35,6 +47,10 @@ public class InventoryService {
     private final ProductInventoryRepository productInventoryRepository;
     private final InventoryReservationRepository reservationRepository;
     private final InventoryHistoryRepository historyRepository;
+    private final InventoryStockJdbcRepository inventoryStockJdbcRepository;
+    private final ReservationHistoryJdbcRepository reservationHistoryJdbcRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
 
     // Phương thức helper để chuẩn hóa color
     private String normalizeColor(String color) {
@@ -138,6 +154,7 @@ public class InventoryService {
         log.debug("Saving inventory to database");
         ProductInventory savedInventory = productInventoryRepository.save(inventory);
         log.debug("₫ {}", savedInventory.getInventoryId());
+        publishChanged(savedInventory.getProductId(), savedInventory.getColor());
 
         return savedInventory;
     }
@@ -182,6 +199,7 @@ public class InventoryService {
             ProductInventory savedInventory = productInventoryRepository.save(inventory);
             log.info("Successfully saved inventory with ID: {}, new version: {}", 
                     savedInventory.getInventoryId(), savedInventory.getVersion());
+            publishChanged(savedInventory.getProductId(), savedInventory.getColor());
             
             return savedInventory;
         } catch (Exception e) {
@@ -200,58 +218,27 @@ public class InventoryService {
         
         // Chuẩn hóa color
         String normalizedColor = normalizeColor(color);
-        
-        int maxRetries = 3;
-        int retryCount = 0;
-        
-        while (retryCount < maxRetries) {
-            try {
-                ProductInventory inventory = productInventoryRepository
-                        .findByProductIdAndColor(phoneId, normalizedColor)
-                        .orElseThrow(() -> new InventoryNotFoundException(
-                                "Không tìm thấy tồn kho cho điện thoại với ID: " + phoneId +
-                                        " và màu: " + normalizedColor));
 
-                if (inventory.getQuantity() < quantity) {
-                    throw new IllegalArgumentException(
-                            "Không đủ số lượng trong kho. Hiện có: " + inventory.getQuantity() +
-                                    ", Yêu cầu: " + quantity);
-                }
+        // UPDATE có điều kiện quantity >= :n, không cần đọc trước và không cần retry khi tranh chấp
+        int updatedRows = productInventoryRepository.decreaseInventoryQuantityIfAvailable(phoneId, normalizedColor, quantity);
 
-                inventory.setQuantity(inventory.getQuantity() - quantity);
-                ProductInventory savedInventory = productInventoryRepository.save(inventory);
-                
-                log.info("Successfully decreased inventory for productId: {}, color: {}, quantity: -{}", 
-                        phoneId, normalizedColor, quantity);
-                
-                return savedInventory;
-                
-            } catch (org.springframework.dao.OptimisticLockingFailureException e) {
-                retryCount++;
-                log.warn("Optimistic locking failure on attempt {} for decreasing inventory productId: {}, color: {}. Retrying...", 
-                        retryCount, phoneId, normalizedColor);
-                
-                if (retryCount >= maxRetries) {
-                    log.error("Max retry attempts ({}) reached for decreasing inventory productId: {}, color: {}", 
-                            maxRetries, phoneId, normalizedColor);
-                    throw new RuntimeException("Không thể cập nhật tồn kho do xung đột đồng thời. Vui lòng thử lại.", e);
-                }
-                
-                // Delay tăng dần theo số lần retry
-                try {
-                    Thread.sleep(100 * retryCount);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Thread interrupted during retry", ie);
-                }
-            } catch (Exception e) {
-                log.error("Error decreasing inventory for productId: {}, color: {}, quantity: {}: {}", 
-                        phoneId, normalizedColor, quantity, e.getMessage(), e);
-                throw e;
-            }
+        ProductInventory inventory = productInventoryRepository
+                .findByProductIdAndColor(phoneId, normalizedColor)
+                .orElseThrow(() -> new InventoryNotFoundException(
+                        "Không tìm thấy tồn kho cho điện thoại với ID: " + phoneId +
+                                " và màu: " + normalizedColor));
+
+        if (updatedRows == 0) {
+            throw new IllegalArgumentException(
+                    "Không đủ số lượng trong kho. Hiện có: " + inventory.getQuantity() +
+                            ", Yêu cầu: " + quantity);
         }
-        
-        throw new RuntimeException("Unexpected error: exceeded retry loop without success or exception");
+
+        log.info("Successfully decreased inventory for productId: {}, color: {}, quantity: -{}", 
+                phoneId, normalizedColor, quantity);
+        publishChanged(phoneId, normalizedColor);
+
+        return inventory;
     }
 
     /**
@@ -284,6 +271,7 @@ public class InventoryService {
                 
                 log.info("Successfully increased inventory for productId: {}, color: {}, quantity: +{}", 
                         phoneId, normalizedColor, quantity);
+                publishChanged(phoneId, normalizedColor);
                 
                 // Trả về entity đã được cập nhật
                 return productInventoryRepository
@@ -320,6 +308,58 @@ public class InventoryService {
         throw new RuntimeException("Unexpected error: exceeded retry loop without success or exception");
     }
 
+    /**
+     * Resolves many (productId, color) pairs with one query, applying the same color rules as
+     * {@link #getProductInventory}. The result is aligned with {@code items}; pairs without
+     * inventory are null.
+     */
+    @Transactional(readOnly = true)
+    public List<InventoryDto> getProductInventories(List<InventoryLookupItem> items) {
+        List<String> productIds = items.stream()
+                .map(InventoryLookupItem::getProductId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, List<ProductInventory>> variantsByProduct = productIds.isEmpty()
+                ? Map.of()
+                : productInventoryRepository.findAllByProductIdIn(productIds).stream()
+                        .collect(Collectors.groupingBy(ProductInventory::getProductId));
+
+        List<InventoryDto> result = new ArrayList<>(items.size());
+        for (InventoryLookupItem item : items) {
+            ProductInventory inventory = resolveVariant(
+                    variantsByProduct.getOrDefault(item.getProductId(), List.of()), normalizeColor(item.getColor()));
+            if (inventory == null) {
+                result.add(null);
+                continue;
+            }
+            InventoryDto dto = mapToDto(inventory);
+            dto.setVersion(inventory.getVersion());
+            result.add(dto);
+        }
+        log.debug("Resolved {} inventory lookups for {} products", items.size(), productIds.size());
+        return result;
+    }
+
+    // "default": bản ghi color null/rỗng, nếu không có thì phiên bản đầu tiên, giống getProductInventory
+    private static ProductInventory resolveVariant(List<ProductInventory> variants, String normalizedColor) {
+        if (normalizedColor.equals("default")) {
+            for (ProductInventory variant : variants) {
+                if (variant.getColor() == null || variant.getColor().isEmpty()) {
+                    return variant;
+                }
+            }
+            return variants.isEmpty() ? null : variants.get(0);
+        }
+        // So khớp không phân biệt hoa thường như collation của cột color
+        for (ProductInventory variant : variants) {
+            if (normalizedColor.equalsIgnoreCase(variant.getColor())) {
+                return variant;
+            }
+        }
+        return null;
+    }
+
     public List<InventoryDto> findAllColorVariantsByProductId(String productId) {
         List<ProductInventory> inventories = productInventoryRepository.findAllByProductId(productId);
 
@@ -345,6 +385,7 @@ public class InventoryService {
     public void deleteAllByProductId(String productId) {
 
         productInventoryRepository.deleteAllByProductId(productId);
+        publishChanged(productId, null);
     }
 
     public void deleteInventoriesByProductIds(List<String> productIds) {
@@ -364,6 +405,7 @@ public class InventoryService {
         // Chuẩn hóa color
         String normalizedColor = normalizeColor(color);
         productInventoryRepository.deleteByProductIdAndColor(productId, normalizedColor);
+        publishChanged(productId, normalizedColor);
     }
 
     @Transactional(transactionManager = "transactionManager", isolation = org.springframework.transaction.annotation.Isolation.READ_COMMITTED, 
@@ -372,137 +414,61 @@ public class InventoryService {
         log.debug("Reserving inventory for order ID: {}", request.getOrderId());
 
         try {
-            // Kiểm tra số lượng tồn kho
+            List<InventoryStockJdbcRepository.StockChange> changes = new ArrayList<>(request.getItems().size());
             for (CartItemResponse item : request.getItems()) {
-                // Chuẩn hóa color
-                String normalizedColor = normalizeColor(item.getColor());
-                log.debug("Kiểm tra tồn kho: productId={}, color={} (đã chuẩn hóa: {})", 
-                        item.getProductId(), item.getColor(), normalizedColor);
-                
-                ProductInventory inventory = null;
-                try {
-                    if (normalizedColor.equals("default")) {
-                        log.debug("Tìm sản phẩm color=null/empty cho productId: {}", item.getProductId());
-                        Optional<ProductInventory> nullColorInventory = productInventoryRepository.findByProductIdAndColorIsNullOrEmpty(item.getProductId());
-                        if (nullColorInventory.isPresent()) {
-                            inventory = nullColorInventory.get();
-                            log.debug("Đã tìm thấy sản phẩm với color=null/empty: {} (id: {})", inventory.getColor(), inventory.getInventoryId());
-                        } else {
-                            log.debug("Không tìm thấy sản phẩm với color=null/empty. Tìm sản phẩm đầu tiên.");
-                            inventory = productInventoryRepository.findFirstByProductId(item.getProductId())
-                                    .orElseThrow(() -> new InventoryNotFoundException(
-                                            "Không tìm thấy tồn kho cho sản phẩm với ID: " + item.getProductId()));
-                            log.debug("Đã tìm sản phẩm đầu tiên với color: {}", inventory.getColor());
-                        }
-                    } else {
-                        log.debug("Tìm sản phẩm có color='{}'", normalizedColor);
-                        inventory = productInventoryRepository
-                                .findByProductIdAndColor(item.getProductId(), normalizedColor)
-                                .orElseThrow(() -> new InventoryNotFoundException(
-                                        "Không tìm thấy tồn kho cho sản phẩm với ID: " + item.getProductId() +
-                                                " và màu: " + normalizedColor));
-                        log.debug("Đã tìm thấy sản phẩm với color='{}', tồn kho: {}", normalizedColor, inventory.getQuantity());
-                    }
-                } catch (InventoryNotFoundException e) {
-                    log.error("Không tìm thấy sản phẩm: {}", e.getMessage());
-                    throw e;
-                }
-
-                if (inventory.getQuantity() < item.getQuantity()) {
-                    log.error("Không đủ tồn kho: cần {} nhưng chỉ có {}", item.getQuantity(), inventory.getQuantity());
+                if (item.getQuantity() == null || item.getQuantity() <= 0) {
                     throw new IllegalArgumentException(
-                            "Không đủ số lượng trong kho cho sản phẩm " + item.getProductId() +
-                                    ". Hiện có: " + inventory.getQuantity() +
-                                    ", Yêu cầu: " + item.getQuantity());
+                            "Số lượng giữ hàng phải lớn hơn 0 cho sản phẩm " + item.getProductId());
                 }
-                
-                log.debug("Đủ tồn kho cho sản phẩm {}, color: {}, yêu cầu: {}, hiện có: {}", 
-                        item.getProductId(), normalizedColor, item.getQuantity(), inventory.getQuantity());
+                changes.add(new InventoryStockJdbcRepository.StockChange(
+                        item.getProductId(), normalizeColor(item.getColor()), item.getQuantity()));
             }
 
-            // Giảm số lượng tồn kho và tạo reservation
-            for (CartItemResponse item : request.getItems()) {
-                // Chuẩn hóa color
-                String normalizedColor = normalizeColor(item.getColor());
-                log.debug("Giảm tồn kho: productId={}, color={} (chuẩn hóa: {})", 
-                        item.getProductId(), item.getColor(), normalizedColor);
-                
-                // Tìm và cập nhật số lượng tồn kho
-                ProductInventory inventory = null;
-                
-                if (normalizedColor.equals("default")) {
-                    Optional<ProductInventory> nullColorInventory = productInventoryRepository.findByProductIdAndColorIsNullOrEmpty(item.getProductId());
-                    if (nullColorInventory.isPresent()) {
-                        inventory = nullColorInventory.get();
-                    } else {
-                        inventory = productInventoryRepository.findFirstByProductId(item.getProductId())
-                                .orElseThrow(() -> new InventoryNotFoundException(
-                                        "Không tìm thấy tồn kho cho sản phẩm với ID: " + item.getProductId()));
-                    }
-                } else {
-                    inventory = productInventoryRepository
-                            .findByProductIdAndColor(item.getProductId(), normalizedColor)
-                            .orElseThrow(() -> new InventoryNotFoundException(
-                                    "Không tìm thấy tồn kho cho sản phẩm với ID: " + item.getProductId() +
-                                            " và màu: " + normalizedColor));
-                }
-                
-                // Cập nhật số lượng 
-                if (inventory.getQuantity() < item.getQuantity()) {
-                    throw new IllegalArgumentException(
-                            "Không đủ số lượng trong kho cho sản phẩm " + item.getProductId() +
-                                    ". Hiện có: " + inventory.getQuantity() +
-                                    ", Yêu cầu: " + item.getQuantity());
-                }
-                
-                // Cập nhật trực tiếp thông qua native query để tránh vấn đề optimistic locking
-                Integer newQuantity = inventory.getQuantity() - item.getQuantity();
-                log.debug("Cập nhật tồn kho: productId={}, color={}, newQuantity={}", 
-                        inventory.getProductId(), normalizedColor, newQuantity);
-                        
-                int updatedRows = productInventoryRepository.updateInventoryQuantity(
-                    inventory.getProductId(), 
-                    normalizedColor,
-                    newQuantity
-                );
-                
-                log.debug("Kết quả cập nhật: {} dòng bị ảnh hưởng", updatedRows);
-                
-                if (updatedRows == 0) {
-                    log.error("Không cập nhật được tồn kho cho sản phẩm: {}, color: {}", 
-                            inventory.getProductId(), normalizedColor);
-                    throw new RuntimeException("Không thể cập nhật tồn kho cho sản phẩm: " + 
-                            inventory.getProductId() + ", color: " + normalizedColor);
+            // Cả đơn hàng là một batch UPDATE có điều kiện; một dòng thất bại thì exception rollback toàn bộ
+            int[] updatedRows = inventoryStockJdbcRepository.decreaseIfAvailable(changes);
+            for (int i = 0; i < changes.size(); i++) {
+                log.debug("Giảm tồn kho: productId={}, color={}, quantity={}, kết quả: {} dòng", 
+                        changes.get(i).productId(), changes.get(i).color(), changes.get(i).quantity(), updatedRows[i]);
+                if (updatedRows[i] == 0) {
+                    // Reservation và lịch sử phải ghi đúng màu đã trừ kho, để lúc hủy/hết hạn hoàn lại đúng dòng
+                    changes.set(i, reserveWithoutColorOrFail(changes.get(i)));
                 }
+            }
+
+            LocalDateTime expiresAt = request.getReservationExpiresAt() != null ? 
+                    request.getReservationExpiresAt() : 
+                    LocalDateTime.now().plusMinutes(10);
 
+            List<InventoryReservation> reservations = new ArrayList<>(changes.size());
+            List<InventoryHistory> histories = new ArrayList<>(changes.size());
+            for (InventoryStockJdbcRepository.StockChange change : changes) {
                 // Tạo reservation
-                InventoryReservation reservation = InventoryReservation.builder()
+                reservations.add(InventoryReservation.builder()
                         .orderId(request.getOrderId())
-                        .productId(item.getProductId())
-                        .color(normalizedColor)
-                        .quantity(item.getQuantity())
+                        .productId(change.productId())
+                        .color(change.color())
+                        .quantity(change.quantity())
                         .status(InventoryReservation.ReservationStatus.RESERVED)
-                        .expiresAt(request.getReservationExpiresAt() != null ? 
-                                  request.getReservationExpiresAt() : 
-                                  LocalDateTime.now().plusMinutes(10))
-                        .build();
-                reservationRepository.save(reservation);
-                log.debug("Đã lưu reservation: orderId={}, productId={}, color={}, quantity={}", 
-                        reservation.getOrderId(), reservation.getProductId(), 
-                        reservation.getColor(), reservation.getQuantity());
+                        .expiresAt(expiresAt)
+                        .build());
 
                 // Ghi lịch sử
-                InventoryHistory history = InventoryHistory.builder()
-                        .productId(item.getProductId())
-                        .color(normalizedColor)
-                        .quantityChange(-item.getQuantity())
+                histories.add(InventoryHistory.builder()
+                        .productId(change.productId())
+                        .color(change.color())
+                        .quantityChange(-change.quantity())
                         .reason("RESERVED")
                         .orderId(request.getOrderId())
-                        .build();
-                historyRepository.save(history);
-                log.debug("Đã lưu history: productId={}, color={}, quantityChange={}", 
-                        history.getProductId(), history.getColor(), history.getQuantityChange());
+                        .build());
             }
+            // Mỗi bảng một câu INSERT nhiều dòng thay vì save() từng dòng
+            reservationHistoryJdbcRepository.insertReservations(reservations);
+            reservationHistoryJdbcRepository.insertHistory(histories);
+            log.debug("Đã lưu {} reservation và history cho đơn hàng {}", reservations.size(), request.getOrderId());
+
+            // Lên lịch hết hạn trên expiry wheel sau khi commit
+            eventPublisher.publishEvent(new ReservationsCreatedEvent(request.getOrderId(), expiresAt));
+            changes.forEach(change -> publishChanged(change.productId(), change.color()));
             
             log.info("Đã hoàn thành giữ hàng cho đơn hàng: {}", request.getOrderId());
         } catch (Exception e) {
@@ -511,12 +477,50 @@ public class InventoryService {
         }
     }
 
+    /**
+     * Chỉ chạy khi một dòng của batch trả về 0: xác định lý do để báo lỗi như trước.
+     * Với color "default" mà sản phẩm không có bản ghi không màu, vẫn giữ hàng trên bản ghi đầu tiên của sản phẩm.
+     *
+     * @return thay đổi đã thực sự áp dụng, với màu thật của bản ghi bị trừ kho
+     */
+    private InventoryStockJdbcRepository.StockChange reserveWithoutColorOrFail(InventoryStockJdbcRepository.StockChange change) {
+        ProductInventory inventory;
+        if ("default".equals(change.color())) {
+            Optional<ProductInventory> nullColorInventory = productInventoryRepository.findByProductIdAndColorIsNullOrEmpty(change.productId());
+            if (nullColorInventory.isPresent()) {
+                inventory = nullColorInventory.get();
+            } else {
+                inventory = productInventoryRepository.findFirstByProductId(change.productId())
+                        .orElseThrow(() -> new InventoryNotFoundException(
+                                "Không tìm thấy tồn kho cho sản phẩm với ID: " + change.productId()));
+                log.debug("Không có bản ghi color=null/empty, giữ hàng trên color: {}", inventory.getColor());
+                if (productInventoryRepository.decreaseInventoryQuantityIfAvailable(
+                        change.productId(), inventory.getColor(), change.quantity()) > 0) {
+                    return new InventoryStockJdbcRepository.StockChange(
+                            change.productId(), normalizeColor(inventory.getColor()), change.quantity());
+                }
+            }
+        } else {
+            inventory = productInventoryRepository
+                    .findByProductIdAndColor(change.productId(), change.color())
+                    .orElseThrow(() -> new InventoryNotFoundException(
+                            "Không tìm thấy tồn kho cho sản phẩm với ID: " + change.productId() +
+                                    " và màu: " + change.color()));
+        }
+
+        log.error("Không đủ tồn kho: cần {} nhưng chỉ có {}", change.quantity(), inventory.getQuantity());
+        throw new IllegalArgumentException(
+                "Không đủ số lượng trong kho cho sản phẩm " + change.productId() +
+                        ". Hiện có: " + inventory.getQuantity() +
+                        ", Yêu cầu: " + change.quantity());
+    }
+
     @Transactional(transactionManager = "transactionManager")
     public void confirmReservation(ConfirmInventoryReservationRequest request) {
         log.debug("Confirming inventory reservation for order ID: {}", request.getOrderId());
 
-        // Tìm các reservation cho order
-        List<InventoryReservation> reservations = reservationRepository.findByOrderId(request.getOrderId());
+        // Tìm và khóa các reservation cho order
+        List<InventoryReservation> reservations = reservationRepository.findByOrderIdForUpdate(request.getOrderId());
         if (reservations.isEmpty()) {
             log.warn("Không tìm thấy reservation cho order ID: {}. Có thể đã bị hủy hoặc xử lý trước đó.", request.getOrderId());
             return; // Chỉ return thay vì throw exception để tránh lỗi khi không tìm thấy reservation
@@ -552,30 +556,28 @@ public class InventoryService {
             // Vẫn tiếp tục xử lý các sản phẩm hợp lệ thay vì throw exception
         }
 
-        // Cập nhật trạng thái reservation và ghi lịch sử
-        for (InventoryReservation reservation : reservations) {
-            // Skip if already confirmed
-            if (reservation.getStatus() == InventoryReservation.ReservationStatus.CONFIRMED) {
-                log.debug("Reservation already confirmed for productId={}, color={}, orderId={}", 
-                    reservation.getProductId(), reservation.getColor(), reservation.getOrderId());
-                continue;
-            }
-            
-            reservation.setStatus(InventoryReservation.ReservationStatus.CONFIRMED);
-            reservationRepository.save(reservation);
-            log.info("Updated reservation status to CONFIRMED for productId={}, orderId={}", 
-                    reservation.getProductId(), reservation.getOrderId());
-
-            InventoryHistory history = InventoryHistory.builder()
-                    .productId(reservation.getProductId())
-                    .color(reservation.getColor())
-                    .quantityChange(-reservation.getQuantity())
-                    .reason("CONFIRMED")
-                    .orderId(reservation.getOrderId())
-                    .build();
-            historyRepository.save(history);
-            log.info("Created inventory history record for confirmation");
+        // Cập nhật trạng thái reservation và ghi lịch sử: một UPDATE và một INSERT nhiều dòng cho cả đơn hàng
+        List<InventoryReservation> toConfirm = reservations.stream()
+                .filter(reservation -> reservation.getStatus() != InventoryReservation.ReservationStatus.CONFIRMED)
+                .collect(Collectors.toList());
+        if (toConfirm.isEmpty()) {
+            log.debug("All reservations already confirmed for orderId={}", request.getOrderId());
+            return;
         }
+
+        reservationRepository.updateStatusByReservationIdIn(
+                toConfirm.stream().map(InventoryReservation::getReservationId).collect(Collectors.toList()),
+                InventoryReservation.ReservationStatus.CONFIRMED);
+        reservationHistoryJdbcRepository.insertHistory(toConfirm.stream()
+                .map(reservation -> InventoryHistory.builder()
+                        .productId(reservation.getProductId())
+                        .color(reservation.getColor())
+                        .quantityChange(-reservation.getQuantity())
+                        .reason("CONFIRMED")
+                        .orderId(reservation.getOrderId())
+                        .build())
+                .collect(Collectors.toList()));
+        log.info("Updated {} reservations to CONFIRMED for orderId={}", toConfirm.size(), request.getOrderId());
         
         log.info("Successfully completed confirmation of all reservations for order ID: {}", request.getOrderId());
     }
@@ -586,98 +588,102 @@ public class InventoryService {
     public void cancelReservation(CancelInventoryReservationRequest request) {
         log.debug("Cancelling inventory reservation for order ID: {}", request.getOrderId());
 
-        // Tìm các reservation cho order
-        List<InventoryReservation> reservations = reservationRepository.findByOrderId(request.getOrderId());
+        // Khóa các reservation của đơn hàng để hai request hủy đồng thời không hoàn kho hai lần
+        List<InventoryReservation> reservations = reservationRepository.findByOrderIdForUpdate(request.getOrderId());
         if (reservations.isEmpty()) {
             log.warn("Không tìm thấy reservation cho order ID: {}. Có thể đã được hủy trước đó.", request.getOrderId());
             return; // Chỉ return thay vì throw exception để tránh lỗi khi có nhiều request hủy cùng lúc
         }
 
         log.info("Found {} reservations for order: {}", reservations.size(), request.getOrderId());
+
+        // Chỉ hoàn kho cho RESERVED; CONFIRMED thuộc đơn hàng đã hoàn thành, CANCELLED đã được hoàn trước đó
+        List<InventoryReservation> toRelease = reservations.stream()
+                .filter(reservation -> reservation.getStatus() == InventoryReservation.ReservationStatus.RESERVED)
+                .collect(Collectors.toList());
+        if (toRelease.size() < reservations.size()) {
+            log.info("{} reservation(s) cho đơn hàng {} không ở trạng thái RESERVED, không cần hoàn trả tồn kho", 
+                    reservations.size() - toRelease.size(), request.getOrderId());
+        }
+
+        releaseReservations(toRelease, "CANCELLED");
         
-        // Cập nhật trạng thái và khôi phục số lượng tồn kho
+        log.info("Successfully completed cancellation of all reservations for order ID: {}", request.getOrderId());
+    }
+
+    /**
+     * Hoàn kho, chuyển trạng thái CANCELLED và ghi lịch sử cho các reservation đã được khóa.
+     * Số câu lệnh không phụ thuộc số dòng: một batch UPDATE tồn kho (mỗi SKU một lệnh), một UPDATE trạng thái, một INSERT lịch sử.
+     *
+     * Reservation của SKU không hoàn được (UPDATE khớp 0 dòng) chuyển sang RELEASE_FAILED, không ghi lịch sử
+     * hoàn kho và được đếm vào metric inventory.reservation.release.failed, để không báo là đã hoàn trả.
+     */
+    private void releaseReservations(List<InventoryReservation> reservations, String reason) {
+        if (reservations.isEmpty()) {
+            return;
+        }
+
+        // Gộp theo SKU: nhiều reservation của cùng sản phẩm/màu chỉ cần một lệnh cộng kho
+        Map<String, InventoryStockJdbcRepository.StockChange> perSku = new LinkedHashMap<>();
         for (InventoryReservation reservation : reservations) {
-            int maxRetries = 3;
-            int retryCount = 0;
-            boolean success = false;
-            
-            while (retryCount < maxRetries && !success) {
-                try {
-                    // Chỉ cần khôi phục tồn kho cho các reservation có status là RESERVED
-                    // Không cần khôi phục cho CONFIRMED (đã được xác nhận và thuộc đơn hàng hoàn thành)
-                    // Không cần khôi phục cho CANCELLED (đã được khôi phục trước đó)
-                    if (reservation.getStatus() == InventoryReservation.ReservationStatus.RESERVED) {
-                        // Tăng số lượng trong ProductInventory
-                        String normalizedColor = normalizeColor(reservation.getColor());
-                        
-                        log.info("Returning {} units of product {} (color: {}) to inventory on attempt {}/{}", 
-                               reservation.getQuantity(), reservation.getProductId(), normalizedColor, retryCount + 1, maxRetries);
-                        
-                        increaseProductQuantity(reservation.getProductId(), normalizedColor, reservation.getQuantity());
-                        log.info("Đã hoàn trả {} sản phẩm {} màu {} cho đơn hàng {} on attempt {}/{}", 
-                                reservation.getQuantity(), reservation.getProductId(), normalizedColor, 
-                                reservation.getOrderId(), retryCount + 1, maxRetries);
-                        
-                        // Cập nhật trạng thái
-                        reservation.setStatus(InventoryReservation.ReservationStatus.CANCELLED);
-                        reservationRepository.save(reservation);
-                        log.info("Updated reservation status to CANCELLED for productId={}, orderId={}", 
-                                reservation.getProductId(), reservation.getOrderId());
-
-                        // Ghi lịch sử
-                        InventoryHistory history = InventoryHistory.builder()
-                                .productId(reservation.getProductId())
-                                .color(normalizedColor)
-                                .quantityChange(reservation.getQuantity())
-                                .reason("CANCELLED")
-                                .orderId(reservation.getOrderId())
-                                .build();
-                        historyRepository.save(history);
-                        log.info("Created inventory history record for cancellation");
-                        
-                        success = true;
-                    } else {
-                        log.info("Reservation cho đơn hàng {} với sản phẩm {} đã ở trạng thái {}, không cần hoàn trả tồn kho", 
-                                reservation.getOrderId(), reservation.getProductId(), reservation.getStatus());
-                        success = true; // Không cần retry cho trường hợp này
-                    }
-                } catch (org.springframework.dao.OptimisticLockingFailureException e) {
-                    retryCount++;
-                    log.warn("Optimistic locking failure on attempt {} for cancelling reservation productId={} in order {}: {}", 
-                            retryCount, reservation.getProductId(), request.getOrderId(), e.getMessage());
-                    
-                    if (retryCount >= maxRetries) {
-                        log.error("Max retry attempts ({}) reached for cancelling reservation productId={} in order {}", 
-                                maxRetries, reservation.getProductId(), request.getOrderId());
-                        throw new RuntimeException("Failed to cancel reservation for productId=" + 
-                                reservation.getProductId() + " in order " + request.getOrderId() + 
-                                " after " + maxRetries + " attempts due to concurrent modifications", e);
-                    }
-                    
-                    // Delay tăng dần theo số lần retry
-                    try {
-                        Thread.sleep(200 * retryCount);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Thread interrupted during retry", ie);
-                    }
-                } catch (Exception e) {
-                    log.error("Error processing cancellation for productId={} in order {} on attempt {}/{}: {}", 
-                            reservation.getProductId(), request.getOrderId(), retryCount + 1, maxRetries, e.getMessage(), e);
-                    // Không retry cho các lỗi khác, throw ngay
-                    throw new RuntimeException("Failed to cancel reservation for productId=" + 
-                            reservation.getProductId() + " in order " + request.getOrderId(), e);
-                }
-            }
-            
-            if (!success) {
-                throw new RuntimeException("Failed to cancel reservation for productId=" + 
-                        reservation.getProductId() + " in order " + request.getOrderId() + 
-                        " after " + maxRetries + " attempts");
+            String color = normalizeColor(reservation.getColor());
+            perSku.merge(reservation.getProductId() + '\u0000' + color,
+                    new InventoryStockJdbcRepository.StockChange(reservation.getProductId(), color, reservation.getQuantity()),
+                    (a, b) -> new InventoryStockJdbcRepository.StockChange(a.productId(), a.color(), a.quantity() + b.quantity()));
+        }
+        List<String> skus = new ArrayList<>(perSku.keySet());
+        List<InventoryStockJdbcRepository.StockChange> changes = new ArrayList<>(perSku.values());
+        int[] updatedRows = inventoryStockJdbcRepository.increase(changes);
+        Set<String> failedSkus = new HashSet<>();
+        for (int i = 0; i < changes.size(); i++) {
+            if (updatedRows[i] > 0) {
+                publishChanged(changes.get(i).productId(), changes.get(i).color());
+            } else {
+                // Không có bản ghi tồn kho khớp (đã bị xóa hoặc màu lệch): không đánh dấu là đã hoàn trả
+                failedSkus.add(skus.get(i));
+                log.error("Không tìm thấy tồn kho để hoàn trả {} sản phẩm {} màu {} ({})", 
+                        changes.get(i).quantity(), changes.get(i).productId(), changes.get(i).color(), reason);
             }
         }
-        
-        log.info("Successfully completed cancellation of all reservations for order ID: {}", request.getOrderId());
+
+        List<InventoryReservation> released = new ArrayList<>(reservations.size());
+        List<InventoryReservation> failed = new ArrayList<>();
+        for (InventoryReservation reservation : reservations) {
+            String sku = reservation.getProductId() + '\u0000' + normalizeColor(reservation.getColor());
+            (failedSkus.contains(sku) ? failed : released).add(reservation);
+        }
+        if (!failed.isEmpty()) {
+            // RELEASE_FAILED không còn là RESERVED nên expiry và các lần hủy sau không lặp lại mãi
+            reservationRepository.updateStatusByReservationIdIn(
+                    failed.stream().map(InventoryReservation::getReservationId).collect(Collectors.toList()),
+                    InventoryReservation.ReservationStatus.RELEASE_FAILED);
+            meterRegistry.counter("inventory.reservation.release.failed", "reason", reason).increment(failed.size());
+        }
+        if (released.isEmpty()) {
+            return;
+        }
+
+        reservationRepository.updateStatusByReservationIdIn(
+                released.stream().map(InventoryReservation::getReservationId).collect(Collectors.toList()),
+                InventoryReservation.ReservationStatus.CANCELLED);
+
+        List<InventoryHistory> histories = released.stream()
+                .map(reservation -> InventoryHistory.builder()
+                        .productId(reservation.getProductId())
+                        .color(normalizeColor(reservation.getColor()))
+                        .quantityChange(reservation.getQuantity())
+                        .reason(reason)
+                        .orderId(reservation.getOrderId())
+                        .build())
+                .collect(Collectors.toList());
+        reservationHistoryJdbcRepository.insertHistory(histories);
+
+        log.info("Released {} reservations ({})", released.size(), reason);
+    }
+
+    // Gửi lên topic inventory-changed sau khi transaction commit, xem InventoryChangePublisher
+    private void publishChanged(String productId, String color) {
+        eventPublisher.publishEvent(new InventoryChangedEvent(productId, color));
     }
 
     @Transactional
@@ -707,84 +713,23 @@ public class InventoryService {
                 .collect(Collectors.toList());
     }
 
-    @Scheduled(fixedRate = 60000) // Run every 60 seconds (1 minute)
-    @Transactional(isolation = org.springframework.transaction.annotation.Isolation.READ_COMMITTED)
-    public void cancelExpiredReservations() {
-        log.debug("Checking for expired reservations");
-
-        List<InventoryReservation> expiredReservations = reservationRepository.findByStatusAndExpiresAtBefore(
-                InventoryReservation.ReservationStatus.RESERVED, LocalDateTime.now());
-                
+    /**
+     * Releases up to {@code limit} expired reservations in one transaction.
+     * Called by {@link ReservationExpiryScheduler} batch after batch, so a backlog never becomes one huge transaction.
+     *
+     * @return number of reservations released; less than {@code limit} once nothing is left
+     */
+    @Transactional(transactionManager = "transactionManager",
+                   isolation = org.springframework.transaction.annotation.Isolation.READ_COMMITTED)
+    public int releaseExpiredReservations(int limit) {
+        // SKIP LOCKED: các request hủy đang chạy giữ phần của chúng
+        List<InventoryReservation> expiredReservations = reservationRepository.lockExpiredReservations(
+                LocalDateTime.now(), limit);
         if (!expiredReservations.isEmpty()) {
             log.info("Found {} expired reservations to process", expiredReservations.size());
+            releaseReservations(expiredReservations, "TIMEOUT");
         }
-
-        for (InventoryReservation reservation : expiredReservations) {
-            log.info("Cancelling expired reservation for order ID: {}, product: {}, color: {}, quantity: {}, expired at: {}", 
-                    reservation.getOrderId(), reservation.getProductId(), 
-                    reservation.getColor(), reservation.getQuantity(), 
-                    reservation.getExpiresAt());
-
-            int maxRetries = 3;
-            int retryCount = 0;
-            boolean success = false;
-            
-            while (retryCount < maxRetries && !success) {
-                try {
-                    // Restore inventory quantity
-                    String normalizedColor = normalizeColor(reservation.getColor());
-                    increaseProductQuantity(reservation.getProductId(), normalizedColor, reservation.getQuantity());
-        
-                    // Update reservation status
-                    reservation.setStatus(InventoryReservation.ReservationStatus.CANCELLED);
-                    reservationRepository.save(reservation);
-        
-                    // Log history
-                    InventoryHistory history = InventoryHistory.builder()
-                            .productId(reservation.getProductId())
-                            .color(normalizedColor)
-                            .quantityChange(reservation.getQuantity())
-                            .reason("TIMEOUT")
-                            .orderId(reservation.getOrderId())
-                            .build();
-                    historyRepository.save(history);
-                    
-                    log.info("Successfully restored {} units of product {} with color {} for expired order {} on attempt {}/{}", 
-                            reservation.getQuantity(), reservation.getProductId(), 
-                            normalizedColor, reservation.getOrderId(), retryCount + 1, maxRetries);
-                    
-                    success = true;
-                } catch (org.springframework.dao.OptimisticLockingFailureException e) {
-                    retryCount++;
-                    log.warn("Optimistic locking failure on attempt {} for expired reservation (orderId: {}, productId: {}): {}", 
-                            retryCount, reservation.getOrderId(), reservation.getProductId(), e.getMessage());
-                    
-                    if (retryCount >= maxRetries) {
-                        log.error("Max retry attempts ({}) reached for expired reservation (orderId: {}, productId: {})", 
-                                maxRetries, reservation.getOrderId(), reservation.getProductId());
-                        break; // Continue với reservation tiếp theo thay vì throw exception
-                    }
-                    
-                    try {
-                        Thread.sleep(150 * retryCount);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                } catch (Exception e) {
-                    log.error("Error restoring inventory for expired reservation (orderId: {}, productId: {}) on attempt {}/{}: {}", 
-                              reservation.getOrderId(), reservation.getProductId(), retryCount + 1, maxRetries, e.getMessage(), e);
-                    break; // Continue với reservation tiếp theo thay vì retry
-                }
-            }
-            
-            if (!success) {
-                log.error("Failed to restore inventory for expired reservation (orderId: {}, productId: {}) after {} attempts", 
-                          reservation.getOrderId(), reservation.getProductId(), maxRetries);
-            }
-        }
-
-        log.debug("Processed {} expired reservations", expiredReservations.size());
+        return expiredReservations.size();
     }
 
     public List<InventoryReservation> getReservationsByOrderId(String orderId) {
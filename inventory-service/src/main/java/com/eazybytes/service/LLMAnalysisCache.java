@@ -0,0 +1,219 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.LLMAnalysisResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cache of parsed LLM query analyses keyed by (deviceType, normalized query).
+ *
+ * A bounded in-process LRU with TTL is always consulted first; when llm.cache.redis.enabled is set,
+ * entries are also shared through Redis so every inventory-service replica benefits from one
+ * OpenAI call. Exposes llm.analysis.cache.requests{result=hit|miss} and llm.analysis.latency{source}.
+ */
+@Slf4j
+@Component
+public class LLMAnalysisCache {
+
+    private static final String REDIS_KEY_PREFIX = "llm-analysis:";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Value("${llm.cache.enabled:true}")
+    private boolean cacheEnabled;
+
+    @Value("${llm.cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${llm.cache.ttl-minutes:360}")
+    private long ttlMinutes;
+
+    @Value("${llm.cache.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    private Map<String, CachedAnalysis> localCache;
+    private Counter hits;
+    private Counter misses;
+    private Timer cacheLatency;
+    private Timer llmLatency;
+
+    @PostConstruct
+    public void init() {
+        localCache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAnalysis> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        hits = Counter.builder("llm.analysis.cache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("llm.analysis.cache.requests").tag("result", "miss").register(meterRegistry);
+        cacheLatency = Timer.builder("llm.analysis.latency").tag("source", "cache").register(meterRegistry);
+        llmLatency = Timer.builder("llm.analysis.latency").tag("source", "llm").register(meterRegistry);
+        meterRegistry.gauge("llm.analysis.cache.size", this, cache -> cache.localSize());
+    }
+
+    /**
+     * Returns the cached analysis for this query, or runs {@code analyzer} and caches its result.
+     * Exceptions from the analyzer propagate so callers can apply their own fallback, which is never cached.
+     */
+    public LLMAnalysisResult getOrAnalyze(String query, String deviceType, Supplier<LLMAnalysisResult> analyzer) {
+        if (!cacheEnabled) {
+            return llmLatency.record(analyzer);
+        }
+
+        String key = buildKey(query, deviceType);
+        long start = System.nanoTime();
+        LLMAnalysisResult cached = lookup(key);
+        if (cached != null) {
+            cacheLatency.record(Duration.ofNanos(System.nanoTime() - start));
+            hits.increment();
+            log.debug("LLM analysis cache hit for key '{}'", key);
+            return cached;
+        }
+
+        misses.increment();
+        LLMAnalysisResult analysis = llmLatency.record(analyzer);
+        if (isCacheable(analysis)) {
+            store(key, analysis);
+        }
+        return analysis;
+    }
+
+    public void evictAll() {
+        synchronized (localCache) {
+            localCache.clear();
+        }
+    }
+
+    /**
+     * Lower-cases, NFC-normalizes (so composed and decomposed Vietnamese diacritics match),
+     * drops punctuation and collapses whitespace. Diacritics are kept: "pin" and "pín" differ.
+     */
+    static String normalizeQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        normalized = normalized.replaceAll("[^\\p{L}\\p{N}.\\s]", " ");
+        return normalized.trim().replaceAll("\\s+", " ");
+    }
+
+    static String buildKey(String query, String deviceType) {
+        String type = deviceType == null ? "" : deviceType.toLowerCase(Locale.ROOT);
+        return type + "|" + normalizeQuery(query);
+    }
+
+    private LLMAnalysisResult lookup(String key) {
+        synchronized (localCache) {
+            CachedAnalysis entry = localCache.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > System.currentTimeMillis()) {
+                    return entry.analysis;
+                }
+                localCache.remove(key);
+            }
+        }
+
+        StringRedisTemplate redisTemplate = redisTemplate();
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(redisKey(key));
+            if (json == null) {
+                return null;
+            }
+            LLMAnalysisResult analysis = objectMapper.readValue(json, LLMAnalysisResult.class);
+            putLocal(key, analysis);
+            return analysis;
+        } catch (Exception e) {
+            log.warn("Failed to read LLM analysis from Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(String key, LLMAnalysisResult analysis) {
+        putLocal(key, analysis);
+
+        StringRedisTemplate redisTemplate = redisTemplate();
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(redisKey(key), objectMapper.writeValueAsString(analysis),
+                    Duration.ofMinutes(ttlMinutes));
+        } catch (Exception e) {
+            log.warn("Failed to write LLM analysis to Redis: {}", e.getMessage());
+        }
+    }
+
+    private void putLocal(String key, LLMAnalysisResult analysis) {
+        long expiresAt = System.currentTimeMillis() + Duration.ofMinutes(ttlMinutes).toMillis();
+        synchronized (localCache) {
+            localCache.put(key, new CachedAnalysis(analysis, expiresAt));
+        }
+    }
+
+    private int localSize() {
+        synchronized (localCache) {
+            return localCache.size();
+        }
+    }
+
+    private StringRedisTemplate redisTemplate() {
+        return redisEnabled ? redisTemplateProvider.getIfAvailable() : null;
+    }
+
+    // Queries can be long; hash them so Redis keys stay short and uniform
+    private static String redisKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return REDIS_KEY_PREFIX + HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // LLMService answers errors with an empty analysis; caching it would pin the failure for the whole TTL
+    private static boolean isCacheable(LLMAnalysisResult analysis) {
+        return analysis != null
+                && !(isEmpty(analysis.getConditions())
+                     && isEmpty(analysis.getSortFields())
+                     && isEmpty(analysis.getTextSearchKeywords()));
+    }
+
+    private static boolean isEmpty(List<?> list) {
+        return list == null || list.isEmpty();
+    }
+
+    private record CachedAnalysis(LLMAnalysisResult analysis, long expiresAt) {
+    }
+}
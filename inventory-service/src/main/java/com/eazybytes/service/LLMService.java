@@ -3,18 +3,29 @@ package com.eazybytes.service;
 import com.eazybytes.dto.LLMAnalysisResult;
 import com.eazybytes.dto.SearchCondition;
 import com.eazybytes.dto.SortField;
+import com.eazybytes.exception.LLMUnavailableException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import jakarta.annotation.PostConstruct;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,9 +33,6 @@ import java.util.regex.Pattern;
 @Service
 public class LLMService {
 
-    @Autowired
-    private RestTemplate restTemplate;
-
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -40,6 +48,30 @@ public class LLMService {
     @Value("${llm.enabled:false}")
     private boolean llmEnabled;
 
+    // Hard deadline for one OpenAI call, after which callers fall back to keyword analysis
+    @Value("${llm.client.timeout-ms:8000}")
+    private long timeoutMs;
+
+    @Value("${llm.client.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    // Upper bound on OpenAI calls in flight, so a slow API cannot pin every servlet thread
+    @Value("${llm.client.max-concurrent-requests:16}")
+    private int maxConcurrentRequests;
+
+    private HttpClient httpClient;
+    private Semaphore concurrencyLimiter;
+
+    // Identical prompts issued while a call is in flight share its future
+    private final Map<String, CompletableFuture<LLMAnalysisResult>> inFlightRequests = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initHttpClient() {
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        concurrencyLimiter = new Semaphore(maxConcurrentRequests);
+    }
     
     @PostConstruct
     public void debugConfig() {
@@ -56,39 +88,80 @@ public class LLMService {
         } else {
             log.warn("OpenAI API Key: NOT CONFIGURED");
         }
+        log.info("Timeout: {} ms, max concurrent requests: {}", timeoutMs, maxConcurrentRequests);
         log.info("=====================================");
     }
 
+    /**
+     * Blocking facade over {@link #analyzeQueryAsync(String)}; waits at most the configured deadline.
+     *
+     * @throws LLMUnavailableException when the call times out, is rejected by the concurrency limit
+     *                                 or fails at the transport level
+     */
     public LLMAnalysisResult analyzeQuery(String prompt) {
         try {
-            if (!llmEnabled) {
-                log.info("LLM is disabled, using fallback analysis");
-                return createFallbackAnalysis();
+            return analyzeQueryAsync(prompt).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof LLMUnavailableException) {
+                throw (LLMUnavailableException) cause;
             }
-
-            if (openaiApiKey == null || openaiApiKey.trim().isEmpty()) {
-                log.warn("OpenAI API key is not configured, using fallback analysis");
-                return createFallbackAnalysis();
+            if (cause instanceof TimeoutException) {
+                throw new LLMUnavailableException("OpenAI call exceeded " + timeoutMs + " ms", cause);
             }
+            throw new LLMUnavailableException("OpenAI call failed: " + cause.getMessage(), cause);
+        }
+    }
 
-            // Validate API key format
-            if (!openaiApiKey.startsWith("sk-")) {
-                log.error("Invalid OpenAI API key format. Must start with 'sk-'");
-                return createFallbackAnalysis();
+    public CompletableFuture<LLMAnalysisResult> analyzeQueryAsync(String prompt) {
+        if (!llmEnabled) {
+            log.info("LLM is disabled, using fallback analysis");
+            return CompletableFuture.completedFuture(createFallbackAnalysis());
+        }
+
+        if (openaiApiKey == null || openaiApiKey.trim().isEmpty()) {
+            log.warn("OpenAI API key is not configured, using fallback analysis");
+            return CompletableFuture.completedFuture(createFallbackAnalysis());
+        }
+
+        // Validate API key format
+        if (!openaiApiKey.startsWith("sk-")) {
+            log.error("Invalid OpenAI API key format. Must start with 'sk-'");
+            return CompletableFuture.completedFuture(createFallbackAnalysis());
+        }
+
+        CompletableFuture<LLMAnalysisResult> inFlight = inFlightRequests.get(prompt);
+        if (inFlight == null) {
+            CompletableFuture<LLMAnalysisResult> created = new CompletableFuture<>();
+            inFlight = inFlightRequests.putIfAbsent(prompt, created);
+            if (inFlight == null) {
+                inFlight = created;
+                created.whenComplete((result, error) -> inFlightRequests.remove(prompt, created));
+                sendToOpenAI(prompt).whenComplete((result, error) -> {
+                    if (error != null) {
+                        created.completeExceptionally(error);
+                    } else {
+                        created.complete(result);
+                    }
+                });
             }
+        } else {
+            log.debug("Joining in-flight OpenAI request for identical prompt");
+        }
+
+        // Callers get a copy so one of them cannot complete or cancel the shared future
+        return inFlight.copy();
+    }
 
+    private CompletableFuture<LLMAnalysisResult> sendToOpenAI(String prompt) {
+        if (!concurrencyLimiter.tryAcquire()) {
+            log.warn("Rejecting OpenAI call: {} requests already in flight", maxConcurrentRequests);
+            return CompletableFuture.failedFuture(new LLMUnavailableException(
+                    "Too many concurrent OpenAI requests (limit " + maxConcurrentRequests + ")"));
+        }
+
+        try {
             log.info("Sending prompt to OpenAI GPT: {}", prompt.substring(0, Math.min(100, prompt.length())) + "...");
-            log.debug("Using API Key: {}...{}", 
-                openaiApiKey.substring(0, 10), 
-                openaiApiKey.substring(openaiApiKey.length() - 4));
-
-            // Prepare OpenAI API request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(openaiApiKey);
-            
-            // Add optional headers
-            // headers.set("OpenAI-Organization", "your-org-id"); // Uncomment if needed
 
             // Build OpenAI chat completion request
             Map<String, Object> message = Map.of(
@@ -106,42 +179,42 @@ public class LLMService {
 
             log.debug("Request body: {}", requestBody);
 
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(openaiApiUrl))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + openaiApiKey)
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
+                    .build();
 
-            // Call OpenAI API
-            ResponseEntity<String> response = restTemplate.exchange(
-                openaiApiUrl,
-                HttpMethod.POST,
-                request,
-                String.class
-            );
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .thenApply(this::handleOpenAIResponse)
+                    .whenComplete((result, error) -> concurrencyLimiter.release());
+        } catch (Exception e) {
+            concurrencyLimiter.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                log.info("OpenAI API call successful");
-                return parseOpenAIResponse(response.getBody());
-            } else {
-                log.error("OpenAI API returned error: {}", response.getStatusCode());
-                return createFallbackAnalysis();
-            }
+    private LLMAnalysisResult handleOpenAIResponse(HttpResponse<String> response) {
+        if (response.statusCode() == HttpStatus.OK.value() && response.body() != null) {
+            log.info("OpenAI API call successful");
+            return parseOpenAIResponse(response.body());
+        }
 
-        } catch (org.springframework.web.client.HttpClientErrorException e) {
-            log.error("OpenAI API HTTP Error: {}", e.getStatusCode());
-            log.error("Error body: {}", e.getResponseBodyAsString());
-            
-            if (e.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                log.error("API Key Authentication Failed!");
-                log.error("Please check:");
-                log.error("1. API key is correct and active");
-                log.error("2. Billing is set up on OpenAI account");
-                log.error("3. Usage limits not exceeded");
-                log.error("4. API key has proper permissions");
-            }
-            
-            return createFallbackAnalysis();
-        } catch (Exception e) {
-            log.error("Error calling OpenAI API: ", e);
-            return createFallbackAnalysis();
+        log.error("OpenAI API HTTP Error: {}", response.statusCode());
+        log.error("Error body: {}", response.body());
+
+        if (response.statusCode() == HttpStatus.UNAUTHORIZED.value()) {
+            log.error("API Key Authentication Failed!");
+            log.error("Please check:");
+            log.error("1. API key is correct and active");
+            log.error("2. Billing is set up on OpenAI account");
+            log.error("3. Usage limits not exceeded");
+            log.error("4. API key has proper permissions");
         }
+
+        return createFallbackAnalysis();
     }
 
     private LLMAnalysisResult parseOpenAIResponse(String responseBody) {
@@ -0,0 +1,170 @@
+package com.eazybytes.service;
+
+import com.eazybytes.event.ReservationsCreatedEvent;
+import com.eazybytes.repository.InventoryReservationRepository;
+import com.eazybytes.repository.SchedulerLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Releases expired inventory reservations within about one tick of their deadline.
+ *
+ * Deadlines are kept in a {@link ReservationExpiryWheel}, filled from inventory_reservation
+ * (on taking the lease and every reload interval, which also picks up reservations made on other
+ * replicas) and from {@link ReservationsCreatedEvent} for reservations made on this node. When a
+ * slot comes due, expired rows are released in batches, each batch in its own transaction.
+ *
+ * Only the node holding the "reservation-expiry" database lease sweeps; the others keep ticking
+ * so one of them takes over once the holder stops renewing. Only the holder keeps deadlines: the
+ * wheel is emptied when the lease is lost and refilled from the table when it is taken.
+ */
+@Slf4j
+@Service
+public class ReservationExpiryScheduler {
+
+    static final String LEASE_NAME = "reservation-expiry";
+
+    // Một giờ với tick 1 giây; deadline xa hơn chỉ nằm chờ thêm vòng
+    private static final int WHEEL_SLOTS = 3600;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryReservationRepository reservationRepository;
+
+    @Autowired
+    private SchedulerLeaseRepository leaseRepository;
+
+    @Value("${inventory.reservation-expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.reservation-expiry.tick-ms:1000}")
+    private long tickMillis;
+
+    @Value("${inventory.reservation-expiry.reload-interval-ms:30000}")
+    private long reloadIntervalMillis;
+
+    @Value("${inventory.reservation-expiry.lease-ttl-seconds:15}")
+    private int leaseTtlSeconds;
+
+    @Value("${inventory.reservation-expiry.batch-size:500}")
+    private int batchSize;
+
+    private final String owner = System.getenv().getOrDefault("HOSTNAME", "inventory-service")
+            + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    private ReservationExpiryWheel wheel;
+
+    // Chỉ được ghi từ thread của @Scheduled; onReservationsCreated đọc từ thread của Kafka listener
+    private volatile boolean leader = false;
+    private long leaseRenewAt = 0;
+    private long lastReloadAt = 0;
+
+    @PostConstruct
+    void initWheel() {
+        wheel = new ReservationExpiryWheel(WHEEL_SLOTS, tickMillis, System.currentTimeMillis());
+    }
+
+    @PreDestroy
+    void releaseLease() {
+        if (leader) {
+            try {
+                leaseRepository.release(LEASE_NAME, owner);
+            } catch (Exception e) {
+                log.warn("Could not release reservation expiry lease: {}", e.getMessage());
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationsCreated(ReservationsCreatedEvent event) {
+        // Node không giữ lease không bao giờ advance wheel; node giữ lease sẽ nạp deadline này khi reload
+        if (leader) {
+            wheel.schedule(toEpochMillis(event.getExpiresAt()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.reservation-expiry.tick-ms:1000}")
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (!holdLease(now)) {
+                return;
+            }
+            if (now - lastReloadAt >= reloadIntervalMillis) {
+                reload(now);
+            }
+            if (wheel.advance(now)) {
+                sweep();
+            }
+        } catch (Exception e) {
+            log.error("Reservation expiry tick failed: ", e);
+        }
+    }
+
+    private boolean holdLease(long now) {
+        if (leader && now < leaseRenewAt) {
+            return true;
+        }
+        boolean acquired = leaseRepository.tryAcquire(LEASE_NAME, owner, leaseTtlSeconds);
+        if (acquired && !leader) {
+            log.info("Acquired reservation expiry lease as {}", owner);
+            // Node trước có thể đã dừng giữa chừng: nạp lại toàn bộ deadline ngay
+            wheel.clear(now);
+            lastReloadAt = 0;
+        } else if (!acquired && leader) {
+            log.warn("Lost reservation expiry lease held by {}", owner);
+            wheel.clear(now);
+        }
+        leader = acquired;
+        // Gia hạn khi còn 2/3 thời gian lease để một tick chậm không làm mất lease
+        leaseRenewAt = now + leaseTtlSeconds * 1000L / 3;
+        return acquired;
+    }
+
+    private void reload(long now) {
+        // Đã quá hạn hoặc sẽ hết hạn trước lần reload sau (cộng biên độ), kể cả của replica khác
+        LocalDateTime until = LocalDateTime.now().plusNanos(2 * reloadIntervalMillis * 1_000_000L);
+        List<LocalDateTime> deadlines = reservationRepository.findReservedExpiryTimesBefore(until);
+        for (LocalDateTime deadline : deadlines) {
+            wheel.schedule(toEpochMillis(deadline));
+        }
+        lastReloadAt = now;
+        log.debug("Reloaded {} reservation deadlines, {} pending in wheel", deadlines.size(), wheel.size());
+    }
+
+    private void sweep() {
+        long started = System.currentTimeMillis();
+        int released = 0;
+        while (true) {
+            int batch = inventoryService.releaseExpiredReservations(batchSize);
+            released += batch;
+            // Backlog lớn sau sự cố: giữ lease giữa các batch, dừng nếu node khác đã tiếp quản
+            if (batch < batchSize || !holdLease(System.currentTimeMillis())) {
+                break;
+            }
+        }
+        if (released > 0) {
+            log.info("Released {} expired reservations in {} ms", released, System.currentTimeMillis() - started);
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
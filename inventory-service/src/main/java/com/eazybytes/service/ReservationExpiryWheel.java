@@ -0,0 +1,92 @@
+package com.eazybytes.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hashed timing wheel of reservation deadlines, one slot per tick.
+ *
+ * Only deadlines are kept, not reservation ids: inventory_reservation stays the source of truth and
+ * a due slot only tells the sweeper that something has expired. Reservations sharing a tick share
+ * one entry. Deadlines more than one revolution away stay in their slot until the wheel has come
+ * round far enough.
+ */
+final class ReservationExpiryWheel {
+
+    private final long tickMillis;
+    private final List<Set<Long>> slots;
+
+    // Tick cuối cùng đã được xử lý bởi advance()
+    private long currentTick;
+
+    // Có deadline được thêm vào khi đã quá hạn (ví dụ lúc reload sau khi service dừng)
+    private boolean overdue;
+
+    ReservationExpiryWheel(int slotCount, long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new HashSet<>());
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    synchronized void schedule(long deadlineMillis) {
+        long tick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        if (tick <= currentTick) {
+            overdue = true;
+            return;
+        }
+        slots.get(slotOf(tick)).add(tick);
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis} and removes every deadline that has passed.
+     *
+     * @return whether at least one deadline was due
+     */
+    synchronized boolean advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        boolean due = overdue;
+        overdue = false;
+
+        // Trễ hơn một vòng thì mỗi slot chỉ cần duyệt một lần
+        long from = Math.max(currentTick + 1, target - slots.size() + 1);
+        for (long tick = from; tick <= target; tick++) {
+            Set<Long> slot = slots.get(slotOf(tick));
+            Iterator<Long> deadlines = slot.iterator();
+            while (deadlines.hasNext()) {
+                if (deadlines.next() <= target) {
+                    deadlines.remove();
+                    due = true;
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, target);
+        return due;
+    }
+
+    /**
+     * Drops every deadline and restarts at {@code nowMillis}.
+     */
+    synchronized void clear(long nowMillis) {
+        slots.forEach(Set::clear);
+        overdue = false;
+        currentTick = nowMillis / tickMillis;
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (Set<Long> slot : slots) {
+            size += slot.size();
+        }
+        return size;
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) slots.size());
+    }
+}
@@ -0,0 +1,32 @@
+package com.eazybytes.service;
+
+import com.eazybytes.repository.ReservationHistoryJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * One-shot schema fix run at startup: databases created before RELEASE_FAILED existed have
+ * inventory_reservation.status as an ENUM of the old values, see
+ * {@link ReservationHistoryJdbcRepository#widenStatusColumnIfEnum()}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReservationStatusColumnMigration {
+
+    private final ReservationHistoryJdbcRepository reservationHistoryJdbcRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        try {
+            if (reservationHistoryJdbcRepository.widenStatusColumnIfEnum()) {
+                log.info("Changed inventory_reservation.status from ENUM to VARCHAR(20)");
+            }
+        } catch (Exception e) {
+            log.error("Could not widen inventory_reservation.status: ", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.GroupWithProductsDto;
+import com.eazybytes.model.GroupProduct;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges a ranked smart-search product list into group ranks.
+ *
+ * productId -> rank and groupId -> best rank are computed once, in O(products + mappings);
+ * ordering groups afterwards is a sort over packed primitive keys instead of indexOf scans
+ * inside a comparator.
+ */
+public final class SearchRankMerger {
+
+    public static final int UNRANKED = Integer.MAX_VALUE;
+
+    private final Map<Integer, Integer> groupBestRanks;
+    private final int resultSize;
+
+    private SearchRankMerger(Map<Integer, Integer> groupBestRanks, int resultSize) {
+        this.groupBestRanks = groupBestRanks;
+        this.resultSize = resultSize;
+    }
+
+    /**
+     * @param rankedProductIds product ids in smart-search order, best first
+     * @param groupProducts    group mappings of (at least) those products
+     */
+    public static SearchRankMerger of(List<String> rankedProductIds, Collection<GroupProduct> groupProducts) {
+        Map<String, Integer> productRanks = new HashMap<>(rankedProductIds.size() * 2);
+        for (int rank = 0; rank < rankedProductIds.size(); rank++) {
+            // Giữ rank đầu tiên nếu một product xuất hiện nhiều lần, giống indexOf trước đây
+            productRanks.putIfAbsent(rankedProductIds.get(rank), rank);
+        }
+
+        Map<Integer, Integer> groupBestRanks = new HashMap<>();
+        for (GroupProduct groupProduct : groupProducts) {
+            Integer rank = productRanks.get(groupProduct.getProductId());
+            if (rank != null && groupProduct.getGroupId() != null) {
+                groupBestRanks.merge(groupProduct.getGroupId(), rank, Math::min);
+            }
+        }
+        return new SearchRankMerger(groupBestRanks, rankedProductIds.size());
+    }
+
+    public Set<Integer> groupIds() {
+        return groupBestRanks.keySet();
+    }
+
+    public int bestRank(Integer groupId) {
+        return groupBestRanks.getOrDefault(groupId, UNRANKED);
+    }
+
+    // Rank nhỏ hơn = score cao hơn, cùng công thức (size - rank) / size như trước
+    public Map<Integer, Float> groupScores() {
+        Map<Integer, Float> scores = new HashMap<>(groupBestRanks.size() * 2);
+        groupBestRanks.forEach((groupId, rank) -> scores.put(groupId, (float) (resultSize - rank) / resultSize));
+        return scores;
+    }
+
+    /**
+     * Stable in-place sort by best rank; groups with equal rank (or unranked ones, which go last)
+     * keep their current relative order, so a prior price sort acts as the tie-breaker.
+     */
+    public void sortByRank(List<GroupWithProductsDto> groups) {
+        int size = groups.size();
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            GroupWithProductsDto group = groups.get(i);
+            Integer groupId = group.getGroupDto() != null ? group.getGroupDto().getGroupId() : null;
+            keys[i] = ((long) bestRank(groupId) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        GroupWithProductsDto[] sorted = new GroupWithProductsDto[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = groups.get((int) keys[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            groups.set(i, sorted[i]);
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.eazybytes.service;
 
+import com.eazybytes.event.GroupCatalogChangedEvent;
 import com.eazybytes.model.Tags;
 import com.eazybytes.repository.TagsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -14,6 +16,9 @@ public class TagService {
     @Autowired
     private TagsRepository tagsRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Thêm tag
     public Tags addTag(String tagName) {
         if (tagsRepository.existsByTagName(tagName)) {
@@ -34,7 +39,10 @@ public class TagService {
         }
         Tags tag = optionalTag.get();
         tag.setTagName(newTagName);
-        return tagsRepository.save(tag);
+        Tags savedTag = tagsRepository.save(tag);
+        // Tag names are resolved by the catalog index, reload it
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.all());
+        return savedTag;
     }
 
     // Xóa tag
@@ -43,6 +51,7 @@ public class TagService {
             throw new RuntimeException("Tag with ID " + tagId + " not found");
         }
         tagsRepository.deleteById(tagId);
+        eventPublisher.publishEvent(GroupCatalogChangedEvent.all());
     }
 
     // Lấy tất cả tags
@@ -0,0 +1,171 @@
+package com.eazybytes.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads reserving the same hot SKU against a real MySQL. Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class InventoryStockJdbcRepositoryLoadTest {
+
+    private static final int THREADS = 32;
+    private static final int ORDERS_PER_THREAD = 25;
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:8.0");
+
+    private static HikariDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transactionTemplate;
+
+    private InventoryStockJdbcRepository repository;
+
+    @BeforeAll
+    static void startDataSource() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(MYSQL.getJdbcUrl());
+        dataSource.setUsername(MYSQL.getUsername());
+        dataSource.setPassword(MYSQL.getPassword());
+        dataSource.setMaximumPoolSize(THREADS);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        jdbcTemplate.execute("CREATE TABLE product_inventory (" +
+                "inventory_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                "product_id VARCHAR(255) NOT NULL, " +
+                "color VARCHAR(100) NULL, " +
+                "quantity INT NOT NULL, " +
+                "version BIGINT NULL)");
+    }
+
+    @AfterAll
+    static void closeDataSource() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM product_inventory");
+        repository = new InventoryStockJdbcRepository(jdbcTemplate);
+    }
+
+    @Test
+    void hotSkuIsNeverOversold() throws Exception {
+        insertStock("hot", "Black", 200);
+
+        int succeeded = runOrders(List.of(new InventoryStockJdbcRepository.StockChange("hot", "Black", 1)));
+
+        assertEquals(200, succeeded);
+        assertEquals(0, quantityOf("hot", "Black"));
+    }
+
+    @Test
+    void orderIsRolledBackWhenAnyLineIsShort() throws Exception {
+        insertStock("hot", "Black", 500);
+        insertStock("side", null, 50);
+
+        // Dòng thứ hai hết hàng trước, mọi đơn sau đó phải hoàn lại cả dòng "hot"
+        int succeeded = runOrders(List.of(
+                new InventoryStockJdbcRepository.StockChange("hot", "Black", 2),
+                new InventoryStockJdbcRepository.StockChange("side", "default", 1)));
+
+        assertEquals(50, succeeded);
+        assertEquals(500 - 2 * 50, quantityOf("hot", "Black"));
+        assertEquals(0, quantityOf("side", null));
+    }
+
+    @Test
+    void missingOrShortLineReportsZeroRows() {
+        insertStock("hot", "Black", 3);
+
+        int[] rows = repository.decreaseIfAvailable(List.of(
+                new InventoryStockJdbcRepository.StockChange("hot", "Black", 4),
+                new InventoryStockJdbcRepository.StockChange("hot", "White", 1),
+                new InventoryStockJdbcRepository.StockChange("hot", "Black", 3)));
+
+        assertArrayEquals(new int[]{0, 0, 1}, rows);
+        assertEquals(0, quantityOf("hot", "Black"));
+    }
+
+    /**
+     * Places THREADS * ORDERS_PER_THREAD copies of the order concurrently, each in its own transaction
+     * that rolls back if any line reports zero rows, the way InventoryService.reserveInventory does.
+     */
+    private int runOrders(List<InventoryStockJdbcRepository.StockChange> order) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                        Boolean reserved = transactionTemplate.execute(status -> {
+                            for (int rows : repository.decreaseIfAvailable(order)) {
+                                if (rows == 0) {
+                                    status.setRollbackOnly();
+                                    return false;
+                                }
+                            }
+                            return true;
+                        });
+                        if (Boolean.TRUE.equals(reserved)) {
+                            succeeded.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            System.out.printf("%d orders on %d threads in %d ms, %d reserved%n",
+                    THREADS * ORDERS_PER_THREAD, THREADS, elapsedMs, succeeded.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        return succeeded.get();
+    }
+
+    private void insertStock(String productId, String color, int quantity) {
+        jdbcTemplate.update("INSERT INTO product_inventory (product_id, color, quantity, version) VALUES (?, ?, ?, 0)",
+                productId, color, quantity);
+    }
+
+    private int quantityOf(String productId, String color) {
+        if (color == null) {
+            return jdbcTemplate.queryForObject(
+                    "SELECT quantity FROM product_inventory WHERE product_id = ? AND color IS NULL", Integer.class, productId);
+        }
+        return jdbcTemplate.queryForObject(
+                "SELECT quantity FROM product_inventory WHERE product_id = ? AND color = ?", Integer.class, productId, color);
+    }
+}
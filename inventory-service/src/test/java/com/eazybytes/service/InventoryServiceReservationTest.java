@@ -0,0 +1,115 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.CancelInventoryReservationRequest;
+import com.eazybytes.dto.CartItemResponse;
+import com.eazybytes.dto.ReserveInventoryRequest;
+import com.eazybytes.model.InventoryHistory;
+import com.eazybytes.model.InventoryReservation;
+import com.eazybytes.model.ProductInventory;
+import com.eazybytes.repository.InventoryHistoryRepository;
+import com.eazybytes.repository.InventoryReservationRepository;
+import com.eazybytes.repository.InventoryStockJdbcRepository;
+import com.eazybytes.repository.ProductInventoryRepository;
+import com.eazybytes.repository.ReservationHistoryJdbcRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Reserve and release paths of InventoryService with the repositories mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+class InventoryServiceReservationTest {
+
+    @Mock
+    private ProductInventoryRepository productInventoryRepository;
+    @Mock
+    private InventoryReservationRepository reservationRepository;
+    @Mock
+    private InventoryHistoryRepository historyRepository;
+    @Mock
+    private InventoryStockJdbcRepository inventoryStockJdbcRepository;
+    @Mock
+    private ReservationHistoryJdbcRepository reservationHistoryJdbcRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private SimpleMeterRegistry meterRegistry;
+    private InventoryService inventoryService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        inventoryService = new InventoryService(productInventoryRepository, reservationRepository, historyRepository,
+                inventoryStockJdbcRepository, reservationHistoryJdbcRepository, eventPublisher, meterRegistry);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void defaultColorReservedOnVariantIsReturnedToThatVariantOnCancel() {
+        // Sản phẩm chỉ có biến thể màu, không có bản ghi color null/rỗng
+        when(inventoryStockJdbcRepository.decreaseIfAvailable(anyList())).thenReturn(new int[]{0});
+        when(productInventoryRepository.findByProductIdAndColorIsNullOrEmpty("p1")).thenReturn(Optional.empty());
+        when(productInventoryRepository.findFirstByProductId("p1"))
+                .thenReturn(Optional.of(ProductInventory.builder().productId("p1").color("Black").quantity(10).build()));
+        when(productInventoryRepository.decreaseInventoryQuantityIfAvailable("p1", "Black", 2)).thenReturn(1);
+
+        inventoryService.reserveInventory(ReserveInventoryRequest.builder()
+                .orderId("o1")
+                .items(List.of(CartItemResponse.builder().productId("p1").color("default").quantity(2).build()))
+                .build());
+
+        ArgumentCaptor<List<InventoryReservation>> reservations = ArgumentCaptor.forClass(List.class);
+        verify(reservationHistoryJdbcRepository).insertReservations(reservations.capture());
+        ArgumentCaptor<List<InventoryHistory>> reserveHistory = ArgumentCaptor.forClass(List.class);
+        verify(reservationHistoryJdbcRepository).insertHistory(reserveHistory.capture());
+        assertEquals("Black", reservations.getValue().get(0).getColor());
+        assertEquals("Black", reserveHistory.getValue().get(0).getColor());
+
+        InventoryReservation reserved = reservations.getValue().get(0);
+        reserved.setReservationId(7L);
+        when(reservationRepository.findByOrderIdForUpdate("o1")).thenReturn(List.of(reserved));
+        when(inventoryStockJdbcRepository.increase(anyList())).thenReturn(new int[]{1});
+
+        inventoryService.cancelReservation(CancelInventoryReservationRequest.builder().orderId("o1").build());
+
+        ArgumentCaptor<List<InventoryStockJdbcRepository.StockChange>> returned = ArgumentCaptor.forClass(List.class);
+        verify(inventoryStockJdbcRepository).increase(returned.capture());
+        assertEquals(List.of(new InventoryStockJdbcRepository.StockChange("p1", "Black", 2)), returned.getValue());
+        verify(reservationRepository).updateStatusByReservationIdIn(List.of(7L), InventoryReservation.ReservationStatus.CANCELLED);
+        verify(reservationHistoryJdbcRepository, times(2)).insertHistory(any());
+    }
+
+    @Test
+    void reservationWhoseStockRowIsGoneIsNotReportedAsCancelled() {
+        InventoryReservation reservation = InventoryReservation.builder()
+                .reservationId(8L).orderId("o2").productId("p2").color("Red").quantity(1)
+                .status(InventoryReservation.ReservationStatus.RESERVED)
+                .expiresAt(LocalDateTime.now().plusMinutes(5))
+                .build();
+        when(reservationRepository.findByOrderIdForUpdate("o2")).thenReturn(List.of(reservation));
+        when(inventoryStockJdbcRepository.increase(anyList())).thenReturn(new int[]{0});
+
+        inventoryService.cancelReservation(CancelInventoryReservationRequest.builder().orderId("o2").build());
+
+        verify(reservationRepository).updateStatusByReservationIdIn(List.of(8L), InventoryReservation.ReservationStatus.RELEASE_FAILED);
+        verify(reservationRepository, never()).updateStatusByReservationIdIn(any(), eq(InventoryReservation.ReservationStatus.CANCELLED));
+        verify(reservationHistoryJdbcRepository, never()).insertHistory(any());
+        assertEquals(1.0, meterRegistry.counter("inventory.reservation.release.failed", "reason", "CANCELLED").count());
+    }
+}
@@ -0,0 +1,134 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.LLMAnalysisResult;
+import com.eazybytes.exception.LLMUnavailableException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs LLMService against a local stub of the OpenAI chat completions endpoint.
+ */
+class LLMServiceTest {
+
+    private static final String STUB_RESPONSE = "{\"choices\":[{\"message\":{\"content\":"
+            + "\"{\\\"text_search_keywords\\\":[\\\"pin\\\"]}\"}}]}";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final CountDownLatch releaseResponses = new CountDownLatch(1);
+
+    private LLMService llmService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                releaseResponses.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = STUB_RESPONSE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        llmService = new LLMService();
+        ReflectionTestUtils.setField(llmService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(llmService, "openaiApiKey", "sk-test");
+        ReflectionTestUtils.setField(llmService, "openaiApiUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions");
+        ReflectionTestUtils.setField(llmService, "openaiModel", "gpt-4o-mini");
+        ReflectionTestUtils.setField(llmService, "llmEnabled", true);
+        ReflectionTestUtils.setField(llmService, "timeoutMs", 2000L);
+        ReflectionTestUtils.setField(llmService, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(llmService, "maxConcurrentRequests", 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseResponses.countDown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void analyzeQuery_whenStubIsSlowerThanDeadline_throwsLLMUnavailable() {
+        ReflectionTestUtils.setField(llmService, "timeoutMs", 200L);
+        llmService.initHttpClient();
+
+        long start = System.nanoTime();
+        assertThrows(LLMUnavailableException.class, () -> llmService.analyzeQuery("slow prompt"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    }
+
+    @Test
+    void analyzeQueryAsync_identicalPromptsInFlight_shareOneUpstreamCall() throws Exception {
+        llmService.initHttpClient();
+
+        List<CompletableFuture<LLMAnalysisResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(llmService.analyzeQueryAsync("điện thoại pin trâu"));
+        }
+        waitForRequests(1);
+        releaseResponses.countDown();
+
+        for (CompletableFuture<LLMAnalysisResult> future : futures) {
+            assertEquals(List.of("pin"), future.get(5, TimeUnit.SECONDS).getTextSearchKeywords());
+        }
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    void analyzeQueryAsync_whenConcurrencyLimitReached_rejectsImmediately() throws Exception {
+        ReflectionTestUtils.setField(llmService, "maxConcurrentRequests", 1);
+        llmService.initHttpClient();
+
+        CompletableFuture<LLMAnalysisResult> first = llmService.analyzeQueryAsync("first prompt");
+        waitForRequests(1);
+
+        CompletableFuture<LLMAnalysisResult> second = llmService.analyzeQueryAsync("second prompt");
+        CompletionException rejected = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(LLMUnavailableException.class, rejected.getCause());
+
+        releaseResponses.countDown();
+        assertNotNull(first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, requestCount.get());
+    }
+
+    private void waitForRequests(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requestCount.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, requestCount.get());
+    }
+}
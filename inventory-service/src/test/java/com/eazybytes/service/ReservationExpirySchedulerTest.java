@@ -0,0 +1,138 @@
+package com.eazybytes.service;
+
+import com.eazybytes.event.ReservationsCreatedEvent;
+import com.eazybytes.repository.InventoryReservationRepository;
+import com.eazybytes.repository.SchedulerLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Lease handling, reload window and sweeping of ReservationExpiryScheduler with the repositories mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+class ReservationExpirySchedulerTest {
+
+    private static final long RELOAD_INTERVAL_MS = 30_000;
+
+    @Mock
+    private InventoryService inventoryService;
+    @Mock
+    private InventoryReservationRepository reservationRepository;
+    @Mock
+    private SchedulerLeaseRepository leaseRepository;
+
+    @InjectMocks
+    private ReservationExpiryScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "tickMillis", 1000L);
+        ReflectionTestUtils.setField(scheduler, "reloadIntervalMillis", RELOAD_INTERVAL_MS);
+        // TTL 0: mỗi tick đều hỏi lại lease
+        ReflectionTestUtils.setField(scheduler, "leaseTtlSeconds", 0);
+        ReflectionTestUtils.setField(scheduler, "batchSize", 500);
+        scheduler.initWheel();
+    }
+
+    @Test
+    void reloadCoversTwoReloadIntervalsAhead() {
+        when(leaseRepository.tryAcquire(eq(ReservationExpiryScheduler.LEASE_NAME), anyString(), anyInt())).thenReturn(true);
+        when(reservationRepository.findReservedExpiryTimesBefore(any())).thenReturn(List.of());
+
+        LocalDateTime before = LocalDateTime.now();
+        scheduler.tick();
+        LocalDateTime after = LocalDateTime.now();
+
+        ArgumentCaptor<LocalDateTime> until = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(reservationRepository).findReservedExpiryTimesBefore(until.capture());
+        LocalDateTime window = until.getValue();
+        assertFalse(window.isBefore(before.plusNanos(2 * RELOAD_INTERVAL_MS * 1_000_000L)));
+        assertFalse(window.isAfter(after.plusNanos(2 * RELOAD_INTERVAL_MS * 1_000_000L)));
+    }
+
+    @Test
+    void reloadRunsOncePerInterval() {
+        when(leaseRepository.tryAcquire(eq(ReservationExpiryScheduler.LEASE_NAME), anyString(), anyInt())).thenReturn(true);
+        when(reservationRepository.findReservedExpiryTimesBefore(any())).thenReturn(List.of());
+
+        scheduler.tick();
+        scheduler.tick();
+
+        verify(reservationRepository, times(1)).findReservedExpiryTimesBefore(any());
+    }
+
+    @Test
+    void overdueReservationIsSweptOnTheNextTick() {
+        when(leaseRepository.tryAcquire(eq(ReservationExpiryScheduler.LEASE_NAME), anyString(), anyInt())).thenReturn(true);
+        when(reservationRepository.findReservedExpiryTimesBefore(any())).thenReturn(List.of());
+        when(inventoryService.releaseExpiredReservations(500)).thenReturn(3);
+        scheduler.tick();
+        verify(inventoryService, never()).releaseExpiredReservations(anyInt());
+
+        scheduler.onReservationsCreated(new ReservationsCreatedEvent("o1", LocalDateTime.now().minusSeconds(5)));
+        scheduler.tick();
+
+        verify(inventoryService).releaseExpiredReservations(500);
+    }
+
+    @Test
+    void fullBatchIsFollowedByAnotherOne() {
+        when(leaseRepository.tryAcquire(eq(ReservationExpiryScheduler.LEASE_NAME), anyString(), anyInt())).thenReturn(true);
+        when(reservationRepository.findReservedExpiryTimesBefore(any()))
+                .thenReturn(List.of(LocalDateTime.now().minusMinutes(10)));
+        when(inventoryService.releaseExpiredReservations(500)).thenReturn(500, 120);
+
+        scheduler.tick();
+
+        verify(inventoryService, times(2)).releaseExpiredReservations(500);
+    }
+
+    @Test
+    void losingTheLeaseEmptiesTheWheelAndStopsScheduling() {
+        when(leaseRepository.tryAcquire(eq(ReservationExpiryScheduler.LEASE_NAME), anyString(), anyInt()))
+                .thenReturn(true, false);
+        when(reservationRepository.findReservedExpiryTimesBefore(any()))
+                .thenReturn(List.of(LocalDateTime.now().plusSeconds(20)));
+
+        scheduler.tick();
+        assertEquals(1, wheel().size());
+
+        scheduler.tick();
+        assertEquals(0, wheel().size());
+
+        // Node không giữ lease bỏ qua deadline mới; node giữ lease sẽ nạp nó khi reload
+        scheduler.onReservationsCreated(new ReservationsCreatedEvent("o2", LocalDateTime.now().plusSeconds(20)));
+        assertEquals(0, wheel().size());
+        verify(inventoryService, never()).releaseExpiredReservations(anyInt());
+    }
+
+    @Test
+    void nodeWithoutTheLeaseNeitherReloadsNorSweeps() {
+        when(leaseRepository.tryAcquire(eq(ReservationExpiryScheduler.LEASE_NAME), anyString(), anyInt())).thenReturn(false);
+
+        scheduler.tick();
+
+        verifyNoInteractions(reservationRepository, inventoryService);
+    }
+
+    private ReservationExpiryWheel wheel() {
+        return (ReservationExpiryWheel) ReflectionTestUtils.getField(scheduler, "wheel");
+    }
+}
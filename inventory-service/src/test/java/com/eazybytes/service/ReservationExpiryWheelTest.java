@@ -0,0 +1,91 @@
+package com.eazybytes.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReservationExpiryWheelTest {
+
+    private static final long TICK = 1000;
+    private static final int SLOTS = 3600;
+
+    @Test
+    void deadlineIsDueOnceTheWheelPassesItsSlot() {
+        ReservationExpiryWheel wheel = new ReservationExpiryWheel(SLOTS, TICK, 0);
+
+        // Làm tròn lên tick 6: không hết hạn sớm hơn deadline
+        wheel.schedule(5_001);
+
+        assertFalse(wheel.advance(5_999));
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance(6_000));
+        assertEquals(0, wheel.size());
+        assertFalse(wheel.advance(7_000));
+    }
+
+    @Test
+    void deadlinesSharingATickShareOneEntry() {
+        ReservationExpiryWheel wheel = new ReservationExpiryWheel(SLOTS, TICK, 0);
+
+        wheel.schedule(2_100);
+        wheel.schedule(2_900);
+
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance(3_000));
+    }
+
+    @Test
+    void deadlineMoreThanOneRevolutionAheadWaitsForItsRound() {
+        ReservationExpiryWheel wheel = new ReservationExpiryWheel(SLOTS, TICK, 0);
+
+        // Tick 3605 nằm cùng slot với tick 5
+        wheel.schedule((SLOTS + 5) * TICK);
+
+        assertFalse(wheel.advance(5_000));
+        assertEquals(1, wheel.size());
+        assertFalse(wheel.advance((SLOTS + 4) * TICK));
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance((SLOTS + 5) * TICK));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advancingSeveralRevolutionsAtOnceReleasesEverythingPassed() {
+        ReservationExpiryWheel wheel = new ReservationExpiryWheel(SLOTS, TICK, 0);
+        wheel.schedule(10 * TICK);
+        wheel.schedule((2L * SLOTS + 10) * TICK);
+        wheel.schedule((3L * SLOTS + 10) * TICK);
+
+        assertTrue(wheel.advance((3L * SLOTS) * TICK));
+
+        // Chỉ deadline của vòng thứ tư còn lại
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance((3L * SLOTS + 10) * TICK));
+    }
+
+    @Test
+    void deadlineAlreadyPassedIsDueOnNextAdvance() {
+        ReservationExpiryWheel wheel = new ReservationExpiryWheel(SLOTS, TICK, 10_000);
+
+        wheel.schedule(4_000);
+
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(10_000));
+        assertFalse(wheel.advance(11_000));
+    }
+
+    @Test
+    void clearDropsDeadlinesAndRestartsAtNow() {
+        ReservationExpiryWheel wheel = new ReservationExpiryWheel(SLOTS, TICK, 0);
+        wheel.schedule(5_000);
+        wheel.schedule(-1);
+
+        wheel.clear(20_000);
+
+        assertEquals(0, wheel.size());
+        assertFalse(wheel.advance(30_000));
+        // Sau clear, deadline trước thời điểm restart được coi là quá hạn
+        wheel.schedule(15_000);
+        assertTrue(wheel.advance(30_000));
+    }
+}
@@ -0,0 +1,132 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.GroupDto;
+import com.eazybytes.dto.GroupProductDto;
+import com.eazybytes.dto.GroupWithProductsDto;
+import com.eazybytes.model.GroupProduct;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smart-search result merging: the former indexOf/contains scoring and comparator versus
+ * {@link SearchRankMerger}. Run with {@code main}; not part of the unit test suite.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchRankMergerBenchmark {
+
+    private static final int PRODUCTS_PER_GROUP = 3;
+
+    @Param({"1000", "10000"})
+    private int resultSize;
+
+    private List<String> rankedProductIds;
+    private List<GroupProduct> groupProducts;
+    private List<GroupWithProductsDto> groups;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> productIds = new ArrayList<>();
+        groupProducts = new ArrayList<>();
+        groups = new ArrayList<>();
+
+        for (int groupId = 0; groupId * PRODUCTS_PER_GROUP < resultSize; groupId++) {
+            List<GroupProductDto> products = new ArrayList<>();
+            for (int i = 0; i < PRODUCTS_PER_GROUP; i++) {
+                String productId = "p-" + groupId + "-" + i;
+                int price = 1_000_000 + random.nextInt(50_000_000);
+                productIds.add(productId);
+                groupProducts.add(GroupProduct.builder().groupId(groupId).productId(productId)
+                        .defaultCurrentPrice(price).build());
+                products.add(GroupProductDto.builder().productId(productId).defaultCurrentPrice(price).build());
+            }
+            groups.add(GroupWithProductsDto.builder()
+                    .groupDto(GroupDto.builder().groupId(groupId).build())
+                    .products(products)
+                    .build());
+        }
+        Collections.shuffle(productIds, random);
+        rankedProductIds = productIds;
+    }
+
+    @Benchmark
+    public List<GroupWithProductsDto> legacyIndexOf() {
+        List<Integer> groupIds = new ArrayList<>();
+        groupProducts.forEach(gp -> groupIds.add(gp.getGroupId()));
+
+        Map<Integer, Integer> groupFirstIndex = new HashMap<>();
+        for (GroupProduct gp : groupProducts) {
+            if (groupIds.contains(gp.getGroupId())) {
+                int productIndex = rankedProductIds.indexOf(gp.getProductId());
+                if (productIndex >= 0) {
+                    groupFirstIndex.merge(gp.getGroupId(), productIndex, Integer::min);
+                }
+            }
+        }
+        Map<Integer, Float> scores = new HashMap<>();
+        int maxIndex = rankedProductIds.size();
+        groupFirstIndex.forEach((groupId, first) -> scores.put(groupId, (float) (maxIndex - first) / maxIndex));
+
+        List<GroupWithProductsDto> result = new ArrayList<>(groups);
+        result.sort((g1, g2) -> {
+            int compare = Float.compare(scores.getOrDefault(g2.getGroupDto().getGroupId(), 0f),
+                    scores.getOrDefault(g1.getGroupDto().getGroupId(), 0f));
+            if (compare != 0) {
+                return compare;
+            }
+            return Integer.compare(firstIndex(g1), firstIndex(g2));
+        });
+        return result;
+    }
+
+    @Benchmark
+    public List<GroupWithProductsDto> rankMerger() {
+        SearchRankMerger ranking = SearchRankMerger.of(rankedProductIds, groupProducts);
+        ranking.groupScores();
+
+        List<GroupWithProductsDto> result = new ArrayList<>(groups);
+        ranking.sortByRank(result);
+        return result;
+    }
+
+    private int firstIndex(GroupWithProductsDto group) {
+        for (GroupProductDto product : group.getProducts()) {
+            int index = rankedProductIds.indexOf(product.getProductId());
+            if (index >= 0) {
+                return index;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SearchRankMergerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
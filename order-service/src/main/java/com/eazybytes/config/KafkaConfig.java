@@ -47,6 +47,33 @@ public class KafkaConfig {
         return new KafkaTemplate<>(producerFactory());
     }
 
+    /**
+     * Producer for {@link com.eazybytes.event.OrderOutboxRelay}. Payloads are already JSON, and a
+     * whole outbox batch is sent at once, so records are lingered and compressed into few requests.
+     */
+    @Bean
+    public ProducerFactory<String, String> outboxProducerFactory(
+            @Value("${kafka.outbox.producer.linger-ms:10}") int lingerMs,
+            @Value("${kafka.outbox.producer.batch-size:65536}") int batchSize,
+            @Value("${kafka.outbox.producer.compression-type:lz4}") String compressionType) {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        // Relay có thể gửi lại cả lô sau lỗi; idempotence tránh bản ghi trùng do retry của producer
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean
+    public KafkaTemplate<String, String> outboxKafkaTemplate(ProducerFactory<String, String> outboxProducerFactory) {
+        return new KafkaTemplate<>(outboxProducerFactory);
+    }
+
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -3,12 +3,14 @@ package com.eazybytes.controller;
 import com.eazybytes.dto.OrderResponse;
 import com.eazybytes.model.Order;
 import com.eazybytes.service.OrderService;
+import com.eazybytes.service.PurchaseHistoryCursor;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -71,12 +73,25 @@ public class OrderController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDir,
-            @RequestParam(required = false) String status) {
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor) {
         String userId = null;
         try {
             userId = roleChecker.getCurrentUserId();
             log.info("Received request to get purchase history for user: {} with status filter: {}", userId, status);
             
+            if (cursor != null && !cursor.isBlank()) {
+                // Keyset: trang tiếp theo sau cursor, luôn mới nhất trước, không cần COUNT
+                Slice<UserPurchaseHistoryResponseDto> slice = orderService.getUserPurchaseHistoryBefore(
+                        userId, status, PurchaseHistoryCursor.parse(cursor), size);
+                Map<String, Object> response = new HashMap<>();
+                response.put("orders", slice.getContent());
+                response.put("size", size);
+                response.put("hasNext", slice.hasNext());
+                response.put("nextCursor", nextCursor(slice));
+                return new ResponseEntity<>(response, HttpStatus.OK);
+            }
+
             Sort sort = sortDir.equalsIgnoreCase("desc") ? 
                        Sort.by(sortBy).descending() : 
                        Sort.by(sortBy).ascending();
@@ -92,8 +107,14 @@ public class OrderController {
             response.put("size", size);
             response.put("hasNext", purchaseHistory.hasNext());
             response.put("hasPrevious", purchaseHistory.hasPrevious());
+            if (sortBy.equals("createdAt") && sortDir.equalsIgnoreCase("desc")) {
+                response.put("nextCursor", nextCursor(purchaseHistory));
+            }
             
             return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid purchase history request for user: {}. Reason: {}", userId, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             log.error("Failed to get purchase history for user: {}. Reason: {}", userId, e.getMessage());
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -157,14 +178,10 @@ public class OrderController {
                        Sort.by(sortBy).ascending();
             
             Pageable pageable = PageRequest.of(page, size, sort);
-            Page<Order> orderPage = orderService.getAllOrdersForAdmin(pageable, status, userId, transactionId);
-            
-            List<OrderResponse> orderResponses = orderPage.getContent().stream()
-                    .map(this::toOrderResponseWithDetails)
-                    .collect(Collectors.toList());
+            Page<OrderResponse> orderPage = orderService.getAllOrdersForAdmin(pageable, status, userId, transactionId);
 
             Map<String, Object> response = new HashMap<>();
-            response.put("orders", orderResponses);
+            response.put("orders", orderPage.getContent());
             response.put("totalPages", orderPage.getTotalPages());
             response.put("totalElements", orderPage.getTotalElements());
             response.put("currentPage", page);
@@ -230,7 +247,8 @@ public class OrderController {
         } catch (Exception e) {
             log.error("Failed to check purchase status for user {} and product {}. Reason: {}", 
                     userId, productId, e.getMessage());
-            return new ResponseEntity<>(false, HttpStatus.OK); // Return false on error for safety
+            // Không trả 200 false: bên gọi sẽ coi (và cache) là "chưa mua"
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
         }
     }
 
@@ -278,18 +296,12 @@ public class OrderController {
         );
     }
 
-    private OrderResponse toOrderResponseWithDetails(Order order) {
-        return new OrderResponse(
-                order.getId().toString(),
-                order.getUserId(),
-                order.getTotalAmount(),
-                order.getStatus().name(),
-                order.getCreatedAt(),
-                order.getTransactionId(),
-                order.getShippingAddress(),
-                order.getPaymentMethod() != null ? order.getPaymentMethod().name() : null,
-                order.getItems().size()
-        );
+    private String nextCursor(Slice<UserPurchaseHistoryResponseDto> orders) {
+        if (!orders.hasNext() || orders.getContent().isEmpty()) {
+            return null;
+        }
+        List<UserPurchaseHistoryResponseDto> content = orders.getContent();
+        return PurchaseHistoryCursor.after(content.get(content.size() - 1)).encode();
     }
 
     private OrderDetailsResponseDto convertToOrderDetailsResponseDto(Order order) {
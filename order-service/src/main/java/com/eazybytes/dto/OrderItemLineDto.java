@@ -0,0 +1,18 @@
+package com.eazybytes.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một dòng của đơn hàng kèm orderId, đọc bằng JPQL projection để gán vào từng đơn trong trang
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderItemLineDto {
+    private Long orderId;
+    private String productId;
+    private String productName;
+    private Integer price;
+    private Integer quantity;
+    private String color;
+}
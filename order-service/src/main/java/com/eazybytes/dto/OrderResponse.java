@@ -1,5 +1,6 @@
 package com.eazybytes.dto;
 
+import com.eazybytes.model.Order;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
@@ -39,4 +40,14 @@ public class OrderResponse {
         this.paymentMethod = paymentMethod;
         this.itemCount = itemCount;
     }
+
+    // Constructor cho JPQL projection của danh sách đơn hàng admin
+    public OrderResponse(Long orderId, String userId, Integer totalAmount, Order.OrderStatus status,
+                        LocalDateTime createdAt, String transactionId, String shippingAddress,
+                        Order.PaymentMethod paymentMethod, Long itemCount) {
+        this(orderId.toString(), userId, totalAmount, status != null ? status.name() : null,
+                createdAt, transactionId, shippingAddress,
+                paymentMethod != null ? paymentMethod.name() : null,
+                itemCount != null ? itemCount.intValue() : 0);
+    }
 }
\ No newline at end of file
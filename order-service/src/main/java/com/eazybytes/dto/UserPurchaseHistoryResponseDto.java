@@ -1,5 +1,6 @@
 package com.eazybytes.dto;
 
+import com.eazybytes.model.Order;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -34,4 +35,15 @@ public class UserPurchaseHistoryResponseDto {
         this.createdAt = createdAt;
         this.updatedAt = updatedAt;
     }
+
+    // Constructor cho JPQL projection (SELECT new ...), items được gán sau bằng một truy vấn theo lô
+    public UserPurchaseHistoryResponseDto(Long orderId, String transactionId,
+                                        Integer totalAmount, Order.OrderStatus status,
+                                        Order.PaymentMethod paymentMethod, String shippingAddress,
+                                        LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(orderId.toString(), transactionId, totalAmount,
+                status != null ? status.name() : null,
+                paymentMethod != null ? paymentMethod.name() : null,
+                shippingAddress, createdAt, updatedAt);
+    }
 } 
\ No newline at end of file
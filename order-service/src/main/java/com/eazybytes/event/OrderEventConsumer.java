@@ -1,6 +1,7 @@
 package com.eazybytes.event;
 
 import com.eazybytes.event.model.*;
+import com.eazybytes.idempotency.MessageIdempotencyService;
 import com.eazybytes.service.OrderService;
 
 import lombok.RequiredArgsConstructor;
@@ -20,12 +21,14 @@ import org.springframework.stereotype.Component;
 public class OrderEventConsumer {
 
     private final OrderService orderService;
+    private final MessageIdempotencyService idempotencyService;
     
 
     @KafkaListener(topics = "${kafka.topics.checkout.initiated}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumeCheckoutInitiatedEvent(
             @Payload CheckoutInitiatedEvent event,
             @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(KafkaHeaders.OFFSET) long offset,
             Acknowledgment ack) {
@@ -34,7 +37,7 @@ public class OrderEventConsumer {
         
         try {
             // Process the event directly
-            orderService.processCheckoutInitiated(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processCheckoutInitiated(event));
             log.info("Successfully processed event");
             ack.acknowledge();
         } catch (Exception e) {
@@ -47,10 +50,12 @@ public class OrderEventConsumer {
     @KafkaListener(topics = "${kafka.topics.inventory.reserved}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumeInventoryReservedEvent(
             @Payload InventoryReservedEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             Acknowledgment ack) {
         log.info("Received InventoryReservedEvent: {}", event);
         try {
-            orderService.processInventoryReserved(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processInventoryReserved(event));
             ack.acknowledge();
         } catch (Exception e) {
             log.error("Failed to process InventoryReservedEvent: {}", e.getMessage(), e);
@@ -61,10 +66,12 @@ public class OrderEventConsumer {
     @KafkaListener(topics = "${kafka.topics.inventory.reservation-failed}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumeInventoryReservationFailedEvent(
             @Payload InventoryReservationFailedEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             Acknowledgment ack) {
         log.info("Received InventoryReservationFailedEvent: {}", event);
         try {
-            orderService.processInventoryReservationFailed(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processInventoryReservationFailed(event));
             ack.acknowledge();
         } catch (Exception e) {
             log.error("Failed to process InventoryReservationFailedEvent: {}", e.getMessage(), e);
@@ -75,10 +82,12 @@ public class OrderEventConsumer {
     @KafkaListener(topics = "${kafka.topics.payment.succeeded}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumePaymentSucceededEvent(
             @Payload PaymentSucceededEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             Acknowledgment ack) {
         log.info("Received PaymentSucceededEvent: {}", event);
         try {
-            orderService.processPaymentSucceeded(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processPaymentSucceeded(event));
             ack.acknowledge();
         } catch (Exception e) {
             log.error("Failed to process PaymentSucceededEvent: {}", e.getMessage(), e);
@@ -89,10 +98,12 @@ public class OrderEventConsumer {
     @KafkaListener(topics = "${kafka.topics.payment.failed}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumePaymentFailedEvent(
             @Payload PaymentFailedEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             Acknowledgment ack) {
         log.info("Received PaymentFailedEvent: {}", event);
         try {
-            orderService.processPaymentFailed(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processPaymentFailed(event));
             ack.acknowledge();
         } catch (Exception e) {
             log.error("Failed to process PaymentFailedEvent: {}", e.getMessage(), e);
@@ -103,10 +114,12 @@ public class OrderEventConsumer {
     @KafkaListener(topics = "${kafka.topics.order.completed}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumeOrderCompletedEvent(
             @Payload OrderCompletedEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             Acknowledgment ack) {
         log.info("Received OrderCompletedEvent: {}", event);
         try {
-            orderService.processOrderCompleted(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processOrderCompleted(event));
             ack.acknowledge();
         } catch (Exception e) {
             log.error("Failed to process OrderCompletedEvent: {}", e.getMessage(), e);
@@ -117,10 +130,12 @@ public class OrderEventConsumer {
     @KafkaListener(topics = "${kafka.topics.checkout.failed}", groupId = "${spring.kafka.consumer.group-id}")
     public void consumeCheckoutFailedEvent(
             @Payload CheckoutFailedEvent event,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
             Acknowledgment ack) {
         log.info("Received CheckoutFailedEvent: {}", event);
         try {
-            orderService.processCheckoutFailed(event);
+            idempotencyService.processOnce(topic, key, event.getTransactionId(), () -> orderService.processCheckoutFailed(event));
             ack.acknowledge();
         } catch (Exception e) {
             log.error("Failed to process CheckoutFailedEvent: {}", e.getMessage(), e);
@@ -1,19 +1,36 @@
 package com.eazybytes.event;
 
+import com.eazybytes.dto.OrderConfirmationNotification;
+import com.eazybytes.model.OrderOutboxEvent;
+import com.eazybytes.repository.OrderOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.JacksonUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.eazybytes.event.model.*;
 
+/**
+ * Saga messages go to order_outbox in the caller's transaction instead of straight to Kafka, so a
+ * rolled-back order change never emits its event and a committed one is never lost.
+ * {@link OrderOutboxRelay} publishes the rows.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class OrderEventProducer {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    // Cùng cấu hình với JsonSerializer của KafkaTemplate để payload trên topic không đổi
+    private static final ObjectMapper OUTBOX_MAPPER = JacksonUtils.enhancedObjectMapper();
+
+    private static final String ORDER_CONFIRMED_TOPIC = "cart-service-order-confirmed";
+
+    private final OrderOutboxRepository outboxRepository;
 
     // Inject topic names from application.yml
     @Value("${kafka.topics.reserve-inventory-request}")
@@ -35,38 +52,73 @@ public class OrderEventProducer {
     private String checkoutFailedTopic;
 
     public void sendReserveInventoryRequest(ReserveInventoryRequest request) {
-        log.info("Sending ReserveInventoryRequest with transactionId: {} to topic: {}", 
+        log.info("Queueing ReserveInventoryRequest with transactionId: {} for topic: {}", 
                 request.getTransactionId(), reserveInventoryRequestTopic);
-        kafkaTemplate.send(reserveInventoryRequestTopic, request.getTransactionId(), request);
+        enqueue(reserveInventoryRequestTopic, orderKey(request.getOrderId(), request.getTransactionId()), request);
     }
 
     public void sendProcessPaymentRequest(ProcessPaymentRequest request) {
-        log.info("Sending ProcessPaymentRequest with transactionId: {} to topic: {}", 
+        log.info("Queueing ProcessPaymentRequest with transactionId: {} for topic: {}", 
                 request.getTransactionId(), processPaymentRequestTopic);
-        kafkaTemplate.send(processPaymentRequestTopic, request.getTransactionId(), request);
+        enqueue(processPaymentRequestTopic, request.getTransactionId(), request);
     }
 
     public void sendConfirmInventoryReservationRequest(ConfirmInventoryReservationRequest request) {
-        log.info("Sending ConfirmInventoryReservationRequest with transactionId: {} to topic: {}", 
+        log.info("Queueing ConfirmInventoryReservationRequest with transactionId: {} for topic: {}", 
                 request.getTransactionId(), confirmInventoryReservationTopic);
-        kafkaTemplate.send(confirmInventoryReservationTopic, request.getTransactionId(), request);
+        enqueue(confirmInventoryReservationTopic, orderKey(request.getOrderId(), request.getTransactionId()), request);
     }
 
     public void sendCancelInventoryReservationRequest(CancelInventoryReservationRequest request) {
-        log.info("Sending CancelInventoryReservationRequest with transactionId: {} to topic: {}", 
+        log.info("Queueing CancelInventoryReservationRequest with transactionId: {} for topic: {}", 
                 request.getTransactionId(), cancelInventoryReservationTopic);
-        kafkaTemplate.send(cancelInventoryReservationTopic, request.getTransactionId(), request);
+        enqueue(cancelInventoryReservationTopic, orderKey(request.getOrderId(), request.getTransactionId()), request);
     }
 
     public void sendOrderCompletedEvent(OrderCompletedEvent event) {
-        log.info("Sending OrderCompletedEvent with transactionId: {} to topic: {}", 
+        log.info("Queueing OrderCompletedEvent with transactionId: {} for topic: {}", 
                 event.getTransactionId(), orderCompletedTopic);
-        kafkaTemplate.send(orderCompletedTopic, event.getTransactionId(), event);
+        enqueue(orderCompletedTopic, event.getTransactionId(), event);
     }
 
     public void sendCheckoutFailedEvent(CheckoutFailedEvent event) {
-        log.info("Sending CheckoutFailedEvent with transactionId: {} to topic: {}", 
+        log.info("Queueing CheckoutFailedEvent with transactionId: {} for topic: {}", 
                 event.getTransactionId(), checkoutFailedTopic);
-        kafkaTemplate.send(checkoutFailedTopic, event.getTransactionId(), event);
+        enqueue(checkoutFailedTopic, orderKey(event.getOrderId(), event.getTransactionId()), event);
+    }
+
+    /**
+     * For catch blocks: the caller's transaction may already be marked rollback-only by the error
+     * being handled, which would roll the compensation back with it. The row commits on its own.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void sendCheckoutFailedEventInNewTransaction(CheckoutFailedEvent event) {
+        sendCheckoutFailedEvent(event);
+    }
+
+    public void sendOrderConfirmationNotification(OrderConfirmationNotification notification) {
+        log.info("Queueing OrderConfirmationNotification for userId: {} for topic: {}",
+                notification.getUserId(), ORDER_CONFIRMED_TOPIC);
+        enqueue(ORDER_CONFIRMED_TOPIC, null, notification);
+    }
+
+    private void enqueue(String topic, String key, Object payload) {
+        String json;
+        try {
+            json = OUTBOX_MAPPER.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + payload.getClass().getSimpleName() + " for the outbox", e);
+        }
+        outboxRepository.save(OrderOutboxEvent.builder()
+                .topic(topic)
+                .messageKey(key)
+                .eventType(payload.getClass().getName())
+                .payload(json)
+                .build());
+    }
+
+    // Inventory xử lý song song theo partition: cùng orderId -> cùng partition -> đúng thứ tự trong một đơn hàng
+    private static String orderKey(String orderId, String transactionId) {
+        return orderId != null ? orderId : transactionId;
     }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+package com.eazybytes.event;
+
+import com.eazybytes.model.OrderOutboxEvent;
+import com.eazybytes.repository.OrderOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes order_outbox rows to Kafka.
+ *
+ * Each poll locks the oldest unpublished rows with FOR UPDATE SKIP LOCKED, so several order-service
+ * instances drain the table side by side without waiting on each other. The whole batch is handed to
+ * the producer before waiting on any acknowledgement, then the acknowledged rows are stamped
+ * published in the same transaction that holds the locks.
+ *
+ * All acknowledgements of a batch share one send-timeout deadline, so the row locks are held for at
+ * most that long. Only the rows before the first failed or timed-out send are stamped: the failed row
+ * and everything after it stay unpublished and are sent again, in id order, by a later poll, so a
+ * later event of an order is never marked published ahead of an earlier one. Consumers drop the
+ * resulting duplicates by transactionId.
+ */
+@Slf4j
+@Component
+public class OrderOutboxRelay {
+
+    private static final int PURGE_BATCH_SIZE = 5000;
+
+    @Autowired
+    private OrderOutboxRepository outboxRepository;
+
+    @Autowired
+    @Qualifier("outboxKafkaTemplate")
+    private KafkaTemplate<String, String> outboxKafkaTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${kafka.outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${kafka.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${kafka.outbox.send-timeout-ms:10000}")
+    private long sendTimeoutMillis;
+
+    @Value("${kafka.outbox.retention-hours:24}")
+    private int retentionHours;
+
+    @Scheduled(fixedDelayString = "${kafka.outbox.poll-interval-ms:100}")
+    public void relay() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            Integer published;
+            do {
+                // Lô đầy và gửi hết: còn tồn đọng, lấy lô tiếp ngay không chờ tick sau
+                published = transactionTemplate.execute(status -> publishBatch());
+            } while (published != null && published == batchSize);
+        } catch (Exception e) {
+            log.error("Order outbox relay failed: ", e);
+        }
+    }
+
+    private int publishBatch() {
+        List<OrderOutboxEvent> batch = outboxRepository.lockUnpublished(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>(batch.size());
+        for (OrderOutboxEvent event : batch) {
+            ProducerRecord<String, String> record = new ProducerRecord<>(event.getTopic(), event.getMessageKey(), event.getPayload());
+            record.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME,
+                    event.getEventType().getBytes(StandardCharsets.UTF_8));
+            futures.add(outboxKafkaTemplate.send(record));
+        }
+
+        List<Long> publishedIds = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            OrderOutboxEvent event = batch.get(i);
+            try {
+                futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                publishedIds.add(event.getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                // Dừng ở lỗi đầu tiên: các dòng sau được gửi lại cùng dòng lỗi để giữ thứ tự theo key
+                log.warn("Failed to publish outbox event {} to topic {}: {}", event.getId(), event.getTopic(), e.getMessage());
+                break;
+            }
+        }
+
+        if (!publishedIds.isEmpty()) {
+            outboxRepository.markPublished(publishedIds, LocalDateTime.now());
+        }
+        if (publishedIds.size() < batch.size()) {
+            log.warn("Published {} of {} outbox events; the rest will be retried", publishedIds.size(), batch.size());
+        }
+        return publishedIds.size();
+    }
+
+    @Scheduled(fixedDelayString = "${kafka.outbox.purge-interval-ms:3600000}", initialDelayString = "${kafka.outbox.purge-interval-ms:3600000}")
+    public void purgePublished() {
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            LocalDateTime before = LocalDateTime.now().minusHours(retentionHours);
+            int purged = 0;
+            Integer deleted;
+            do {
+                deleted = transactionTemplate.execute(status -> outboxRepository.deletePublishedBefore(before, PURGE_BATCH_SIZE));
+                purged += deleted != null ? deleted : 0;
+            } while (deleted != null && deleted == PURGE_BATCH_SIZE);
+            if (purged > 0) {
+                log.info("Purged {} published outbox events older than {} hours", purged, retentionHours);
+            }
+        } catch (Exception e) {
+            log.error("Order outbox purge failed: ", e);
+        }
+    }
+}
@@ -15,7 +15,12 @@ import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // Lịch sử mua hàng phân trang keyset theo (createdAt, id) của từng user
+        @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id"),
+        @Index(name = "idx_orders_created", columnList = "created_at, id"),
+        @Index(name = "idx_orders_user_status", columnList = "user_id, status")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
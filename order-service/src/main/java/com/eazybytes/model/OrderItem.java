@@ -6,7 +6,10 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "order_items")
+@Table(name = "order_items", indexes = {
+        // Kiểm tra "đã mua sản phẩm chưa" cho review: tìm theo product rồi join sang orders
+        @Index(name = "idx_order_items_product_order", columnList = "product_id, order_id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
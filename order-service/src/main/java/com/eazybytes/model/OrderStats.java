@@ -0,0 +1,45 @@
+package com.eazybytes.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Running order count and amount per (bucket, status), read by the admin dashboard instead of
+ * aggregating orders. A bucket is {@code ALL}, a creation month {@code M:yyyy-MM} or a creation
+ * day {@code D:yyyy-MM-dd}. Maintained on every status change and rebuilt periodically through
+ * {@link com.eazybytes.repository.OrderStatsRepository}.
+ */
+@Entity
+@Table(name = "order_stats")
+@IdClass(OrderStats.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStats {
+
+    @Id
+    @Column(name = "bucket", length = 16)
+    private String bucket;
+
+    @Id
+    @Column(name = "status", length = 20)
+    private String status;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+
+    @Column(name = "total_amount", nullable = false)
+    private Long totalAmount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String bucket;
+        private String status;
+    }
+}
@@ -1,5 +1,6 @@
 package com.eazybytes.repository;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -7,9 +8,13 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.eazybytes.dto.OrderItemLineDto;
+import com.eazybytes.dto.OrderResponse;
+import com.eazybytes.dto.UserPurchaseHistoryResponseDto;
 import com.eazybytes.model.Order;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,30 +37,40 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.items WHERE o.transactionId = :transactionId")
     Optional<Order> findByTransactionIdWithItems(@Param("transactionId") String transactionId);
 
-    // New admin methods for pagination and filtering with FETCH JOIN
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items")
-    Page<Order> findAllWithItems(Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.userId = :userId")
-    Page<Order> findByUserIdWithItems(@Param("userId") String userId, Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.status = :status")
-    Page<Order> findByStatusWithItems(@Param("status") Order.OrderStatus status, Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.status = :status AND o.userId = :userId")
-    Page<Order> findByStatusAndUserIdWithItems(@Param("status") Order.OrderStatus status, @Param("userId") String userId, Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.transactionId LIKE %:transactionId%")
-    Page<Order> findByTransactionIdContainingWithItems(@Param("transactionId") String transactionId, Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.status = :status AND o.transactionId LIKE %:transactionId%")
-    Page<Order> findByStatusAndTransactionIdContainingWithItems(@Param("status") Order.OrderStatus status, @Param("transactionId") String transactionId, Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.userId = :userId AND o.transactionId LIKE %:transactionId%")
-    Page<Order> findByUserIdAndTransactionIdContainingWithItems(@Param("userId") String userId, @Param("transactionId") String transactionId, Pageable pageable);
-    
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.status = :status AND o.userId = :userId AND o.transactionId LIKE %:transactionId%")
-    Page<Order> findByStatusAndUserIdAndTransactionIdContainingWithItems(@Param("status") Order.OrderStatus status, @Param("userId") String userId, @Param("transactionId") String transactionId, Pageable pageable);
+    // Danh sách đơn hàng cho admin: projection kèm số dòng, không fetch items nên LIMIT/OFFSET chạy trong SQL.
+    // Tham số lọc null = không lọc.
+    @Query(value = "SELECT new com.eazybytes.dto.OrderResponse(o.id, o.userId, o.totalAmount, o.status, o.createdAt, " +
+            "o.transactionId, o.shippingAddress, o.paymentMethod, (SELECT COUNT(i) FROM OrderItem i WHERE i.order = o)) " +
+            "FROM Order o WHERE (:status IS NULL OR o.status = :status) AND (:userId IS NULL OR o.userId = :userId) " +
+            "AND (:transactionId IS NULL OR o.transactionId LIKE CONCAT('%', :transactionId, '%'))",
+            countQuery = "SELECT COUNT(o) FROM Order o WHERE (:status IS NULL OR o.status = :status) " +
+                    "AND (:userId IS NULL OR o.userId = :userId) " +
+                    "AND (:transactionId IS NULL OR o.transactionId LIKE CONCAT('%', :transactionId, '%'))")
+    Page<OrderResponse> findOrderSummaries(@Param("status") Order.OrderStatus status, @Param("userId") String userId,
+                                           @Param("transactionId") String transactionId, Pageable pageable);
+
+    // Lịch sử mua hàng, bước 1: một trang đơn hàng (không có items) theo offset
+    @Query(value = "SELECT new com.eazybytes.dto.UserPurchaseHistoryResponseDto(o.id, o.transactionId, o.totalAmount, o.status, " +
+            "o.paymentMethod, o.shippingAddress, o.createdAt, o.updatedAt) " +
+            "FROM Order o WHERE o.userId = :userId AND (:status IS NULL OR o.status = :status)",
+            countQuery = "SELECT COUNT(o) FROM Order o WHERE o.userId = :userId AND (:status IS NULL OR o.status = :status)")
+    Page<UserPurchaseHistoryResponseDto> findPurchaseHistory(@Param("userId") String userId, @Param("status") Order.OrderStatus status,
+                                                             Pageable pageable);
+
+    // Lịch sử mua hàng, bước 1 theo keyset: các đơn cũ hơn (createdAt, id) đã cho, mới nhất trước
+    @Query("SELECT new com.eazybytes.dto.UserPurchaseHistoryResponseDto(o.id, o.transactionId, o.totalAmount, o.status, " +
+            "o.paymentMethod, o.shippingAddress, o.createdAt, o.updatedAt) " +
+            "FROM Order o WHERE o.userId = :userId AND (:status IS NULL OR o.status = :status) " +
+            "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :orderId)) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<UserPurchaseHistoryResponseDto> findPurchaseHistoryBefore(@Param("userId") String userId, @Param("status") Order.OrderStatus status,
+                                                                   @Param("createdAt") LocalDateTime createdAt, @Param("orderId") Long orderId,
+                                                                   Limit limit);
+
+    // Lịch sử mua hàng, bước 2: items của đúng các đơn trong trang, một truy vấn
+    @Query("SELECT new com.eazybytes.dto.OrderItemLineDto(i.order.id, i.productId, i.productName, i.price, i.quantity, i.color) " +
+            "FROM OrderItem i WHERE i.order.id IN :orderIds ORDER BY i.id")
+    List<OrderItemLineDto> findItemLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
 
     // Original methods without FETCH JOIN
     Page<Order> findByUserId(String userId, Pageable pageable);
@@ -66,21 +81,12 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     Page<Order> findByUserIdAndTransactionIdContaining(String userId, String transactionId, Pageable pageable);
     Page<Order> findByStatusAndUserIdAndTransactionIdContaining(Order.OrderStatus status, String userId, String transactionId, Pageable pageable);
 
-    // Statistics methods
-    long countByStatus(Order.OrderStatus status);
-    long countByCreatedAtAfter(LocalDateTime date);
-    
-    @Query("SELECT SUM(o.totalAmount) FROM Order o WHERE o.status = :status")
-    Integer sumTotalAmountByStatus(@Param("status") Order.OrderStatus status);
-    
-    @Query("SELECT SUM(o.totalAmount) FROM Order o WHERE o.status = :status AND o.createdAt >= :date")
-    Integer sumTotalAmountByStatusAndCreatedAtAfter(@Param("status") Order.OrderStatus status, @Param("date") LocalDateTime date);
+    // Statistics: see OrderStatsRepository
+
+    // Dừng ở dòng khớp đầu tiên, không load đơn hàng hay items nào
+    boolean existsByUserIdAndStatusAndItemsProductId(String userId, Order.OrderStatus status, String productId);
 
     // Method to find orders by userId and status with items fetched
     @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.userId = :userId AND o.status = :status")
     List<Order> findByUserIdAndStatusWithItems(@Param("userId") String userId, @Param("status") Order.OrderStatus status);
-
-    // Method to find orders by userId and status with items fetched (pageable)
-    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o.userId = :userId AND o.status = :status")
-    Page<Order> findByUserIdAndStatusWithItems(@Param("userId") String userId, @Param("status") Order.OrderStatus status, Pageable pageable);
 }
\ No newline at end of file
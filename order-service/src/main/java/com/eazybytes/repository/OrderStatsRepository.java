@@ -0,0 +1,153 @@
+package com.eazybytes.repository;
+
+import com.eazybytes.model.Order;
+import com.eazybytes.model.OrderStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads and maintains order_stats.
+ *
+ * Deltas are written in the caller's transaction, so a status change and its counters commit or
+ * roll back together. The created day, month and amount are taken from the orders row, which is
+ * the same source {@link #reconcile()} aggregates, so both always agree on the bucket of an order.
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderStatsRepository {
+
+    public static final String ALL = "ALL";
+
+    // Một đơn ứng với 3 bucket (ALL, tháng, ngày); các dòng được ghi theo thứ tự khóa chính để
+    // hai transaction cùng đụng vào một bucket luôn khóa theo cùng thứ tự
+    private static final String APPLY_DELTAS =
+            "INSERT INTO order_stats (bucket, status, order_count, total_amount) " +
+            "SELECT * FROM (" +
+            "SELECT CASE k.kind WHEN 'A' THEN '" + ALL + "' " +
+            "WHEN 'M' THEN DATE_FORMAT(o.created_at, 'M:%Y-%m') " +
+            "ELSE DATE_FORMAT(o.created_at, 'D:%Y-%m-%d') END AS bucket, " +
+            "s.status AS status, s.delta AS order_count, s.delta * COALESCE(o.total_amount, 0) AS total_amount " +
+            "FROM orders o " +
+            "CROSS JOIN (SELECT 'A' AS kind UNION ALL SELECT 'M' UNION ALL SELECT 'D') k " +
+            "CROSS JOIN (%DELTAS%) s " +
+            "WHERE o.id = ? AND (k.kind = 'A' OR o.created_at IS NOT NULL)" +
+            ") d ORDER BY d.bucket, d.status " +
+            "ON DUPLICATE KEY UPDATE order_count = order_stats.order_count + d.order_count, " +
+            "total_amount = order_stats.total_amount + d.total_amount";
+
+    private static final String CREATED_DELTAS = "SELECT ? AS status, 1 AS delta";
+    private static final String TRANSITION_DELTAS = "SELECT ? AS status, -1 AS delta UNION ALL SELECT ?, 1";
+
+    private static final RowMapper<OrderStats> ROW_MAPPER = (rs, rowNum) -> new OrderStats(
+            rs.getString("bucket"), rs.getString("status"), rs.getLong("order_count"), rs.getLong("total_amount"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public static String monthBucket(YearMonth month) {
+        return "M:" + month;
+    }
+
+    public static String dayBucket(LocalDate day) {
+        return "D:" + day;
+    }
+
+    public void recordCreated(Long orderId, Order.OrderStatus status) {
+        jdbcTemplate.update(APPLY_DELTAS.replace("%DELTAS%", CREATED_DELTAS), status.name(), orderId);
+    }
+
+    public void recordTransition(Long orderId, Order.OrderStatus from, Order.OrderStatus to) {
+        if (from == null) {
+            recordCreated(orderId, to);
+            return;
+        }
+        jdbcTemplate.update(APPLY_DELTAS.replace("%DELTAS%", TRANSITION_DELTAS), from.name(), to.name(), orderId);
+    }
+
+    /**
+     * Rows of the ALL bucket, of {@code month} and of every day from {@code fromDay} to {@code toDay}.
+     */
+    @Transactional(readOnly = true)
+    public List<OrderStats> findForDashboard(YearMonth month, LocalDate fromDay, LocalDate toDay) {
+        return jdbcTemplate.query("SELECT bucket, status, order_count, total_amount FROM order_stats " +
+                        "WHERE bucket = '" + ALL + "' OR bucket = ? OR bucket BETWEEN ? AND ?",
+                ROW_MAPPER, monthBucket(month), dayBucket(fromDay), dayBucket(toDay));
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT bucket FROM order_stats LIMIT 1", String.class).isEmpty();
+    }
+
+    /**
+     * Recomputes every bucket from orders and fixes the rows that drifted.
+     *
+     * All order_stats rows (and the gaps between them) are locked first, so status changes that
+     * commit during the rebuild wait and apply their delta on top of it; the aggregate then reads
+     * a snapshot taken after those locks. Status changes keep going meanwhile, only their counter
+     * update waits until this transaction commits.
+     *
+     * @return number of buckets that were wrong
+     */
+    @Transactional
+    public int reconcile() {
+        Map<OrderStats.Key, OrderStats> current = new HashMap<>();
+        jdbcTemplate.query("SELECT bucket, status, order_count, total_amount FROM order_stats FOR UPDATE", ROW_MAPPER)
+                .forEach(row -> current.put(new OrderStats.Key(row.getBucket(), row.getStatus()), row));
+
+        Map<OrderStats.Key, OrderStats> expected = new HashMap<>();
+        jdbcTemplate.query("SELECT DATE_FORMAT(created_at, '%Y-%m-%d') AS day, status, COUNT(*) AS order_count, " +
+                "COALESCE(SUM(total_amount), 0) AS total_amount FROM orders WHERE status IS NOT NULL " +
+                "GROUP BY day, status", rs -> {
+            String day = rs.getString("day");
+            String status = rs.getString("status");
+            long count = rs.getLong("order_count");
+            long amount = rs.getLong("total_amount");
+            add(expected, ALL, status, count, amount);
+            if (day != null) {
+                add(expected, "M:" + day.substring(0, 7), status, count, amount);
+                add(expected, "D:" + day, status, count, amount);
+            }
+        });
+
+        List<Object[]> upserts = new ArrayList<>();
+        for (OrderStats row : expected.values()) {
+            OrderStats existing = current.get(new OrderStats.Key(row.getBucket(), row.getStatus()));
+            if (existing == null || !Objects.equals(existing.getOrderCount(), row.getOrderCount())
+                    || !Objects.equals(existing.getTotalAmount(), row.getTotalAmount())) {
+                upserts.add(new Object[]{row.getBucket(), row.getStatus(), row.getOrderCount(), row.getTotalAmount()});
+            }
+        }
+        List<Object[]> deletes = new ArrayList<>();
+        current.keySet().stream()
+                .filter(key -> !expected.containsKey(key))
+                .forEach(key -> deletes.add(new Object[]{key.getBucket(), key.getStatus()}));
+
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO order_stats (bucket, status, order_count, total_amount) VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE order_count = VALUES(order_count), total_amount = VALUES(total_amount)", upserts);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM order_stats WHERE bucket = ? AND status = ?", deletes);
+        }
+        return upserts.size() + deletes.size();
+    }
+
+    private static void add(Map<OrderStats.Key, OrderStats> rows, String bucket, String status, long count, long amount) {
+        rows.merge(new OrderStats.Key(bucket, status), new OrderStats(bucket, status, count, amount), (a, b) -> {
+            a.setOrderCount(a.getOrderCount() + b.getOrderCount());
+            a.setTotalAmount(a.getTotalAmount() + b.getTotalAmount());
+            return a;
+        });
+    }
+}
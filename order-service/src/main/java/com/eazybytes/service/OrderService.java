@@ -2,9 +2,11 @@ package com.eazybytes.service;
 
 import com.eazybytes.event.model.*;
 import com.eazybytes.model.Order;
+import com.eazybytes.dto.OrderResponse;
 import com.eazybytes.dto.UserPurchaseHistoryResponseDto;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.Map;
@@ -38,7 +40,7 @@ public interface OrderService {
     void confirmOrder(Long orderId);
 
     // New admin methods
-    Page<Order> getAllOrdersForAdmin(Pageable pageable, String status, String userId, String transactionId);
+    Page<OrderResponse> getAllOrdersForAdmin(Pageable pageable, String status, String userId, String transactionId);
 
     void updateOrderStatus(Long orderId, String status);
 
@@ -49,4 +51,7 @@ public interface OrderService {
 
     // Get user purchase history with pagination and filtering
     Page<UserPurchaseHistoryResponseDto> getUserPurchaseHistory(String userId, Pageable pageable, String status);
+
+    // Keyset pagination, newest first: orders strictly after the cursor
+    Slice<UserPurchaseHistoryResponseDto> getUserPurchaseHistoryBefore(String userId, String status, PurchaseHistoryCursor cursor, int size);
 }
\ No newline at end of file
@@ -3,22 +3,33 @@ package com.eazybytes.service;
 import com.eazybytes.dto.CartItemIdentifier;
 import com.eazybytes.dto.CartItemResponse;
 import com.eazybytes.dto.OrderConfirmationNotification;
+import com.eazybytes.dto.OrderItemLineDto;
+import com.eazybytes.dto.OrderResponse;
 import com.eazybytes.dto.UserPurchaseHistoryResponseDto;
 import com.eazybytes.event.OrderEventProducer;
 import com.eazybytes.event.model.*;
 import com.eazybytes.model.Order;
 import com.eazybytes.model.OrderItem;
+import com.eazybytes.model.OrderStats;
 import com.eazybytes.repository.OrderRepository;
+import com.eazybytes.repository.OrderStatsRepository;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
-import java.time.LocalDateTime;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -31,8 +42,8 @@ import java.util.stream.Collectors;
 public class OrderServiceImpl implements OrderService {
 
     private final OrderRepository orderRepository;
-    private final KafkaTemplate<String, Object> kafkaTemplate;
     private final OrderEventProducer orderEventProducer;
+    private final OrderStatsRepository orderStatsRepository;
 
     @Override
     @Transactional
@@ -63,6 +74,7 @@ public class OrderServiceImpl implements OrderService {
             order.setTotalAmount(calculateTotalPrice(items));
 
             Order savedOrder = orderRepository.save(order);
+            orderStatsRepository.recordCreated(savedOrder.getId(), savedOrder.getStatus());
             log.info("Order created with ID: {} for user: {}", savedOrder.getId(), event.getUserId());
 
             // Chuẩn hóa color trước khi gửi yêu cầu giữ sản phẩm
@@ -100,7 +112,9 @@ public class OrderServiceImpl implements OrderService {
                             .collect(Collectors.toList()))
                     .reason(e.getMessage())
                     .build();
-            orderEventProducer.sendCheckoutFailedEvent(failedEvent);
+            orderEventProducer.sendCheckoutFailedEventInNewTransaction(failedEvent);
+            // Checkout đã báo thất bại: không để đơn dở dang (nếu đã save) được commit
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
         }
     }
 
@@ -117,7 +131,7 @@ public class OrderServiceImpl implements OrderService {
             return;
         }
         
-        order.setStatus(Order.OrderStatus.PAYMENT_PENDING);
+        changeStatus(order, Order.OrderStatus.PAYMENT_PENDING);
         orderRepository.save(order);
 
         ProcessPaymentRequest paymentRequest = ProcessPaymentRequest.builder()
@@ -136,7 +150,7 @@ public class OrderServiceImpl implements OrderService {
         log.info("Processing InventoryReservationFailedEvent for orderId: {}", event.getOrderId());
         Order order = orderRepository.findById(Long.parseLong(event.getOrderId()))
                 .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
-        order.setStatus(Order.OrderStatus.FAILED);
+        changeStatus(order, Order.OrderStatus.FAILED);
         orderRepository.save(order);
 
         CheckoutFailedEvent failedEvent = CheckoutFailedEvent.builder()
@@ -164,7 +178,7 @@ public class OrderServiceImpl implements OrderService {
             return;
         }
         
-        order.setStatus(Order.OrderStatus.PAYMENT_COMPLETED);
+        changeStatus(order, Order.OrderStatus.PAYMENT_COMPLETED);
         order.setPaymentId(event.getPaymentId());
         orderRepository.save(order);
 
@@ -225,7 +239,7 @@ public class OrderServiceImpl implements OrderService {
         Order.OrderStatus previousStatus = order.getStatus();
         
         // Update order status
-        order.setStatus(Order.OrderStatus.PAYMENT_FAILED);
+        changeStatus(order, Order.OrderStatus.PAYMENT_FAILED);
         orderRepository.save(order);
         log.info("Order status updated from {} to PAYMENT_FAILED for orderId: {}", 
                 previousStatus, event.getOrderId());
@@ -266,7 +280,7 @@ public class OrderServiceImpl implements OrderService {
             
             // Check if order is not already in FAILED status to prevent duplicate processing
             if (!currentStatus.equals(Order.OrderStatus.FAILED)) {
-                order.setStatus(Order.OrderStatus.FAILED);
+                changeStatus(order, Order.OrderStatus.FAILED);
                 orderRepository.save(order);
                 log.info("Order updated to FAILED for orderId: {}", order.getId());
 
@@ -333,7 +347,7 @@ public class OrderServiceImpl implements OrderService {
             Order.OrderStatus previousStatus = order.getStatus();
             
             // Update order status
-            order.setStatus(Order.OrderStatus.FAILED);
+            changeStatus(order, Order.OrderStatus.FAILED);
             orderRepository.save(order);
             log.info("Order status updated from {} to FAILED for orderId: {}", previousStatus, orderId);
 
@@ -377,7 +391,7 @@ public class OrderServiceImpl implements OrderService {
                 .map((OrderItem item) -> new CartItemIdentifier(item.getProductId(), item.getColor()))
                 .collect(Collectors.toList());
         OrderConfirmationNotification notification = new OrderConfirmationNotification(order.getUserId(), identifiers);
-        kafkaTemplate.send("cart-service-order-confirmed", notification);
+        orderEventProducer.sendOrderConfirmationNotification(notification);
         log.info("Order confirmed and notification sent for orderId: {}", orderId);
     }
 
@@ -387,7 +401,7 @@ public class OrderServiceImpl implements OrderService {
         Order order = getOrderByIdWithItems(orderId); // Use WithItems version since we access order.getItems()
         if (order.getStatus() == Order.OrderStatus.PAYMENT_PENDING) {
             log.info("Timeout detected for orderId: {}", orderId);
-            order.setStatus(Order.OrderStatus.FAILED);
+            changeStatus(order, Order.OrderStatus.FAILED);
             orderRepository.save(order);
 
             CancelInventoryReservationRequest cancelRequest = CancelInventoryReservationRequest.builder()
@@ -432,29 +446,14 @@ public class OrderServiceImpl implements OrderService {
     // New admin methods implementation
     @Override
     @Transactional(readOnly = true)
-    public Page<Order> getAllOrdersForAdmin(Pageable pageable, String status, String userId, String transactionId) {
+    public Page<OrderResponse> getAllOrdersForAdmin(Pageable pageable, String status, String userId, String transactionId) {
         log.info("Fetching orders for admin with filters - status: {}, userId: {}, transactionId: {}", 
                 status, userId, transactionId);
         
-        if (status != null && userId != null && transactionId != null) {
-            return orderRepository.findByStatusAndUserIdAndTransactionIdContainingWithItems(
-                Order.OrderStatus.valueOf(status), userId, transactionId, pageable);
-        } else if (status != null && userId != null) {
-            return orderRepository.findByStatusAndUserIdWithItems(Order.OrderStatus.valueOf(status), userId, pageable);
-        } else if (status != null && transactionId != null) {
-            return orderRepository.findByStatusAndTransactionIdContainingWithItems(
-                Order.OrderStatus.valueOf(status), transactionId, pageable);
-        } else if (userId != null && transactionId != null) {
-            return orderRepository.findByUserIdAndTransactionIdContainingWithItems(userId, transactionId, pageable);
-        } else if (status != null) {
-            return orderRepository.findByStatusWithItems(Order.OrderStatus.valueOf(status), pageable);
-        } else if (userId != null) {
-            return orderRepository.findByUserIdWithItems(userId, pageable);
-        } else if (transactionId != null) {
-            return orderRepository.findByTransactionIdContainingWithItems(transactionId, pageable);
-        } else {
-            return orderRepository.findAllWithItems(pageable);
-        }
+        // Màn hình admin chỉ cần số dòng của mỗi đơn, không cần items
+        return orderRepository.findOrderSummaries(
+                status != null ? Order.OrderStatus.valueOf(status) : null,
+                userId, transactionId, withIdTieBreaker(pageable));
     }
 
     @Override
@@ -471,7 +470,7 @@ public class OrderServiceImpl implements OrderService {
             throw new RuntimeException("Invalid status transition from " + currentStatus + " to " + newStatus);
         }
         
-        order.setStatus(newStatus);
+        changeStatus(order, newStatus);
         orderRepository.save(order);
         
         log.info("Order {} status updated from {} to {}", orderId, currentStatus, newStatus);
@@ -484,37 +483,57 @@ public class OrderServiceImpl implements OrderService {
         
         Map<String, Object> statistics = new HashMap<>();
         
-        // Total orders count
-        long totalOrders = orderRepository.count();
-        statistics.put("totalOrders", totalOrders);
+        // Đọc các bộ đếm đã tính sẵn trong order_stats: bucket ALL, tháng này và 30 ngày gần nhất
+        LocalDate today = LocalDate.now();
+        String thisMonth = OrderStatsRepository.monthBucket(YearMonth.from(today));
+        String completed = Order.OrderStatus.PAYMENT_COMPLETED.name();
         
-        // Orders by status
+        long totalOrders = 0;
+        long recentOrders = 0;
+        long totalRevenue = 0;
+        long monthlyRevenue = 0;
         Map<String, Long> ordersByStatus = new HashMap<>();
         for (Order.OrderStatus status : Order.OrderStatus.values()) {
-            long count = orderRepository.countByStatus(status);
-            ordersByStatus.put(status.name(), count);
+            ordersByStatus.put(status.name(), 0L);
+        }
+        for (OrderStats row : orderStatsRepository.findForDashboard(YearMonth.from(today), today.minusDays(29), today)) {
+            if (OrderStatsRepository.ALL.equals(row.getBucket())) {
+                totalOrders += row.getOrderCount();
+                ordersByStatus.merge(row.getStatus(), row.getOrderCount(), Long::sum);
+                if (completed.equals(row.getStatus())) {
+                    totalRevenue = row.getTotalAmount();
+                }
+            } else if (thisMonth.equals(row.getBucket())) {
+                if (completed.equals(row.getStatus())) {
+                    monthlyRevenue = row.getTotalAmount();
+                }
+            } else {
+                recentOrders += row.getOrderCount();
+            }
         }
-        statistics.put("ordersByStatus", ordersByStatus);
         
+        statistics.put("totalOrders", totalOrders);
+        statistics.put("ordersByStatus", ordersByStatus);
         // Recent orders (last 30 days)
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minusDays(30);
-        long recentOrders = orderRepository.countByCreatedAtAfter(thirtyDaysAgo);
         statistics.put("recentOrders", recentOrders);
-        
         // Total revenue from completed orders
-        Integer totalRevenue = orderRepository.sumTotalAmountByStatus(Order.OrderStatus.PAYMENT_COMPLETED);
-        statistics.put("totalRevenue", totalRevenue != null ? totalRevenue : 0);
-        
+        statistics.put("totalRevenue", totalRevenue);
         // Revenue this month
-        LocalDateTime startOfMonth = LocalDateTime.now().withDayOfMonth(1).withHour(0).withMinute(0).withSecond(0).withNano(0);
-        Integer monthlyRevenue = orderRepository.sumTotalAmountByStatusAndCreatedAtAfter(
-                Order.OrderStatus.PAYMENT_COMPLETED, startOfMonth);
-        statistics.put("monthlyRevenue", monthlyRevenue != null ? monthlyRevenue : 0);
+        statistics.put("monthlyRevenue", monthlyRevenue);
         
         log.info("Order statistics calculated successfully");
         return statistics;
     }
 
+    // Mọi thay đổi trạng thái đi qua đây để order_stats được cập nhật trong cùng transaction
+    private void changeStatus(Order order, Order.OrderStatus newStatus) {
+        Order.OrderStatus previousStatus = order.getStatus();
+        order.setStatus(newStatus);
+        if (previousStatus != newStatus) {
+            orderStatsRepository.recordTransition(order.getId(), previousStatus, newStatus);
+        }
+    }
+
     private boolean isValidStatusTransition(Order.OrderStatus current, Order.OrderStatus target) {
         // Define valid status transitions
         switch (current) {
@@ -551,11 +570,8 @@ public class OrderServiceImpl implements OrderService {
         log.info("Checking if user {} has purchased product {}", userId, productId);
         
         // Kiểm tra xem user có đơn hàng nào chứa sản phẩm này với trạng thái PAYMENT_COMPLETED không
-        List<Order> deliveredOrders = orderRepository.findByUserIdAndStatusWithItems(userId, Order.OrderStatus.PAYMENT_COMPLETED);
-        
-        boolean hasPurchased = deliveredOrders.stream()
-                .flatMap(order -> order.getItems().stream())
-                .anyMatch(item -> item.getProductId().equals(productId));
+        boolean hasPurchased = orderRepository.existsByUserIdAndStatusAndItemsProductId(
+                userId, Order.OrderStatus.PAYMENT_COMPLETED, productId);
         
         log.info("User {} {} purchased product {}", 
                 userId, hasPurchased ? "has" : "has not", productId);
@@ -567,49 +583,62 @@ public class OrderServiceImpl implements OrderService {
     public Page<UserPurchaseHistoryResponseDto> getUserPurchaseHistory(String userId, Pageable pageable, String status) {
         log.info("Fetching purchase history for user: {} with status filter: {}", userId, status);
         
-        Page<Order> orders;
-        if (status != null && !status.trim().isEmpty()) {
-            // Filter by status if provided
-            Order.OrderStatus orderStatus = Order.OrderStatus.valueOf(status.toUpperCase());
-            orders = orderRepository.findByUserIdAndStatusWithItems(userId, orderStatus, pageable);
-        } else {
-            // Get all orders for user
-            orders = orderRepository.findByUserIdWithItems(userId, pageable);
+        // Bước 1: một trang đơn hàng phân trang ngay trong SQL; bước 2: items của các đơn đó
+        Page<UserPurchaseHistoryResponseDto> orders = orderRepository.findPurchaseHistory(
+                userId, parseHistoryStatus(status), withIdTieBreaker(pageable));
+        attachItems(orders.getContent());
+        return orders;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<UserPurchaseHistoryResponseDto> getUserPurchaseHistoryBefore(String userId, String status,
+                                                                              PurchaseHistoryCursor cursor, int size) {
+        log.info("Fetching purchase history for user: {} before {} with status filter: {}", userId, cursor, status);
+
+        // Lấy dư một đơn để biết còn trang sau hay không, khỏi phải COUNT
+        List<UserPurchaseHistoryResponseDto> orders = orderRepository.findPurchaseHistoryBefore(
+                userId, parseHistoryStatus(status), cursor.createdAt(), cursor.orderId(), Limit.of(size + 1));
+        boolean hasNext = orders.size() > size;
+        if (hasNext) {
+            orders = orders.subList(0, size);
         }
-        
-        // Convert to DTO
-        return orders.map(this::convertToUserPurchaseHistoryDto);
+        attachItems(orders);
+        return new SliceImpl<>(orders, PageRequest.of(0, size), hasNext);
     }
-    
-    private UserPurchaseHistoryResponseDto convertToUserPurchaseHistoryDto(Order order) {
-        // Convert order items to CartItemResponse
-        List<CartItemResponse> itemDtos = order.getItems().stream()
-                .map(item -> new CartItemResponse(
-                        item.getProductId(),
-                        item.getProductName(),
-                        item.getPrice(),
-                        item.getQuantity(),
-                        item.getColor(),
-                        true // Assume available since it was purchased
-                ))
+
+    private Order.OrderStatus parseHistoryStatus(String status) {
+        return status != null && !status.trim().isEmpty() ? Order.OrderStatus.valueOf(status.toUpperCase()) : null;
+    }
+
+    // Thêm id vào cuối sort để thứ tự ổn định khi nhiều đơn trùng createdAt
+    private Pageable withIdTieBreaker(Pageable pageable) {
+        if (pageable.getSort().getOrderFor("id") != null) {
+            return pageable;
+        }
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                pageable.getSort().and(Sort.by(Sort.Direction.DESC, "id")));
+    }
+
+    private void attachItems(List<UserPurchaseHistoryResponseDto> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<Long> orderIds = orders.stream()
+                .map(order -> Long.valueOf(order.getOrderId()))
                 .collect(Collectors.toList());
-        
-        // Create DTO
-        UserPurchaseHistoryResponseDto dto = new UserPurchaseHistoryResponseDto(
-                order.getId().toString(),
-                order.getTransactionId(),
-                order.getTotalAmount(),
-                order.getStatus() != null ? order.getStatus().name() : null,
-                order.getPaymentMethod() != null ? order.getPaymentMethod().name() : null,
-                order.getShippingAddress(),
-                order.getCreatedAt(),
-                order.getUpdatedAt()
-        );
-        
-        // Set items
-        dto.setItems(itemDtos);
-        
-        return dto;
+        Map<Long, List<CartItemResponse>> itemsByOrder = orderRepository.findItemLinesByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItemLineDto::getOrderId, Collectors.mapping(
+                        line -> new CartItemResponse(
+                                line.getProductId(),
+                                line.getProductName(),
+                                line.getPrice(),
+                                line.getQuantity(),
+                                line.getColor(),
+                                true // Assume available since it was purchased
+                        ), Collectors.toList())));
+        orders.forEach(order -> order.setItems(
+                itemsByOrder.getOrDefault(Long.valueOf(order.getOrderId()), new ArrayList<>())));
     }
     
     // Helper để chuẩn hóa color thành "default" khi null hoặc rỗng (duplicate method for review check)
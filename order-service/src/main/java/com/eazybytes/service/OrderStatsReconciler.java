@@ -0,0 +1,63 @@
+package com.eazybytes.service;
+
+import com.eazybytes.repository.OrderStatsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps order_stats equal to an aggregate over orders.
+ *
+ * The counters are maintained on every status change, so this only catches drift (a status written
+ * outside OrderServiceImpl, two concurrent changes of the same order) and fills the table for
+ * orders that existed before it. Runs once at startup when the table is empty, then on the cron.
+ * Every replica may run it; the rebuild is serialized by row locks.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderStatsReconciler {
+
+    private final OrderStatsRepository orderStatsRepository;
+
+    @Value("${order.stats.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeIfEmpty() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (orderStatsRepository.isEmpty()) {
+                log.info("order_stats is empty, building it from orders");
+                reconcile();
+            }
+        } catch (Exception e) {
+            log.error("Could not initialize order statistics: ", e);
+        }
+    }
+
+    @Scheduled(cron = "${order.stats.reconcile.cron:0 30 3 * * *}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            int corrected = orderStatsRepository.reconcile();
+            if (corrected > 0) {
+                log.warn("Order statistics reconciled: {} buckets corrected in {} ms",
+                        corrected, System.currentTimeMillis() - started);
+            } else {
+                log.info("Order statistics reconciled, no drift ({} ms)", System.currentTimeMillis() - started);
+            }
+        } catch (Exception e) {
+            log.error("Order statistics reconciliation failed: ", e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.eazybytes.service;
+
+import com.eazybytes.dto.UserPurchaseHistoryResponseDto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position in a user's purchase history, newest first: the next page starts strictly after the
+ * order with this (createdAt, id). Sent to clients as an opaque URL-safe string.
+ */
+public record PurchaseHistoryCursor(LocalDateTime createdAt, Long orderId) {
+
+    public static PurchaseHistoryCursor after(UserPurchaseHistoryResponseDto order) {
+        return new PurchaseHistoryCursor(order.getCreatedAt(), Long.valueOf(order.getOrderId()));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value was not produced by {@link #encode()}
+     */
+    public static PurchaseHistoryCursor parse(String value) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('|');
+            return new PurchaseHistoryCursor(LocalDateTime.parse(decoded.substring(0, separator)),
+                    Long.valueOf(decoded.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid purchase history cursor: " + value, e);
+        }
+    }
+
+    public String encode() {
+        String raw = createdAt + "|" + orderId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,11 +1,14 @@
 package com.eazybytes.event;
 
 import com.eazybytes.event.model.ProcessPaymentRequest;
+import com.eazybytes.idempotency.MessageIdempotencyService;
 import com.eazybytes.service.PaymentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -14,12 +17,17 @@ import org.springframework.stereotype.Component;
 public class PaymentConsumer {
 
     private final PaymentService paymentService;
+    private final MessageIdempotencyService idempotencyService;
 
     @KafkaListener(topics = "${kafka.topics.payment.process}", groupId = "${spring.kafka.consumer.group-id}")
-    public void processPaymentRequest(ProcessPaymentRequest request, Acknowledgment ack) {
+    public void processPaymentRequest(ProcessPaymentRequest request,
+                                      @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                                      @Header(name = KafkaHeaders.RECEIVED_KEY, required = false) String key,
+                                      Acknowledgment ack) {
         try {
             log.info("Received payment request: {}", request);
-            paymentService.processPayment(request);
+            // Bản giao lại không được tạo thêm một giao dịch thanh toán
+            idempotencyService.processOnce(topic, key, request.getTransactionId(), () -> paymentService.processPayment(request));
             ack.acknowledge();
             log.info("Successfully processed payment request for orderId: {}", request.getOrderId());
         } catch (Exception e) {
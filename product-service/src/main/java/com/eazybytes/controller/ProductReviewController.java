@@ -117,6 +117,15 @@ public class ProductReviewController {
         return reviewService.getUserReviewsForProduct(userId, productId);
     }
     
+    /**
+     * Kiểm tra user hiện tại có thể đánh giá sản phẩm không (đã mua và chưa đánh giá)
+     */
+    @GetMapping("/my-reviews/product/{productId}/eligibility")
+    public Map<String, Object> getReviewEligibility(@PathVariable String productId) {
+        String userId = roleChecker.getCurrentUserId();
+        return reviewService.getReviewEligibility(userId, productId);
+    }
+    
     // ===== ADMIN ENDPOINTS (FR-15) =====
     
     /**
@@ -52,4 +52,11 @@ public abstract class BaseProduct {
 
     private String release;
 
+    // Số hoá các thông số dạng chuỗi (ram_gb, batteryCapacity_mah, ...) để query range/sort có index
+    // Được tính lại mỗi lần lưu bởi NumericSpecsWriter, không nhận từ request
+    private Map<String, Double> numericSpecs;
+
+    // productName + brand đã bỏ dấu tiếng Việt, nằm trong text index; ghi bởi SearchTextWriter
+    private String searchText;
+
 }
\ No newline at end of file
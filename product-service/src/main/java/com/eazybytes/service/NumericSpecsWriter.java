@@ -0,0 +1,50 @@
+package com.eazybytes.service;
+
+import com.eazybytes.model.BaseProduct;
+import com.eazybytes.search.NumericSpecs;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recomputes {@link BaseProduct#getNumericSpecs()} before every save, so create, update and bulk
+ * create all keep the shadow fields in step with the spec strings they are derived from.
+ */
+@Slf4j
+@Component
+public class NumericSpecsWriter implements BeforeConvertCallback<BaseProduct> {
+
+    @Override
+    public BaseProduct onBeforeConvert(BaseProduct product, String collection) {
+        product.setNumericSpecs(compute(product));
+        return product;
+    }
+
+    public Map<String, Double> compute(BaseProduct product) {
+        Map<String, NumericSpecs.Spec> specs = NumericSpecs.forType(product.getType());
+        Map<String, Double> values = new HashMap<>();
+        if (specs.isEmpty()) {
+            return values;
+        }
+
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(product);
+        specs.forEach((field, spec) -> {
+            if (!wrapper.isReadableProperty(field)) {
+                return;
+            }
+            Double value = NumericSpecs.parse(spec, wrapper.getPropertyValue(field), false);
+            if (value != null) {
+                values.put(spec.key(), value);
+            } else if (wrapper.getPropertyValue(field) != null) {
+                log.debug("Could not parse {} '{}' of product {}", field, wrapper.getPropertyValue(field),
+                        product.getProductId());
+            }
+        });
+        return values;
+    }
+}
@@ -1,6 +1,5 @@
 package com.eazybytes.service;
 
-import com.eazybytes.client.OrderClient;
 import com.eazybytes.dto.review.*;
 import com.eazybytes.model.ProductReview;
 import com.eazybytes.repository.ProductReviewRepository;
@@ -23,14 +22,14 @@ import java.util.stream.Collectors;
 public class ProductReviewService {
     
     private final ProductReviewRepository reviewRepository;
-    private final OrderClient orderClient;
+    private final PurchaseCheckCache purchaseCheckCache;
     
     /**
      * Tạo đánh giá mới (FR-14)
      */
     public ReviewResponse createReview(CreateReviewRequest request, String userId, String username) {
         // Kiểm tra user đã mua sản phẩm này chưa
-        boolean hasPurchased = orderClient.checkIfUserPurchasedProduct(userId, request.getProductId());
+        boolean hasPurchased = purchaseCheckCache.hasPurchased(userId, request.getProductId());
         if (!hasPurchased) {
             throw new IllegalArgumentException("Bạn cần mua sản phẩm này trước khi có thể đánh giá");
         }
@@ -58,6 +57,21 @@ public class ProductReviewService {
         return mapToResponse(savedReview);
     }
     
+    /**
+     * Kiểm tra user có được đánh giá sản phẩm không, để form đánh giá hiển thị trước khi submit
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getReviewEligibility(String userId, String productId) {
+        boolean hasPurchased = purchaseCheckCache.hasPurchased(userId, productId);
+        boolean hasReviewed = reviewRepository.existsByUserIdAndProductId(userId, productId);
+        return Map.of(
+            "productId", productId,
+            "hasPurchased", hasPurchased,
+            "hasReviewed", hasReviewed,
+            "canReview", hasPurchased && !hasReviewed
+        );
+    }
+    
     /**
      * Cập nhật đánh giá (chỉ user sở hữu)
      */
@@ -0,0 +1,71 @@
+package com.eazybytes.service;
+
+import com.eazybytes.client.OrderClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Short-lived answers of order-service's "has this user bought this product" check, per
+ * (userId, productId), so opening the review form and then submitting it costs one call.
+ *
+ * "Yes" is kept for positive-ttl and "no" for the shorter negative-ttl, because the user may be
+ * paying for the product right now. Either answer can be stale for up to its TTL: an order that is
+ * cancelled or refunded keeps counting as a purchase until the entry expires. Failed calls (order-
+ * service answers 503 when its own lookup fails) throw from the Feign client and are not cached.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PurchaseCheckCache {
+
+    private record Entry(boolean purchased, long loadedAt) {
+    }
+
+    private final OrderClient orderClient;
+
+    @Value("${review.purchase-check.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${review.purchase-check.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${review.purchase-check.cache.positive-ttl-ms:120000}")
+    private long positiveTtlMillis;
+
+    @Value("${review.purchase-check.cache.negative-ttl-ms:30000}")
+    private long negativeTtlMillis;
+
+    // LRU, mọi truy cập đều synchronized trên map
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public boolean hasPurchased(String userId, String productId) {
+        if (!enabled) {
+            return orderClient.checkIfUserPurchasedProduct(userId, productId);
+        }
+        String key = userId + "|" + productId;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.loadedAt() < (entry.purchased() ? positiveTtlMillis : negativeTtlMillis)) {
+                return entry.purchased();
+            }
+        }
+
+        boolean purchased = orderClient.checkIfUserPurchasedProduct(userId, productId);
+        synchronized (entries) {
+            entries.put(key, new Entry(purchased, now));
+        }
+        log.debug("Purchase check for user {} and product {}: {}", userId, productId, purchased);
+        return purchased;
+    }
+}
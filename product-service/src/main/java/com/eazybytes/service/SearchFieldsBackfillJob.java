@@ -0,0 +1,135 @@
+package com.eazybytes.service;
+
+import com.eazybytes.model.BaseProduct;
+import com.eazybytes.search.NumericSpecs;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * One-shot migration run at startup for the derived search fields of baseProduct.
+ *
+ * Creates the {_class, numericSpecs.<key>} indexes and the weighted text index used by smart search,
+ * then fills numericSpecs and searchText for documents written before those fields existed.
+ * Only documents missing one of them are touched. The lookup goes through plain (non-sparse)
+ * indexes on both fields, whose null keys cover the missing values; a sparse index cannot answer
+ * $exists:false and would turn every startup into a collection scan. After the first run each
+ * startup costs two empty index range scans. Products with nothing to parse get an empty map and
+ * are not revisited.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchFieldsBackfillJob {
+
+    private final MongoTemplate mongoTemplate;
+    private final NumericSpecsWriter numericSpecsWriter;
+
+    @Value("${product.search-fields.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${product.search-fields.backfill.batch-size:500}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        if (!enabled) {
+            log.info("Search fields backfill disabled");
+            return;
+        }
+        try {
+            ensureIndexes();
+            backfill();
+        } catch (Exception e) {
+            // Không chặn service khởi động; smart search vẫn chạy được với các document đã có dữ liệu
+            log.error("Search fields backfill failed: ", e);
+        }
+    }
+
+    void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(BaseProduct.class);
+        // Các index sparse cũ không phục vụ được $exists:false
+        for (String legacy : List.of("numericSpecs_exists", "searchText_exists")) {
+            if (indexOps.getIndexInfo().stream().anyMatch(info -> info.getName().equals(legacy))) {
+                indexOps.dropIndex(legacy);
+            }
+        }
+        indexOps.ensureIndex(new Index().on(NumericSpecs.FIELD, Sort.Direction.ASC)
+                .named("numericSpecs_presence"));
+        indexOps.ensureIndex(new Index().on(SearchText.FIELD, Sort.Direction.ASC)
+                .named("searchText_presence"));
+        for (String key : NumericSpecs.allKeys()) {
+            indexOps.ensureIndex(new Index()
+                    .on("_class", Sort.Direction.ASC)
+                    .on(NumericSpecs.FIELD + "." + key, Sort.Direction.ASC)
+                    .named("class_" + key));
+        }
+
+        // Mongo cho phép một text index mỗi collection; "none" tắt stemming tiếng Anh cho dữ liệu tiếng Việt
+        try {
+            indexOps.ensureIndex(TextIndexDefinition.builder()
+                    .named(SearchText.TEXT_INDEX_NAME)
+                    .onField("productName", 10F)
+                    .onField(SearchText.FIELD, 8F)
+                    .onField("brand", 5F)
+                    .onField("description", 1F)
+                    .withDefaultLanguage("none")
+                    .withLanguageOverride("textLanguage")
+                    .build());
+        } catch (Exception e) {
+            log.error("Could not create text index '{}' (is another text index present?): {}",
+                    SearchText.TEXT_INDEX_NAME, e.getMessage());
+        }
+    }
+
+    void backfill() {
+        long started = System.currentTimeMillis();
+        int updated = 0;
+        while (true) {
+            Query query = new Query(new Criteria().orOperator(
+                            Criteria.where(NumericSpecs.FIELD).exists(false),
+                            Criteria.where(SearchText.FIELD).exists(false)))
+                    .with(Sort.by(Sort.Direction.ASC, "_id"))
+                    .limit(batchSize);
+            List<BaseProduct> products = mongoTemplate.find(query, BaseProduct.class);
+            if (products.isEmpty()) {
+                break;
+            }
+
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BaseProduct.class);
+            for (BaseProduct product : products) {
+                bulk.updateOne(Query.query(Criteria.where("_id").is(product.getProductId())),
+                        new Update()
+                                .set(NumericSpecs.FIELD, numericSpecsWriter.compute(product))
+                                .set(SearchText.FIELD, SearchText.build(product)));
+            }
+            int modified = bulk.execute().getModifiedCount();
+            if (modified == 0) {
+                // Không tiến triển được, tránh lặp vô hạn trên cùng một batch
+                log.warn("Search fields backfill made no progress on {} products, stopping", products.size());
+                break;
+            }
+            updated += modified;
+
+            if (products.size() < batchSize) {
+                break;
+            }
+        }
+        log.info("Search fields backfill updated {} products in {} ms", updated,
+                System.currentTimeMillis() - started);
+    }
+}
@@ -0,0 +1,28 @@
+package com.eazybytes.service;
+
+import com.eazybytes.model.BaseProduct;
+import com.eazybytes.search.VietnameseText;
+
+/**
+ * Builds the {@code searchText} field covered by the baseProduct text index: productName and brand
+ * folded by {@link VietnameseText#fold}, so queries typed with or without Vietnamese accents both hit.
+ */
+public final class SearchText {
+
+    public static final String FIELD = "searchText";
+    public static final String TEXT_INDEX_NAME = "product_text";
+
+    private SearchText() {
+    }
+
+    public static String build(BaseProduct product) {
+        StringBuilder text = new StringBuilder();
+        if (product.getProductName() != null) {
+            text.append(product.getProductName());
+        }
+        if (product.getBrand() != null) {
+            text.append(' ').append(product.getBrand());
+        }
+        return VietnameseText.fold(text.toString());
+    }
+}
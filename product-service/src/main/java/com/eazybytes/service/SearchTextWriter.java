@@ -0,0 +1,18 @@
+package com.eazybytes.service;
+
+import com.eazybytes.model.BaseProduct;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps {@link BaseProduct#getSearchText()} in step with productName and brand on every save.
+ */
+@Component
+public class SearchTextWriter implements BeforeConvertCallback<BaseProduct> {
+
+    @Override
+    public BaseProduct onBeforeConvert(BaseProduct product, String collection) {
+        product.setSearchText(SearchText.build(product));
+        return product;
+    }
+}